@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Almacén de datos del inventario: dónde está la base de datos y cómo se crea su
+ * esquema. Hay dos implementaciones:
+ * - AlmacenMySql: servidor MySQL (el almacén por defecto)
+ * - AlmacenEmbebido: base de datos H2 dentro del propio proceso, guardada en un
+ *   archivo local, sin servidor ni red de por medio
+ *
+ * El resto de la aplicación (StockManager, XmlManager, JsonExporter...) trabaja con
+ * las conexiones JDBC del pool y no depende del almacén elegido.
+ *
+ * El almacén se elige en el archivo inventario.properties (opcional) o con
+ * propiedades del sistema (-Dinventario.almacen=embebido), que tienen prioridad:
+ * - almacen: mysql o embebido
+ * - mysql.url, mysql.base_datos, mysql.usuario, mysql.password
+ * - embebido.ruta: ruta de la base de datos embebida (sin extensión)
+ */
+public interface Almacen {
+    String ARCHIVO_CONFIGURACION = "inventario.properties";
+
+    // Filas que se piden de cada vez en las lecturas en streaming con drivers distintos de MySQL
+    int FILAS_POR_LECTURA = 1000;
+
+    /** @return Nombre del almacén para mostrarlo al usuario */
+    String getNombre();
+
+    /** @return URL JDBC de la base de datos */
+    String getUrl();
+
+    String getUsuario();
+
+    String getPassword();
+
+    /**
+     * Crea la base de datos y la tabla productos si no existen.
+     *
+     * @throws SQLException Si no se puede acceder a la base de datos
+     */
+    void crearBaseDeDatos() throws SQLException;
+
+    /**
+     * Crea el resto de tablas y pone el esquema al día.
+     *
+     * @param conn Conexión a la base de datos
+     * @throws SQLException Si falla la creación o actualización del esquema
+     */
+    void prepararEsquema(Connection conn) throws SQLException;
+
+    /**
+     * @return true si movimientos_stock está particionada por meses y se pueden
+     *         archivar los meses antiguos (ver ParticionesMovimientos)
+     */
+    boolean admiteParticiones();
+
+    /**
+     * @return true si EXPLAIN devuelve el plan con las columnas de MySQL
+     */
+    boolean admiteExplain();
+
+    /**
+     * Crea el almacén indicado en la configuración. Si no hay archivo de
+     * configuración se usa MySQL con los valores por defecto.
+     *
+     * @param rutaConfiguracion Ruta del archivo de propiedades
+     * @return Almacén configurado
+     * @throws IOException Si el archivo existe pero no se puede leer
+     * @throws IllegalArgumentException Si el tipo de almacén no es válido
+     */
+    static Almacen cargar(String rutaConfiguracion) throws IOException {
+        Properties configuracion = new Properties();
+        Path ruta = Paths.get(rutaConfiguracion);
+        if (Files.exists(ruta)) {
+            try (InputStream in = Files.newInputStream(ruta)) {
+                configuracion.load(in);
+            }
+        }
+        for (String clave : System.getProperties().stringPropertyNames()) {
+            if (clave.startsWith("inventario.")) {
+                configuracion.setProperty(clave.substring("inventario.".length()), System.getProperty(clave));
+            }
+        }
+
+        String tipo = configuracion.getProperty("almacen", "mysql").trim();
+        switch (tipo) {
+            case "mysql":
+                return new AlmacenMySql(
+                    configuracion.getProperty("mysql.url", AlmacenMySql.URL_BASE_POR_DEFECTO),
+                    configuracion.getProperty("mysql.base_datos", AlmacenMySql.BASE_DATOS_POR_DEFECTO),
+                    configuracion.getProperty("mysql.usuario", AlmacenMySql.USUARIO_POR_DEFECTO),
+                    configuracion.getProperty("mysql.password", ""));
+            case "embebido":
+                return new AlmacenEmbebido(configuracion.getProperty("embebido.ruta", AlmacenEmbebido.RUTA_POR_DEFECTO));
+            default:
+                throw new IllegalArgumentException("Almacén no válido: " + tipo + " (use mysql o embebido)");
+        }
+    }
+
+    /**
+     * Prepara una consulta de solo lectura cuyas filas se reciben en streaming, sin
+     * cargar el resultado completo en memoria.
+     *
+     * @param conn Conexión a la base de datos
+     * @param sql Consulta
+     * @return Sentencia preparada
+     * @throws SQLException Si hay un error al preparar la consulta
+     */
+    static PreparedStatement prepararLectura(Connection conn, String sql) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        // Con MySQL, Integer.MIN_VALUE hace que el driver entregue las filas una a una;
+        // el resto de drivers solo admiten tamaños positivos
+        boolean mysql = "MySQL".equals(conn.getMetaData().getDatabaseProductName());
+        ps.setFetchSize(mysql ? Integer.MIN_VALUE : FILAS_POR_LECTURA);
+        return ps;
+    }
+}
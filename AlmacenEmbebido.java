@@ -0,0 +1,111 @@
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Almacén embebido: una base de datos H2 que se ejecuta dentro del propio proceso y
+ * se guarda en un archivo local. No necesita servidor, así que las consultas no
+ * pasan por la red; sirve para almacenes sin servidor de base de datos y para
+ * ejecutar las pruebas de rendimiento sin MySQL.
+ *
+ * H2 se abre en modo de compatibilidad con MySQL, de modo que el resto de la
+ * aplicación usa las mismas sentencias. El esquema se crea directamente en su
+ * versión actual (sin migraciones) y movimientos_stock no se particiona.
+ *
+ * El driver de H2 se incluye con la aplicación (libs/h2-2.2.224.jar y la
+ * dependencia del pom), igual que el conector de MySQL.
+ */
+public class AlmacenEmbebido implements Almacen {
+    public static final String RUTA_POR_DEFECTO = "datos/aad1_2";
+
+    private static final String DRIVER = "org.h2.Driver";
+    private static final String USUARIO = "sa";
+
+    // Mismos índices que crean las migraciones 1 y 2 en MySQL
+    private static final String[] INDICES = {
+        "idx_productos_nombre ON productos (nombre)",
+        "idx_productos_stock ON productos (stock)",
+        "idx_productos_categoria ON productos (categoria, stock)",
+        "idx_mov_producto_id ON movimientos_stock (id_producto, id_movimiento)",
+        "idx_mov_producto_fecha ON movimientos_stock (id_producto, fecha_movimiento)",
+        "idx_mov_fecha ON movimientos_stock (fecha_movimiento)",
+        "idx_mov_tipo_producto ON movimientos_stock (tipo_movimiento, id_producto, cantidad)",
+    };
+
+    private final String ruta;
+
+    /**
+     * @param ruta Ruta de la base de datos, sin extensión (H2 añade .mv.db)
+     */
+    public AlmacenEmbebido(String ruta) {
+        this.ruta = ruta;
+    }
+
+    @Override
+    public String getNombre() {
+        return "embebido (" + ruta + ")";
+    }
+
+    @Override
+    public String getUrl() {
+        // H2 no admite rutas relativas implícitas en la URL
+        return "jdbc:h2:file:" + Paths.get(ruta).toAbsolutePath() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+    }
+
+    @Override
+    public String getUsuario() {
+        return USUARIO;
+    }
+
+    @Override
+    public String getPassword() {
+        return "";
+    }
+
+    @Override
+    public void crearBaseDeDatos() throws SQLException {
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("No se encuentra el driver de H2: incluya libs/h2-2.2.224.jar en el classpath"
+                + " (por ejemplo, java -cp \".:libs/*\" Main)", e);
+        }
+        // H2 crea el archivo de la base de datos al conectarse por primera vez
+        try (Connection conn = DriverManager.getConnection(getUrl(), USUARIO, "");
+             PreparedStatement ps = conn.prepareStatement(StockManager.CREATE_PRODUCTOS_TABLE)) {
+            ps.executeUpdate();
+            System.out.println("Base de datos embebida creada o verificada correctamente.");
+        }
+    }
+
+    @Override
+    public void prepararEsquema(Connection conn) throws SQLException {
+        StockManager.initializeTables(conn);
+        ejecutar(conn, MigracionesEsquema.CREATE_VENTAS_DIARIAS);
+        // Siempre vacía: en el almacén embebido no se archivan meses
+        ejecutar(conn, ParticionesMovimientos.CREATE_ARCHIVADOS_TABLE);
+        GeneradorIds.inicializar(conn);
+        ejecutar(conn, CsvImporter.CREATE_IMPORTACIONES_TABLE);
+        for (String indice : INDICES) {
+            ejecutar(conn, "CREATE INDEX IF NOT EXISTS " + indice);
+        }
+    }
+
+    @Override
+    public boolean admiteParticiones() {
+        return false;
+    }
+
+    @Override
+    public boolean admiteExplain() {
+        return false;
+    }
+
+    private static void ejecutar(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.executeUpdate();
+        }
+    }
+}
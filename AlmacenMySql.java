@@ -0,0 +1,88 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Almacén en un servidor MySQL. El esquema se mantiene con las migraciones
+ * versionadas (MigracionesEsquema) y movimientos_stock se particiona por meses.
+ */
+public class AlmacenMySql implements Almacen {
+    public static final String URL_BASE_POR_DEFECTO = "jdbc:mysql://localhost:3306/";
+    public static final String BASE_DATOS_POR_DEFECTO = "aad1_2";
+    public static final String USUARIO_POR_DEFECTO = "root";
+
+    private final String urlBase;
+    private final String baseDatos;
+    private final String usuario;
+    private final String password;
+
+    /**
+     * @param urlBase URL del servidor, sin base de datos (por ejemplo jdbc:mysql://localhost:3306/)
+     * @param baseDatos Nombre de la base de datos
+     * @param usuario Usuario de MySQL
+     * @param password Contraseña del usuario
+     */
+    public AlmacenMySql(String urlBase, String baseDatos, String usuario, String password) {
+        this.urlBase = urlBase.endsWith("/") ? urlBase : urlBase + "/";
+        this.baseDatos = baseDatos;
+        this.usuario = usuario;
+        this.password = password;
+    }
+
+    @Override
+    public String getNombre() {
+        return "MySQL (" + urlBase + baseDatos + ")";
+    }
+
+    @Override
+    public String getUrl() {
+        // rewriteBatchedStatements permite al driver enviar cada lote como un único INSERT multi-fila
+        return urlBase + baseDatos + "?rewriteBatchedStatements=true";
+    }
+
+    @Override
+    public String getUsuario() {
+        return usuario;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public void crearBaseDeDatos() throws SQLException {
+        // Primero intentamos crear la base de datos
+        try (Connection conn = DriverManager.getConnection(urlBase, usuario, password);
+             PreparedStatement ps = conn.prepareStatement("CREATE DATABASE IF NOT EXISTS " + baseDatos)) {
+            ps.executeUpdate();
+            System.out.println("Base de datos creada o verificada correctamente.");
+        }
+
+        // Ahora creamos la tabla productos en la base de datos
+        try (Connection conn = DriverManager.getConnection(getUrl(), usuario, password);
+             PreparedStatement ps = conn.prepareStatement(StockManager.CREATE_PRODUCTOS_TABLE)) {
+            ps.executeUpdate();
+            System.out.println("Tabla productos creada o verificada correctamente.");
+        }
+    }
+
+    @Override
+    public void prepararEsquema(Connection conn) throws SQLException {
+        StockManager.initializeTables(conn);
+        // Crear los índices y demás cambios de esquema que falten
+        MigracionesEsquema.aplicarPendientes(conn);
+        ParticionesMovimientos.crearParticionesFuturas(conn);
+    }
+
+    @Override
+    public boolean admiteParticiones() {
+        return true;
+    }
+
+    @Override
+    public boolean admiteExplain() {
+        return true;
+    }
+}
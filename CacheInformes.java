@@ -0,0 +1,409 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Caché de los resultados de los informes de StockManager (páginas del histórico de
+ * un producto y de los movimientos por fecha, más vendidos y valor de stock por categoría).
+ * Cada resultado se guarda con una clave formada por el informe y sus parámetros, y
+ * se vuelve a calcular cuando:
+ * - Ha pasado su tiempo de vida (TTL)
+ * - La aplicación avisa de un cambio que le afecta: un movimiento de stock confirmado
+ *   (invalidarMovimiento) o un cambio en el catálogo, como crear, modificar o eliminar
+ *   productos o importarlos (invalidar)
+ *
+ * La memoria ocupada se estima por filas. Al superar el máximo se expulsan primero
+ * los resultados usados hace más tiempo (LRU). Solo se guardan páginas de movimientos
+ * de hasta MAX_FILAS_PAGINA filas y resultados que ocupen como mucho una
+ * fracción de la memoria máxima, para que un único informe no expulse a los demás.
+ *
+ * Un resultado cuyo cálculo empezó antes de una invalidación que le afecta no se
+ * guarda: podría no incluir el cambio que la provocó. Las invalidaciones se anotan
+ * por grupo de claves (el histórico de cada producto y cada uno de los demás
+ * informes), así que un movimiento no descarta el cálculo de informes a los que no
+ * afecta. Esas anotaciones solo hacen falta mientras hay cálculos en curso: sin
+ * ninguno no se anotan, y se descartan en cuanto termina el último cálculo que
+ * empezó antes que ellas.
+ *
+ * Los resultados guardados se indexan por grupo de claves, de modo que invalidar
+ * tras un movimiento solo recorre las entradas de los grupos afectados.
+ */
+public class CacheInformes {
+    public static final long TTL_POR_DEFECTO_MS = 60_000;
+    public static final long MAX_BYTES_POR_DEFECTO = 16L * 1024 * 1024;
+    // Páginas de movimientos más grandes no se guardan (como MAX_TAMANO_PAGINA del servidor HTTP)
+    public static final int MAX_FILAS_PAGINA = 1000;
+
+    // Un resultado no puede ocupar más de esta fracción de la memoria máxima
+    private static final int FRACCION_MAX_ENTRADA = 8;
+
+    // Prefijos de las claves de cada informe
+    private static final String MOVIMIENTOS = "movimientos|";
+    private static final String MOVIMIENTOS_POR_FECHA = "movimientos_por_fecha|";
+    private static final String MAS_VENDIDOS = "mas_vendidos|";
+    private static final String VALOR_STOCK = "valor_stock|";
+
+    // Estimación del tamaño en memoria de una entrada, una fila y una cadena
+    private static final int BYTES_ENTRADA = 128;
+    private static final int BYTES_FILA = 48;
+    private static final int BYTES_CADENA = 40;
+    private static final int BYTES_DECIMAL = 64;
+    // Anotación de una invalidación por grupo mientras hay cálculos en curso
+    private static final int BYTES_INVALIDACION = 96;
+
+    /**
+     * Consulta que calcula un informe con una conexión del pool. Devuelve una lista
+     * inmutable o una página.
+     */
+    private interface Consulta<T> {
+        T ejecutar(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Resultado guardado: filas (lista o página), instante de caducidad y tamaño estimado.
+     */
+    private static final class Entrada {
+        final Object filas;
+        final long caducaNs;
+        final long bytes;
+
+        Entrada(Object filas, long caducaNs, long bytes) {
+            this.filas = filas;
+            this.caducaNs = caducaNs;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final RankingVentas ranking;
+    private final long ttlNs;
+    private final long maxBytes;
+
+    // accessOrder = true: el orden de iteración va del menos al más recientemente usado
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(64, 0.75f, true);
+    // Claves guardadas de cada grupo
+    private final Map<String, Set<String>> clavesPorGrupo = new HashMap<>();
+    private long bytes = 0;
+    // Se incrementa con cada invalidación
+    private long version = 0;
+    // Versión de la última invalidación de todos los informes y de cada grupo de claves
+    private long versionInvalidarTodo = 0;
+    private final Map<String, Long> invalidadoEn = new HashMap<>();
+    // Versión inicial de los cálculos en curso -> número de cálculos
+    private final TreeMap<Long, Integer> calculando = new TreeMap<>();
+
+    private long aciertos = 0;
+    private long fallos = 0;
+    private long caducadas = 0;
+    private long expulsiones = 0;
+    private long invalidaciones = 0;
+    private long recalculos = 0;
+    private long tiempoRecalculoTotalNs = 0;
+    private long tiempoRecalculoMaxNs = 0;
+
+    /**
+     * Crea una caché vacía.
+     *
+     * @param pool Pool de conexiones con el que se calculan los informes que no están en caché
+     * @param ranking Ranking de ventas en memoria, o null para calcular siempre los más vendidos en la base de datos
+     * @param ttlMs Tiempo de vida de cada resultado en milisegundos
+     * @param maxBytes Memoria máxima estimada que ocupan los resultados
+     * @throws IllegalArgumentException Si el TTL o la memoria máxima son menores o iguales a cero
+     */
+    public CacheInformes(ConnectionPool pool, RankingVentas ranking, long ttlMs, long maxBytes) {
+        if (ttlMs <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("El TTL y la memoria máxima de la caché deben ser mayores que 0");
+        }
+        this.pool = pool;
+        this.ranking = ranking;
+        this.ttlNs = ttlMs * 1_000_000;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param idProducto ID del producto
+     * @param antesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de movimientos de la página
+     * @return Página del histórico de movimientos del producto, de más reciente a más antiguo
+     * @throws SQLException Si hay un error al consultar los movimientos
+     * @throws IllegalArgumentException Si el tamaño de página es menor o igual a 0
+     * @see StockManager#paginaMovimientos
+     */
+    public Pagina<Movimiento, Integer> paginaMovimientos(int idProducto, Integer antesDe, int tamano) throws SQLException {
+        if (tamano > MAX_FILAS_PAGINA) {
+            // Se consulta sin guardarla: una página tan grande ocuparía la caché
+            try (Connection conn = pool.getConnection()) {
+                return StockManager.paginaMovimientos(conn, idProducto, antesDe, tamano);
+            }
+        }
+        return obtener(MOVIMIENTOS + idProducto + "|" + antesDe + "|" + tamano,
+            conn -> StockManager.paginaMovimientos(conn, idProducto, antesDe, tamano));
+    }
+
+    /**
+     * @param fechaInicio Fecha de inicio del rango (formato: YYYY-MM-DD)
+     * @param fechaFin Fecha de fin del rango (formato: YYYY-MM-DD)
+     * @param antesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de movimientos de la página
+     * @return Página de movimientos del rango con el nombre y la categoría de cada producto
+     * @throws SQLException Si hay un error al consultar los movimientos
+     * @throws IllegalArgumentException Si el formato de las fechas es incorrecto o el
+     *         tamaño de página es menor o igual a 0
+     * @see StockManager#paginaMovimientosPorFecha
+     */
+    public Pagina<MovimientoProducto, CursorFecha> paginaMovimientosPorFecha(String fechaInicio, String fechaFin,
+            CursorFecha antesDe, int tamano) throws SQLException {
+        if (tamano > MAX_FILAS_PAGINA) {
+            // Se consulta sin guardarla: una página tan grande ocuparía la caché
+            try (Connection conn = pool.getConnection()) {
+                return StockManager.paginaMovimientosPorFecha(conn, fechaInicio, fechaFin, antesDe, tamano);
+            }
+        }
+        return obtener(MOVIMIENTOS_POR_FECHA + fechaInicio + "|" + fechaFin + "|" + antesDe + "|" + tamano,
+            conn -> StockManager.paginaMovimientosPorFecha(conn, fechaInicio, fechaFin, antesDe, tamano));
+    }
+
+    /**
+     * @param limit Número de productos (N)
+     * @return Los N productos más vendidos
+     * @throws SQLException Si hay un error al consultar los productos
+     * @throws IllegalArgumentException Si limit es menor o igual a 0
+     * @see StockManager#productosMasVendidos
+     */
+    public List<ProductoVendido> productosMasVendidos(int limit) throws SQLException {
+        return obtener(MAS_VENDIDOS + limit, conn -> List.copyOf(StockManager.productosMasVendidos(conn, limit, ranking)));
+    }
+
+    /**
+     * @return Valor del stock de cada categoría, de mayor a menor
+     * @throws SQLException Si hay un error al consultar los datos
+     * @see StockManager#valorStockPorCategoria
+     */
+    public List<ValorCategoria> valorStockPorCategoria() throws SQLException {
+        return obtener(VALOR_STOCK, conn -> List.copyOf(StockManager.valorStockPorCategoria(conn)));
+    }
+
+    /**
+     * Invalida los informes a los que afecta un movimiento de stock confirmado: las
+     * páginas del histórico del producto, los movimientos por fecha y el valor de
+     * stock y, si es una salida, los más vendidos.
+     *
+     * @param idProducto ID del producto del movimiento
+     * @param tipoMovimiento ENTRADA o SALIDA
+     */
+    public synchronized void invalidarMovimiento(int idProducto, String tipoMovimiento) {
+        version++;
+        invalidaciones++;
+        invalidarGrupo(MOVIMIENTOS + idProducto + "|");
+        invalidarGrupo(MOVIMIENTOS_POR_FECHA);
+        invalidarGrupo(VALOR_STOCK);
+        if (StockManager.SALIDA.equals(tipoMovimiento)) {
+            invalidarGrupo(MAS_VENDIDOS);
+        }
+    }
+
+    /**
+     * Quita las entradas de un grupo y, si hay cálculos en curso que podrían
+     * guardar un resultado anterior a esta invalidación, la anota.
+     */
+    private void invalidarGrupo(String grupo) {
+        if (!calculando.isEmpty()) {
+            invalidadoEn.put(grupo, version);
+        }
+        Set<String> claves = clavesPorGrupo.remove(grupo);
+        if (claves != null) {
+            for (String clave : claves) {
+                bytes -= entradas.remove(clave).bytes;
+            }
+        }
+    }
+
+    /**
+     * Invalida todos los informes. Se usa tras cambios en el catálogo (altas,
+     * modificaciones, bajas, importaciones y restauraciones) y en el resumen de ventas.
+     */
+    public synchronized void invalidar() {
+        version++;
+        invalidaciones++;
+        versionInvalidarTodo = version;
+        // Las invalidaciones anteriores por grupo quedan cubiertas por esta
+        invalidadoEn.clear();
+        entradas.clear();
+        clavesPorGrupo.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Devuelve el resultado guardado si sigue vigente o lo calcula y lo guarda.
+     * La consulta se ejecuta fuera del bloqueo de la caché.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T obtener(String clave, Consulta<T> consulta) throws SQLException {
+        long versionInicial;
+        synchronized (this) {
+            Entrada entrada = entradas.get(clave);
+            if (entrada != null && System.nanoTime() - entrada.caducaNs < 0) {
+                aciertos++;
+                return (T) entrada.filas;
+            }
+            if (entrada != null) {
+                caducadas++;
+                quitar(clave);
+            }
+            fallos++;
+            versionInicial = version;
+            calculando.merge(versionInicial, 1, Integer::sum);
+        }
+
+        long inicio = System.nanoTime();
+        T filas;
+        try (Connection conn = pool.getConnection()) {
+            filas = consulta.ejecutar(conn);
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                terminarCalculo(versionInicial);
+            }
+            throw e;
+        }
+        long fin = System.nanoTime();
+
+        synchronized (this) {
+            recalculos++;
+            tiempoRecalculoTotalNs += fin - inicio;
+            tiempoRecalculoMaxNs = Math.max(tiempoRecalculoMaxNs, fin - inicio);
+            long tamano = estimarBytes(filas);
+            if (vigente(clave, versionInicial) && tamano <= maxBytes / FRACCION_MAX_ENTRADA) {
+                quitar(clave);
+                entradas.put(clave, new Entrada(filas, fin + ttlNs, tamano));
+                clavesPorGrupo.computeIfAbsent(grupo(clave), g -> new HashSet<>()).add(clave);
+                bytes += tamano;
+            }
+            terminarCalculo(versionInicial);
+            expulsar();
+        }
+        return filas;
+    }
+
+    /**
+     * Da por terminado un cálculo y descarta las invalidaciones anotadas que ya no
+     * pueden afectar a ningún cálculo en curso (las de versiones no posteriores a la
+     * inicial del cálculo más antiguo).
+     */
+    private void terminarCalculo(long versionInicial) {
+        calculando.merge(versionInicial, -1, (actual, menos) -> actual + menos == 0 ? null : actual + menos);
+        if (calculando.isEmpty()) {
+            invalidadoEn.clear();
+            return;
+        }
+        long masAntiguo = calculando.firstKey();
+        invalidadoEn.values().removeIf(invalidado -> invalidado <= masAntiguo);
+    }
+
+    /**
+     * Quita una entrada, si está, de la caché y del índice de su grupo.
+     */
+    private void quitar(String clave) {
+        Entrada entrada = entradas.remove(clave);
+        if (entrada == null) {
+            return;
+        }
+        bytes -= entrada.bytes;
+        String grupo = grupo(clave);
+        Set<String> claves = clavesPorGrupo.get(grupo);
+        if (claves != null && claves.remove(clave) && claves.isEmpty()) {
+            clavesPorGrupo.remove(grupo);
+        }
+    }
+
+    /**
+     * @return true si desde la versión dada no se ha invalidado el grupo de la clave
+     */
+    private boolean vigente(String clave, long versionInicial) {
+        Long invalidado = invalidadoEn.get(grupo(clave));
+        return versionInvalidarTodo <= versionInicial && (invalidado == null || invalidado <= versionInicial);
+    }
+
+    /**
+     * Grupo de claves que se invalidan juntas: las páginas del histórico de cada
+     * producto van por separado y el resto de informes se invalidan con todos sus
+     * parámetros.
+     */
+    private static String grupo(String clave) {
+        int fin = clave.indexOf('|') + 1;
+        return clave.startsWith(MOVIMIENTOS) ? clave.substring(0, clave.indexOf('|', fin) + 1) : clave.substring(0, fin);
+    }
+
+    /**
+     * Expulsa los resultados menos usados hasta que la memoria estimada (incluidas las
+     * invalidaciones anotadas) no supera el máximo.
+     */
+    private void expulsar() {
+        while (memoriaEstimada() > maxBytes && !entradas.isEmpty()) {
+            quitar(entradas.keySet().iterator().next());
+            expulsiones++;
+        }
+    }
+
+    private long memoriaEstimada() {
+        return bytes + (long) invalidadoEn.size() * BYTES_INVALIDACION;
+    }
+
+    /**
+     * Estima la memoria que ocupa un resultado: la entrada, cada fila y sus cadenas y decimales.
+     */
+    private static long estimarBytes(Object resultado) {
+        List<?> filas = resultado instanceof Pagina ? ((Pagina<?, ?>) resultado).getElementos() : (List<?>) resultado;
+        long total = BYTES_ENTRADA;
+        for (Object fila : filas) {
+            total += BYTES_FILA;
+            if (fila instanceof MovimientoProducto) {
+                MovimientoProducto movimiento = (MovimientoProducto) fila;
+                total += cadena(movimiento.getNombre()) + cadena(movimiento.getCategoria()) + BYTES_FILA;
+            } else if (fila instanceof ProductoVendido) {
+                ProductoVendido producto = (ProductoVendido) fila;
+                total += cadena(producto.getNombre()) + cadena(producto.getCategoria()) + BYTES_DECIMAL;
+            } else if (fila instanceof ValorCategoria) {
+                total += cadena(((ValorCategoria) fila).getCategoria()) + BYTES_DECIMAL;
+            } else if (fila instanceof Movimiento) {
+                // Tipo de movimiento (cadena compartida) y fecha
+                total += BYTES_FILA;
+            }
+        }
+        return total;
+    }
+
+    private static long cadena(String texto) {
+        return texto == null ? 0 : BYTES_CADENA + texto.length();
+    }
+
+    /**
+     * Muestra el número de resultados y la memoria que ocupan, la tasa de aciertos y
+     * el tiempo dedicado a recalcular informes.
+     */
+    public synchronized void imprimirEstadisticas() {
+        long total = aciertos + fallos;
+        System.out.println("\n=== ESTADÍSTICAS DE LA CACHÉ DE INFORMES ===");
+        System.out.println("Resultados en caché: " + entradas.size());
+        System.out.printf("Memoria estimada: %.1f KB / %.1f KB%n", memoriaEstimada() / 1024.0, maxBytes / 1024.0);
+        System.out.println("Invalidaciones anotadas para cálculos en curso: " + invalidadoEn.size());
+        System.out.println("Tiempo de vida: " + ttlNs / 1_000_000 + " ms");
+        System.out.println("------------------------");
+        System.out.println("Aciertos: " + aciertos);
+        System.out.println("Fallos: " + fallos + " (" + caducadas + " por caducidad)");
+        System.out.printf("Tasa de aciertos: %.1f %%%n", total == 0 ? 0 : aciertos * 100.0 / total);
+        System.out.println("Invalidaciones: " + invalidaciones);
+        System.out.println("Expulsiones: " + expulsiones);
+        System.out.println("------------------------");
+        System.out.println("Informes recalculados: " + recalculos);
+        System.out.printf("Tiempo de recálculo medio: %.2f ms (máximo %.2f ms)%n",
+            recalculos == 0 ? 0 : tiempoRecalculoTotalNs / 1_000_000.0 / recalculos,
+            tiempoRecalculoMaxNs / 1_000_000.0);
+        System.out.println("------------------------");
+    }
+}
@@ -0,0 +1,443 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de conexiones JDBC acotado.
+ * Reutiliza las conexiones físicas con la base de datos para evitar el coste
+ * de la conexión TCP y la autenticación en cada operación. Proporciona:
+ * - Un número máximo de conexiones simultáneas
+ * - Validación de las conexiones antes de entregarlas
+ * - Expulsión de conexiones inactivas y de las que superan su tiempo de vida máximo
+ * - Detección de posibles fugas (conexiones que no se devuelven); con
+ *   -Dinventario.pool.trazar_fugas=true se muestra además dónde se obtuvieron
+ * - Métricas de uso y de tiempo de espera
+ *
+ * Las conexiones entregadas se devuelven al pool al llamar a close(), por lo que
+ * se pueden seguir usando con try-with-resources igual que las de DriverManager.
+ */
+public class ConnectionPool implements AutoCloseable {
+    // Valores por defecto de la configuración
+    private static final long TIMEOUT_ESPERA_MS = 10_000;
+    private static final long MAX_INACTIVIDAD_MS = 5 * 60_000;
+    private static final long MAX_VIDA_MS = 30 * 60_000;
+    private static final long UMBRAL_FUGA_MS = 60_000;
+    private static final long VALIDAR_SI_INACTIVA_MS = 500;
+    private static final int TIMEOUT_VALIDACION_S = 2;
+    private static final long INTERVALO_MANTENIMIENTO_MS = 5_000;
+    // Propiedad del sistema que activa la captura de la pila en cada préstamo
+    private static final String PROPIEDAD_TRAZAR_FUGAS = "inventario.pool.trazar_fugas";
+
+    private final String url;
+    private final String usuario;
+    private final String password;
+    private final int maxConexiones;
+    private final long timeoutEsperaMs;
+    private final long maxInactividadMs;
+    private final long maxVidaMs;
+    private final long umbralFugaMs;
+
+    // Conexiones libres (se usa como pila para reutilizar primero las más recientes)
+    private final LinkedBlockingDeque<ConexionFisica> libres = new LinkedBlockingDeque<>();
+    // Conexiones actualmente prestadas
+    private final Set<ConexionFisica> enUso = ConcurrentHashMap.newKeySet();
+    // Limita el número de conexiones prestadas a la vez
+    private final Semaphore permisos;
+    private final ScheduledExecutorService mantenimiento;
+    private volatile boolean cerrado = false;
+    // Capturar la pila en cada préstamo es caro: solo se hace al buscar una fuga
+    private final boolean trazarFugas = Boolean.getBoolean(PROPIEDAD_TRAZAR_FUGAS);
+
+    // Métricas
+    private final LongAdder adquisiciones = new LongAdder();
+    private final LongAdder tiempoEsperaTotalNs = new LongAdder();
+    private final AtomicLong tiempoEsperaMaxNs = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder conexionesCreadas = new LongAdder();
+    private final LongAdder conexionesCerradas = new LongAdder();
+    private final LongAdder validacionesFallidas = new LongAdder();
+    private final LongAdder expulsadasInactividad = new LongAdder();
+    private final LongAdder expulsadasVida = new LongAdder();
+    private final LongAdder fugasDetectadas = new LongAdder();
+
+    /**
+     * Crea un pool con los valores por defecto de espera, inactividad,
+     * tiempo de vida y detección de fugas.
+     *
+     * @param url URL JDBC de la base de datos
+     * @param usuario Usuario de la base de datos
+     * @param password Contraseña del usuario
+     * @param maxConexiones Número máximo de conexiones simultáneas
+     */
+    public ConnectionPool(String url, String usuario, String password, int maxConexiones) {
+        this(url, usuario, password, maxConexiones, TIMEOUT_ESPERA_MS, MAX_INACTIVIDAD_MS, MAX_VIDA_MS, UMBRAL_FUGA_MS);
+    }
+
+    /**
+     * Crea un pool de conexiones.
+     *
+     * @param url URL JDBC de la base de datos
+     * @param usuario Usuario de la base de datos
+     * @param password Contraseña del usuario
+     * @param maxConexiones Número máximo de conexiones simultáneas
+     * @param timeoutEsperaMs Tiempo máximo de espera por una conexión libre
+     * @param maxInactividadMs Tiempo tras el cual se cierra una conexión libre sin usar
+     * @param maxVidaMs Tiempo de vida máximo de una conexión física
+     * @param umbralFugaMs Tiempo prestada a partir del cual se avisa de una posible fuga
+     * @throws IllegalArgumentException Si el número máximo de conexiones es menor que 1
+     */
+    public ConnectionPool(String url, String usuario, String password, int maxConexiones,
+            long timeoutEsperaMs, long maxInactividadMs, long maxVidaMs, long umbralFugaMs) {
+        if (maxConexiones < 1) {
+            throw new IllegalArgumentException("El pool debe tener al menos una conexión");
+        }
+        this.url = url;
+        this.usuario = usuario;
+        this.password = password;
+        this.maxConexiones = maxConexiones;
+        this.timeoutEsperaMs = timeoutEsperaMs;
+        this.maxInactividadMs = maxInactividadMs;
+        this.maxVidaMs = maxVidaMs;
+        this.umbralFugaMs = umbralFugaMs;
+        this.permisos = new Semaphore(maxConexiones, true);
+
+        this.mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-mantenimiento");
+            t.setDaemon(true);
+            return t;
+        });
+        mantenimiento.scheduleWithFixedDelay(this::mantener,
+            INTERVALO_MANTENIMIENTO_MS, INTERVALO_MANTENIMIENTO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtiene una conexión del pool, esperando si todas están en uso.
+     * La conexión debe cerrarse (close) para devolverla al pool.
+     *
+     * @return Conexión lista para usar
+     * @throws SQLException Si el pool está cerrado, se agota el tiempo de espera
+     *                      o no se puede abrir una conexión nueva
+     */
+    public Connection getConnection() throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+
+        long inicio = System.nanoTime();
+        try {
+            if (!permisos.tryAcquire(timeoutEsperaMs, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLException("Tiempo de espera agotado al obtener una conexión del pool ("
+                    + timeoutEsperaMs + " ms, " + maxConexiones + " conexiones en uso)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una conexión del pool", e);
+        }
+
+        try {
+            ConexionFisica fisica = obtenerConexionLibre();
+            if (fisica == null) {
+                fisica = crearConexion();
+            }
+            fisica.prestadaDesde = System.currentTimeMillis();
+            fisica.origen = trazarFugas ? new Throwable("Conexión obtenida aquí") : null;
+            fisica.fugaAvisada = false;
+            enUso.add(fisica);
+
+            long espera = System.nanoTime() - inicio;
+            adquisiciones.increment();
+            tiempoEsperaTotalNs.add(espera);
+            tiempoEsperaMaxNs.accumulateAndGet(espera, Math::max);
+
+            return envolver(fisica);
+        } catch (SQLException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Busca una conexión libre que siga siendo válida, descartando las caducadas.
+     *
+     * @return Conexión física reutilizable o null si no hay ninguna
+     */
+    private ConexionFisica obtenerConexionLibre() {
+        ConexionFisica fisica;
+        while ((fisica = libres.pollFirst()) != null) {
+            long ahora = System.currentTimeMillis();
+            if (ahora - fisica.creada > maxVidaMs) {
+                expulsadasVida.increment();
+                cerrarFisica(fisica);
+                continue;
+            }
+            // Solo se valida si ha estado un tiempo sin usarse, para no añadir una ida y vuelta a cada préstamo
+            if (ahora - fisica.ultimoUso > VALIDAR_SI_INACTIVA_MS && !esValida(fisica)) {
+                validacionesFallidas.increment();
+                cerrarFisica(fisica);
+                continue;
+            }
+            return fisica;
+        }
+        return null;
+    }
+
+    private boolean esValida(ConexionFisica fisica) {
+        try {
+            return fisica.conexion.isValid(TIMEOUT_VALIDACION_S);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private ConexionFisica crearConexion() throws SQLException {
+        Connection conexion = DriverManager.getConnection(url, usuario, password);
+        conexionesCreadas.increment();
+        return new ConexionFisica(conexion);
+    }
+
+    /**
+     * Devuelve una conexión física al pool dejándola en su estado inicial.
+     * Si no se puede restaurar, se cierra.
+     */
+    private void devolver(ConexionFisica fisica, List<Statement> sentencias) {
+        enUso.remove(fisica);
+        try {
+            // Cerrar las sentencias que el código cliente haya dejado abiertas
+            for (Statement st : sentencias) {
+                try {
+                    st.close();
+                } catch (SQLException e) {
+                    // Se ignora: la sentencia ya no se va a usar
+                }
+            }
+
+            boolean reutilizable = !cerrado;
+            try {
+                if (!fisica.conexion.getAutoCommit()) {
+                    fisica.conexion.rollback();
+                    fisica.conexion.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                reutilizable = false;
+            }
+
+            fisica.ultimoUso = System.currentTimeMillis();
+            if (reutilizable && fisica.ultimoUso - fisica.creada <= maxVidaMs) {
+                libres.offerFirst(fisica);
+            } else {
+                if (reutilizable) {
+                    expulsadasVida.increment();
+                }
+                cerrarFisica(fisica);
+            }
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private void cerrarFisica(ConexionFisica fisica) {
+        try {
+            fisica.conexion.close();
+        } catch (SQLException e) {
+            // Se ignora: la conexión se descarta igualmente
+        }
+        conexionesCerradas.increment();
+    }
+
+    /**
+     * Tarea periódica: cierra las conexiones libres inactivas o caducadas
+     * y avisa de las conexiones prestadas durante demasiado tiempo.
+     */
+    private void mantener() {
+        long ahora = System.currentTimeMillis();
+
+        Iterator<ConexionFisica> it = libres.iterator();
+        while (it.hasNext()) {
+            ConexionFisica fisica = it.next();
+            boolean caducada = ahora - fisica.creada > maxVidaMs;
+            boolean inactiva = ahora - fisica.ultimoUso > maxInactividadMs;
+            if ((caducada || inactiva) && libres.remove(fisica)) {
+                if (caducada) {
+                    expulsadasVida.increment();
+                } else {
+                    expulsadasInactividad.increment();
+                }
+                cerrarFisica(fisica);
+            }
+        }
+
+        for (ConexionFisica fisica : enUso) {
+            if (!fisica.fugaAvisada && ahora - fisica.prestadaDesde > umbralFugaMs) {
+                fisica.fugaAvisada = true;
+                fugasDetectadas.increment();
+                System.err.println("Posible fuga de conexión: prestada hace "
+                    + (ahora - fisica.prestadaDesde) + " ms sin devolverse");
+                Throwable origen = fisica.origen;
+                if (origen != null) {
+                    origen.printStackTrace();
+                } else {
+                    System.err.println("Para ver dónde se obtuvo, arranque con -D" + PROPIEDAD_TRAZAR_FUGAS + "=true");
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea el proxy que se entrega al código cliente. Al cerrarlo se devuelve
+     * la conexión física al pool en lugar de cerrarla.
+     */
+    private Connection envolver(ConexionFisica fisica) {
+        InvocationHandler handler = new InvocationHandler() {
+            private final List<Statement> sentencias = new ArrayList<>();
+            private boolean cerrada = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String nombre = method.getName();
+                switch (nombre) {
+                    case "close":
+                        if (!cerrada) {
+                            cerrada = true;
+                            devolver(fisica, sentencias);
+                        }
+                        return null;
+                    case "isClosed":
+                        return cerrada || fisica.conexion.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "ConexionPool[" + fisica.conexion + "]";
+                    default:
+                        break;
+                }
+                if (cerrada) {
+                    throw new SQLException("La conexión ya se ha devuelto al pool");
+                }
+                try {
+                    Object resultado = method.invoke(fisica.conexion, args);
+                    if (resultado instanceof Statement) {
+                        registrarSentencia((Statement) resultado);
+                    }
+                    return resultado;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+
+            private void registrarSentencia(Statement st) throws SQLException {
+                // Olvidar las sentencias ya cerradas para no retenerlas en usos largos de la conexión
+                if (sentencias.size() >= 64) {
+                    Iterator<Statement> it = sentencias.iterator();
+                    while (it.hasNext()) {
+                        if (it.next().isClosed()) {
+                            it.remove();
+                        }
+                    }
+                }
+                sentencias.add(st);
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+            new Class<?>[] { Connection.class }, handler);
+    }
+
+    /**
+     * @return Número máximo de conexiones simultáneas del pool
+     */
+    public int getMaxConexiones() {
+        return maxConexiones;
+    }
+
+    /**
+     * @return Número de conexiones prestadas en este momento
+     */
+    public int getConexionesEnUso() {
+        return enUso.size();
+    }
+
+    /**
+     * @return Número de conexiones libres en este momento
+     */
+    public int getConexionesLibres() {
+        return libres.size();
+    }
+
+    /**
+     * Muestra por consola el estado y las métricas del pool.
+     */
+    public void imprimirEstadisticas() {
+        long total = adquisiciones.sum();
+        double esperaMediaMs = total == 0 ? 0 : tiempoEsperaTotalNs.sum() / (double) total / 1_000_000;
+
+        System.out.println("\n=== ESTADÍSTICAS DEL POOL DE CONEXIONES ===");
+        System.out.println("Tamaño máximo: " + maxConexiones);
+        System.out.println("En uso: " + enUso.size());
+        System.out.println("Libres: " + libres.size());
+        System.out.println("Hilos esperando: " + permisos.getQueueLength());
+        System.out.println("------------------------");
+        System.out.println("Conexiones obtenidas: " + total);
+        System.out.printf("Espera media: %.3f ms%n", esperaMediaMs);
+        System.out.printf("Espera máxima: %.3f ms%n", tiempoEsperaMaxNs.get() / 1_000_000.0);
+        System.out.println("Tiempos de espera agotados: " + timeouts.sum());
+        System.out.println("------------------------");
+        System.out.println("Conexiones físicas creadas: " + conexionesCreadas.sum());
+        System.out.println("Conexiones físicas cerradas: " + conexionesCerradas.sum());
+        System.out.println("Validaciones fallidas: " + validacionesFallidas.sum());
+        System.out.println("Expulsadas por inactividad: " + expulsadasInactividad.sum());
+        System.out.println("Expulsadas por tiempo de vida: " + expulsadasVida.sum());
+        System.out.println("Posibles fugas detectadas: " + fugasDetectadas.sum());
+        System.out.println("------------------------");
+    }
+
+    /**
+     * Cierra el pool y todas sus conexiones libres.
+     * Las conexiones prestadas se cierran cuando se devuelven.
+     */
+    @Override
+    public void close() {
+        cerrado = true;
+        mantenimiento.shutdownNow();
+        ConexionFisica fisica;
+        while ((fisica = libres.pollFirst()) != null) {
+            cerrarFisica(fisica);
+        }
+    }
+
+    /**
+     * Conexión física con la base de datos y sus datos de control.
+     */
+    private static class ConexionFisica {
+        final Connection conexion;
+        final long creada;
+        volatile long ultimoUso;
+        volatile long prestadaDesde;
+        volatile Throwable origen;
+        volatile boolean fugaAvisada;
+
+        ConexionFisica(Connection conexion) {
+            this.conexion = conexion;
+            this.creada = System.currentTimeMillis();
+            this.ultimoUso = creada;
+        }
+    }
+}
@@ -0,0 +1,491 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Importador masivo de productos desde un archivo CSV.
+ * Lee el archivo en una sola pasada: CsvMappedReader valida las líneas en paralelo
+ * y este importador las inserta en orden mediante lotes JDBC (addBatch/executeBatch).
+ * Admite dos modos:
+ * - TODO_O_NADA: una única transacción; si alguna línea es incorrecta no se inserta nada
+ * - POR_LOTES: confirma cada lote por separado, descarta las líneas incorrectas y guarda
+ *   un punto de control para poder reanudar la importación si se interrumpe
+ *
+ * El punto de control se guarda en la tabla importaciones_csv en la misma transacción
+ * que el lote, así que nunca indica más ni menos líneas de las confirmadas. Incluye el
+ * tamaño, la fecha de modificación y el SHA-256 del archivo: si el CSV ha cambiado
+ * desde la importación interrumpida, no se reanuda y se importa desde el principio.
+ *
+ * El archivo CSV debe tener el formato: id_producto;nombre;categoria;precio;stock
+ */
+public class CsvImporter {
+    public static final int TAMANO_LOTE_POR_DEFECTO = 1000;
+
+    private static final String INSERT_PRODUCTO =
+        "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
+
+    // Última línea confirmada de cada importación POR_LOTES sin terminar (migración 7)
+    static final String CREATE_IMPORTACIONES_TABLE = """
+        CREATE TABLE IF NOT EXISTS importaciones_csv (
+            ruta VARCHAR(500) PRIMARY KEY,
+            tamano BIGINT NOT NULL,
+            modificado BIGINT NOT NULL,
+            huella CHAR(64) NOT NULL,
+            linea BIGINT NOT NULL
+        )
+    """;
+
+    private static final String UPSERT_PUNTO_CONTROL = """
+        INSERT INTO importaciones_csv (ruta, tamano, modificado, huella, linea)
+        VALUES (?, ?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE tamano = ?, modificado = ?, huella = ?, linea = ?
+        """;
+
+    // Clases de SQLState de los errores de una fila concreta (clave duplicada, dato
+    // demasiado largo...), que en modo POR_LOTES descartan la fila y no la importación
+    private static final String ESTADO_DATOS = "22";
+    private static final String ESTADO_INTEGRIDAD = "23";
+
+    /**
+     * Modo de confirmación de la importación.
+     */
+    public enum Modo {
+        TODO_O_NADA,
+        POR_LOTES
+    }
+
+    private final Modo modo;
+    private final int tamanoLote;
+    private final int hilos;
+
+    /**
+     * Crea un importador que analiza el CSV con un hilo por procesador disponible.
+     *
+     * @param modo Modo de confirmación de la importación
+     * @param tamanoLote Número de filas que se envían a la base de datos en cada lote
+     * @throws IllegalArgumentException Si el tamaño de lote es menor o igual a cero
+     */
+    public CsvImporter(Modo modo, int tamanoLote) {
+        this(modo, tamanoLote, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea un importador.
+     *
+     * @param modo Modo de confirmación de la importación
+     * @param tamanoLote Número de filas que se envían a la base de datos en cada lote
+     * @param hilos Número de hilos que analizan el CSV
+     * @throws IllegalArgumentException Si el tamaño de lote o el número de hilos es menor o igual a cero
+     */
+    public CsvImporter(Modo modo, int tamanoLote, int hilos) {
+        if (tamanoLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+        }
+        if (hilos <= 0) {
+            throw new IllegalArgumentException("El número de hilos debe ser mayor que 0");
+        }
+        this.modo = modo;
+        this.tamanoLote = tamanoLote;
+        this.hilos = hilos;
+    }
+
+    /**
+     * Busca el punto de control de una importación POR_LOTES interrumpida del CSV.
+     *
+     * @param conn Conexión a la base de datos
+     * @param rutaCSV Ruta del archivo CSV
+     * @return El punto de control, o null si no hay ninguna importación pendiente
+     * @throws IOException Si hay un error al leer el CSV para compararlo
+     * @throws SQLException Si hay un error al consultar la tabla importaciones_csv
+     */
+    public static PuntoControl buscarPuntoControl(Connection conn, String rutaCSV) throws IOException, SQLException {
+        return buscarPuntoControl(conn, rutaCSV, null);
+    }
+
+    /**
+     * @param actual Huella del CSV si ya se ha calculado; si es null se calcula solo
+     *               cuando hay un punto de control con el que compararla
+     */
+    private static PuntoControl buscarPuntoControl(Connection conn, String rutaCSV, Huella actual)
+            throws IOException, SQLException {
+        String sql = "SELECT tamano, modificado, huella, linea FROM importaciones_csv WHERE ruta = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, clave(rutaCSV));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Huella guardada = new Huella(rs.getLong(1), rs.getLong(2), rs.getString(3));
+                if (actual == null) {
+                    actual = Huella.de(Paths.get(rutaCSV));
+                }
+                return new PuntoControl(rs.getLong(4), guardada.equals(actual));
+            }
+        }
+    }
+
+    /**
+     * Importa los productos del archivo CSV desde el principio, aunque haya una
+     * importación anterior sin terminar.
+     *
+     * @see #importar(Connection, String, String, boolean)
+     */
+    public Resultado importar(Connection conn, String rutaCSV, String rutaLog) throws IOException, SQLException {
+        return importar(conn, rutaCSV, rutaLog, false);
+    }
+
+    /**
+     * Importa los productos del archivo CSV.
+     * El archivo se analiza en paralelo con CsvMappedReader y las filas se insertan
+     * en orden desde el hilo que llama. Los errores de validación y de base de
+     * datos se registran en el archivo de log.
+     * La conexión se deja con autocommit activado al terminar.
+     *
+     * @param conn Conexión a la base de datos
+     * @param rutaCSV Ruta del archivo CSV
+     * @param rutaLog Ruta del archivo de log de errores
+     * @param reanudar En modo POR_LOTES, si se salta lo ya confirmado por una importación
+     *                 anterior del mismo archivo (sin cambios desde entonces)
+     * @return Resumen de la importación
+     * @throws IOException Si hay un error al leer el CSV o escribir el log
+     * @throws SQLException Si hay un error de base de datos
+     */
+    public Resultado importar(Connection conn, String rutaCSV, String rutaLog, boolean reanudar)
+            throws IOException, SQLException {
+        Resultado resultado = new Resultado();
+        long inicio = System.nanoTime();
+
+        // En modo POR_LOTES se saltan las líneas ya confirmadas en una ejecución anterior
+        Huella huella = null;
+        long reanudarDesde = 0;
+        if (modo == Modo.POR_LOTES) {
+            huella = Huella.de(Paths.get(rutaCSV));
+            PuntoControl puntoControl = reanudar ? buscarPuntoControl(conn, rutaCSV, huella) : null;
+            if (puntoControl != null && puntoControl.isVigente()) {
+                reanudarDesde = puntoControl.getLinea();
+            }
+        }
+        resultado.lineaInicial = reanudarDesde;
+
+        conn.setAutoCommit(false);
+        try (BufferedWriter log = new BufferedWriter(new FileWriter(rutaLog, true));
+             PreparedStatement ps = conn.prepareStatement(INSERT_PRODUCTO)) {
+
+            Escritor escritor = new Escritor(conn, ps, rutaCSV, huella, log, reanudarDesde, resultado);
+            CsvMappedReader.leer(Paths.get(rutaCSV), hilos, escritor);
+            escritor.terminar();
+        } catch (SQLException | IOException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+            resultado.duracionNs = System.nanoTime() - inicio;
+        }
+        return resultado;
+    }
+
+    /**
+     * Recibe las filas analizadas en orden y las inserta por lotes.
+     */
+    private class Escritor implements CsvParser.ProcesadorFila {
+        private final Connection conn;
+        private final PreparedStatement ps;
+        private final String rutaCSV;
+        private final Huella huella;
+        private final BufferedWriter log;
+        private final long reanudarDesde;
+        private final Resultado resultado;
+        // Filas del lote en curso, para insertarlas una a una si el lote falla
+        private final List<FilaCsv> lote = new ArrayList<>();
+        private long ultimaLinea = 0;
+        private boolean hayErrores = false;
+
+        Escritor(Connection conn, PreparedStatement ps, String rutaCSV, Huella huella, BufferedWriter log,
+                long reanudarDesde, Resultado resultado) {
+            this.conn = conn;
+            this.ps = ps;
+            this.rutaCSV = rutaCSV;
+            this.huella = huella;
+            this.log = log;
+            this.reanudarDesde = reanudarDesde;
+            this.resultado = resultado;
+        }
+
+        @Override
+        public void procesar(FilaCsv fila) throws SQLException, IOException {
+            ultimaLinea = fila.getLinea();
+            if (ultimaLinea <= reanudarDesde) {
+                return;
+            }
+
+            if (fila.isError()) {
+                registrarError(log, fila.getLinea(), fila.getError(), fila.getContenido());
+                resultado.filasConError++;
+                hayErrores = true;
+                return;
+            }
+
+            // La cabecera solo se valida
+            if (fila.isCabecera()) {
+                return;
+            }
+            resultado.filasLeidas++;
+
+            // En modo TODO_O_NADA, tras el primer error solo se sigue validando
+            if (hayErrores && modo == Modo.TODO_O_NADA) {
+                return;
+            }
+
+            anadir(ps, fila);
+            ps.addBatch();
+            lote.add(fila);
+
+            if (lote.size() == tamanoLote) {
+                enviarLote();
+            }
+        }
+
+        /**
+         * Envía el último lote y confirma, o deshace todo si en modo TODO_O_NADA hubo errores.
+         * Al terminar en modo POR_LOTES se borra el punto de control con el último commit.
+         */
+        void terminar() throws SQLException, IOException {
+            if (hayErrores && modo == Modo.TODO_O_NADA) {
+                ps.clearBatch();
+                conn.rollback();
+                resultado.filasInsertadas = 0;
+            } else {
+                if (!lote.isEmpty()) {
+                    enviarLote();
+                }
+                if (modo == Modo.POR_LOTES) {
+                    try (PreparedStatement borrar = conn.prepareStatement("DELETE FROM importaciones_csv WHERE ruta = ?")) {
+                        borrar.setString(1, clave(rutaCSV));
+                        borrar.executeUpdate();
+                    }
+                }
+                conn.commit();
+                resultado.confirmado = true;
+            }
+        }
+
+        /**
+         * Envía el lote pendiente. En modo POR_LOTES además guarda el punto de control
+         * con la última línea incluida y confirma ambos en la misma transacción.
+         *
+         * Si el lote falla en modo POR_LOTES, se deshace y sus filas se insertan una a
+         * una: las que la base de datos rechaza (por ejemplo, un id repetido) se
+         * registran en el log y se descartan, como las líneas incorrectas.
+         */
+        private void enviarLote() throws SQLException, IOException {
+            try {
+                int[] filas = ps.executeBatch();
+                resultado.filasInsertadas += filas.length;
+            } catch (SQLException e) {
+                conn.rollback();
+                ps.clearBatch();
+                log.write("Error durante la importación (lote hasta la línea " + ultimaLinea + "): " + e.getMessage());
+                log.newLine();
+                log.write("Se ha realizado rollback de la transacción.");
+                log.newLine();
+                log.write("--------------------------------------------------");
+                log.newLine();
+                if (modo != Modo.POR_LOTES) {
+                    throw e;
+                }
+                insertarUnaAUna();
+            }
+            resultado.lotes++;
+            lote.clear();
+
+            if (modo == Modo.POR_LOTES) {
+                guardarPuntoControl(conn, rutaCSV, huella, ultimaLinea);
+                conn.commit();
+            }
+        }
+
+        private void insertarUnaAUna() throws SQLException, IOException {
+            for (FilaCsv fila : lote) {
+                anadir(ps, fila);
+                try {
+                    ps.executeUpdate();
+                    resultado.filasInsertadas++;
+                } catch (SQLException e) {
+                    if (!esErrorDeFila(e)) {
+                        throw e;
+                    }
+                    registrarError(log, fila.getLinea(), e.getMessage(), fila.getContenido());
+                    resultado.filasConError++;
+                }
+            }
+        }
+    }
+
+    private static void anadir(PreparedStatement ps, FilaCsv fila) throws SQLException {
+        ps.setInt(1, fila.getIdProducto());
+        ps.setString(2, fila.getNombre());
+        ps.setString(3, fila.getCategoria());
+        ps.setBigDecimal(4, fila.getPrecio());
+        ps.setInt(5, fila.getStock());
+    }
+
+    /**
+     * @return true si el error se debe a los datos de la fila y no a la conexión o
+     *         a la base de datos, que harían fallar también las filas siguientes
+     */
+    private static boolean esErrorDeFila(SQLException e) {
+        String estado = e.getSQLState();
+        return estado != null && (estado.startsWith(ESTADO_DATOS) || estado.startsWith(ESTADO_INTEGRIDAD));
+    }
+
+    private static void guardarPuntoControl(Connection conn, String rutaCSV, Huella huella, long linea)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(UPSERT_PUNTO_CONTROL)) {
+            ps.setString(1, clave(rutaCSV));
+            for (int i : new int[] {2, 6}) {
+                ps.setLong(i, huella.tamano);
+                ps.setLong(i + 1, huella.modificado);
+                ps.setString(i + 2, huella.sha256);
+                ps.setLong(i + 3, linea);
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Ruta absoluta del CSV, con la que se identifica su punto de control.
+     */
+    private static String clave(String rutaCSV) {
+        return Paths.get(rutaCSV).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Registra en el log una línea del CSV que no ha superado la validación.
+     */
+    static void registrarError(BufferedWriter log, long lineaNumero, String mensaje, String contenido)
+            throws IOException {
+        log.write("Error en línea " + lineaNumero + ": " + mensaje);
+        log.newLine();
+        log.write("Contenido: " + contenido);
+        log.newLine();
+        log.write("--------------------------------------------------");
+        log.newLine();
+    }
+
+    /**
+     * Punto de control de una importación POR_LOTES interrumpida.
+     */
+    public static class PuntoControl {
+        private final long linea;
+        private final boolean vigente;
+
+        PuntoControl(long linea, boolean vigente) {
+            this.linea = linea;
+            this.vigente = vigente;
+        }
+
+        /** @return Última línea confirmada */
+        public long getLinea() { return linea; }
+        /** @return true si el CSV no ha cambiado desde entonces y se puede reanudar */
+        public boolean isVigente() { return vigente; }
+    }
+
+    /**
+     * Tamaño, fecha de modificación y SHA-256 de un CSV, para reconocer si es el
+     * mismo archivo de la importación interrumpida.
+     */
+    private static final class Huella {
+        private static final int TAMANO_BUFFER = 64 * 1024;
+
+        final long tamano;
+        final long modificado;
+        final String sha256;
+
+        Huella(long tamano, long modificado, String sha256) {
+            this.tamano = tamano;
+            this.modificado = modificado;
+            this.sha256 = sha256;
+        }
+
+        static Huella de(Path archivo) throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("La JVM no tiene SHA-256", e);
+            }
+            try (InputStream in = Files.newInputStream(archivo)) {
+                byte[] buffer = new byte[TAMANO_BUFFER];
+                int leidos;
+                while ((leidos = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, leidos);
+                }
+            }
+            return new Huella(Files.size(archivo), Files.getLastModifiedTime(archivo).toMillis(),
+                HexFormat.of().formatHex(digest.digest()));
+        }
+
+        @Override
+        public boolean equals(Object otro) {
+            if (!(otro instanceof Huella)) {
+                return false;
+            }
+            Huella huella = (Huella) otro;
+            return tamano == huella.tamano && modificado == huella.modificado && sha256.equals(huella.sha256);
+        }
+
+        @Override
+        public int hashCode() {
+            return sha256.hashCode();
+        }
+    }
+
+    /**
+     * Resumen de una importación.
+     */
+    public static class Resultado {
+        private long lineaInicial;
+        private long filasLeidas;
+        private long filasInsertadas;
+        private long filasConError;
+        private long lotes;
+        private long duracionNs;
+        private boolean confirmado;
+
+        /** @return Última línea confirmada en una ejecución anterior (0 si no se reanudó) */
+        public long getLineaInicial() { return lineaInicial; }
+        /** @return Filas de datos leídas (sin contar la cabecera) */
+        public long getFilasLeidas() { return filasLeidas; }
+        /** @return Filas insertadas en la base de datos */
+        public long getFilasInsertadas() { return filasInsertadas; }
+        /** @return Líneas que no han superado la validación */
+        public long getFilasConError() { return filasConError; }
+        /** @return Lotes enviados a la base de datos */
+        public long getLotes() { return lotes; }
+        /** @return true si la importación se ha confirmado */
+        public boolean isConfirmado() { return confirmado; }
+
+        /** @return Duración de la importación en milisegundos */
+        public double getDuracionMs() {
+            return duracionNs / 1_000_000.0;
+        }
+
+        /** @return Filas leídas por segundo */
+        public double getFilasPorSegundo() {
+            return duracionNs == 0 ? 0 : filasLeidas * 1_000_000_000.0 / duracionNs;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Lector de archivos CSV de productos basado en archivos mapeados en memoria.
+ * Cada bloque del archivo se mapea con FileChannel.map y se recorre byte a byte
+ * buscando ';' y '\n', que en UTF-8 nunca forman parte de un carácter multibyte.
+ * Los campos numéricos se convierten directamente desde los bytes y solo se
+ * decodifican a String los campos de texto que se insertan (y las líneas con errores).
+ *
+ * Entrega las filas con el mismo ProcesadorFila que CsvParser y aplica las mismas
+ * reglas de validación, de modo que ambos lectores son intercambiables.
+ *
+ * Ejecutado directamente compara el rendimiento de los distintos lectores:
+ * java -cp ".:libs/*" CsvMappedReader [archivo.csv] [repeticiones]
+ */
+public class CsvMappedReader {
+    // Secuencia UTF-8 del símbolo '€'
+    private static final byte EURO_1 = (byte) 0xE2;
+    private static final byte EURO_2 = (byte) 0x82;
+    private static final byte EURO_3 = (byte) 0xAC;
+    // Cifras enteras que admite la columna precio DECIMAL(12,2)
+    private static final int MAX_CIFRAS_PRECIO = 10;
+
+    /**
+     * Lee un archivo CSV en paralelo usando bloques mapeados en memoria
+     * y entrega sus filas en orden.
+     *
+     * @param ruta Ruta del archivo CSV (codificado en UTF-8)
+     * @param hilos Número de hilos de análisis
+     * @param procesador Receptor de las filas
+     * @throws IOException Si hay un error al leer el archivo o lo lanza el procesador
+     * @throws SQLException Si lo lanza el procesador
+     */
+    public static void leer(Path ruta, int hilos, CsvParser.ProcesadorFila procesador) throws IOException, SQLException {
+        CsvParser.leer(ruta, hilos, procesador, CsvMappedReader::analizarBloque);
+    }
+
+    /**
+     * Mapea un bloque del archivo y analiza sus líneas sin decodificarlo entero.
+     */
+    private static CsvParser.Bloque analizarBloque(FileChannel canal, long inicio, long fin, boolean primero)
+            throws IOException {
+        CsvParser.Bloque bloque = new CsvParser.Bloque();
+        if (fin == inicio) {
+            return bloque;
+        }
+        MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, inicio, fin - inicio);
+        TokenizadorBytes tokenizador = new TokenizadorBytes(datos);
+
+        int hasta = datos.limit();
+        int inicioLinea = 0;
+        for (int i = 0; i <= hasta; i++) {
+            byte b = i == hasta ? 0 : datos.get(i);
+            // Como BufferedReader.readLine, la línea termina en \n, \r\n o un \r suelto
+            if (i == hasta || b == '\n' || b == '\r') {
+                if (i == hasta && inicioLinea == hasta) {
+                    break; // el bloque termina con un salto de línea
+                }
+                bloque.lineas++;
+                boolean cabecera = primero && bloque.lineas == 1;
+                bloque.filas.add(tokenizador.analizar(inicioLinea, i, bloque.lineas, cabecera));
+                if (b == '\r' && i + 1 < hasta && datos.get(i + 1) == '\n') {
+                    i++;
+                }
+                inicioLinea = i + 1;
+            }
+        }
+        return bloque;
+    }
+
+    /**
+     * Separa y valida los campos de una línea directamente sobre los bytes mapeados.
+     */
+    private static class TokenizadorBytes {
+        private final MappedByteBuffer datos;
+        private int[] separadores = new int[8];
+        private final int[] ini = new int[CsvParser.NUM_COLUMNAS];
+        private final int[] fi = new int[CsvParser.NUM_COLUMNAS];
+        // Búfer reutilizado para copiar los bytes de los campos que se decodifican
+        private byte[] copia = new byte[256];
+
+        TokenizadorBytes(MappedByteBuffer datos) {
+            this.datos = datos;
+        }
+
+        FilaCsv analizar(int inicio, int fin, long numeroLinea, boolean cabecera) {
+            int numSeparadores = 0;
+            for (int i = inicio; i < fin; i++) {
+                if (datos.get(i) == ';') {
+                    if (numSeparadores == separadores.length) {
+                        separadores = Arrays.copyOf(separadores, numSeparadores * 2);
+                    }
+                    separadores[numSeparadores++] = i;
+                }
+            }
+
+            int columnas = contarColumnas(inicio, fin, numSeparadores);
+            if (columnas != CsvParser.NUM_COLUMNAS) {
+                return FilaCsv.error(numeroLinea, "Número incorrecto de columnas: " + columnas,
+                    decodificar(inicio, fin));
+            }
+            if (cabecera) {
+                return FilaCsv.cabecera(numeroLinea);
+            }
+
+            // Límites de cada campo ya recortados (equivalente a trim: los bytes <= ' ' son ASCII)
+            for (int c = 0; c < CsvParser.NUM_COLUMNAS; c++) {
+                int a = c == 0 ? inicio : separadores[c - 1] + 1;
+                int b = c < numSeparadores ? separadores[c] : fin;
+                while (a < b && (datos.get(a) & 0xFF) <= ' ') a++;
+                while (b > a && (datos.get(b - 1) & 0xFF) <= ' ') b--;
+                ini[c] = a;
+                fi[c] = b;
+            }
+
+            // Validar que el ID sea un número
+            long id = parsearEntero(ini[0], fi[0]);
+            if (id == CsvParser.NO_NUMERICO) {
+                return errorNumerico(inicio, fin, numeroLinea, ini[0], fi[0]);
+            }
+
+            // Validar que el nombre y categoría no estén vacíos
+            if (ini[1] == fi[1] || ini[2] == fi[2]) {
+                return FilaCsv.error(numeroLinea, "El nombre y la categoría no pueden estar vacíos",
+                    decodificar(inicio, fin));
+            }
+
+            // Validar el formato del precio (debe contener números y opcionalmente '€' y ',')
+            // y calcularlo en céntimos en la misma pasada
+            long precio = precioCentimos(ini[3], fi[3]);
+            if (precio == Precios.NO_VALIDO) {
+                return FilaCsv.error(numeroLinea,
+                    "Formato de precio inválido: " + decodificar(separadores[2] + 1, separadores[3]),
+                    decodificar(inicio, fin));
+            }
+
+            // Validar que el stock sea un número positivo
+            long stock = parsearEntero(ini[4], fi[4]);
+            if (stock == CsvParser.NO_NUMERICO) {
+                return errorNumerico(inicio, fin, numeroLinea, ini[4], fi[4]);
+            }
+            if (stock < 0) {
+                return FilaCsv.error(numeroLinea, "El stock no puede ser negativo: " + stock,
+                    decodificar(inicio, fin));
+            }
+
+            return FilaCsv.producto(numeroLinea, (int) id,
+                decodificar(ini[1], fi[1]),
+                decodificar(ini[2], fi[2]),
+                precio,
+                (int) stock);
+        }
+
+        /**
+         * Cuenta las columnas igual que String.split(";").
+         */
+        private int contarColumnas(int inicio, int fin, int numSeparadores) {
+            if (numSeparadores == 0) {
+                return 1;
+            }
+            int columnas = numSeparadores + 1;
+            int finCampo = fin;
+            for (int s = numSeparadores - 1; s >= -1; s--) {
+                int inicioCampo = s >= 0 ? separadores[s] + 1 : inicio;
+                if (finCampo > inicioCampo) {
+                    break;
+                }
+                columnas--;
+                if (s >= 0) {
+                    finCampo = separadores[s];
+                }
+            }
+            return columnas;
+        }
+
+        /**
+         * Convierte a int un rango de bytes ASCII, aceptando lo mismo que Integer.parseInt.
+         */
+        private long parsearEntero(int inicio, int fin) {
+            if (inicio == fin) {
+                return CsvParser.NO_NUMERICO;
+            }
+            int i = inicio;
+            boolean negativo = false;
+            byte primero = datos.get(i);
+            if (primero == '-' || primero == '+') {
+                negativo = primero == '-';
+                i++;
+                if (i == fin) {
+                    return CsvParser.NO_NUMERICO;
+                }
+            }
+            long valor = 0;
+            for (; i < fin; i++) {
+                byte b = datos.get(i);
+                if (b < '0' || b > '9') {
+                    if (b < 0) {
+                        // Bytes no ASCII (posibles dígitos Unicode): se delega en Integer.parseInt
+                        try {
+                            return Integer.parseInt(decodificar(inicio, fin));
+                        } catch (NumberFormatException e) {
+                            return CsvParser.NO_NUMERICO;
+                        }
+                    }
+                    return CsvParser.NO_NUMERICO;
+                }
+                valor = valor * 10 + (b - '0');
+                if (valor > (long) Integer.MAX_VALUE + 1) {
+                    return CsvParser.NO_NUMERICO;
+                }
+            }
+            valor = negativo ? -valor : valor;
+            if (valor > Integer.MAX_VALUE || valor < Integer.MIN_VALUE) {
+                return CsvParser.NO_NUMERICO;
+            }
+            return valor;
+        }
+
+        /**
+         * Calcula en céntimos un precio con el formato ^\d+([,.]\d{1,2})?€?$ sobre los
+         * bytes UTF-8, igual que Precios.centimos sobre caracteres.
+         *
+         * @return Precio en céntimos, o Precios.NO_VALIDO si el formato no es correcto
+         */
+        private long precioCentimos(int inicio, int fin) {
+            int i = inicio;
+            long centimos = 0;
+            while (i < fin && datos.get(i) >= '0' && datos.get(i) <= '9') {
+                centimos = centimos * 10 + (datos.get(i) - '0');
+                i++;
+            }
+            if (i == inicio || i - inicio > MAX_CIFRAS_PRECIO) {
+                return Precios.NO_VALIDO;
+            }
+            centimos *= 100;
+            if (i < fin && (datos.get(i) == ',' || datos.get(i) == '.')) {
+                i++;
+                int decimales = 0;
+                while (i < fin && decimales < 2 && datos.get(i) >= '0' && datos.get(i) <= '9') {
+                    centimos += (datos.get(i) - '0') * (decimales == 0 ? 10 : 1);
+                    i++;
+                    decimales++;
+                }
+                if (decimales == 0) {
+                    return Precios.NO_VALIDO;
+                }
+            }
+            if (fin - i == 3 && datos.get(i) == EURO_1 && datos.get(i + 1) == EURO_2 && datos.get(i + 2) == EURO_3) {
+                i += 3;
+            }
+            return i == fin ? centimos : Precios.NO_VALIDO;
+        }
+
+        private FilaCsv errorNumerico(int inicio, int fin, long numeroLinea, int a, int b) {
+            return FilaCsv.error(numeroLinea,
+                "Error en formato numérico: For input string: \"" + decodificar(a, b) + "\"",
+                decodificar(inicio, fin));
+        }
+
+        /**
+         * Decodifica como UTF-8 un rango de bytes del bloque.
+         */
+        private String decodificar(int inicio, int fin) {
+            int longitud = fin - inicio;
+            if (copia.length < longitud) {
+                copia = new byte[Math.max(longitud, copia.length * 2)];
+            }
+            datos.get(inicio, copia, 0, longitud);
+            return new String(copia, 0, longitud, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Compara el rendimiento de la lectura original (BufferedReader + split + regex),
+     * del analizador por bloques decodificados (CsvParser) y de este lector mapeado.
+     * Solo se lee y valida el archivo; no se accede a la base de datos.
+     *
+     * @param args Ruta del CSV (por defecto inventario.csv) y número de repeticiones (por defecto 5)
+     * @throws Exception Si hay un error al leer el archivo
+     */
+    public static void main(String[] args) throws Exception {
+        Path ruta = Paths.get(args.length > 0 ? args[0] : "inventario.csv");
+        int repeticiones = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int hilos = Runtime.getRuntime().availableProcessors();
+        double megas = Files.size(ruta) / (1024.0 * 1024.0);
+
+        System.out.println("\n=== COMPARATIVA DE LECTORES CSV ===");
+        System.out.printf("Archivo: %s (%.1f MB), %d repeticiones, %d hilos%n", ruta, megas, repeticiones, hilos);
+        System.out.println("------------------------");
+
+        medir("BufferedReader + split + regex", ruta, megas, repeticiones, () -> leerOriginal(ruta));
+        medir("CsvParser (bloques decodificados)", ruta, megas, repeticiones, () -> contar(p -> CsvParser.leer(ruta, hilos, p)));
+        medir("CsvMappedReader (MappedByteBuffer)", ruta, megas, repeticiones, () -> contar(p -> leer(ruta, hilos, p)));
+    }
+
+    private interface Lectura {
+        long ejecutar() throws Exception;
+    }
+
+    private interface Fuente {
+        void leer(CsvParser.ProcesadorFila procesador) throws Exception;
+    }
+
+    private static long contar(Fuente fuente) throws Exception {
+        long[] filas = new long[1];
+        fuente.leer(fila -> {
+            if (!fila.isError() && !fila.isCabecera()) {
+                filas[0]++;
+            }
+        });
+        return filas[0];
+    }
+
+    private static void medir(String nombre, Path ruta, double megas, int repeticiones, Lectura lectura) throws Exception {
+        // Una ejecución previa para calentar la JIT y la caché de disco
+        long filas = lectura.ejecutar();
+        long mejor = Long.MAX_VALUE;
+        for (int i = 0; i < repeticiones; i++) {
+            long inicio = System.nanoTime();
+            lectura.ejecutar();
+            mejor = Math.min(mejor, System.nanoTime() - inicio);
+        }
+        double segundos = mejor / 1_000_000_000.0;
+        System.out.println(nombre);
+        System.out.printf("  Filas válidas: %d | Mejor tiempo: %.1f ms | %.0f filas/s | %.1f MB/s%n",
+            filas, segundos * 1000, filas / segundos, megas / segundos);
+    }
+
+    /**
+     * Lectura y validación tal y como la hacía la importación original.
+     */
+    private static long leerOriginal(Path ruta) throws IOException {
+        long filas = 0;
+        long lineaNumero = 0;
+        String linea;
+        try (BufferedReader br = new BufferedReader(new FileReader(ruta.toFile()))) {
+            while ((linea = br.readLine()) != null) {
+                lineaNumero++;
+                String[] columnas = linea.split(";");
+                if (columnas.length != 5 || lineaNumero == 1) {
+                    continue;
+                }
+                try {
+                    Integer.parseInt(columnas[0].trim());
+                    if (columnas[1].trim().isEmpty() || columnas[2].trim().isEmpty()) {
+                        continue;
+                    }
+                    if (!columnas[3].trim().matches("^\\d+([,.]\\d{1,2})?€?$")) {
+                        continue;
+                    }
+                    if (Integer.parseInt(columnas[4].trim()) < 0) {
+                        continue;
+                    }
+                    filas++;
+                } catch (NumberFormatException e) {
+                    // Línea no válida
+                }
+            }
+        }
+        return filas;
+    }
+}
@@ -0,0 +1,397 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analizador de archivos CSV de productos (id_producto;nombre;categoria;precio;stock).
+ * Divide el archivo en bloques de bytes que terminan en fin de línea y los analiza
+ * en paralelo con varios hilos. Las filas se entregan al consumidor en el orden del
+ * archivo y con su número de línea, por lo que la escritura en la base de datos
+ * se hace desde un único hilo.
+ *
+ * Las líneas se separan en campos recorriendo los caracteres (sin split ni expresiones
+ * regulares) y solo se crean cadenas para los campos de texto que se insertan.
+ * Las reglas de validación son las mismas que aplicaba la importación original.
+ */
+public class CsvParser {
+    // Tamaño aproximado de cada bloque que analiza un hilo
+    static final int TAMANO_BLOQUE = 4 * 1024 * 1024;
+
+    static final int NUM_COLUMNAS = 5;
+
+    /**
+     * Recibe cada fila analizada, en el orden del archivo.
+     */
+    @FunctionalInterface
+    public interface ProcesadorFila {
+        void procesar(FilaCsv fila) throws SQLException, IOException;
+    }
+
+    /**
+     * Analiza un bloque de bytes del archivo que empieza y termina en límite de línea.
+     * Los números de línea de las filas devueltas son relativos al inicio del bloque.
+     */
+    @FunctionalInterface
+    interface AnalizadorBloque {
+        Bloque analizar(FileChannel canal, long inicio, long fin, boolean primero) throws IOException;
+    }
+
+    /**
+     * Analiza un archivo CSV en paralelo y entrega sus filas en orden.
+     * La primera línea se trata como cabecera: solo se comprueba el número de columnas.
+     *
+     * @param ruta Ruta del archivo CSV (codificado en UTF-8)
+     * @param hilos Número de hilos de análisis
+     * @param procesador Receptor de las filas
+     * @throws IOException Si hay un error al leer el archivo o lo lanza el procesador
+     * @throws SQLException Si lo lanza el procesador
+     */
+    public static void leer(Path ruta, int hilos, ProcesadorFila procesador) throws IOException, SQLException {
+        leer(ruta, hilos, procesador, CsvParser::analizarBloque);
+    }
+
+    /**
+     * Reparte el archivo en bloques, los analiza en paralelo con el analizador
+     * indicado y entrega las filas en orden con su número de línea absoluto.
+     */
+    static void leer(Path ruta, int hilos, ProcesadorFila procesador, AnalizadorBloque analizador)
+            throws IOException, SQLException {
+        if (hilos <= 0) {
+            throw new IllegalArgumentException("El número de hilos debe ser mayor que 0");
+        }
+
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            long[] limites = calcularBloques(canal, TAMANO_BLOQUE);
+            ExecutorService ejecutor = Executors.newFixedThreadPool(hilos, r -> {
+                Thread t = new Thread(r, "csv-parser");
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                ArrayDeque<Future<Bloque>> pendientes = new ArrayDeque<>();
+                int siguiente = 0;
+                long lineasAnteriores = 0;
+                int numBloques = limites.length - 1;
+
+                // Se mantienen como máximo dos bloques por hilo en vuelo para acotar la memoria
+                while (siguiente < numBloques || !pendientes.isEmpty()) {
+                    while (siguiente < numBloques && pendientes.size() < hilos * 2) {
+                        final long inicio = limites[siguiente];
+                        final long fin = limites[siguiente + 1];
+                        final boolean primero = siguiente == 0;
+                        pendientes.add(ejecutor.submit(() -> analizador.analizar(canal, inicio, fin, primero)));
+                        siguiente++;
+                    }
+
+                    Bloque bloque = esperar(pendientes.poll());
+                    for (FilaCsv fila : bloque.filas) {
+                        // Los números de línea del bloque son relativos a su inicio
+                        fila.linea += lineasAnteriores;
+                        procesador.procesar(fila);
+                    }
+                    lineasAnteriores += bloque.lineas;
+                }
+            } finally {
+                ejecutor.shutdownNow();
+            }
+        }
+    }
+
+    private static Bloque esperar(Future<Bloque> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Lectura del CSV interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException) {
+                throw (IOException) causa;
+            }
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw new IOException("Error al analizar el CSV: " + causa.getMessage(), causa);
+        }
+    }
+
+    /**
+     * Calcula los límites de los bloques de forma que cada uno termine justo
+     * después de un salto de línea (o al final del archivo). Un \r solo se usa como
+     * límite si el byte siguiente no es \n, para no separar un \r\n entre dos bloques.
+     *
+     * @return Posiciones de inicio de cada bloque seguidas del tamaño del archivo
+     */
+    static long[] calcularBloques(FileChannel canal, int tamanoBloque) throws IOException {
+        long tamano = canal.size();
+        List<Long> limites = new ArrayList<>();
+        limites.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long posicion = 0;
+        while (posicion + tamanoBloque < tamano) {
+            long busqueda = posicion + tamanoBloque;
+            long corte = -1;
+            while (corte < 0 && busqueda < tamano) {
+                buffer.clear();
+                int leidos = canal.read(buffer, busqueda);
+                if (leidos <= 0) {
+                    break;
+                }
+                for (int i = 0; i < leidos; i++) {
+                    byte b = buffer.get(i);
+                    if (b == '\n' || (b == '\r' && i + 1 < leidos && buffer.get(i + 1) != '\n')) {
+                        corte = busqueda + i + 1;
+                        break;
+                    }
+                }
+                busqueda += leidos;
+            }
+            if (corte < 0 || corte >= tamano) {
+                break;
+            }
+            limites.add(corte);
+            posicion = corte;
+        }
+        limites.add(tamano);
+
+        long[] resultado = new long[limites.size()];
+        for (int i = 0; i < resultado.length; i++) {
+            resultado[i] = limites.get(i);
+        }
+        return resultado;
+    }
+
+    /**
+     * Lee un bloque del archivo, lo decodifica y analiza sus líneas.
+     */
+    private static Bloque analizarBloque(FileChannel canal, long inicio, long fin, boolean primero) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (fin - inicio));
+        long posicion = inicio;
+        while (bytes.hasRemaining()) {
+            int leidos = canal.read(bytes, posicion);
+            if (leidos < 0) {
+                break;
+            }
+            posicion += leidos;
+        }
+        bytes.flip();
+        // Los bloques terminan en '\n' o '\r', así que nunca parten un carácter UTF-8
+        CharBuffer caracteres = StandardCharsets.UTF_8.decode(bytes);
+        char[] texto = caracteres.array();
+        int desde = caracteres.arrayOffset() + caracteres.position();
+        int hasta = desde + caracteres.remaining();
+
+        Bloque bloque = new Bloque();
+        Tokenizador tokenizador = new Tokenizador();
+        int inicioLinea = desde;
+        for (int i = desde; i <= hasta; i++) {
+            char c = i == hasta ? 0 : texto[i];
+            // Como BufferedReader.readLine, la línea termina en \n, \r\n o un \r suelto
+            if (i == hasta || c == '\n' || c == '\r') {
+                if (i == hasta && inicioLinea == hasta) {
+                    break; // el bloque termina con un salto de línea
+                }
+                bloque.lineas++;
+                boolean cabecera = primero && bloque.lineas == 1;
+                bloque.filas.add(tokenizador.analizar(texto, inicioLinea, i, bloque.lineas, cabecera));
+                if (c == '\r' && i + 1 < hasta && texto[i + 1] == '\n') {
+                    i++;
+                }
+                inicioLinea = i + 1;
+            }
+        }
+        return bloque;
+    }
+
+    /**
+     * Analiza una única línea. Se usa cuando las líneas ya vienen separadas.
+     *
+     * @param linea Contenido de la línea (sin salto de línea)
+     * @param numeroLinea Número de la línea en el archivo
+     * @param cabecera true si es la línea de cabecera
+     * @return Fila analizada (con el error si no es válida)
+     */
+    public static FilaCsv analizarLinea(String linea, long numeroLinea, boolean cabecera) {
+        char[] texto = linea.toCharArray();
+        return new Tokenizador().analizar(texto, 0, texto.length, numeroLinea, cabecera);
+    }
+
+    /**
+     * Resultado del análisis de un bloque: sus filas y el número de líneas que contiene.
+     */
+    static class Bloque {
+        final List<FilaCsv> filas = new ArrayList<>();
+        long lineas;
+    }
+
+    /**
+     * Separa y valida los campos de una línea recorriendo sus caracteres.
+     * Reutiliza el array de posiciones de separadores entre líneas.
+     */
+    static class Tokenizador {
+        private int[] separadores = new int[8];
+        private final int[] ini = new int[NUM_COLUMNAS];
+        private final int[] fi = new int[NUM_COLUMNAS];
+
+        FilaCsv analizar(char[] texto, int inicio, int fin, long numeroLinea, boolean cabecera) {
+            // Localizar los separadores
+            int numSeparadores = 0;
+            for (int i = inicio; i < fin; i++) {
+                if (texto[i] == ';') {
+                    if (numSeparadores == separadores.length) {
+                        separadores = Arrays.copyOf(separadores, numSeparadores * 2);
+                    }
+                    separadores[numSeparadores++] = i;
+                }
+            }
+
+            int columnas = contarColumnas(inicio, fin, numSeparadores);
+            if (columnas != NUM_COLUMNAS) {
+                return FilaCsv.error(numeroLinea, "Número incorrecto de columnas: " + columnas,
+                    new String(texto, inicio, fin - inicio));
+            }
+            if (cabecera) {
+                return FilaCsv.cabecera(numeroLinea);
+            }
+
+            // Límites de cada campo ya recortados (equivalente a trim)
+            for (int c = 0; c < NUM_COLUMNAS; c++) {
+                int a = c == 0 ? inicio : separadores[c - 1] + 1;
+                int b = c < numSeparadores ? separadores[c] : fin;
+                while (a < b && texto[a] <= ' ') a++;
+                while (b > a && texto[b - 1] <= ' ') b--;
+                ini[c] = a;
+                fi[c] = b;
+            }
+
+            // Validar que el ID sea un número
+            long id = parsearEntero(texto, ini[0], fi[0]);
+            if (id == NO_NUMERICO) {
+                return errorNumerico(texto, inicio, fin, numeroLinea, ini[0], fi[0]);
+            }
+
+            // Validar que el nombre y categoría no estén vacíos
+            if (ini[1] == fi[1] || ini[2] == fi[2]) {
+                return FilaCsv.error(numeroLinea, "El nombre y la categoría no pueden estar vacíos",
+                    new String(texto, inicio, fin - inicio));
+            }
+
+            // Validar el formato del precio (debe contener números y opcionalmente '€' y ',')
+            // y calcularlo en céntimos en la misma pasada
+            long precio = Precios.centimos(texto, ini[3], fi[3]);
+            if (precio == Precios.NO_VALIDO) {
+                int a = separadores[2] + 1;
+                return FilaCsv.error(numeroLinea,
+                    "Formato de precio inválido: " + new String(texto, a, separadores[3] - a),
+                    new String(texto, inicio, fin - inicio));
+            }
+
+            // Validar que el stock sea un número positivo
+            long stock = parsearEntero(texto, ini[4], fi[4]);
+            if (stock == NO_NUMERICO) {
+                return errorNumerico(texto, inicio, fin, numeroLinea, ini[4], fi[4]);
+            }
+            if (stock < 0) {
+                return FilaCsv.error(numeroLinea, "El stock no puede ser negativo: " + stock,
+                    new String(texto, inicio, fin - inicio));
+            }
+
+            return FilaCsv.producto(numeroLinea, (int) id,
+                new String(texto, ini[1], fi[1] - ini[1]),
+                new String(texto, ini[2], fi[2] - ini[2]),
+                precio,
+                (int) stock);
+        }
+
+        /**
+         * Cuenta las columnas igual que String.split(";"): se descartan las
+         * columnas vacías del final y una línea sin separadores tiene una columna.
+         */
+        private int contarColumnas(int inicio, int fin, int numSeparadores) {
+            if (numSeparadores == 0) {
+                return 1;
+            }
+            int columnas = numSeparadores + 1;
+            int finCampo = fin;
+            for (int s = numSeparadores - 1; s >= -1; s--) {
+                int inicioCampo = s >= 0 ? separadores[s] + 1 : inicio;
+                if (finCampo > inicioCampo) {
+                    break;
+                }
+                columnas--;
+                if (s >= 0) {
+                    finCampo = separadores[s];
+                }
+            }
+            return columnas;
+        }
+    }
+
+    // Valor devuelto por parsearEntero cuando el texto no es un int válido
+    static final long NO_NUMERICO = Long.MIN_VALUE;
+
+    /**
+     * Convierte a int un rango de caracteres sin crear objetos,
+     * aceptando lo mismo que Integer.parseInt.
+     *
+     * @return El valor, o NO_NUMERICO si no es un int válido
+     */
+    static long parsearEntero(char[] texto, int inicio, int fin) {
+        if (inicio == fin) {
+            return NO_NUMERICO;
+        }
+        int i = inicio;
+        boolean negativo = false;
+        char primero = texto[i];
+        if (primero == '-' || primero == '+') {
+            negativo = primero == '-';
+            i++;
+            if (i == fin) {
+                return NO_NUMERICO;
+            }
+        }
+        long valor = 0;
+        for (; i < fin; i++) {
+            char c = texto[i];
+            if (c < '0' || c > '9') {
+                if (c > 127) {
+                    // Dígitos no ASCII: se delega en Integer.parseInt para conservar su comportamiento
+                    try {
+                        return Integer.parseInt(new String(texto, inicio, fin - inicio));
+                    } catch (NumberFormatException e) {
+                        return NO_NUMERICO;
+                    }
+                }
+                return NO_NUMERICO;
+            }
+            valor = valor * 10 + (c - '0');
+            if (valor > (long) Integer.MAX_VALUE + 1) {
+                return NO_NUMERICO;
+            }
+        }
+        valor = negativo ? -valor : valor;
+        if (valor > Integer.MAX_VALUE || valor < Integer.MIN_VALUE) {
+            return NO_NUMERICO;
+        }
+        return valor;
+    }
+
+    private static FilaCsv errorNumerico(char[] texto, int inicio, int fin, long numeroLinea, int a, int b) {
+        return FilaCsv.error(numeroLinea,
+            "Error en formato numérico: For input string: \"" + new String(texto, a, b - a) + "\"",
+            new String(texto, inicio, fin - inicio));
+    }
+}
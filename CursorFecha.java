@@ -0,0 +1,40 @@
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Cursor de las páginas de movimientos por fecha: fecha e id del último movimiento
+ * devuelto. Las páginas se ordenan por fecha_movimiento y, entre movimientos de la
+ * misma fecha (que se guarda en segundos), por id_movimiento, así que el par indica
+ * dónde sigue la página siguiente aunque varios movimientos compartan fecha.
+ */
+public final class CursorFecha {
+    private final Timestamp fecha;
+    private final int idMovimiento;
+
+    public CursorFecha(Timestamp fecha, int idMovimiento) {
+        this.fecha = fecha;
+        this.idMovimiento = idMovimiento;
+    }
+
+    public Timestamp getFecha() { return fecha; }
+    public int getIdMovimiento() { return idMovimiento; }
+
+    @Override
+    public boolean equals(Object otro) {
+        if (!(otro instanceof CursorFecha)) {
+            return false;
+        }
+        CursorFecha cursor = (CursorFecha) otro;
+        return idMovimiento == cursor.idMovimiento && fecha.equals(cursor.fecha);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fecha, idMovimiento);
+    }
+
+    @Override
+    public String toString() {
+        return fecha + "|" + idMovimiento;
+    }
+}
@@ -0,0 +1,62 @@
+import java.math.BigDecimal;
+
+/**
+ * Fila analizada de un archivo CSV de productos.
+ * Puede ser la cabecera, un producto válido o una línea con errores.
+ */
+public class FilaCsv {
+    // Número de la línea en el archivo (empezando en 1)
+    long linea;
+
+    private final boolean cabecera;
+    private final int idProducto;
+    private final String nombre;
+    private final String categoria;
+    // Precio en céntimos, calculado al validar la línea
+    private final long precioCentimos;
+    private final int stock;
+    private final String error;
+    private final String contenido;
+
+    private FilaCsv(long linea, boolean cabecera, int idProducto, String nombre, String categoria,
+            long precioCentimos, int stock, String error, String contenido) {
+        this.linea = linea;
+        this.cabecera = cabecera;
+        this.idProducto = idProducto;
+        this.nombre = nombre;
+        this.categoria = categoria;
+        this.precioCentimos = precioCentimos;
+        this.stock = stock;
+        this.error = error;
+        this.contenido = contenido;
+    }
+
+    static FilaCsv cabecera(long linea) {
+        return new FilaCsv(linea, true, 0, null, null, 0, 0, null, null);
+    }
+
+    static FilaCsv producto(long linea, int idProducto, String nombre, String categoria, long precioCentimos, int stock) {
+        return new FilaCsv(linea, false, idProducto, nombre, categoria, precioCentimos, stock, null, null);
+    }
+
+    static FilaCsv error(long linea, String error, String contenido) {
+        return new FilaCsv(linea, false, 0, null, null, 0, 0, error, contenido);
+    }
+
+    /** @return Número de la línea en el archivo (empezando en 1) */
+    public long getLinea() { return linea; }
+    /** @return true si es la línea de cabecera */
+    public boolean isCabecera() { return cabecera; }
+    /** @return true si la línea no ha superado la validación */
+    public boolean isError() { return error != null; }
+    /** @return Descripción del error de validación, o null si la fila es válida */
+    public String getError() { return error; }
+    /** @return Contenido original de la línea con errores */
+    public String getContenido() { return contenido; }
+    public int getIdProducto() { return idProducto; }
+    public String getNombre() { return nombre; }
+    public String getCategoria() { return categoria; }
+    /** @return Precio con dos decimales */
+    public BigDecimal getPrecio() { return BigDecimal.valueOf(precioCentimos, 2); }
+    public int getStock() { return stock; }
+}
@@ -0,0 +1,183 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de ids de productos por bloques (hi/lo).
+ * En lugar de calcular cada id con SELECT MAX(id_producto), reserva en la tabla
+ * secuencias un bloque de ids consecutivos y los reparte desde memoria: obtener un
+ * id es un incremento atómico, sin bloqueos ni consultas, y solo al agotarse el
+ * bloque se hace una transacción para reservar el siguiente.
+ *
+ * La reserva bloquea la fila de la secuencia (SELECT ... FOR UPDATE), así que dos
+ * procesos que reserven a la vez reciben bloques distintos. Los ids de un bloque
+ * que no se llegan a usar (por ejemplo al cerrar la aplicación) se pierden: quedan
+ * huecos en la numeración, pero un id nunca se repite tras reiniciar.
+ *
+ * Las importaciones insertan productos con su propio id. Por eso cada reserva
+ * empieza, como mínimo, tras el mayor id existente, y tras una importación se
+ * descarta el bloque en curso con descartarBloque.
+ */
+public class GeneradorIds {
+    public static final String SECUENCIA_PRODUCTOS = "productos";
+    public static final int TAMANO_BLOQUE_POR_DEFECTO = 100;
+
+    // Siguiente id libre de cada secuencia (migración 6)
+    static final String CREATE_SECUENCIAS_TABLE = """
+        CREATE TABLE IF NOT EXISTS secuencias (
+            nombre VARCHAR(50) PRIMARY KEY,
+            siguiente BIGINT NOT NULL
+        )
+    """;
+
+    private static final String SQL_INICIALIZAR = """
+        INSERT INTO secuencias (nombre, siguiente)
+        SELECT ?, COALESCE(MAX(id_producto), 0) + 1 FROM productos
+        WHERE NOT EXISTS (SELECT 1 FROM secuencias WHERE nombre = ?)
+    """;
+
+    /**
+     * Rango de ids reservado [inicio, fin). Se reparte con un contador atómico; los
+     * valores que el contador pase de fin no se usan.
+     */
+    private static final class Bloque {
+        final AtomicLong proximo;
+        final long fin;
+
+        Bloque(long inicio, long fin) {
+            this.proximo = new AtomicLong(inicio);
+            this.fin = fin;
+        }
+    }
+
+    // Bloque vacío: obliga a reservar al pedir el primer id
+    private static final Bloque AGOTADO = new Bloque(0, 0);
+
+    private final ConnectionPool pool;
+    private final int tamanoBloque;
+    private volatile Bloque bloque = AGOTADO;
+
+    /**
+     * @param pool Pool de conexiones con el que se reservan los bloques
+     * @param tamanoBloque Número de ids que se reservan de cada vez
+     * @throws IllegalArgumentException Si el tamaño del bloque es menor o igual a cero
+     */
+    public GeneradorIds(ConnectionPool pool, int tamanoBloque) {
+        if (tamanoBloque <= 0) {
+            throw new IllegalArgumentException("El tamaño del bloque de ids debe ser mayor que 0");
+        }
+        this.pool = pool;
+        this.tamanoBloque = tamanoBloque;
+    }
+
+    /**
+     * Crea la tabla secuencias y la fila de la secuencia de productos si no existen,
+     * empezando tras el mayor id_producto actual.
+     *
+     * @param conn Conexión a la base de datos
+     * @throws SQLException Si hay un error al crear la tabla o la secuencia
+     */
+    public static void inicializar(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(CREATE_SECUENCIAS_TABLE)) {
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(SQL_INICIALIZAR)) {
+            ps.setString(1, SECUENCIA_PRODUCTOS);
+            ps.setString(2, SECUENCIA_PRODUCTOS);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Devuelve un id nuevo para un producto. Solo accede a la base de datos cuando
+     * se agota el bloque reservado.
+     *
+     * @return Id que no se ha entregado antes
+     * @throws SQLException Si hay un error al reservar un bloque nuevo
+     */
+    public int siguiente() throws SQLException {
+        while (true) {
+            Bloque actual = bloque;
+            long id = actual.proximo.getAndIncrement();
+            if (id < actual.fin) {
+                return (int) id;
+            }
+            reservar(actual);
+        }
+    }
+
+    /**
+     * Descarta los ids que quedan en el bloque actual; el siguiente id se toma de un
+     * bloque nuevo. Se usa tras importar productos con sus propios ids.
+     */
+    public void descartarBloque() {
+        bloque = AGOTADO;
+    }
+
+    /**
+     * Reserva un bloque nuevo si el agotado sigue siendo el actual. Los hilos que
+     * agotan el mismo bloque esperan aquí y solo el primero consulta la base de datos.
+     */
+    private synchronized void reservar(Bloque agotado) throws SQLException {
+        if (bloque != agotado) {
+            return;
+        }
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long inicio = leerSiguiente(conn);
+                // Los productos importados pueden tener ids por encima de la secuencia
+                try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(id_producto), 0) + 1 FROM productos");
+                     ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        inicio = Math.max(inicio, rs.getLong(1));
+                    }
+                }
+                long fin = Math.min(inicio + tamanoBloque, (long) Integer.MAX_VALUE + 1);
+                if (inicio >= fin) {
+                    throw new SQLException("Se han agotado los ids de productos");
+                }
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE secuencias SET siguiente = ? WHERE nombre = ?")) {
+                    ps.setLong(1, fin);
+                    ps.setString(2, SECUENCIA_PRODUCTOS);
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                bloque = new Bloque(inicio, fin);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Lee y bloquea la fila de la secuencia hasta el final de la transacción. Si no
+     * existe (base de datos creada antes de la migración 6) la crea.
+     */
+    private long leerSiguiente(Connection conn) throws SQLException {
+        String sql = "SELECT siguiente FROM secuencias WHERE nombre = ? FOR UPDATE";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, SECUENCIA_PRODUCTOS);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        inicializar(conn);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, SECUENCIA_PRODUCTOS);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("No existe la secuencia " + SECUENCIA_PRODUCTOS);
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cola de escritura de movimientos de stock con confirmación agrupada (group commit).
+ * En lugar de una transacción por movimiento, los movimientos que llegan a la vez se
+ * encolan y un único hilo escritor los guarda juntos: un UPDATE por producto con la
+ * variación neta de stock (enviados en lote), un INSERT multi-fila en
+ * movimientos_stock y la suma de unidades de cada producto al resumen diario de
+ * ventas, todo en una sola transacción. El coste de cada commit (y su
+ * escritura a disco) se reparte así entre todos los movimientos del grupo.
+ *
+ * Cada petición devuelve un CompletableFuture que se completa cuando su grupo se ha
+ * confirmado. Las reglas son las mismas que con una transacción por movimiento: una
+ * salida sin stock suficiente o un movimiento de un producto inexistente se rechaza
+ * (solo ese movimiento) y los movimientos se aplican en el orden en que se encolaron.
+ * Los movimientos rechazados fallan con una SQLException con el estado
+ * ESTADO_RECHAZADO, para distinguirlos de los errores al escribir el grupo.
+ */
+public class GroupCommitMovimientos implements AutoCloseable {
+    public static final int MAX_LOTE_POR_DEFECTO = 500;
+    public static final long INTERVALO_POR_DEFECTO_MS = 0;
+
+    /** SQLState de los movimientos rechazados por falta de stock o porque el producto no existe */
+    public static final String ESTADO_RECHAZADO = "45000";
+
+    // Filas por sentencia INSERT multi-fila (3 parámetros por fila)
+    private static final int FILAS_POR_INSERT = 1000;
+
+    private final ConnectionPool pool;
+    private final int maxLote;
+    private final long intervaloNs;
+    private final LinkedBlockingQueue<Peticion> cola = new LinkedBlockingQueue<>();
+    private final Thread escritor;
+    private volatile boolean cerrado = false;
+
+    // Métricas
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder movimientos = new LongAdder();
+    private final LongAdder rechazados = new LongAdder();
+    private final LongAdder lotesFallidos = new LongAdder();
+    private final AtomicInteger maxTamanoLote = new AtomicInteger();
+    private final LongAdder tiempoEscrituraNs = new LongAdder();
+    private final AtomicLong maxTiempoEscrituraNs = new AtomicLong();
+    private final LongAdder tiempoEsperaNs = new LongAdder();
+    private final AtomicInteger maxProfundidad = new AtomicInteger();
+
+    /**
+     * Crea la cola con los valores por defecto de tamaño de lote e intervalo.
+     *
+     * @param pool Pool de conexiones a la base de datos
+     */
+    public GroupCommitMovimientos(ConnectionPool pool) {
+        this(pool, MAX_LOTE_POR_DEFECTO, INTERVALO_POR_DEFECTO_MS);
+    }
+
+    /**
+     * Crea la cola y arranca su hilo escritor.
+     *
+     * @param pool Pool de conexiones a la base de datos
+     * @param maxLote Número máximo de movimientos por transacción
+     * @param intervaloMs Tiempo máximo que se espera, desde el primer movimiento de un
+     *        grupo, a que lleguen más movimientos (0 = escribir lo que haya en la cola)
+     * @throws IllegalArgumentException Si el tamaño de lote es menor o igual a cero o el intervalo es negativo
+     */
+    public GroupCommitMovimientos(ConnectionPool pool, int maxLote, long intervaloMs) {
+        if (maxLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+        }
+        if (intervaloMs < 0) {
+            throw new IllegalArgumentException("El intervalo no puede ser negativo");
+        }
+        this.pool = pool;
+        this.maxLote = maxLote;
+        this.intervaloNs = TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+        this.escritor = new Thread(this::escribirGrupos, "group-commit-movimientos");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    /**
+     * Encola un movimiento de stock.
+     *
+     * @param idProducto ID del producto
+     * @param tipoMovimiento Tipo de movimiento (ENTRADA o SALIDA)
+     * @param cantidad Cantidad del movimiento (debe ser positiva)
+     * @return Futuro que se completa cuando el movimiento está confirmado, o con una
+     *         SQLException si se rechaza o falla la escritura
+     * @throws IllegalArgumentException Si el tipo no es válido o la cantidad es menor o igual a cero
+     */
+    public CompletableFuture<Void> enviar(int idProducto, String tipoMovimiento, int cantidad) {
+        if (!StockManager.ENTRADA.equals(tipoMovimiento) && !StockManager.SALIDA.equals(tipoMovimiento)) {
+            throw new IllegalArgumentException("Tipo de movimiento no válido");
+        }
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor que 0");
+        }
+        return encolar(new Peticion(idProducto, tipoMovimiento, cantidad));
+    }
+
+    /**
+     * Indica si un movimiento ha fallado porque se ha rechazado (falta de stock o
+     * producto inexistente) y no por un error al escribirlo.
+     *
+     * @param error Error con el que se completó el futuro (puede venir envuelto en una CompletionException)
+     * @return true si es un rechazo
+     */
+    public static boolean esRechazo(Throwable error) {
+        Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return causa instanceof SQLException && ESTADO_RECHAZADO.equals(((SQLException) causa).getSQLState());
+    }
+
+    /**
+     * Espera a que se confirmen todos los movimientos encolados hasta ahora.
+     */
+    public void vaciar() {
+        // El escritor procesa la cola en orden: cuando se completa esta marca,
+        // todos los movimientos anteriores ya se han escrito
+        encolar(new Peticion(0, null, 0)).exceptionally(e -> null).join();
+    }
+
+    private CompletableFuture<Void> encolar(Peticion peticion) {
+        if (cerrado) {
+            peticion.futuro.completeExceptionally(new SQLException("La cola de movimientos está cerrada"));
+            return peticion.futuro;
+        }
+        cola.add(peticion);
+        maxProfundidad.accumulateAndGet(cola.size(), Math::max);
+        return peticion.futuro;
+    }
+
+    /**
+     * Bucle del hilo escritor: forma grupos con los movimientos encolados y los escribe.
+     */
+    private void escribirGrupos() {
+        List<Peticion> grupo = new ArrayList<>(maxLote);
+        while (true) {
+            try {
+                Peticion primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    if (cerrado) {
+                        return;
+                    }
+                    continue;
+                }
+                grupo.add(primera);
+                long limite = primera.encolada + intervaloNs;
+                while (grupo.size() < maxLote) {
+                    cola.drainTo(grupo, maxLote - grupo.size());
+                    long resto = limite - System.nanoTime();
+                    if (grupo.size() >= maxLote || resto <= 0) {
+                        break;
+                    }
+                    Peticion siguiente = cola.poll(resto, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    grupo.add(siguiente);
+                }
+                escribir(grupo);
+            } catch (InterruptedException e) {
+                // Se escribe el grupo ya formado y el bucle termina cuando la cola se vacíe
+                cerrado = true;
+                if (!grupo.isEmpty()) {
+                    escribir(grupo);
+                }
+            } catch (RuntimeException e) {
+                for (Peticion peticion : grupo) {
+                    peticion.futuro.completeExceptionally(e);
+                }
+            } finally {
+                grupo.clear();
+            }
+        }
+    }
+
+    /**
+     * Escribe un grupo de movimientos en una sola transacción y completa sus futuros.
+     */
+    private void escribir(List<Peticion> grupo) {
+        List<Peticion> pendientes = new ArrayList<>(grupo.size());
+        for (Peticion peticion : grupo) {
+            if (peticion.tipo != null) {
+                pendientes.add(peticion);
+            }
+        }
+
+        List<Peticion> aceptadas = new ArrayList<>(pendientes.size());
+        long inicio = System.nanoTime();
+        if (!pendientes.isEmpty()) {
+            try (Connection conn = pool.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    aplicar(conn, pendientes, aceptadas);
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException | RuntimeException e) {
+                lotesFallidos.increment();
+                for (Peticion peticion : pendientes) {
+                    peticion.error = e;
+                }
+                aceptadas.clear();
+            }
+        }
+        long fin = System.nanoTime();
+
+        if (!pendientes.isEmpty()) {
+            long duracion = fin - inicio;
+            lotes.increment();
+            movimientos.add(aceptadas.size());
+            tiempoEscrituraNs.add(duracion);
+            maxTiempoEscrituraNs.accumulateAndGet(duracion, Math::max);
+            maxTamanoLote.accumulateAndGet(pendientes.size(), Math::max);
+        }
+        for (Peticion peticion : grupo) {
+            if (peticion.tipo != null) {
+                tiempoEsperaNs.add(fin - peticion.encolada);
+            }
+            if (peticion.error == null) {
+                peticion.futuro.complete(null);
+            } else {
+                if (peticion.tipo != null) {
+                    rechazados.increment();
+                }
+                peticion.futuro.completeExceptionally(peticion.error);
+            }
+        }
+    }
+
+    /**
+     * Bloquea los productos del grupo, comprueba cada movimiento en orden contra el
+     * stock actual y escribe las variaciones de stock y los movimientos aceptados.
+     */
+    private void aplicar(Connection conn, List<Peticion> pendientes, List<Peticion> aceptadas) throws SQLException {
+        Map<Integer, Integer> stock = bloquearProductos(conn, pendientes);
+        Map<Integer, Integer> variacion = new HashMap<>();
+
+        for (Peticion peticion : pendientes) {
+            boolean entrada = peticion.tipo.equals(StockManager.ENTRADA);
+            Integer actual = stock.get(peticion.idProducto);
+            if (actual == null) {
+                peticion.error = new SQLException(entrada
+                    ? "El producto no existe"
+                    : "No hay suficiente stock disponible o el producto no existe", ESTADO_RECHAZADO);
+                continue;
+            }
+            if (!entrada && actual < peticion.cantidad) {
+                peticion.error = new SQLException("No hay suficiente stock disponible o el producto no existe",
+                    ESTADO_RECHAZADO);
+                continue;
+            }
+            int cambio = entrada ? peticion.cantidad : -peticion.cantidad;
+            stock.put(peticion.idProducto, actual + cambio);
+            variacion.merge(peticion.idProducto, cambio, Integer::sum);
+            aceptadas.add(peticion);
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE productos SET stock = stock + ? WHERE id_producto = ?")) {
+            boolean hayCambios = false;
+            for (Map.Entry<Integer, Integer> cambio : variacion.entrySet()) {
+                if (cambio.getValue() != 0) {
+                    ps.setInt(1, cambio.getValue());
+                    ps.setInt(2, cambio.getKey());
+                    ps.addBatch();
+                    hayCambios = true;
+                }
+            }
+            if (hayCambios) {
+                ps.executeBatch();
+            }
+        }
+
+        // Todo el grupo se registra con la misma fecha, también en el resumen diario
+        LocalDateTime fecha = StockManager.fechaMovimiento();
+        for (int desde = 0; desde < aceptadas.size(); desde += FILAS_POR_INSERT) {
+            insertarMovimientos(conn, aceptadas.subList(desde, Math.min(desde + FILAS_POR_INSERT, aceptadas.size())), fecha);
+        }
+        actualizarResumenVentas(conn, aceptadas, fecha.toLocalDate());
+    }
+
+    /**
+     * Suma al resumen diario de ventas las unidades de entrada y salida de cada
+     * producto del grupo, con una fila por producto enviada en lote.
+     */
+    private static void actualizarResumenVentas(Connection conn, List<Peticion> aceptadas, LocalDate fecha) throws SQLException {
+        if (aceptadas.isEmpty()) {
+            return;
+        }
+        // id_producto -> {unidades de salida, unidades de entrada}
+        Map<Integer, long[]> unidades = new HashMap<>();
+        for (Peticion peticion : aceptadas) {
+            long[] suma = unidades.computeIfAbsent(peticion.idProducto, id -> new long[2]);
+            suma[peticion.tipo.equals(StockManager.SALIDA) ? 0 : 1] += peticion.cantidad;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(StockManager.UPSERT_VENTAS_DIARIAS)) {
+            for (Map.Entry<Integer, long[]> suma : unidades.entrySet()) {
+                StockManager.anadirVentasDiarias(ps, suma.getKey(), fecha, suma.getValue()[0], suma.getValue()[1]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Lee el stock de los productos del grupo bloqueando sus filas hasta el commit.
+     * Las filas se bloquean en orden de id para no provocar interbloqueos con otras
+     * transacciones que bloqueen varios productos.
+     *
+     * @return Stock actual de cada producto existente
+     */
+    private static Map<Integer, Integer> bloquearProductos(Connection conn, List<Peticion> pendientes) throws SQLException {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (Peticion peticion : pendientes) {
+            ids.add(peticion.idProducto);
+        }
+        StringBuilder sql = new StringBuilder("SELECT id_producto, stock FROM productos WHERE id_producto IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") ORDER BY id_producto FOR UPDATE");
+
+        Map<Integer, Integer> stock = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (int id : ids) {
+                ps.setInt(i++, id);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    stock.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+        return stock;
+    }
+
+    private static void insertarMovimientos(Connection conn, List<Peticion> filas, LocalDateTime fecha) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO movimientos_stock (id_producto, tipo_movimiento, cantidad, fecha_movimiento) VALUES ");
+        for (int i = 0; i < filas.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+        }
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (Peticion peticion : filas) {
+                ps.setInt(i++, peticion.idProducto);
+                ps.setString(i++, peticion.tipo);
+                ps.setInt(i++, peticion.cantidad);
+                ps.setObject(i++, fecha);
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    /** @return Movimientos encolados pendientes de escribir */
+    public int getProfundidadCola() {
+        return cola.size();
+    }
+
+    /** @return Mayor número de movimientos en cola observado */
+    public int getProfundidadMaxima() {
+        return maxProfundidad.get();
+    }
+
+    /** @return Grupos escritos (transacciones) */
+    public long getLotes() {
+        return lotes.sum();
+    }
+
+    /** @return Número medio de movimientos por grupo */
+    public double getTamanoMedioLote() {
+        long n = lotes.sum();
+        return n == 0 ? 0 : (movimientos.sum() + rechazados.sum()) / (double) n;
+    }
+
+    /** @return Tiempo medio de escritura y commit de un grupo, en milisegundos */
+    public double getLatenciaMediaEscrituraMs() {
+        long n = lotes.sum();
+        return n == 0 ? 0 : tiempoEscrituraNs.sum() / (double) n / 1_000_000;
+    }
+
+    /**
+     * Detiene el hilo escritor después de escribir los movimientos ya encolados.
+     * Los movimientos que se envíen después se rechazan.
+     */
+    @Override
+    public void close() {
+        cerrado = true;
+        try {
+            escritor.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Peticiones encoladas mientras se cerraba, que el escritor ya no verá
+        Peticion peticion;
+        while (!escritor.isAlive() && (peticion = cola.poll()) != null) {
+            peticion.futuro.completeExceptionally(new SQLException("La cola de movimientos está cerrada"));
+        }
+    }
+
+    /**
+     * Muestra por consola las métricas de la cola.
+     */
+    public void imprimirEstadisticas() {
+        long n = lotes.sum();
+        long peticiones = movimientos.sum() + rechazados.sum();
+        System.out.println("\n=== ESTADÍSTICAS DEL GROUP COMMIT DE MOVIMIENTOS ===");
+        System.out.println("Tamaño máximo de grupo: " + maxLote);
+        System.out.printf("Intervalo de agrupación: %.1f ms%n", intervaloNs / 1_000_000.0);
+        System.out.println("------------------------");
+        System.out.println("En cola: " + cola.size());
+        System.out.println("Máximo en cola: " + maxProfundidad.get());
+        System.out.println("------------------------");
+        System.out.println("Grupos escritos: " + n);
+        System.out.println("Grupos fallidos: " + lotesFallidos.sum());
+        System.out.println("Movimientos confirmados: " + movimientos.sum());
+        System.out.println("Movimientos rechazados: " + rechazados.sum());
+        System.out.printf("Tamaño medio de grupo: %.1f (máximo %d)%n", getTamanoMedioLote(), maxTamanoLote.get());
+        System.out.printf("Escritura media por grupo: %.3f ms (máxima %.3f ms)%n",
+            getLatenciaMediaEscrituraMs(), maxTiempoEscrituraNs.get() / 1_000_000.0);
+        System.out.printf("Espera media por movimiento: %.3f ms%n",
+            peticiones == 0 ? 0 : tiempoEsperaNs.sum() / (double) peticiones / 1_000_000);
+        System.out.println("------------------------");
+    }
+
+    /**
+     * Movimiento encolado. Con tipo null es una marca usada por vaciar().
+     */
+    private static class Peticion {
+        final int idProducto;
+        final String tipo;
+        final int cantidad;
+        final long encolada = System.nanoTime();
+        final CompletableFuture<Void> futuro = new CompletableFuture<>();
+        Exception error;
+
+        Peticion(int idProducto, String tipo, int cantidad) {
+            this.idProducto = idProducto;
+            this.tipo = tipo;
+            this.cantidad = cantidad;
+        }
+    }
+}
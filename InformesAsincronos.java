@@ -0,0 +1,170 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Versión asíncrona de los informes de StockManager (histórico de un producto por
+ * páginas, movimientos por fecha, más vendidos y valor de stock por categoría).
+ * Cada método devuelve enseguida un CompletableFuture con las filas del informe, de
+ * modo que se pueden lanzar varios a la vez y esperar solo lo que tarde el más lento.
+ *
+ * Los resultados se piden a la caché de informes, que solo consulta la base de datos
+ * si no los tiene o han dejado de ser válidos.
+ *
+ * Las consultas se ejecutan en un pool de hilos acotado, con menos hilos que
+ * conexiones tiene el pool de conexiones: los informes nunca ocupan todas las
+ * conexiones y los movimientos de stock y el resto de operaciones siguen teniendo
+ * alguna libre. Las consultas que no tienen hilo esperan en una cola acotada; si la
+ * cola está llena el futuro se completa con RejectedExecutionException en lugar de
+ * acumular trabajo sin límite (contrapresión).
+ *
+ * Los errores de la base de datos completan el futuro con la SQLException y los de
+ * validación de parámetros con IllegalArgumentException.
+ */
+public class InformesAsincronos implements AutoCloseable {
+    public static final int HILOS_POR_DEFECTO = 4;
+    public static final int MAX_PENDIENTES_POR_DEFECTO = 32;
+
+    /**
+     * Consulta de un informe a la caché.
+     */
+    private interface Consulta<T> {
+        T ejecutar() throws SQLException;
+    }
+
+    private final CacheInformes cache;
+    private final ThreadPoolExecutor ejecutor;
+
+    private final LongAdder completadas = new LongAdder();
+    private final LongAdder fallidas = new LongAdder();
+    private final LongAdder rechazadas = new LongAdder();
+
+    /**
+     * Crea el ejecutor de informes.
+     *
+     * @param pool Pool de conexiones de la aplicación, que limita el número de hilos
+     * @param cache Caché de informes con la que se obtienen los resultados
+     * @param hilos Consultas que se ejecutan a la vez; se limita a una menos que las conexiones del pool
+     * @param maxPendientes Consultas que pueden esperar hilo antes de rechazar las nuevas
+     * @throws IllegalArgumentException Si hilos o maxPendientes son menores o iguales a cero
+     */
+    public InformesAsincronos(ConnectionPool pool, CacheInformes cache, int hilos, int maxPendientes) {
+        if (hilos <= 0 || maxPendientes <= 0) {
+            throw new IllegalArgumentException("El número de hilos y de consultas pendientes debe ser mayor que 0");
+        }
+        this.cache = cache;
+        int maxHilos = Math.max(1, Math.min(hilos, pool.getMaxConexiones() - 1));
+        AtomicInteger contador = new AtomicInteger();
+        ThreadFactory fabrica = tarea -> {
+            Thread hilo = new Thread(tarea, "informes-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        };
+        this.ejecutor = new ThreadPoolExecutor(maxHilos, maxHilos, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(maxPendientes), fabrica, new ThreadPoolExecutor.AbortPolicy());
+        // Sin informes en marcha no se mantienen hilos parados
+        this.ejecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Una página del histórico de movimientos de un producto. El histórico puede tener
+     * millones de filas, así que nunca se carga entero: se pide página a página con el
+     * cursor de la anterior.
+     *
+     * @param idProducto ID del producto
+     * @param antesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de movimientos de la página
+     * @return Página de movimientos del producto, de más reciente a más antiguo
+     * @see StockManager#paginaMovimientos
+     */
+    public CompletableFuture<Pagina<Movimiento, Integer>> movimientos(int idProducto, Integer antesDe, int tamano) {
+        return enviar(() -> cache.paginaMovimientos(idProducto, antesDe, tamano));
+    }
+
+    /**
+     * @param fechaInicio Fecha de inicio del rango (formato: YYYY-MM-DD)
+     * @param fechaFin Fecha de fin del rango (formato: YYYY-MM-DD)
+     * @param antesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de movimientos de la página
+     * @return Página de movimientos del rango con el nombre y la categoría de cada producto
+     * @see StockManager#paginaMovimientosPorFecha
+     */
+    public CompletableFuture<Pagina<MovimientoProducto, CursorFecha>> movimientosPorFecha(String fechaInicio,
+            String fechaFin, CursorFecha antesDe, int tamano) {
+        return enviar(() -> cache.paginaMovimientosPorFecha(fechaInicio, fechaFin, antesDe, tamano));
+    }
+
+    /**
+     * @param limit Número de productos (N)
+     * @return Los N productos más vendidos
+     * @see StockManager#productosMasVendidos
+     */
+    public CompletableFuture<List<ProductoVendido>> productosMasVendidos(int limit) {
+        return enviar(() -> cache.productosMasVendidos(limit));
+    }
+
+    /**
+     * @return Valor del stock de cada categoría, de mayor a menor
+     * @see StockManager#valorStockPorCategoria
+     */
+    public CompletableFuture<List<ValorCategoria>> valorStockPorCategoria() {
+        return enviar(cache::valorStockPorCategoria);
+    }
+
+    /**
+     * Encola una consulta. Si hace falta una conexión se pide al pool en el hilo del
+     * ejecutor, no en el que llama, y se devuelve al terminar la consulta.
+     */
+    private <T> CompletableFuture<T> enviar(Consulta<T> consulta) {
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        try {
+            ejecutor.execute(() -> {
+                try {
+                    futuro.complete(consulta.ejecutar());
+                    completadas.increment();
+                } catch (SQLException | RuntimeException e) {
+                    fallidas.increment();
+                    futuro.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rechazadas.increment();
+            futuro.completeExceptionally(new RejectedExecutionException(
+                "Hay demasiados informes pendientes; inténtelo más tarde", e));
+        }
+        return futuro;
+    }
+
+    /**
+     * Muestra los hilos, la cola y el número de consultas completadas, fallidas y rechazadas.
+     */
+    public void imprimirEstadisticas() {
+        System.out.println("\n=== INFORMES ASÍNCRONOS ===");
+        System.out.println("Hilos: " + ejecutor.getActiveCount() + " activos de " + ejecutor.getMaximumPoolSize());
+        System.out.println("Consultas en cola: " + ejecutor.getQueue().size()
+            + " (máximo " + (ejecutor.getQueue().size() + ejecutor.getQueue().remainingCapacity()) + ")");
+        System.out.println("Completadas: " + completadas.sum());
+        System.out.println("Fallidas: " + fallidas.sum());
+        System.out.println("Rechazadas por cola llena: " + rechazadas.sum());
+    }
+
+    /**
+     * Deja de aceptar consultas y espera a que terminen las que están en marcha.
+     */
+    @Override
+    public void close() {
+        ejecutor.shutdown();
+        try {
+            ejecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
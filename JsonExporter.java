@@ -1,71 +1,144 @@
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Clase utilitaria para exportar datos de la base de datos a formato JSON.
  * Permite exportar consultas específicas a archivos JSON formateados.
- * No requiere bibliotecas externas de JSON, utiliza StringBuilder para la generación.
+ * No requiere bibliotecas externas de JSON: cada fila se escribe con JsonWriter
+ * directamente en el archivo (UTF-8) a medida que se recorre el ResultSet.
+ *
+ * Admite dos formatos de salida:
+ * - JSON: un array con sangría
+ * - JSON_LINES: un objeto compacto por línea (NDJSON), que se puede procesar
+ *   línea a línea mientras se genera
+ * y opcionalmente comprimir el archivo con gzip.
  */
 public class JsonExporter {
+    // Tamaño del búfer de escritura del archivo
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    /**
+     * Formato del archivo generado.
+     */
+    public enum Formato {
+        JSON,
+        JSON_LINES
+    }
+
     /**
      * Exporta los productos con stock bajo a un archivo JSON.
-     * 
+     *
      * @param conn Conexión a la base de datos
      * @param limiteStock Stock máximo para considerar un producto como "stock bajo"
      * @param rutaArchivo Ruta donde se guardará el archivo JSON
+     * @return Número de productos exportados
      * @throws SQLException Si hay un error al acceder a la base de datos
      * @throws IOException Si hay un error al escribir el archivo
      */
-    public static void exportarProductosStockBajo(Connection conn, int limiteStock, String rutaArchivo) 
+    public static int exportarProductosStockBajo(Connection conn, int limiteStock, String rutaArchivo)
             throws SQLException, IOException {
-        StringBuilder json = new StringBuilder();
-        String sql = "SELECT * FROM productos WHERE stock < ?";
-        List<String> productos = new ArrayList<>();
-        
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        return exportarProductosStockBajo(conn, limiteStock, rutaArchivo, Formato.JSON, false);
+    }
+
+    /**
+     * Exporta los productos con stock bajo en el formato indicado.
+     * Las filas se leen del servidor una a una y se escriben sin acumularlas,
+     * por lo que la memoria usada no depende del número de productos exportados.
+     *
+     * @param conn Conexión a la base de datos
+     * @param limiteStock Stock máximo para considerar un producto como "stock bajo"
+     * @param rutaArchivo Ruta donde se guardará el archivo
+     * @param formato Formato del archivo (JSON o JSON_LINES)
+     * @param comprimir true para comprimir el archivo con gzip
+     * @return Número de productos exportados
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     * @throws IOException Si hay un error al escribir el archivo
+     */
+    public static int exportarProductosStockBajo(Connection conn, int limiteStock, String rutaArchivo,
+            Formato formato, boolean comprimir) throws SQLException, IOException {
+        String sql = "SELECT id_producto, nombre, categoria, precio, stock FROM productos WHERE stock < ?";
+        try (PreparedStatement ps = Almacen.prepararLectura(conn, sql)) {
             ps.setInt(1, limiteStock);
-            
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String producto = String.format("""
-                        {
-                            "id_producto": %d,
-                            "nombre": "%s",
-                            "categoria": "%s",
-                            "precio": "%s",
-                            "stock": %d
-                        }""",
-                        rs.getInt("id_producto"),
-                        rs.getString("nombre").replace("\"", "\\\""),
-                        rs.getString("categoria").replace("\"", "\\\""),
-                        rs.getString("precio").replace("\"", "\\\""),
-                        rs.getInt("stock")
-                    );
-                    productos.add(producto);
-                }
-            }
+            return exportarProductos(ps, rutaArchivo, formato, comprimir);
         }
+    }
 
-        // Construir el JSON array
-        json.append("[\n");
-        for (int i = 0; i < productos.size(); i++) {
-            json.append("    ").append(productos.get(i));
-            if (i < productos.size() - 1) {
-                json.append(",");
+    /**
+     * Exporta todos los productos del inventario en el formato indicado.
+     *
+     * @param conn Conexión a la base de datos
+     * @param rutaArchivo Ruta donde se guardará el archivo
+     * @param formato Formato del archivo (JSON o JSON_LINES)
+     * @param comprimir true para comprimir el archivo con gzip
+     * @return Número de productos exportados
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     * @throws IOException Si hay un error al escribir el archivo
+     */
+    public static int exportarInventario(Connection conn, String rutaArchivo, Formato formato, boolean comprimir)
+            throws SQLException, IOException {
+        String sql = "SELECT id_producto, nombre, categoria, precio, stock FROM productos";
+        try (PreparedStatement ps = Almacen.prepararLectura(conn, sql)) {
+            return exportarProductos(ps, rutaArchivo, formato, comprimir);
+        }
+    }
+
+    /**
+     * Ejecuta la consulta y escribe cada producto en el archivo a medida que se lee.
+     */
+    private static int exportarProductos(PreparedStatement ps, String rutaArchivo, Formato formato, boolean comprimir)
+            throws SQLException, IOException {
+        int total = 0;
+        boolean lineas = formato == Formato.JSON_LINES;
+
+        try (JsonWriter json = new JsonWriter(abrirSalida(rutaArchivo, comprimir), !lineas);
+             ResultSet rs = ps.executeQuery()) {
+            if (!lineas) {
+                json.beginArray();
+            }
+            while (rs.next()) {
+                escribirProducto(json, rs);
+                if (lineas) {
+                    json.newLine();
+                }
+                total++;
+            }
+            if (!lineas) {
+                json.endArray();
             }
-            json.append("\n");
         }
-        json.append("]");
+        return total;
+    }
 
-        // Escribir el JSON al archivo
-        try (FileWriter writer = new FileWriter(rutaArchivo)) {
-            writer.write(json.toString());
+    /**
+     * Abre el archivo de salida en UTF-8 con búfer y, si se pide, comprimido con gzip.
+     */
+    private static BufferedWriter abrirSalida(String rutaArchivo, boolean comprimir) throws IOException {
+        OutputStream out = new FileOutputStream(rutaArchivo);
+        if (comprimir) {
+            out = new GZIPOutputStream(out, TAMANO_BUFFER);
         }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), TAMANO_BUFFER);
+    }
+
+    /**
+     * Escribe la fila actual del ResultSet como un objeto JSON de producto.
+     */
+    private static void escribirProducto(JsonWriter json, ResultSet rs) throws SQLException, IOException {
+        json.beginObject()
+            .name("id_producto").value(rs.getInt("id_producto"))
+            .name("nombre").value(rs.getString("nombre"))
+            .name("categoria").value(rs.getString("categoria"))
+            .name("precio").value(rs.getBigDecimal("precio"))
+            .name("stock").value(rs.getInt("stock"))
+            .endObject();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+/**
+ * Escritor de JSON en streaming.
+ * Escribe los valores directamente en el Writer a medida que se generan, sin construir
+ * el documento en memoria, y escapa las cadenas según la especificación JSON
+ * (comillas, barras invertidas y caracteres de control).
+ * Puede generar JSON con sangría o compacto (una sola línea).
+ */
+public class JsonWriter implements Closeable, Flushable {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_PROFUNDIDAD = 32;
+
+    private final Writer out;
+    private final boolean indentar;
+    // Para cada nivel abierto, si ya contiene algún elemento (para saber si hace falta coma)
+    private final boolean[] conElementos = new boolean[MAX_PROFUNDIDAD];
+    private int profundidad = 0;
+    // true justo después de escribir un nombre de campo, a la espera de su valor
+    private boolean esperandoValor = false;
+
+    /**
+     * Crea un escritor JSON.
+     *
+     * @param out Destino (se recomienda un Writer con búfer)
+     * @param indentar true para generar JSON con saltos de línea y sangría de 4 espacios
+     */
+    public JsonWriter(Writer out, boolean indentar) {
+        this.out = out;
+        this.indentar = indentar;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        abrir('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        cerrar(']');
+        return this;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        abrir('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        cerrar('}');
+        return this;
+    }
+
+    /**
+     * Escribe el nombre de un campo del objeto actual.
+     *
+     * @param nombre Nombre del campo
+     * @return Este escritor
+     * @throws IOException Si hay un error al escribir
+     */
+    public JsonWriter name(String nombre) throws IOException {
+        separar();
+        escribirCadena(nombre);
+        out.write(indentar ? ": " : ":");
+        esperandoValor = true;
+        return this;
+    }
+
+    public JsonWriter value(String valor) throws IOException {
+        separar();
+        if (valor == null) {
+            out.write("null");
+        } else {
+            escribirCadena(valor);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long valor) throws IOException {
+        separar();
+        out.write(Long.toString(valor));
+        return this;
+    }
+
+    /**
+     * Escribe un número decimal sin exponente (por ejemplo, un precio).
+     *
+     * @param valor Número, o null
+     * @return Este escritor
+     * @throws IOException Si hay un error al escribir
+     */
+    public JsonWriter value(BigDecimal valor) throws IOException {
+        separar();
+        out.write(valor == null ? "null" : valor.toPlainString());
+        return this;
+    }
+
+    /**
+     * Termina un valor de nivel superior con un salto de línea.
+     * Se usa para escribir varios documentos seguidos (JSON Lines).
+     *
+     * @throws IOException Si hay un error al escribir
+     * @throws IllegalStateException Si queda algún objeto o array abierto
+     */
+    public void newLine() throws IOException {
+        if (profundidad != 0) {
+            throw new IllegalStateException("Hay objetos o arrays sin cerrar");
+        }
+        out.write('\n');
+    }
+
+    private void abrir(char c) throws IOException {
+        separar();
+        if (profundidad == MAX_PROFUNDIDAD) {
+            throw new IllegalStateException("Anidamiento JSON demasiado profundo");
+        }
+        out.write(c);
+        conElementos[profundidad++] = false;
+    }
+
+    private void cerrar(char c) throws IOException {
+        if (profundidad == 0) {
+            throw new IllegalStateException("No hay ningún objeto o array abierto");
+        }
+        boolean vacio = !conElementos[--profundidad];
+        if (indentar && !vacio) {
+            saltoDeLinea();
+        }
+        out.write(c);
+    }
+
+    /**
+     * Escribe la coma y la sangría necesarias antes de un nuevo elemento.
+     */
+    private void separar() throws IOException {
+        if (esperandoValor) {
+            esperandoValor = false;
+            return;
+        }
+        if (profundidad == 0) {
+            return;
+        }
+        if (conElementos[profundidad - 1]) {
+            out.write(',');
+        }
+        conElementos[profundidad - 1] = true;
+        if (indentar) {
+            saltoDeLinea();
+        }
+    }
+
+    private void saltoDeLinea() throws IOException {
+        out.write('\n');
+        for (int i = 0; i < profundidad; i++) {
+            out.write("    ");
+        }
+    }
+
+    /**
+     * Escribe una cadena entre comillas escapando los caracteres necesarios.
+     * Los tramos sin caracteres especiales se copian de una sola vez.
+     */
+    private void escribirCadena(String valor) throws IOException {
+        out.write('"');
+        int inicio = 0;
+        int longitud = valor.length();
+        for (int i = 0; i < longitud; i++) {
+            char c = valor.charAt(i);
+            String escape;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                switch (c) {
+                    case '\n': escape = "\\n"; break;
+                    case '\r': escape = "\\r"; break;
+                    case '\t': escape = "\\t"; break;
+                    case '\b': escape = "\\b"; break;
+                    case '\f': escape = "\\f"; break;
+                    default:
+                        escape = "\\u" + HEX[(c >> 12) & 0xF] + HEX[(c >> 8) & 0xF] + HEX[(c >> 4) & 0xF] + HEX[c & 0xF];
+                }
+            } else {
+                continue;
+            }
+            if (i > inicio) {
+                out.write(valor, inicio, i - inicio);
+            }
+            out.write(escape);
+            inicio = i + 1;
+        }
+        if (longitud > inicio) {
+            out.write(valor, inicio, longitud - inicio);
+        }
+        out.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -1,14 +1,14 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.xml.stream.XMLStreamException;
 
 /**
  * Clase principal del sistema de gestión de inventario.
@@ -21,41 +21,76 @@ import java.util.Scanner;
  */
 public class Main {
 
-	// 🔹 Datos de conexión con XAMPP/MySQL
-	private static final String URL_BASE = "jdbc:mysql://localhost:3306/";
-	private static final String DB_NAME = "aad1_2";
-	private static final String URL = URL_BASE + DB_NAME;
-	private static final String USUARIO = "root";
-	private static final String PASSWORD = "";
+	// 🔹 Base de datos (MySQL con XAMPP o embebida), según inventario.properties
+	private static Almacen almacen;
+
+	// Número máximo de conexiones abiertas a la vez con la base de datos
+	private static final int POOL_MAX_CONEXIONES = 10;
+
+	// Movimientos que se muestran de cada vez al consultar el histórico de un producto
+	private static final int MOVIMIENTOS_POR_PAGINA = 20;
+
+	// Productos enviados en cada lote al importar desde XML
+	private static final int XML_TAMANO_LOTE = 1000;
+
+	// Pool compartido por todas las operaciones del menú
+	private static ConnectionPool pool;
+
+	// Número máximo de productos que se mantienen en la caché del catálogo
+	private static final int CACHE_MAX_PRODUCTOS = 100_000;
+
+	private static final ProductoCache cache = new ProductoCache(CACHE_MAX_PRODUCTOS);
+
+	// Cola que guarda los movimientos de stock en MySQL confirmándolos en grupos
+	private static GroupCommitMovimientos grupoMovimientos;
+
+	// Stock de cada producto en memoria; los movimientos se guardan en MySQL en segundo plano
+	private static StockLedger ledger;
+
+	// Número de productos que el ranking de ventas mantiene ordenados en memoria
+	private static final int RANKING_MAX_PRODUCTOS = 100;
+
+	// Productos más vendidos, actualizado con cada salida confirmada
+	private static final RankingVentas ranking = new RankingVentas(RANKING_MAX_PRODUCTOS);
+
+	// Entradas y salidas del menú y del servidor HTTP, con las cachés al día
+	private static StockService stockService;
+
+	// Ids de productos que se reservan de cada vez en la tabla secuencias
+	private static final int IDS_POR_BLOQUE = GeneradorIds.TAMANO_BLOQUE_POR_DEFECTO;
+
+	// Reparte los ids de los productos nuevos desde bloques reservados
+	private static GeneradorIds generadorIds;
+
+	// Tiempo de vida y memoria máxima de los resultados de informes en caché
+	private static final long INFORMES_TTL_MS = CacheInformes.TTL_POR_DEFECTO_MS;
+	private static final long INFORMES_CACHE_MAX_BYTES = CacheInformes.MAX_BYTES_POR_DEFECTO;
+
+	// Resultados de los informes, invalidados con cada movimiento o cambio en el catálogo
+	private static CacheInformes cacheInformes;
+
+	// Informes que se pueden consultar a la vez y pendientes de hilo antes de rechazar más
+	private static final int INFORMES_HILOS = InformesAsincronos.HILOS_POR_DEFECTO;
+	private static final int INFORMES_MAX_PENDIENTES = InformesAsincronos.MAX_PENDIENTES_POR_DEFECTO;
+
+	// Ejecuta los informes en paralelo para el panel de informes
+	private static InformesAsincronos informes;
+
+	// API JSON sobre el inventario; se arranca desde el menú
+	private static ServidorHttp servidorHttp;
     
     /**
-     * Inicializa la base de datos y la tabla productos si no existen.
+     * Lee la configuración del almacén e inicializa la base de datos y la tabla
+     * productos si no existen.
      */
     private static void initializeDatabase() {
         try {
-            // Primero intentamos crear la base de datos
-            try (Connection conn = DriverManager.getConnection(URL_BASE, USUARIO, PASSWORD)) {
-                try (PreparedStatement ps = conn.prepareStatement("CREATE DATABASE IF NOT EXISTS " + DB_NAME)) {
-                    ps.executeUpdate();
-                    System.out.println("Base de datos creada o verificada correctamente.");
-                }
-            }
-            
-            // Ahora creamos la tabla productos en la base de datos
-            try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-                String createTableSQL = "CREATE TABLE IF NOT EXISTS productos ("
-                    + "id_producto INT PRIMARY KEY,"
-                    + "nombre VARCHAR(100) NOT NULL,"
-                    + "categoria VARCHAR(50) NOT NULL,"
-                    + "precio VARCHAR(20) NOT NULL,"
-                    + "stock INT NOT NULL DEFAULT 0"
-                    + ")";
-                
-                try (PreparedStatement ps = conn.prepareStatement(createTableSQL)) {
-                    ps.executeUpdate();
-                    System.out.println("Tabla productos creada o verificada correctamente.");
-                }
-            }
+            almacen = Almacen.cargar(Almacen.ARCHIVO_CONFIGURACION);
+            System.out.println("Almacén: " + almacen.getNombre());
+            almacen.crearBaseDeDatos();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error al leer la configuración (" + Almacen.ARCHIVO_CONFIGURACION + "): " + e.getMessage());
+            System.exit(1);
         } catch (SQLException e) {
             System.out.println("Error al inicializar la base de datos: " + e.getMessage());
             System.exit(1);
@@ -72,15 +107,24 @@ public class Main {
 	public static void main(String[] args) {
         // Inicializar la base de datos y tablas
         initializeDatabase();
+		pool = new ConnectionPool(almacen.getUrl(), almacen.getUsuario(), almacen.getPassword(), POOL_MAX_CONEXIONES);
+		grupoMovimientos = new GroupCommitMovimientos(pool);
+		ledger = new StockLedger(grupoMovimientos);
+		generadorIds = new GeneradorIds(pool, IDS_POR_BLOQUE);
+		cacheInformes = new CacheInformes(pool, ranking, INFORMES_TTL_MS, INFORMES_CACHE_MAX_BYTES);
+		stockService = new StockService(ledger, cache, ranking, cacheInformes);
+		servidorHttp = new ServidorHttp(pool, cache, ledger, stockService, ranking, generadorIds, cacheInformes);
+		informes = new InformesAsincronos(pool, cacheInformes, INFORMES_HILOS, INFORMES_MAX_PENDIENTES);
 		Scanner scanner = new Scanner(System.in);
 		int opcion;
 		
-		// Inicializar la tabla de movimientos de stock
-		try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-			StockManager.initializeTables(conn);
+		// Inicializar la tabla de movimientos de stock y poner el esquema al día
+		try (Connection conn = pool.getConnection()) {
+			almacen.prepararEsquema(conn);
 		} catch (SQLException e) {
 			System.out.println("Error al inicializar las tablas: " + e.getMessage());
 		}
+		recargarCatalogo();
 		
 		do {
 			System.out.println("\n=== GESTIÓN DE PRODUCTOS ===");
@@ -98,6 +142,15 @@ public class Main {
 			System.out.println("12. Ver top N productos más vendidos");
 			System.out.println("13. Ver valor total de stock por categoría");
 			System.out.println("14. Ver histórico de movimientos por fecha");
+			System.out.println("15. Ver estadísticas del pool de conexiones");
+			System.out.println("16. Exportar inventario a JSON");
+			System.out.println("17. Copia de seguridad binaria (crear, restaurar, convertir)");
+			System.out.println("18. Ver estadísticas de las cachés de productos e informes");
+			System.out.println("19. Ver estadísticas del registro de stock");
+			System.out.println("20. Servidor HTTP (iniciar, detener, estadísticas)");
+			System.out.println("21. Reconstruir resumen de ventas");
+			System.out.println("22. Archivar movimientos antiguos (particiones y retención)");
+			System.out.println("23. Panel de informes (consultas en paralelo)");
 			System.out.println("0. Salir");
 			System.out.print("Seleccione una opción: ");
 			
@@ -117,7 +170,7 @@ public class Main {
 					eliminarProducto(scanner);
 					break;
 				case 5:
-					anadirDesdeCSV();
+					anadirDesdeCSV(scanner);
 					break;
 				case 6:
 					registrarEntradaStock(scanner);
@@ -146,6 +199,37 @@ public class Main {
 				case 14:
 					verMovimientosPorFecha(scanner);
 					break;
+				case 15:
+					pool.imprimirEstadisticas();
+					informes.imprimirEstadisticas();
+					break;
+				case 16:
+					exportarInventarioJSON(scanner);
+					break;
+				case 17:
+					gestionarSnapshot(scanner);
+					break;
+				case 18:
+					cache.imprimirEstadisticas();
+					cacheInformes.imprimirEstadisticas();
+					break;
+				case 19:
+					stockService.imprimirEstadisticas();
+					ledger.imprimirEstadisticas();
+					grupoMovimientos.imprimirEstadisticas();
+					break;
+				case 20:
+					gestionarServidorHttp(scanner);
+					break;
+				case 21:
+					reconstruirResumenVentas();
+					break;
+				case 22:
+					archivarMovimientos(scanner);
+					break;
+				case 23:
+					verPanelInformes(scanner);
+					break;
 				case 0:
 					System.out.println("¡Hasta luego!");
 					break;
@@ -155,6 +239,11 @@ public class Main {
 		} while (opcion != 0);
 		
 		scanner.close();
+		servidorHttp.detener();
+		informes.close();
+		ledger.close();
+		grupoMovimientos.close();
+		pool.close();
 	}
 	
     /**
@@ -175,35 +264,32 @@ public class Main {
 			String categoria = scanner.nextLine();
 			
 			System.out.print("Precio: ");
-			String precio = scanner.nextLine();
+			BigDecimal precio = Precios.parsear(scanner.nextLine());
 			
 			System.out.print("Stock inicial: ");
 			int stock = Integer.parseInt(scanner.nextLine());
 			
-			try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-				String sql = "SELECT MAX(id_producto) FROM productos";
-				PreparedStatement ps = conn.prepareStatement(sql);
-				ResultSet rs = ps.executeQuery();
-				
-				// Obtener el siguiente ID
-				int nextId = 1; // valor por defecto si la tabla está vacía
-				if (rs.next()) {
-					int maxId = rs.getInt(1); // obtener el valor de la primera columna
-					nextId = maxId + 1;
-				}
-				
-				sql = "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
-				ps = conn.prepareStatement(sql);
-
-				ps.setInt(1, nextId);
-				ps.setString(2, nombre);
-				ps.setString(3, categoria);
-				ps.setString(4, precio);
-				ps.setInt(5, stock);
+			try {
+				// Obtener el siguiente ID del bloque reservado antes de pedir la conexión:
+				// si hay que reservar un bloque nuevo, el generador usa otra conexión del pool
+				int nextId = generadorIds.siguiente();
 				
-				ps.executeUpdate();
-				System.out.println("Producto creado correctamente.");
+				try (Connection conn = pool.getConnection()) {
+					String sql = "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
+					PreparedStatement ps = conn.prepareStatement(sql);
+
+					ps.setInt(1, nextId);
+					ps.setString(2, nombre);
+					ps.setString(3, categoria);
+					ps.setBigDecimal(4, precio);
+					ps.setInt(5, stock);
 				
+					ps.executeUpdate();
+					cache.poner(new Producto(nextId, nombre, categoria, precio, stock));
+					cacheInformes.invalidar();
+					ledger.anadir(nextId, stock);
+					System.out.println("Producto creado correctamente.");
+				}
 			} catch (SQLException e) {
 				System.out.println("Error al crear el producto: " + e.getMessage());
 			}
@@ -214,27 +300,36 @@ public class Main {
 	
     /**
      * Muestra todos los productos existentes en la base de datos.
-     * Lista cada producto con su ID, nombre, categoría, precio y stock actual.
+     * Lista cada producto con su ID, nombre, categoría, precio y stock actual,
+     * leyéndolos por páginas ordenadas por id.
+     * Si el catálogo completo está en la caché, se muestra sin consultar MySQL.
      */
 	private static void verProductos() {
-		try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-			String sql = "SELECT * FROM productos";
-
-			// Ejecutar EXPLAIN
-        	ejecutarExplain(conn, sql);
-			PreparedStatement ps = conn.prepareStatement(sql);
-			
-			ResultSet rs = ps.executeQuery();
-			
+		if (cache.isCompleta()) {
 			System.out.println("\n=== LISTA DE PRODUCTOS ===");
-			while (rs.next()) {
-				System.out.println("ID: " + rs.getInt("id_producto"));
-				System.out.println("Nombre: " + rs.getString("nombre"));
-				System.out.println("Categoría: " + rs.getString("categoria"));
-				System.out.println("Precio: " + rs.getString("precio"));
-				System.out.println("Stock: " + rs.getInt("stock"));
+			for (Producto producto : cache.listar()) {
+				mostrarProducto(producto);
 				System.out.println("------------------------");
 			}
+			return;
+		}
+
+		try (Connection conn = pool.getConnection()) {
+			// Ejecutar EXPLAIN de la consulta de cada página
+			ejecutarExplain(conn, "SELECT id_producto, nombre, categoria, precio, stock FROM productos"
+				+ " WHERE id_producto > 0 ORDER BY id_producto LIMIT " + StockManager.TAMANO_PAGINA_POR_DEFECTO);
+
+			// Se lee por páginas: nunca se tiene en memoria más de una página de productos
+			System.out.println("\n=== LISTA DE PRODUCTOS ===");
+			Integer cursor = null;
+			do {
+				Pagina<Producto, Integer> pagina = StockManager.paginaProductos(conn, cursor, StockManager.TAMANO_PAGINA_POR_DEFECTO);
+				for (Producto producto : pagina.getElementos()) {
+					mostrarProducto(producto);
+					System.out.println("------------------------");
+				}
+				cursor = pagina.getSiguiente();
+			} while (cursor != null);
 		} catch (SQLException e) {
 			System.out.println("Error al obtener los productos: " + e.getMessage());
 		}
@@ -243,8 +338,12 @@ public class Main {
     /**
      * Permite modificar los datos de un producto existente.
      * El usuario puede modificar nombre, categoría, precio y stock.
-     * Utiliza transacciones para garantizar la integridad de los datos
-     * cuando se modifica el stock y registra los movimientos en el histórico.
+     * Un cambio de stock se registra como una entrada o salida por la diferencia,
+     * a través del registro de stock, antes de guardar el resto de datos.
+     *
+     * La conexión solo se pide para buscar el producto y para el UPDATE final:
+     * mientras se espera a que se guarde el movimiento no se ocupa ninguna, porque
+     * el hilo que guarda los movimientos necesita otra conexión del pool.
      *
      * @param scanner Scanner para leer la entrada del usuario
      */
@@ -253,114 +352,91 @@ public class Main {
 			System.out.print("Introduzca el nombre del producto a modificar: ");
 			String nombre = scanner.nextLine();
 			
-			try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-				String sql = "SELECT * FROM productos WHERE nombre = ?";
-
-				// Ejecutar EXPLAIN
-        		ejecutarExplain(conn, sql);
-				// Primero buscar el producto
-				PreparedStatement ps = conn.prepareStatement(sql);
-				ps.setString(1, nombre);
-				ResultSet rs = ps.executeQuery();
+			try {
+				// Primero buscar el producto (en la caché o, si no está, en la base de datos)
+				Producto producto;
+				try (Connection conn = pool.getConnection()) {
+					producto = buscarProductoPorNombre(conn, nombre);
+				}
 				
-				if (rs.next()) {
+				if (producto != null) {
+					int idProducto = producto.getIdProducto();
+					// El stock de la caché puede no incluir los movimientos en curso: se usa el del registro de stock
+					int stockActual = ledger.getStock(idProducto);
 					System.out.println("\nProducto actual:");
-					System.out.println("ID: " + rs.getInt("id_producto"));
-					System.out.println("Nombre: " + rs.getString("nombre"));
-					System.out.println("Categoría: " + rs.getString("categoria"));
-					System.out.println("Precio: " + rs.getString("precio"));
-					System.out.println("Stock: " + rs.getInt("stock"));
+					mostrarProducto(producto.conStock(stockActual));
 					
 					// Pedir nuevos datos
 					System.out.println("\nIntroduzca los nuevos datos (deje en blanco para mantener el valor actual):");
 					
-					System.out.print("Nuevo nombre [" + rs.getString("nombre") + "]: ");
+					System.out.print("Nuevo nombre [" + producto.getNombre() + "]: ");
 					String nuevoNombre = scanner.nextLine();
-					if (nuevoNombre.trim().isEmpty()) nuevoNombre = rs.getString("nombre");
+					if (nuevoNombre.trim().isEmpty()) nuevoNombre = producto.getNombre();
 
-					System.out.print("Nueva categoría [" + rs.getString("categoria") + "]: ");
+					System.out.print("Nueva categoría [" + producto.getCategoria() + "]: ");
 					String nuevaCategoria = scanner.nextLine();
-					if (nuevaCategoria.trim().isEmpty()) nuevaCategoria = rs.getString("categoria");
+					if (nuevaCategoria.trim().isEmpty()) nuevaCategoria = producto.getCategoria();
 					
-					System.out.print("Nuevo precio [" + rs.getString("precio") + "]: ");
+					System.out.print("Nuevo precio [" + producto.getPrecio() + "]: ");
 					String precioStr = scanner.nextLine();
-					if (precioStr.trim().isEmpty()) precioStr = rs.getString("precio");
+					BigDecimal nuevoPrecio = precioStr.trim().isEmpty() ? producto.getPrecio() : Precios.parsear(precioStr);
 					
-					System.out.print("Nuevo stock [" + rs.getInt("stock") + "]: ");
+					System.out.print("Nuevo stock [" + stockActual + "]: ");
 					String stockStr = scanner.nextLine();
-					int nuevoStock = stockStr.trim().isEmpty() ? rs.getInt("stock") : Integer.parseInt(stockStr);
+					boolean cambiaStock = !stockStr.trim().isEmpty();
+					int nuevoStock = cambiaStock ? Integer.parseInt(stockStr.trim()) : stockActual;
 					
-					// Obtener el stock actual y el ID del producto
-					int stockActual = rs.getInt("stock");
-					int idProducto = rs.getInt("id_producto");
+					// El cambio de stock se registra primero, como una entrada o salida por la
+					// diferencia con el stock del registro en ese momento. Si no hay stock
+					// suficiente no se modifica nada más.
+					int diferencia = cambiaStock ? stockService.fijarStock(idProducto, nuevoStock) : 0;
 					
-					conn.setAutoCommit(false);
-					try {
-						// Actualizar producto
-						PreparedStatement psUpdate = conn.prepareStatement(
-							"UPDATE productos SET nombre = ?, categoria = ?, precio = ? WHERE nombre = ?"
-						);
+					// Actualizar producto (por id: puede haber otros productos con el mismo nombre)
+					try (Connection conn = pool.getConnection();
+						 PreparedStatement psUpdate = conn.prepareStatement(
+							"UPDATE productos SET nombre = ?, categoria = ?, precio = ? WHERE id_producto = ?"
+						)) {
 						psUpdate.setString(1, nuevoNombre);
 						psUpdate.setString(2, nuevaCategoria);
-						psUpdate.setString(3, precioStr);
-						psUpdate.setString(4, nombre);
-						
+						psUpdate.setBigDecimal(3, nuevoPrecio);
+						psUpdate.setInt(4, idProducto);
 						psUpdate.executeUpdate();
-						
-						// Si hay cambio en el stock, actualizarlo y registrar el movimiento
-						if (nuevoStock != stockActual) {
-							int diferencia = nuevoStock - stockActual;
-							String tipoMovimiento = diferencia > 0 ? StockManager.ENTRADA : StockManager.SALIDA;
-							
-							// Actualizar stock
-							String updateStock = diferencia > 0 
-								// Si la diferencia es positiva, se usa una consulta simple para sumar al stock
-								// Si es negativa, se añade una condición para verificar que hay suficiente stock
-								? "UPDATE productos SET stock = stock + ? WHERE id_producto = ?"
-								: "UPDATE productos SET stock = stock - ? WHERE id_producto = ? AND stock >= ?";
-							
-							try (PreparedStatement psStock = conn.prepareStatement(updateStock)) {
-								// Se usa el valor absoluto de la diferencia ya que el signo ya está en la consulta
-								psStock.setInt(1, Math.abs(diferencia));
-								psStock.setInt(2, idProducto);
-								
-								// Si es una reducción de stock (diferencia negativa)
-								// añadimos el parámetro para la verificación de stock suficiente
-								if (diferencia < 0) {
-									psStock.setInt(3, Math.abs(diferencia));
-								}
-								
-								// Ejecutar la actualización y verificar si se actualizó alguna fila
-								int filasActualizadas = psStock.executeUpdate();
-								if (filasActualizadas == 0) {
-									// Si no se actualizó ninguna fila, puede ser porque:
-									// 1. El producto no existe
-									// 2. No hay suficiente stock (en caso de reducción)
-									throw new SQLException("No hay suficiente stock disponible");
-								}
-								
-								// Si la actualización fue exitosa, registrar el movimiento en el histórico
-								StockManager.registrarMovimientoStock(conn, idProducto, 
-									tipoMovimiento, Math.abs(diferencia));
-							}
-						}
-						
-						conn.commit();
-						System.out.println("Producto actualizado correctamente.");
-					} catch (SQLException ex) {
-						conn.rollback();
-						throw ex;
-					} finally {
-						conn.setAutoCommit(true);
+					} catch (SQLException e) {
+						// Se deshace el cambio de stock (con la conexión ya devuelta al pool)
+						// para no dejar la modificación a medias
+						deshacerCambioStock(idProducto, diferencia);
+						throw e;
 					}
+					cache.actualizarDatos(idProducto, nuevoNombre, nuevaCategoria, nuevoPrecio);
+					cacheInformes.invalidar();
+					System.out.println("Producto actualizado correctamente.");
 				} else {
 					System.out.println("No se encontró ningún producto con ese nombre.");
 				}
-			} catch (SQLException e) {
+			} catch (SQLException | IllegalArgumentException e) {
 				System.out.println("Error al modificar el producto: " + e.getMessage());
 			}
 		} catch (NumberFormatException e) {
-			System.out.println("Error: El stock debe ser un número válido.");
+			System.out.println("Error: El precio y el stock deben ser números válidos.");
+		}
+	}
+	
+    /**
+     * Registra el movimiento contrario a un cambio de stock ya guardado, cuando el
+     * resto de la modificación del producto no se ha podido guardar.
+     *
+     * @param idProducto ID del producto
+     * @param diferencia Cambio de stock registrado (positivo si fue una entrada)
+     */
+	private static void deshacerCambioStock(int idProducto, int diferencia) {
+		if (diferencia == 0) {
+			return;
+		}
+		try {
+			stockService.deshacerCambioStock(idProducto, diferencia);
+			System.out.println("Se ha deshecho el cambio de stock.");
+		} catch (SQLException e) {
+			System.out.println("No se pudo deshacer el cambio de stock: " + e.getMessage());
 		}
 	}
 	
@@ -375,31 +451,21 @@ public class Main {
         try {
             System.out.print("Introduzca el nombre del producto a eliminar: ");
             String nombre = scanner.nextLine();
+            ledger.esperarPersistencia();
             
-            try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-
-				String sql = "SELECT * FROM productos WHERE nombre = ?";
-
-				// Ejecutar EXPLAIN
-        		ejecutarExplain(conn, sql);
+            try (Connection conn = pool.getConnection()) {
                 // Buscar y mostrar el producto
-                PreparedStatement ps = conn.prepareStatement(sql);
-                ps.setString(1, nombre);
-                ResultSet rs = ps.executeQuery();
+                Producto producto = buscarProductoPorNombre(conn, nombre);
                 
-                if (rs.next()) {
+                if (producto != null) {
                     System.out.println("\nProducto encontrado:");
-                    System.out.println("ID: " + rs.getInt("id_producto"));
-                    System.out.println("Nombre: " + rs.getString("nombre"));
-                    System.out.println("Categoría: " + rs.getString("categoria"));
-                    System.out.println("Precio: " + rs.getString("precio"));
-                    System.out.println("Stock: " + rs.getInt("stock"));
+                    mostrarProducto(producto);
                     
                     System.out.print("\n¿Está seguro de que desea eliminar este producto? (S/N): ");
                     String confirmacion = scanner.nextLine();
                     
                     if (confirmacion.equalsIgnoreCase("S")) {
-                        int idProducto = rs.getInt("id_producto");
+                        int idProducto = producto.getIdProducto();
                         conn.setAutoCommit(false);
                         
                         try {
@@ -410,6 +476,12 @@ public class Main {
                             psDeleteMov.setInt(1, idProducto);
                             psDeleteMov.executeUpdate();
                             
+                            PreparedStatement psDeleteVentas = conn.prepareStatement(
+                                "DELETE FROM ventas_diarias WHERE id_producto = ?"
+                            );
+                            psDeleteVentas.setInt(1, idProducto);
+                            psDeleteVentas.executeUpdate();
+                            
                             // Luego eliminar el producto
                             PreparedStatement psDeleteProd = conn.prepareStatement(
                                 "DELETE FROM productos WHERE id_producto = ?"
@@ -418,6 +490,10 @@ public class Main {
                             psDeleteProd.executeUpdate();
                             
                             conn.commit();
+                            cache.eliminar(idProducto);
+                            ledger.eliminar(idProducto);
+                            ranking.eliminar(idProducto);
+                            cacheInformes.invalidar();
                             System.out.println("Producto y sus movimientos eliminados correctamente.");
                             
                         } catch (SQLException e) {
@@ -460,33 +536,11 @@ public class Main {
 			System.out.print("Cantidad a añadir: ");
 			int cantidad = Integer.parseInt(scanner.nextLine());
 			
-			try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-                conn.setAutoCommit(false);
-                try {
-                    // 1. Actualizar el stock
-                    String updateStock = "UPDATE productos SET stock = stock + ? WHERE id_producto = ?";
-                    try (PreparedStatement psUpdate = conn.prepareStatement(updateStock)) {
-                        psUpdate.setInt(1, cantidad);
-                        psUpdate.setInt(2, idProducto);
-                        
-                        int filasActualizadas = psUpdate.executeUpdate();
-                        if (filasActualizadas == 0) {
-                            throw new SQLException("El producto no existe");
-                        }
-                    }
-
-                    // 2. Registrar el movimiento en el histórico
-                    StockManager.registrarMovimientoStock(conn, idProducto, StockManager.ENTRADA, cantidad);
-                    
-                    conn.commit();
-                    System.out.println("Entrada de stock registrada correctamente.");
-                } catch (SQLException ex) {
-                    conn.rollback();
-                    throw ex;
-                } finally {
-                    conn.setAutoCommit(true);
-                }
-			} catch (SQLException e) {
+			try {
+				// El stock se suma en memoria al momento; se espera a que el movimiento se guarde
+				stockService.registrarMovimiento(idProducto, StockManager.ENTRADA, cantidad);
+				System.out.println("Entrada de stock registrada correctamente. Stock actual: " + ledger.getStock(idProducto));
+			} catch (SQLException | IllegalArgumentException e) {
 				System.out.println("Error al registrar la entrada de stock: " + e.getMessage());
 			}
 		} catch (NumberFormatException e) {
@@ -515,34 +569,11 @@ public class Main {
 			System.out.print("Cantidad a retirar: ");
 			int cantidad = Integer.parseInt(scanner.nextLine());
 			
-			try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-                conn.setAutoCommit(false);
-                try {
-                    // 1. Verificar y actualizar el stock
-                    String updateStock = "UPDATE productos SET stock = stock - ? WHERE id_producto = ? AND stock >= ?";
-                    try (PreparedStatement psUpdate = conn.prepareStatement(updateStock)) {
-                        psUpdate.setInt(1, cantidad);
-                        psUpdate.setInt(2, idProducto);
-                        psUpdate.setInt(3, cantidad);
-                        
-                        int filasActualizadas = psUpdate.executeUpdate();
-                        if (filasActualizadas == 0) {
-                            throw new SQLException("No hay suficiente stock disponible o el producto no existe");
-                        }
-                    }
-
-                    // 2. Registrar el movimiento en el histórico
-                    StockManager.registrarMovimientoStock(conn, idProducto, StockManager.SALIDA, cantidad);
-                    
-                    conn.commit();
-                    System.out.println("Salida de stock registrada correctamente.");
-                } catch (SQLException ex) {
-                    conn.rollback();
-                    throw ex;
-                } finally {
-                    conn.setAutoCommit(true);
-                }
-			} catch (SQLException e) {
+			try {
+				// La salida se comprueba y reserva en memoria; se espera a que el movimiento se guarde
+				stockService.registrarMovimiento(idProducto, StockManager.SALIDA, cantidad);
+				System.out.println("Salida de stock registrada correctamente. Stock actual: " + ledger.getStock(idProducto));
+			} catch (SQLException | IllegalArgumentException e) {
 				System.out.println("Error al registrar la salida de stock: " + e.getMessage());
 			}
 		} catch (NumberFormatException e) {
@@ -550,10 +581,184 @@ public class Main {
 		}
 	}
 	
+    /**
+     * Busca un producto por nombre, primero en la caché y, si no está (y la caché
+     * no contiene todo el catálogo), en la base de datos. El producto encontrado
+     * en la base de datos se añade a la caché.
+     *
+     * @param conn Conexión a la base de datos
+     * @param nombre Nombre del producto
+     * @return El producto, o null si no existe
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     */
+	private static Producto buscarProductoPorNombre(Connection conn, String nombre) throws SQLException {
+		Producto producto = cache.buscarPorNombre(nombre);
+		if (producto != null || cache.isCompleta()) {
+			return producto;
+		}
+
+		String sql = "SELECT * FROM productos WHERE nombre = ?";
+
+		// Ejecutar EXPLAIN
+		ejecutarExplain(conn, sql);
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
+			ps.setString(1, nombre);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (!rs.next()) {
+					return null;
+				}
+				producto = ProductoCache.leerProducto(rs);
+			}
+		}
+		cache.poner(producto);
+		return producto;
+	}
+
+	private static void mostrarProducto(Producto producto) {
+		System.out.println("ID: " + producto.getIdProducto());
+		System.out.println("Nombre: " + producto.getNombre());
+		System.out.println("Categoría: " + producto.getCategoria());
+		System.out.println("Precio: " + producto.getPrecio());
+		System.out.println("Stock: " + producto.getStock());
+	}
+
+    /**
+     * Vuelve a cargar la caché de productos, el registro de stock y el ranking de
+     * ventas desde la base de datos.
+     * Se usa al arrancar y tras las importaciones y restauraciones masivas.
+     * También descarta el bloque de ids en curso, que podría incluir ids importados,
+     * y los informes guardados en caché.
+     */
+	private static void recargarCatalogo() {
+		generadorIds.descartarBloque();
+		cacheInformes.invalidar();
+		try (Connection conn = pool.getConnection()) {
+			int cargados = cache.cargar(conn);
+			System.out.println("Caché de productos cargada (" + cargados + " productos"
+				+ (cache.isCompleta() ? ")." : ", catálogo incompleto)."));
+			ledger.cargar(conn);
+			ranking.cargar(conn);
+		} catch (SQLException e) {
+			cache.limpiar();
+			ranking.limpiar();
+			System.out.println("Error al cargar el catálogo en memoria: " + e.getMessage());
+		}
+	}
+
+    /**
+     * Vuelve a calcular el resumen diario de ventas a partir de los movimientos de
+     * stock (los meses archivados conservan su resumen) y recarga el ranking de
+     * productos más vendidos.
+     */
+	private static void reconstruirResumenVentas() {
+		System.out.println("\n=== RECONSTRUIR RESUMEN DE VENTAS ===");
+		// Los movimientos pendientes deben estar guardados para entrar en el resumen
+		ledger.esperarPersistencia();
+		try (Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+			try {
+				int filas = StockManager.reconstruirResumenVentas(conn, ParticionesMovimientos.getInicioConservado(conn));
+				conn.commit();
+				System.out.println("Resumen de ventas reconstruido (" + filas + " filas de producto y día).");
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+			int productos = ranking.cargar(conn);
+			cacheInformes.invalidar();
+			System.out.println("Ranking de ventas cargado (" + productos + " productos con ventas).");
+		} catch (SQLException e) {
+			System.out.println("Error al reconstruir el resumen de ventas: " + e.getMessage());
+		}
+	}
+
+    /**
+     * Muestra las particiones mensuales de movimientos_stock y archiva, tras pedir
+     * confirmación, los meses anteriores al periodo de retención indicado.
+     *
+     * @param scanner Scanner para leer la entrada del usuario
+     */
+	private static void archivarMovimientos(Scanner scanner) {
+		if (!almacen.admiteParticiones()) {
+			System.out.println("El almacén " + almacen.getNombre() + " no particiona los movimientos: no hay meses que archivar.");
+			return;
+		}
+		try (Connection conn = pool.getConnection()) {
+			ParticionesMovimientos.imprimirParticiones(conn);
+
+			System.out.print("Meses que se conservan, contando el actual [" + ParticionesMovimientos.MESES_RETENCION_POR_DEFECTO + "]: ");
+			String texto = scanner.nextLine().trim();
+			int meses = texto.isEmpty() ? ParticionesMovimientos.MESES_RETENCION_POR_DEFECTO : Integer.parseInt(texto);
+
+			System.out.print("Directorio de archivo [" + ParticionesMovimientos.DIRECTORIO_ARCHIVO_POR_DEFECTO + "]: ");
+			String directorio = scanner.nextLine().trim();
+			if (directorio.isEmpty()) {
+				directorio = ParticionesMovimientos.DIRECTORIO_ARCHIVO_POR_DEFECTO;
+			}
+
+			System.out.print("Los movimientos anteriores se guardarán comprimidos y se borrarán de la base de datos. ¿Continuar? (S/N): ");
+			if (!scanner.nextLine().equalsIgnoreCase("S")) {
+				System.out.println("Operación cancelada.");
+				return;
+			}
+
+			List<ParticionesMovimientos.MesArchivado> archivados = ParticionesMovimientos.aplicarRetencion(conn, meses, directorio);
+			if (!archivados.isEmpty()) {
+				// Los movimientos archivados ya no aparecen en los históricos
+				cacheInformes.invalidar();
+			}
+			for (ParticionesMovimientos.MesArchivado mes : archivados) {
+				System.out.println("Archivado " + mes.getMes() + ": " + mes.getFilas() + " movimientos en " + mes.getArchivo());
+			}
+			System.out.println(archivados.isEmpty()
+				? "No hay meses anteriores al periodo de retención."
+				: "Meses archivados: " + archivados.size());
+		} catch (NumberFormatException e) {
+			System.out.println("Error: Debe introducir un número válido.");
+		} catch (IllegalArgumentException e) {
+			System.out.println("Error: " + e.getMessage());
+		} catch (SQLException | IOException e) {
+			System.out.println("Error al archivar los movimientos: " + e.getMessage());
+		}
+	}
+
+    /**
+     * Arranca el servidor HTTP en el puerto indicado por el usuario o, si ya está
+     * en marcha, muestra sus estadísticas y permite detenerlo.
+     *
+     * @param scanner Scanner para leer la entrada del usuario
+     */
+	private static void gestionarServidorHttp(Scanner scanner) {
+		if (servidorHttp.isIniciado()) {
+			servidorHttp.imprimirEstadisticas();
+			System.out.print("¿Desea detener el servidor? (S/N): ");
+			if (scanner.nextLine().equalsIgnoreCase("S")) {
+				servidorHttp.detener();
+				System.out.println("Servidor HTTP detenido.");
+			}
+			return;
+		}
+
+		try {
+			System.out.print("Puerto [" + ServidorHttp.PUERTO_POR_DEFECTO + "]: ");
+			String texto = scanner.nextLine().trim();
+			int puerto = texto.isEmpty() ? ServidorHttp.PUERTO_POR_DEFECTO : Integer.parseInt(texto);
+			servidorHttp.iniciar(puerto);
+			System.out.println("Servidor HTTP escuchando en http://localhost:" + puerto + "/productos");
+		} catch (NumberFormatException e) {
+			System.out.println("Error: El puerto debe ser un número válido.");
+		} catch (IOException e) {
+			System.out.println("Error al iniciar el servidor HTTP: " + e.getMessage());
+		}
+	}
+
     /**
      * Exporta a un archivo JSON los productos que tienen stock bajo.
      * Permite al usuario especificar el límite de stock para considerar
-     * que un producto tiene stock bajo.
+     * que un producto tiene stock bajo, el formato (array JSON o JSON Lines)
+     * y si el archivo se comprime con gzip.
      *
      * @param scanner Scanner para leer la entrada del usuario
      */
@@ -563,12 +768,15 @@ public class Main {
 			
 			System.out.print("Introduzca el límite de stock (productos con stock menor a este valor): ");
 			int limiteStock = Integer.parseInt(scanner.nextLine());
+
+			JsonExporter.Formato formato = pedirFormatoJson(scanner);
+			boolean comprimir = pedirCompresion(scanner);
 			
-			try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
+			try (Connection conn = pool.getConnection()) {
 				// Exportar productos con stock bajo a JSON
-				String rutaArchivo = "stock_bajo.json";
-				JsonExporter.exportarProductosStockBajo(conn, limiteStock, rutaArchivo);
-				System.out.println("Se han exportado los productos con stock inferior a " + limiteStock + 
+				String rutaArchivo = rutaJson("stock_bajo", formato, comprimir);
+				int total = JsonExporter.exportarProductosStockBajo(conn, limiteStock, rutaArchivo, formato, comprimir);
+				System.out.println("Se han exportado " + total + " productos con stock inferior a " + limiteStock + 
                                  " al archivo " + rutaArchivo);
 			} catch (SQLException e) {
 				System.out.println("Error al obtener los productos: " + e.getMessage());
@@ -580,9 +788,121 @@ public class Main {
 		}
 	}
 
+    /**
+     * Exporta todo el inventario a un archivo JSON.
+     * Permite elegir el formato (array JSON o JSON Lines) y si el archivo
+     * se comprime con gzip.
+     *
+     * @param scanner Scanner para leer la entrada del usuario
+     */
+	private static void exportarInventarioJSON(Scanner scanner) {
+		System.out.println("\n=== EXPORTAR INVENTARIO A JSON ===");
+
+		JsonExporter.Formato formato = pedirFormatoJson(scanner);
+		boolean comprimir = pedirCompresion(scanner);
+
+		try (Connection conn = pool.getConnection()) {
+			String rutaArchivo = rutaJson("inventario", formato, comprimir);
+			int total = JsonExporter.exportarInventario(conn, rutaArchivo, formato, comprimir);
+			System.out.println("Se han exportado " + total + " productos al archivo " + rutaArchivo);
+		} catch (SQLException e) {
+			System.out.println("Error al obtener los productos: " + e.getMessage());
+		} catch (IOException e) {
+			System.out.println("Error al escribir el archivo JSON: " + e.getMessage());
+		}
+	}
+
+    /**
+     * Gestiona las copias de seguridad binarias (snapshots) del inventario.
+     * Permite crear una copia de productos y movimientos, restaurarla
+     * (sustituye el contenido actual de ambas tablas) y convertir entre
+     * snapshot y XML.
+     *
+     * @param scanner Scanner para leer la entrada del usuario
+     */
+	private static void gestionarSnapshot(Scanner scanner) {
+		final String rutaSnapshot = "inventario.snap";
+		final String rutaXml = "inventario.xml";
+
+		System.out.println("\n=== COPIA DE SEGURIDAD BINARIA ===");
+		System.out.println("1. Crear copia de seguridad (" + rutaSnapshot + ")");
+		System.out.println("2. Restaurar copia de seguridad");
+		System.out.println("3. Convertir " + rutaXml + " a snapshot");
+		System.out.println("4. Convertir snapshot a " + rutaXml);
+		System.out.print("Seleccione una opción: ");
+		String opcion = scanner.nextLine().trim();
+
+		// La copia y la restauración deben ver todos los movimientos ya aceptados
+		ledger.esperarPersistencia();
+
+		long inicio = System.nanoTime();
+		try {
+			switch (opcion) {
+				case "1":
+					try (Connection conn = pool.getConnection()) {
+						SnapshotWriter snapshot = SnapshotWriter.backup(conn, rutaSnapshot);
+						System.out.println("Copia creada en " + rutaSnapshot + ": " + snapshot.getTotalProductos()
+							+ " productos y " + snapshot.getTotalMovimientos() + " movimientos.");
+					}
+					break;
+				case "2":
+					System.out.println("ADVERTENCIA: Se sustituirán todos los productos y movimientos actuales.");
+					System.out.print("¿Desea continuar? (s/n): ");
+					if (!scanner.nextLine().trim().equalsIgnoreCase("s")) {
+						System.out.println("Operación cancelada.");
+						return;
+					}
+					inicio = System.nanoTime();
+					try (Connection conn = pool.getConnection()) {
+						SnapshotReader.Resultado resultado = SnapshotReader.restore(conn, rutaSnapshot);
+						System.out.println("Restaurados " + resultado.getProductos() + " productos y "
+							+ resultado.getMovimientos() + " movimientos (copia del " + resultado.getFechaCreacion() + ").");
+					}
+					recargarCatalogo();
+					break;
+				case "3":
+					long convertidos = SnapshotWriter.fromXml(rutaXml, rutaSnapshot);
+					System.out.println("Convertidos " + convertidos + " productos a " + rutaSnapshot);
+					break;
+				case "4":
+					long exportados = SnapshotReader.toXml(rutaSnapshot, rutaXml);
+					System.out.println("Convertidos " + exportados + " productos a " + rutaXml);
+					break;
+				default:
+					System.out.println("Opción no válida");
+					return;
+			}
+			System.out.printf("Tiempo: %.1f ms%n", (System.nanoTime() - inicio) / 1_000_000.0);
+		} catch (SQLException e) {
+			System.out.println("Error de base de datos: " + e.getMessage());
+		} catch (IOException e) {
+			System.out.println("Error con el archivo: " + e.getMessage());
+		} catch (XMLStreamException e) {
+			System.out.println("Error en el XML: " + e.getMessage());
+		}
+	}
+
+	private static JsonExporter.Formato pedirFormatoJson(Scanner scanner) {
+		System.out.println("1. JSON (array con sangría)");
+		System.out.println("2. JSON Lines (un producto por línea)");
+		System.out.print("Formato [1]: ");
+		return scanner.nextLine().trim().equals("2") ? JsonExporter.Formato.JSON_LINES : JsonExporter.Formato.JSON;
+	}
+
+	private static boolean pedirCompresion(Scanner scanner) {
+		System.out.print("¿Comprimir con gzip? (s/n): ");
+		return scanner.nextLine().trim().equalsIgnoreCase("s");
+	}
+
+	private static String rutaJson(String nombreBase, JsonExporter.Formato formato, boolean comprimir) {
+		String ruta = nombreBase + (formato == JsonExporter.Formato.JSON_LINES ? ".ndjson" : ".json");
+		return comprimir ? ruta + ".gz" : ruta;
+	}
+
     /**
      * Muestra el histórico de movimientos de stock para un producto específico.
-     * Lista todos los movimientos (entradas y salidas) ordenados por fecha.
+     * Lista los movimientos (entradas y salidas) del más reciente al más antiguo,
+     * de página en página, preguntando al usuario si quiere ver más.
      *
      * @param scanner Scanner para leer la entrada del usuario
      */
@@ -596,8 +916,23 @@ public class Main {
 			System.out.print("\nIntroduzca el ID del producto: ");
 			int idProducto = Integer.parseInt(scanner.nextLine());
 			
-			try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-				StockManager.consultarMovimientos(conn, idProducto);
+			try (Connection conn = pool.getConnection()) {
+				// Se muestran los movimientos de página en página, empezando por los más recientes
+				System.out.println("\n=== HISTÓRICO DE MOVIMIENTOS ===");
+				Integer cursor = null;
+				do {
+					Pagina<Movimiento, Integer> pagina = StockManager.paginaMovimientos(conn, idProducto, cursor, MOVIMIENTOS_POR_PAGINA);
+					for (Movimiento movimiento : pagina.getElementos()) {
+						StockManager.imprimirMovimiento(movimiento);
+					}
+					cursor = pagina.getSiguiente();
+					if (cursor != null) {
+						System.out.print("¿Ver más movimientos? (S/N): ");
+						if (!scanner.nextLine().equalsIgnoreCase("S")) {
+							break;
+						}
+					}
+				} while (cursor != null);
 			} catch (SQLException e) {
 				System.out.println("Error al consultar los movimientos: " + e.getMessage());
 			}
@@ -608,130 +943,86 @@ public class Main {
 	
     /**
      * Importa productos desde un archivo CSV a la base de datos.
-     * Realiza una validación previa del archivo CSV y registra cualquier error
-     * en un archivo de log. Solo procede con la importación si no hay errores.
+     * Valida e inserta en una sola pasada usando lotes JDBC y registra cualquier
+     * error en un archivo de log. El usuario elige entre importar todo o nada
+     * (no se inserta nada si hay errores) o confirmar por lotes, pudiendo
+     * reanudar una importación interrumpida.
      * El archivo CSV debe tener el formato: id_producto;nombre;categoria;precio;stock
+     *
+     * @param scanner Scanner para leer la entrada del usuario
      */
-	private static void anadirDesdeCSV() {
+	private static void anadirDesdeCSV(Scanner scanner) {
 		final String rutaCSV = "inventario.csv";
-		final String rutaLog = "errores.log";   
-		String lineaActual;
-		int lineaNumero = 0;
-		boolean hayErrores = false;
-		
-		try (BufferedReader br = new BufferedReader(new FileReader(rutaCSV));
-			 BufferedWriter log = new BufferedWriter(new FileWriter(rutaLog, true));
-			 Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-			
-			// Desactivar el autocommit para usar transacciones
-			conn.setAutoCommit(false);
-			
-			// Primera pasada: validación
-			while ((lineaActual = br.readLine()) != null) {
-				lineaNumero++;
-				try {
-					// Divide la línea en columnas usando punto y coma
-					String[] columnas = lineaActual.split(";");
-					
-					if (columnas.length != 5) {
-						throw new Exception("Número incorrecto de columnas: " + columnas.length);
-					}
-					
-					// Validaciones adicionales
-					if (lineaNumero > 1) { // Ignorar la primera línea (encabezados)
-						try {
-							// Validar que el ID sea un número
-							Integer.parseInt(columnas[0].trim());
-							
-							// Validar que el nombre y categoría no estén vacíos
-							if (columnas[1].trim().isEmpty() || columnas[2].trim().isEmpty()) {
-								throw new Exception("El nombre y la categoría no pueden estar vacíos");
-							}
-							
-							// Validar el formato del precio (debe contener números y opcionalmente '€' y ',')
-							if (!columnas[3].trim().matches("^\\d+([,.]\\d{1,2})?€?$")) {
-								throw new Exception("Formato de precio inválido: " + columnas[3]);
-							}
-							
-							// Validar que el stock sea un número positivo
-							int stock = Integer.parseInt(columnas[4].trim());
-							if (stock < 0) {
-								throw new Exception("El stock no puede ser negativo: " + stock);
-							}
-						} catch (NumberFormatException e) {
-							throw new Exception("Error en formato numérico: " + e.getMessage());
-						}
-					}
-					
-				} catch (Exception e) {
-					// Registrar error en archivo log
-					log.write("Error en línea " + lineaNumero + ": " + e.getMessage());
-					log.newLine();
-					log.write("Contenido: " + lineaActual);
-					log.newLine();
-					log.write("--------------------------------------------------");
-					log.newLine();
-					hayErrores = true;
+		final String rutaLog = "errores.log";
+
+		try {
+			System.out.println("\n=== AÑADIR PRODUCTOS DEL CSV ===");
+			System.out.println("1. Todo o nada (no se inserta nada si hay errores)");
+			System.out.println("2. Por lotes (se descartan las líneas con errores, reanudable)");
+			System.out.print("Modo de importación [1]: ");
+			String modoStr = scanner.nextLine();
+			CsvImporter.Modo modo = modoStr.trim().equals("2") ? CsvImporter.Modo.POR_LOTES : CsvImporter.Modo.TODO_O_NADA;
+
+			System.out.print("Tamaño de lote [" + CsvImporter.TAMANO_LOTE_POR_DEFECTO + "]: ");
+			String loteStr = scanner.nextLine();
+			int tamanoLote = loteStr.trim().isEmpty() ? CsvImporter.TAMANO_LOTE_POR_DEFECTO : Integer.parseInt(loteStr.trim());
+
+			boolean reanudar = false;
+			if (modo == CsvImporter.Modo.POR_LOTES) {
+				CsvImporter.PuntoControl puntoControl;
+				try (Connection conn = pool.getConnection()) {
+					puntoControl = CsvImporter.buscarPuntoControl(conn, rutaCSV);
+				} catch (SQLException e) {
+					System.out.println("Error al consultar la importación anterior: " + e.getMessage());
+					return;
+				}
+				if (puntoControl != null && puntoControl.isVigente()) {
+					System.out.print("Hay una importación anterior de este archivo confirmada hasta la línea "
+						+ puntoControl.getLinea() + ". ¿Reanudarla? (s/n): ");
+					reanudar = scanner.nextLine().trim().equalsIgnoreCase("s");
+				} else if (puntoControl != null) {
+					System.out.println("El archivo ha cambiado desde la importación interrumpida: se importará desde el principio.");
 				}
 			}
-			
-			if (!hayErrores) {
-				System.out.println("El archivo CSV es correcto. Añadiendo productos a la base de datos...");
-				
-				try {
-					// Segunda pasada: inserción en la base de datos
-					try (BufferedReader br2 = new BufferedReader(new FileReader(rutaCSV))) {
-						// Saltar la primera línea (encabezados)
-						br2.readLine();
-						
-						String sql = "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
-						PreparedStatement ps = conn.prepareStatement(sql);
-						
-						while ((lineaActual = br2.readLine()) != null) {
-							String[] columnas = lineaActual.split(";");
-							
-							ps.setInt(1, Integer.parseInt(columnas[0].trim())); //id_producto
-							ps.setString(2, columnas[1].trim()); // nombre
-							ps.setString(3, columnas[2].trim()); // categoria
-							ps.setString(4, columnas[3].trim()); // precio
-							ps.setInt(5, Integer.parseInt(columnas[4].trim())); // stock
-							
-							ps.executeUpdate();
-						}
-						
-						// Si llegamos aquí sin errores, confirmamos la transacción
-						conn.commit();
-						System.out.println("Productos añadidos correctamente.");
+
+			ledger.esperarPersistencia();
+			try (Connection conn = pool.getConnection()) {
+				CsvImporter importador = new CsvImporter(modo, tamanoLote);
+				CsvImporter.Resultado resultado = importador.importar(conn, rutaCSV, rutaLog, reanudar);
+
+				if (resultado.isConfirmado()) {
+					System.out.println("Productos añadidos correctamente: " + resultado.getFilasInsertadas());
+					if (resultado.getFilasConError() > 0) {
+						System.out.println("Líneas descartadas por errores: " + resultado.getFilasConError()
+							+ ". Revise el archivo de log para más detalles.");
 					}
-				} catch (Exception e) {
-					// Si hay cualquier error durante la inserción, hacemos rollback
-					conn.rollback();
-					System.out.println("Error durante la importación. Se ha revertido la operación.");
-					System.out.println("Error: " + e.getMessage());
-					
-					// Registrar el error en el log
-					log.write("Error durante la importación: " + e.getMessage());
-					log.newLine();
-					log.write("Se ha realizado rollback de la transacción.");
-					log.newLine();
-					log.write("--------------------------------------------------");
-					log.newLine();
+				} else {
+					System.out.println("Se encontraron errores en el archivo CSV. Revise el archivo de log para más detalles.");
 				}
-			} else {
-				System.out.println("Se encontraron errores en el archivo CSV. Revise el archivo de log para más detalles.");
+				System.out.printf("Filas procesadas: %d en %.1f ms (%.0f filas/s, %d lotes)%n",
+					resultado.getFilasLeidas(), resultado.getDuracionMs(),
+					resultado.getFilasPorSegundo(), resultado.getLotes());
+			} catch (SQLException e) {
+				System.out.println("Error durante la importación. Se ha revertido la operación.");
+				System.out.println("Error: " + e.getMessage());
+			} finally {
+				// La importación puede haber confirmado lotes aunque termine con error
+				recargarCatalogo();
 			}
-			
+		} catch (NumberFormatException e) {
+			System.out.println("Error: El tamaño de lote debe ser un número válido.");
+		} catch (IllegalArgumentException e) {
+			System.out.println("Error: " + e.getMessage());
 		} catch (IOException e) {
 			System.out.println("Error al leer el archivo CSV o escribir en el log: " + e.getMessage());
-		} catch (SQLException e) {
-			System.out.println("Error al conectar con la base de datos: " + e.getMessage());
 		}
 	}
 
 	/**
      * Exporta todo el inventario a un archivo XML.
      * Solicita al usuario la ruta del archivo de salida y guarda todos los productos
-     * en formato XML.
+     * en formato XML. Los productos se escriben en streaming, sin cargar el
+     * inventario completo en memoria.
      *
      * @param scanner Scanner para leer la entrada del usuario
      */
@@ -740,9 +1031,9 @@ public class Main {
 		System.out.print("Introduzca la ruta del archivo XML de salida: ");
 		String rutaXML = scanner.nextLine();
 
-		try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-			XmlManager.exportToXml(conn, rutaXML);
-			System.out.println("Inventario exportado correctamente a XML.");
+		try (Connection conn = pool.getConnection()) {
+			int total = XmlManager.exportToXmlStreaming(conn, rutaXML);
+			System.out.println("Inventario exportado correctamente a XML (" + total + " productos).");
 		} catch (Exception e) {
 			System.out.println("Error al exportar el inventario a XML: " + e.getMessage());
 		}
@@ -750,8 +1041,13 @@ public class Main {
 
 	/**
      * Importa el inventario desde un archivo XML.
-     * Solicita al usuario la ruta del archivo XML y actualiza la base de datos
-     * con los productos contenidos en el archivo.
+     * Solicita al usuario la ruta del archivo XML y el modo de importación:
+     * - Fusionar: inserta los productos nuevos y actualiza los modificados en una
+     *   única transacción, sin vaciar la tabla de productos
+     * - Reemplazar: elimina todos los productos actuales, con sus movimientos y su
+     *   resumen de ventas, y los sustituye por los del archivo, en una sola
+     *   transacción o confirmando cada N productos
+     * En ambos casos el archivo se valida e importa en streaming.
      *
      * @param scanner Scanner para leer la entrada del usuario
      */
@@ -760,16 +1056,59 @@ public class Main {
 		System.out.print("Introduzca la ruta del archivo XML a importar: ");
 		String rutaXML = scanner.nextLine();
 
-		System.out.println("¡ADVERTENCIA! Esta operación eliminará todos los productos actuales.");
+		// Los movimientos pendientes deben guardarse antes de sustituir productos
+		ledger.esperarPersistencia();
+
+		System.out.println("1. Fusionar con el inventario actual");
+		System.out.println("2. Reemplazar todo el inventario");
+		System.out.print("Modo de importación [1]: ");
+		String modo = scanner.nextLine();
+
+		if (!modo.trim().equals("2")) {
+			System.out.print("¿Eliminar los productos que no aparecen en el XML? (s/n): ");
+			boolean eliminarAusentes = scanner.nextLine().toLowerCase().equals("s");
+
+			try (Connection conn = pool.getConnection()) {
+				XmlManager.ResultadoFusion resultado = XmlManager.mergeFromXml(conn, rutaXML, XML_TAMANO_LOTE, eliminarAusentes);
+				System.out.println("Inventario fusionado correctamente desde XML (" + resultado.getLeidos() + " productos leídos).");
+				System.out.println("Insertados: " + resultado.getInsertados());
+				System.out.println("Actualizados: " + resultado.getActualizados());
+				System.out.println("Sin cambios: " + resultado.getSinCambios());
+				if (eliminarAusentes) {
+					System.out.println("Eliminados: " + resultado.getEliminados());
+					if (resultado.getConservados() > 0) {
+						System.out.println("Conservados por tener movimientos de stock: " + resultado.getConservados());
+					}
+				}
+			} catch (Exception e) {
+				System.out.println("Error al importar el inventario desde XML: " + e.getMessage());
+			} finally {
+				recargarCatalogo();
+			}
+			return;
+		}
+
+		System.out.println("¡ADVERTENCIA! Esta operación eliminará todos los productos actuales y su histórico de movimientos.");
 		System.out.print("¿Está seguro de que desea continuar? (s/n): ");
 		String confirmacion = scanner.nextLine();
 
 		if (confirmacion.toLowerCase().equals("s")) {
-			try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-				XmlManager.importFromXml(conn, rutaXML);
-				System.out.println("Inventario importado correctamente desde XML.");
-			} catch (Exception e) {
-				System.out.println("Error al importar el inventario desde XML: " + e.getMessage());
+			try {
+				System.out.print("Confirmar cada N productos (0 = una sola transacción) [0]: ");
+				String filasStr = scanner.nextLine();
+				int filasPorTransaccion = filasStr.trim().isEmpty() ? 0 : Integer.parseInt(filasStr.trim());
+
+				try (Connection conn = pool.getConnection()) {
+					int total = XmlManager.importFromXmlStreaming(conn, rutaXML, XML_TAMANO_LOTE, filasPorTransaccion);
+					System.out.println("Inventario importado correctamente desde XML (" + total + " productos).");
+				} catch (Exception e) {
+					System.out.println("Error al importar el inventario desde XML: " + e.getMessage());
+				} finally {
+					// Con confirmaciones cada N productos puede haberse importado una parte
+					recargarCatalogo();
+				}
+			} catch (NumberFormatException e) {
+				System.out.println("Error: Debe introducir un número válido.");
 			}
 		} else {
 			System.out.println("Operación cancelada.");
@@ -794,8 +1133,8 @@ public class Main {
                 return;
             }
 
-            try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-                StockManager.consultarProductosMasVendidos(conn, limit);
+            try {
+                StockManager.imprimirProductosMasVendidos(limit, cacheInformes.productosMasVendidos(limit));
             } catch (SQLException e) {
                 System.out.println("Error al consultar los productos más vendidos: " + e.getMessage());
             }
@@ -810,8 +1149,8 @@ public class Main {
      * el valor total del stock (precio * cantidad).
      */
     private static void verValorStockPorCategoria() {
-        try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-            StockManager.consultarValorStockPorCategoria(conn);
+        try {
+            StockManager.imprimirValorStockPorCategoria(cacheInformes.valorStockPorCategoria());
         } catch (SQLException e) {
             System.out.println("Error al consultar el valor del stock por categoría: " + e.getMessage());
         }
@@ -819,7 +1158,8 @@ public class Main {
 
 	/**
      * Muestra el histórico de movimientos de stock dentro de un rango de fechas.
-     * Solicita al usuario las fechas de inicio y fin del período a consultar.
+     * Solicita al usuario las fechas de inicio y fin del período a consultar y muestra
+     * los movimientos de página en página, preguntando al usuario si quiere ver más.
      *
      * @param scanner Scanner para leer la entrada del usuario
      */
@@ -834,8 +1174,27 @@ public class Main {
             System.out.print("Fecha de fin: ");
             String fechaFin = scanner.nextLine();
 
-            try (Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD)) {
-                StockManager.consultarMovimientosPorFecha(conn, fechaInicio, fechaFin);
+            try {
+                // Se muestran los movimientos de página en página, empezando por los más recientes
+                StockManager.imprimirCabeceraMovimientosPorFecha(fechaInicio, fechaFin);
+                CursorFecha cursor = null;
+                do {
+                    Pagina<MovimientoProducto, CursorFecha> pagina =
+                        cacheInformes.paginaMovimientosPorFecha(fechaInicio, fechaFin, cursor, MOVIMIENTOS_POR_PAGINA);
+                    for (MovimientoProducto movimiento : pagina.getElementos()) {
+                        StockManager.imprimirMovimientoProducto(movimiento);
+                    }
+                    cursor = pagina.getSiguiente();
+                    if (cursor != null) {
+                        System.out.print("¿Ver más movimientos? (S/N): ");
+                        if (!scanner.nextLine().equalsIgnoreCase("S")) {
+                            break;
+                        }
+                    }
+                } while (cursor != null);
+                try (Connection conn = pool.getConnection()) {
+                    StockManager.avisarMovimientosArchivados(conn, fechaInicio);
+                }
             } catch (SQLException e) {
                 System.out.println("Error al consultar los movimientos: " + e.getMessage());
             }
@@ -845,17 +1204,98 @@ public class Main {
         }
     }//verMovimientosPorFecha
 
+	/**
+     * Muestra a la vez los cuatro informes (histórico de un producto, movimientos por
+     * fecha, más vendidos y valor del stock por categoría). Las consultas se lanzan en
+     * paralelo, así que el panel tarda lo que el informe más lento y no la suma de todos.
+     *
+     * @param scanner Scanner para leer la entrada del usuario
+     */
+	private static void verPanelInformes(Scanner scanner) {
+		try {
+			System.out.println("\n=== PANEL DE INFORMES ===");
+			System.out.print("ID del producto para el histórico: ");
+			int idProducto = Integer.parseInt(scanner.nextLine());
+			System.out.print("Fecha de inicio (YYYY-MM-DD): ");
+			String fechaInicio = scanner.nextLine();
+			System.out.print("Fecha de fin (YYYY-MM-DD): ");
+			String fechaFin = scanner.nextLine();
+			System.out.print("Número de productos más vendidos: ");
+			int limit = Integer.parseInt(scanner.nextLine());
+
+			long inicio = System.nanoTime();
+			CompletableFuture<Pagina<Movimiento, Integer>> historico = informes.movimientos(idProducto, null, MOVIMIENTOS_POR_PAGINA);
+			CompletableFuture<Pagina<MovimientoProducto, CursorFecha>> porFecha =
+				informes.movimientosPorFecha(fechaInicio, fechaFin, null, MOVIMIENTOS_POR_PAGINA);
+			CompletableFuture<List<ProductoVendido>> masVendidos = informes.productosMasVendidos(limit);
+			CompletableFuture<List<ValorCategoria>> categorias = informes.valorStockPorCategoria();
+			CompletableFuture.allOf(historico, porFecha, masVendidos, categorias).exceptionally(e -> null).join();
+			double ms = (System.nanoTime() - inicio) / 1_000_000.0;
+
+			Pagina<Movimiento, Integer> pagina = resultadoInforme(historico, "el histórico del producto");
+			if (pagina != null) {
+				List<Movimiento> movimientos = pagina.getElementos();
+				System.out.println("\nÚltimos movimientos del producto " + idProducto + ": " + movimientos.size()
+					+ (pagina.hayMas() ? " (hay más en el histórico, opción 8)" : ""));
+				if (!movimientos.isEmpty()) {
+					System.out.println("Último movimiento: " + movimientos.get(0).getTipoMovimiento() + " de "
+						+ movimientos.get(0).getCantidad() + " (" + movimientos.get(0).getFechaMovimiento() + ")");
+				}
+			}
+			Pagina<MovimientoProducto, CursorFecha> paginaFecha = resultadoInforme(porFecha, "los movimientos por fecha");
+			if (paginaFecha != null) {
+				System.out.println("Últimos movimientos entre " + fechaInicio + " y " + fechaFin + ": "
+					+ paginaFecha.getElementos().size() + (paginaFecha.hayMas() ? " (hay más, opción 14)" : ""));
+			}
+			List<ProductoVendido> vendidos = resultadoInforme(masVendidos, "los productos más vendidos");
+			if (vendidos != null) {
+				System.out.println("\n--- TOP " + limit + " PRODUCTOS MÁS VENDIDOS ---");
+				for (ProductoVendido producto : vendidos) {
+					System.out.println(producto.getIdProducto() + " - " + producto.getNombre() + ": " + producto.getTotalVendido());
+				}
+			}
+			List<ValorCategoria> valores = resultadoInforme(categorias, "el valor del stock por categoría");
+			if (valores != null) {
+				System.out.println("\n--- VALOR DEL STOCK POR CATEGORÍA ---");
+				for (ValorCategoria categoria : valores) {
+					System.out.println(categoria.getCategoria() + ": " + categoria.getTotalProductos() + " productos, "
+						+ categoria.getTotalStock() + " unidades, " + categoria.getValorStock().toPlainString() + " €");
+				}
+			}
+			System.out.printf("%nInformes obtenidos en %.1f ms%n", ms);
+		} catch (NumberFormatException e) {
+			System.out.println("Error: Debe introducir un número válido.");
+		}
+	}
+
+	/**
+	 * Devuelve el resultado de un informe ya terminado, o null tras mostrar el error si falló.
+	 */
+	private static <T> T resultadoInforme(CompletableFuture<T> futuro, String descripcion) {
+		try {
+			return futuro.join();
+		} catch (CompletionException e) {
+			Throwable causa = e.getCause() != null ? e.getCause() : e;
+			System.out.println("Error al consultar " + descripcion + ": " + causa.getMessage());
+			return null;
+		}
+	}
+
 	private static void ejecutarExplain(Connection conn, String sql) {
+		if (!almacen.admiteExplain()) {
+			return;
+		}
 		try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql)) {
 			ResultSet rs = ps.executeQuery();
 			
 			System.out.println("\n📊 PLAN DE EJECUCIÓN (EXPLAIN):");
 			while (rs.next()) {
 				System.out.printf(
-					"id=%s | select_type=%s | table=%s | type=%s | possible_keys=%s | key=%s | rows=%s | Extra=%s\n",
+					"id=%s | select_type=%s | table=%s | partitions=%s | type=%s | possible_keys=%s | key=%s | rows=%s | Extra=%s\n",
 					rs.getString("id"),
 					rs.getString("select_type"),
 					rs.getString("table"),
+					rs.getString("partitions"),
 					rs.getString("type"),
 					rs.getString("possible_keys"),
 					rs.getString("key"),
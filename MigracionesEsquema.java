@@ -0,0 +1,293 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Migraciones versionadas del esquema de la base de datos.
+ * Cada migración tiene un número de versión y, al aplicarse, se anota en la tabla
+ * version_esquema. Al arrancar se aplican en orden las que aún no constan, por lo
+ * que el esquema de una base de datos existente se pone al día sin intervención.
+ *
+ * Las sentencias DDL de MySQL confirman la transacción implícitamente, así que cada
+ * paso comprueba antes si ya está hecho (por ejemplo, si el índice ya existe): una
+ * migración interrumpida a medias se puede volver a ejecutar sin errores.
+ */
+public class MigracionesEsquema {
+    private static final String CREATE_VERSION_TABLE = """
+        CREATE TABLE IF NOT EXISTS version_esquema (
+            version INT PRIMARY KEY,
+            descripcion VARCHAR(200) NOT NULL,
+            fecha_aplicacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    // Unidades vendidas y recibidas de cada producto por día (migración 4)
+    static final String CREATE_VENTAS_DIARIAS = """
+        CREATE TABLE IF NOT EXISTS ventas_diarias (
+            id_producto INT NOT NULL,
+            fecha DATE NOT NULL,
+            unidades_salida BIGINT NOT NULL DEFAULT 0,
+            unidades_entrada BIGINT NOT NULL DEFAULT 0,
+            PRIMARY KEY (id_producto, fecha)
+        )
+    """;
+
+    // Bloqueo con nombre de MySQL para que dos instancias no migren a la vez
+    private static final String NOMBRE_BLOQUEO = "aad1_2_migraciones";
+    private static final int ESPERA_BLOQUEO_S = 60;
+
+    /**
+     * Paso de una migración.
+     */
+    private interface Paso {
+        void aplicar(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Migración: versión, descripción y pasos a ejecutar en orden.
+     */
+    private static final class Migracion {
+        final int version;
+        final String descripcion;
+        final Paso[] pasos;
+
+        Migracion(int version, String descripcion, Paso... pasos) {
+            this.version = version;
+            this.descripcion = descripcion;
+            this.pasos = pasos;
+        }
+    }
+
+    // Lista de migraciones en orden de versión. Las ya publicadas no deben modificarse:
+    // los cambios nuevos se añaden como una versión más.
+    private static final Migracion[] MIGRACIONES = {
+        new Migracion(1, "Índices de productos para búsquedas por nombre, stock bajo y agrupación por categoría",
+            conn -> crearIndice(conn, "productos", "idx_productos_nombre", "nombre"),
+            conn -> crearIndice(conn, "productos", "idx_productos_stock", "stock"),
+            // Incluye stock para sumar el stock por categoría sin leer las filas
+            conn -> crearIndice(conn, "productos", "idx_productos_categoria", "categoria, stock")),
+        new Migracion(2, "Índices de movimientos_stock para histórico por producto, rangos de fechas y ventas",
+            // Sustituye al índice que MySQL crea para la clave ajena (que lo elimina al existir
+            // otro utilizable) y mantiene la paginación del histórico por id_movimiento
+            conn -> crearIndice(conn, "movimientos_stock", "idx_mov_producto_id", "id_producto, id_movimiento"),
+            conn -> crearIndice(conn, "movimientos_stock", "idx_mov_producto_fecha", "id_producto, fecha_movimiento"),
+            conn -> crearIndice(conn, "movimientos_stock", "idx_mov_fecha", "fecha_movimiento"),
+            // Incluye cantidad para calcular el total vendido por producto solo con el índice
+            conn -> crearIndice(conn, "movimientos_stock", "idx_mov_tipo_producto", "tipo_movimiento, id_producto, cantidad")),
+        new Migracion(3, "Columna precio de VARCHAR(20) a DECIMAL(12,2)",
+            MigracionesEsquema::convertirPrecioADecimal),
+        new Migracion(4, "Resumen diario de ventas por producto (ventas_diarias)",
+            conn -> ejecutar(conn, CREATE_VENTAS_DIARIAS),
+            // Rellena el resumen con el histórico existente; repetirlo da el mismo resultado
+            conn -> StockManager.reconstruirResumenVentas(conn)),
+        new Migracion(5, "Particionado mensual de movimientos_stock y registro de meses archivados",
+            ParticionesMovimientos::particionar),
+        new Migracion(6, "Secuencia de ids de productos (tabla secuencias), a partir del mayor id actual",
+            GeneradorIds::inicializar),
+        new Migracion(7, "Puntos de control de las importaciones CSV por lotes (importaciones_csv)",
+            conn -> ejecutar(conn, CsvImporter.CREATE_IMPORTACIONES_TABLE)),
+    };
+
+    // Filas que se convierten en cada transacción al migrar los precios
+    private static final int FILAS_POR_LOTE = 1000;
+
+    /**
+     * Aplica en orden las migraciones que aún no constan en version_esquema.
+     * Las tablas productos y movimientos_stock deben existir.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Número de migraciones aplicadas
+     * @throws SQLException Si falla alguna migración (las anteriores quedan aplicadas)
+     */
+    public static int aplicarPendientes(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(CREATE_VERSION_TABLE)) {
+            ps.executeUpdate();
+        }
+
+        bloquear(conn);
+        try {
+            int actual = getVersion(conn);
+            int aplicadas = 0;
+            for (Migracion migracion : MIGRACIONES) {
+                if (migracion.version <= actual) {
+                    continue;
+                }
+                for (Paso paso : migracion.pasos) {
+                    paso.aplicar(conn);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO version_esquema (version, descripcion) VALUES (?, ?)")) {
+                    ps.setInt(1, migracion.version);
+                    ps.setString(2, migracion.descripcion);
+                    ps.executeUpdate();
+                }
+                System.out.println("Migración " + migracion.version + " aplicada: " + migracion.descripcion);
+                aplicadas++;
+            }
+            return aplicadas;
+        } finally {
+            desbloquear(conn);
+        }
+    }
+
+    /**
+     * @param conn Conexión a la base de datos
+     * @return Última versión aplicada del esquema, o 0 si no se ha aplicado ninguna
+     * @throws SQLException Si hay un error al consultar la tabla version_esquema
+     */
+    public static int getVersion(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM version_esquema");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @return Versión del esquema que espera esta versión de la aplicación
+     */
+    public static int getVersionActual() {
+        return MIGRACIONES[MIGRACIONES.length - 1].version;
+    }
+
+    /**
+     * Crea un índice si la tabla aún no tiene uno con ese nombre
+     * (MySQL no admite CREATE INDEX IF NOT EXISTS).
+     */
+    private static void crearIndice(Connection conn, String tabla, String nombre, String columnas) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.statistics"
+            + " WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ? LIMIT 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, tabla);
+            ps.setString(2, nombre);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "CREATE INDEX " + nombre + " ON " + tabla + " (" + columnas + ")")) {
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Convierte la columna precio a DECIMAL(12,2) sin bloquear la tabla mientras se
+     * convierten los datos: se añade una columna nueva, se rellena por lotes desde el
+     * texto normalizado (admite "12,50€") y al final se sustituye una por otra.
+     * Cada fase comprueba el estado de las columnas, así que si se interrumpe se
+     * reanuda desde donde quedó.
+     *
+     * @throws SQLException Si algún precio guardado no tiene un formato válido; se indica
+     *                      el producto para corregirlo y volver a arrancar
+     */
+    private static void convertirPrecioADecimal(Connection conn) throws SQLException {
+        String tipoPrecio = tipoColumna(conn, "productos", "precio");
+        String tipoNuevo = tipoColumna(conn, "productos", "precio_decimal");
+        if ("decimal".equals(tipoPrecio)) {
+            return;
+        }
+        if (tipoPrecio != null) {
+            if (tipoNuevo == null) {
+                ejecutar(conn, "ALTER TABLE productos ADD COLUMN precio_decimal DECIMAL(12,2) NULL");
+            }
+            rellenarPrecioDecimal(conn);
+            ejecutar(conn, "ALTER TABLE productos DROP COLUMN precio");
+        }
+        // Si la migración se interrumpió tras borrar la columna antigua, solo falta este paso
+        ejecutar(conn, "ALTER TABLE productos CHANGE COLUMN precio_decimal precio DECIMAL(12,2) NOT NULL AFTER categoria");
+    }
+
+    /**
+     * Rellena precio_decimal de las filas que aún no lo tienen, recorriéndolas por id
+     * en lotes pequeños para no mantener bloqueos largos sobre la tabla.
+     */
+    private static void rellenarPrecioDecimal(Connection conn) throws SQLException {
+        String select = "SELECT id_producto, precio FROM productos"
+            + " WHERE precio_decimal IS NULL AND id_producto > ? ORDER BY id_producto LIMIT ?";
+        String update = "UPDATE productos SET precio_decimal = ? WHERE id_producto = ?";
+        int ultimoId = Integer.MIN_VALUE;
+        long convertidos = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement psSelect = conn.prepareStatement(select);
+             PreparedStatement psUpdate = conn.prepareStatement(update)) {
+            while (true) {
+                int enLote = 0;
+                psSelect.setInt(1, ultimoId);
+                psSelect.setInt(2, FILAS_POR_LOTE);
+                try (ResultSet rs = psSelect.executeQuery()) {
+                    while (rs.next()) {
+                        ultimoId = rs.getInt(1);
+                        String texto = rs.getString(2);
+                        try {
+                            psUpdate.setBigDecimal(1, Precios.parsear(texto));
+                        } catch (NumberFormatException e) {
+                            throw new SQLException("No se puede convertir el precio del producto " + ultimoId
+                                + " ('" + texto + "'): corríjalo y vuelva a iniciar la aplicación");
+                        }
+                        psUpdate.setInt(2, ultimoId);
+                        psUpdate.addBatch();
+                        enLote++;
+                    }
+                }
+                if (enLote == 0) {
+                    break;
+                }
+                psUpdate.executeBatch();
+                conn.commit();
+                convertidos += enLote;
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        if (convertidos > 0) {
+            System.out.println("Precios convertidos a DECIMAL: " + convertidos);
+        }
+    }
+
+    /**
+     * @return Tipo de la columna en minúsculas (por ejemplo "varchar"), o null si no existe
+     */
+    private static String tipoColumna(Connection conn, String tabla, String columna) throws SQLException {
+        String sql = "SELECT data_type FROM information_schema.columns"
+            + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, tabla);
+            ps.setString(2, columna);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1).toLowerCase(Locale.ROOT) : null;
+            }
+        }
+    }
+
+    private static void ejecutar(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.executeUpdate();
+        }
+    }
+
+    private static void bloquear(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, NOMBRE_BLOQUEO);
+            ps.setInt(2, ESPERA_BLOQUEO_S);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("No se pudo obtener el bloqueo de migraciones: otra instancia está migrando el esquema");
+                }
+            }
+        }
+    }
+
+    private static void desbloquear(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, NOMBRE_BLOQUEO);
+            ps.executeQuery().close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import java.sql.Timestamp;
+
+/**
+ * Movimiento de stock (una fila de la tabla movimientos_stock).
+ */
+public final class Movimiento {
+    private final int idMovimiento;
+    private final int idProducto;
+    private final String tipoMovimiento;
+    private final int cantidad;
+    private final Timestamp fechaMovimiento;
+
+    public Movimiento(int idMovimiento, int idProducto, String tipoMovimiento, int cantidad, Timestamp fechaMovimiento) {
+        this.idMovimiento = idMovimiento;
+        this.idProducto = idProducto;
+        this.tipoMovimiento = tipoMovimiento;
+        this.cantidad = cantidad;
+        this.fechaMovimiento = fechaMovimiento;
+    }
+
+    public int getIdMovimiento() { return idMovimiento; }
+    public int getIdProducto() { return idProducto; }
+    public String getTipoMovimiento() { return tipoMovimiento; }
+    public int getCantidad() { return cantidad; }
+    public Timestamp getFechaMovimiento() { return fechaMovimiento; }
+
+    @Override
+    public String toString() {
+        return "Movimiento[id=" + idMovimiento + ", producto=" + idProducto + ", tipo=" + tipoMovimiento
+            + ", cantidad=" + cantidad + ", fecha=" + fechaMovimiento + "]";
+    }
+}
@@ -0,0 +1,37 @@
+import java.sql.Timestamp;
+
+/**
+ * Fila del histórico de movimientos por fecha: el movimiento con el nombre y la
+ * categoría de su producto.
+ */
+public final class MovimientoProducto {
+    private final int idMovimiento;
+    private final String nombre;
+    private final String categoria;
+    private final String tipoMovimiento;
+    private final int cantidad;
+    private final Timestamp fechaMovimiento;
+
+    public MovimientoProducto(int idMovimiento, String nombre, String categoria, String tipoMovimiento,
+                              int cantidad, Timestamp fechaMovimiento) {
+        this.idMovimiento = idMovimiento;
+        this.nombre = nombre;
+        this.categoria = categoria;
+        this.tipoMovimiento = tipoMovimiento;
+        this.cantidad = cantidad;
+        this.fechaMovimiento = fechaMovimiento;
+    }
+
+    public int getIdMovimiento() { return idMovimiento; }
+    public String getNombre() { return nombre; }
+    public String getCategoria() { return categoria; }
+    public String getTipoMovimiento() { return tipoMovimiento; }
+    public int getCantidad() { return cantidad; }
+    public Timestamp getFechaMovimiento() { return fechaMovimiento; }
+
+    @Override
+    public String toString() {
+        return "MovimientoProducto[id=" + idMovimiento + ", producto=" + nombre + ", tipo=" + tipoMovimiento
+            + ", cantidad=" + cantidad + ", fecha=" + fechaMovimiento + "]";
+    }
+}
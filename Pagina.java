@@ -0,0 +1,34 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Página de resultados de una consulta paginada por clave (keyset).
+ * En lugar de un número de página guarda el cursor con el que se pide la
+ * siguiente: la clave de la última fila devuelta (su id, o su fecha e id).
+ * Así cada página se lee con WHERE clave > cursor (o < cursor) y el coste no
+ * depende de cuántas filas se hayan recorrido antes ni del tamaño de la tabla.
+ *
+ * @param <T> Tipo de las filas
+ * @param <C> Tipo del cursor
+ */
+public final class Pagina<T, C> {
+    private final List<T> elementos;
+    private final C siguiente;
+
+    public Pagina(List<T> elementos, C siguiente) {
+        this.elementos = Collections.unmodifiableList(elementos);
+        this.siguiente = siguiente;
+    }
+
+    /**
+     * @return Filas de esta página, en el orden de la consulta
+     */
+    public List<T> getElementos() { return elementos; }
+
+    /**
+     * @return Cursor para pedir la página siguiente, o null si es la última
+     */
+    public C getSiguiente() { return siguiente; }
+
+    public boolean hayMas() { return siguiente != null; }
+}
@@ -0,0 +1,375 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Particionado mensual de la tabla movimientos_stock y política de retención.
+ *
+ * La tabla se divide por rangos de fecha_movimiento, con una partición por mes
+ * (p_AAAAMM), una primera (p_antiguo) para las fechas anteriores al primer mes con
+ * movimientos (por ejemplo, los movimientos sin fecha, que reciben FECHA_DESCONOCIDA)
+ * y una última (p_futuro) para las fechas posteriores. MySQL descarta las
+ * particiones que no pueden contener filas del rango pedido, así que las consultas
+ * por fechas solo leen los meses afectados. Al arrancar se crean por adelantado las
+ * particiones de los próximos meses.
+ *
+ * Los meses más antiguos que el periodo de retención se archivan: sus movimientos se
+ * guardan en un CSV comprimido con gzip (uno por mes) y la partición se elimina, lo
+ * que es instantáneo aunque tenga millones de filas. Los archivos generados quedan
+ * anotados en la tabla movimientos_archivados. El resumen ventas_diarias conserva
+ * las ventas de los meses archivados.
+ *
+ * MySQL no admite claves ajenas en tablas particionadas: que cada movimiento sea de un
+ * producto existente lo garantizan las operaciones de stock, que comprueban el
+ * producto en la misma transacción.
+ */
+public class ParticionesMovimientos {
+    // Meses por delante del actual para los que siempre hay partición creada
+    public static final int MESES_ADELANTADOS = 3;
+    public static final int MESES_RETENCION_POR_DEFECTO = 24;
+    public static final String DIRECTORIO_ARCHIVO_POR_DEFECTO = "archivo_movimientos";
+
+    // Fecha que se asigna a los movimientos sin fecha: la clave primaria incluye la
+    // fecha, que no puede ser nula (es un día después del mínimo de TIMESTAMP para
+    // que sea válida en cualquier zona horaria)
+    static final String FECHA_DESCONOCIDA = "1970-01-02 00:00:00";
+
+    private static final String TABLA = "movimientos_stock";
+    private static final String PARTICION_ANTIGUO = "p_antiguo";
+    private static final String PARTICION_FUTURO = "p_futuro";
+    private static final DateTimeFormatter FORMATO_NOMBRE = DateTimeFormatter.ofPattern("yyyyMM");
+
+    static final String CREATE_ARCHIVADOS_TABLE = """
+        CREATE TABLE IF NOT EXISTS movimientos_archivados (
+            mes DATE PRIMARY KEY,
+            ruta VARCHAR(500) NOT NULL,
+            filas BIGINT NOT NULL,
+            fecha_archivado TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    /**
+     * Partición mensual de movimientos_stock.
+     */
+    public static final class Particion {
+        private final String nombre;
+        private final YearMonth mes;
+        private final long filasAproximadas;
+
+        Particion(String nombre, YearMonth mes, long filasAproximadas) {
+            this.nombre = nombre;
+            this.mes = mes;
+            this.filasAproximadas = filasAproximadas;
+        }
+
+        public String getNombre() { return nombre; }
+        /** @return Mes de la partición, o null en las particiones de fechas antiguas y futuras */
+        public YearMonth getMes() { return mes; }
+        /** @return Número de filas estimado por MySQL (information_schema) */
+        public long getFilasAproximadas() { return filasAproximadas; }
+    }
+
+    /**
+     * Mes archivado por aplicarRetencion.
+     */
+    public static final class MesArchivado {
+        private final YearMonth mes;
+        private final Path archivo;
+        private final long filas;
+
+        MesArchivado(YearMonth mes, Path archivo, long filas) {
+            this.mes = mes;
+            this.archivo = archivo;
+            this.filas = filas;
+        }
+
+        public YearMonth getMes() { return mes; }
+        public Path getArchivo() { return archivo; }
+        public long getFilas() { return filas; }
+    }
+
+    /**
+     * Convierte movimientos_stock en una tabla particionada por meses (paso de la
+     * migración de esquema 5). Cada fase comprueba si ya está hecha, por lo que se
+     * puede repetir si se interrumpe. La tabla se reconstruye una vez, con tantas
+     * particiones como meses haya en el histórico más los próximos meses. El histórico
+     * empieza en el movimiento más antiguo con fecha conocida: los que tienen
+     * FECHA_DESCONOCIDA van a la partición p_antiguo, que no se archiva.
+     *
+     * @param conn Conexión a la base de datos
+     * @throws SQLException Si falla alguna de las sentencias
+     */
+    static void particionar(Connection conn) throws SQLException {
+        for (String claveAjena : clavesAjenas(conn)) {
+            ejecutar(conn, "ALTER TABLE " + TABLA + " DROP FOREIGN KEY " + claveAjena);
+        }
+        if (!clavePrimariaIncluyeFecha(conn)) {
+            ejecutar(conn, "UPDATE " + TABLA + " SET fecha_movimiento = '" + FECHA_DESCONOCIDA
+                + "' WHERE fecha_movimiento IS NULL");
+            // La clave primaria debe incluir la columna por la que se particiona
+            ejecutar(conn, "ALTER TABLE " + TABLA
+                + " MODIFY fecha_movimiento TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                + " DROP PRIMARY KEY, ADD PRIMARY KEY (id_movimiento, fecha_movimiento)");
+        }
+        if (listar(conn).isEmpty()) {
+            YearMonth primero = YearMonth.now();
+            // Sin excluir FECHA_DESCONOCIDA se crearía una partición vacía por cada mes desde 1970
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT MIN(fecha_movimiento) FROM " + TABLA + " WHERE fecha_movimiento > '" + FECHA_DESCONOCIDA + "'");
+                 ResultSet rs = ps.executeQuery()) {
+                Timestamp minima = rs.next() ? rs.getTimestamp(1) : null;
+                if (minima != null && YearMonth.from(minima.toLocalDateTime()).isBefore(primero)) {
+                    primero = YearMonth.from(minima.toLocalDateTime());
+                }
+            }
+            StringBuilder sql = new StringBuilder("ALTER TABLE " + TABLA
+                + " PARTITION BY RANGE (UNIX_TIMESTAMP(fecha_movimiento)) (");
+            sql.append("PARTITION ").append(PARTICION_ANTIGUO)
+                .append(" VALUES LESS THAN (UNIX_TIMESTAMP('").append(primero.atDay(1)).append(" 00:00:00')), ");
+            anadirParticiones(sql, primero, YearMonth.now().plusMonths(MESES_ADELANTADOS));
+            sql.append(")");
+            ejecutar(conn, sql.toString());
+        }
+        ejecutar(conn, CREATE_ARCHIVADOS_TABLE);
+    }
+
+    /**
+     * Crea las particiones mensuales que falten hasta MESES_ADELANTADOS meses después
+     * del actual, dividiendo la partición de fechas futuras. Se llama al arrancar.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Número de particiones creadas
+     * @throws SQLException Si hay un error al reorganizar las particiones
+     */
+    public static int crearParticionesFuturas(Connection conn) throws SQLException {
+        YearMonth ultimo = null;
+        for (Particion particion : listar(conn)) {
+            if (particion.getMes() != null) {
+                ultimo = particion.getMes();
+            }
+        }
+        YearMonth hasta = YearMonth.now().plusMonths(MESES_ADELANTADOS);
+        if (ultimo == null || !ultimo.isBefore(hasta)) {
+            // Tabla sin particionar (migración pendiente) o particiones ya creadas
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("ALTER TABLE " + TABLA
+            + " REORGANIZE PARTITION " + PARTICION_FUTURO + " INTO (");
+        int creadas = anadirParticiones(sql, ultimo.plusMonths(1), hasta);
+        sql.append(")");
+        ejecutar(conn, sql.toString());
+        return creadas;
+    }
+
+    /**
+     * Archiva los meses anteriores al periodo de retención: escribe los movimientos de
+     * cada mes en directorio/movimientos_AAAA-MM.csv.gz y elimina su partición.
+     * Nunca se archivan el mes actual ni los futuros, ni la partición p_antiguo.
+     *
+     * @param conn Conexión a la base de datos
+     * @param mesesRetencion Meses que se conservan en la tabla, contando el actual
+     * @param directorio Directorio donde se guardan los archivos
+     * @return Meses archivados, del más antiguo al más reciente
+     * @throws SQLException Si hay un error de base de datos
+     * @throws IOException Si no se puede escribir algún archivo (ese mes y los
+     *                     siguientes se quedan en la tabla)
+     * @throws IllegalArgumentException Si mesesRetencion es menor que 1
+     */
+    public static List<MesArchivado> aplicarRetencion(Connection conn, int mesesRetencion, String directorio)
+            throws SQLException, IOException {
+        if (mesesRetencion < 1) {
+            throw new IllegalArgumentException("Debe conservarse al menos el mes actual");
+        }
+        YearMonth primeroConservado = YearMonth.now().minusMonths(mesesRetencion - 1);
+        Path carpeta = Paths.get(directorio);
+        Files.createDirectories(carpeta);
+
+        List<MesArchivado> archivados = new ArrayList<>();
+        for (Particion particion : listar(conn)) {
+            if (particion.getMes() == null || !particion.getMes().isBefore(primeroConservado)) {
+                continue;
+            }
+            Path archivo = carpeta.resolve("movimientos_" + particion.getMes() + ".csv.gz");
+            long filas = exportar(conn, particion.getNombre(), archivo);
+
+            // Se anota antes de borrar: si se interrumpe entre ambos pasos, al repetir
+            // la retención se vuelve a exportar el mes y se borra la partición
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "REPLACE INTO movimientos_archivados (mes, ruta, filas) VALUES (?, ?, ?)")) {
+                ps.setDate(1, Date.valueOf(particion.getMes().atDay(1)));
+                ps.setString(2, archivo.toAbsolutePath().toString());
+                ps.setLong(3, filas);
+                ps.executeUpdate();
+            }
+            ejecutar(conn, "ALTER TABLE " + TABLA + " DROP PARTITION " + particion.getNombre());
+            archivados.add(new MesArchivado(particion.getMes(), archivo, filas));
+        }
+        return archivados;
+    }
+
+    /**
+     * Devuelve el primer día cuyos movimientos siguen en la tabla, es decir, el día
+     * siguiente al último mes archivado.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Primer día conservado, o null si no se ha archivado ningún mes
+     * @throws SQLException Si hay un error al consultar la tabla movimientos_archivados
+     */
+    public static LocalDate getInicioConservado(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT MAX(mes) FROM movimientos_archivados");
+             ResultSet rs = ps.executeQuery()) {
+            Date mes = rs.next() ? rs.getDate(1) : null;
+            return mes == null ? null : mes.toLocalDate().plusMonths(1).withDayOfMonth(1);
+        }
+    }
+
+    /**
+     * Lista las particiones de movimientos_stock en orden.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Particiones, o una lista vacía si la tabla no está particionada
+     * @throws SQLException Si hay un error al consultar information_schema
+     */
+    public static List<Particion> listar(Connection conn) throws SQLException {
+        String sql = "SELECT partition_name, table_rows FROM information_schema.partitions"
+            + " WHERE table_schema = DATABASE() AND table_name = ? AND partition_name IS NOT NULL"
+            + " ORDER BY partition_ordinal_position";
+        List<Particion> particiones = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, TABLA);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String nombre = rs.getString(1);
+                    YearMonth mes = nombre.equals(PARTICION_FUTURO) || nombre.equals(PARTICION_ANTIGUO)
+                        ? null
+                        : YearMonth.parse(nombre.substring(2), FORMATO_NOMBRE);
+                    particiones.add(new Particion(nombre, mes, rs.getLong(2)));
+                }
+            }
+        }
+        return particiones;
+    }
+
+    /**
+     * Muestra por consola las particiones y los meses archivados.
+     *
+     * @param conn Conexión a la base de datos
+     * @throws SQLException Si hay un error al consultar las particiones
+     */
+    public static void imprimirParticiones(Connection conn) throws SQLException {
+        System.out.println("\n=== PARTICIONES DE MOVIMIENTOS ===");
+        for (Particion particion : listar(conn)) {
+            String mes = particion.getMes() != null ? particion.getMes().toString()
+                : particion.getNombre().equals(PARTICION_ANTIGUO) ? "antiguo" : "futuro";
+            System.out.printf("%-10s %-8s ~%d filas%n", particion.getNombre(), mes, particion.getFilasAproximadas());
+        }
+        System.out.println("------------------------");
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT mes, filas, ruta FROM movimientos_archivados ORDER BY mes");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                System.out.println("Archivado " + YearMonth.from(rs.getDate(1).toLocalDate()) + ": "
+                    + rs.getLong(2) + " movimientos en " + rs.getString(3));
+            }
+        }
+    }
+
+    /**
+     * Escribe los movimientos de una partición en un CSV comprimido. Se escribe en un
+     * archivo temporal que se renombra al terminar, para no dejar archivos a medias.
+     *
+     * @return Número de movimientos escritos
+     */
+    private static long exportar(Connection conn, String particion, Path archivo) throws SQLException, IOException {
+        Path temporal = Paths.get(archivo + ".tmp");
+        String sql = "SELECT id_movimiento, id_producto, tipo_movimiento, cantidad, fecha_movimiento FROM "
+            + TABLA + " PARTITION (" + particion + ") ORDER BY id_movimiento";
+        long filas = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                 new GZIPOutputStream(Files.newOutputStream(temporal)), StandardCharsets.UTF_8));
+             PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Con MySQL, Integer.MIN_VALUE hace que el driver entregue las filas una a una
+            ps.setFetchSize(Integer.MIN_VALUE);
+            out.write("id_movimiento,id_producto,tipo_movimiento,cantidad,fecha_movimiento\n");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.write(rs.getInt(1) + "," + rs.getInt(2) + "," + rs.getString(3) + ","
+                        + rs.getInt(4) + "," + rs.getString(5) + "\n");
+                    filas++;
+                }
+            }
+        } catch (SQLException | IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return filas;
+    }
+
+    /**
+     * Añade al ALTER TABLE las particiones de los meses desde..hasta y la de fechas futuras.
+     *
+     * @return Número de particiones mensuales añadidas
+     */
+    private static int anadirParticiones(StringBuilder sql, YearMonth desde, YearMonth hasta) {
+        int mensuales = 0;
+        for (YearMonth mes = desde; !mes.isAfter(hasta); mes = mes.plusMonths(1)) {
+            mensuales++;
+            sql.append("PARTITION p_").append(mes.format(FORMATO_NOMBRE))
+                .append(" VALUES LESS THAN (UNIX_TIMESTAMP('").append(mes.plusMonths(1).atDay(1))
+                .append(" 00:00:00')), ");
+        }
+        sql.append("PARTITION ").append(PARTICION_FUTURO).append(" VALUES LESS THAN MAXVALUE");
+        return mensuales;
+    }
+
+    private static List<String> clavesAjenas(Connection conn) throws SQLException {
+        String sql = "SELECT constraint_name FROM information_schema.table_constraints"
+            + " WHERE table_schema = DATABASE() AND table_name = ? AND constraint_type = 'FOREIGN KEY'";
+        List<String> nombres = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, TABLA);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    nombres.add(rs.getString(1));
+                }
+            }
+        }
+        return nombres;
+    }
+
+    private static boolean clavePrimariaIncluyeFecha(Connection conn) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.statistics WHERE table_schema = DATABASE()"
+            + " AND table_name = ? AND index_name = 'PRIMARY' AND column_name = 'fecha_movimiento'";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, TABLA);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void ejecutar(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.math.BigDecimal;
+
+/**
+ * Conversión de precios entre texto y el tipo DECIMAL(12,2) de la columna precio.
+ * Acepta el formato de los archivos de importación: dígitos, opcionalmente una coma
+ * o un punto seguidos de uno o dos decimales y opcionalmente el símbolo '€'
+ * (por ejemplo "12", "12.5", "12,50€"). El valor se calcula en céntimos con
+ * aritmética entera, sin expresiones regulares ni cadenas intermedias.
+ */
+public class Precios {
+    /** Valor devuelto por centimos si el texto no es un precio válido */
+    public static final long NO_VALIDO = -1;
+
+    // DECIMAL(12,2): como máximo 10 cifras enteras
+    private static final int MAX_CIFRAS_ENTERAS = 10;
+
+    /**
+     * Convierte un precio en texto en un BigDecimal con dos decimales.
+     * Se ignoran los espacios al principio y al final.
+     *
+     * @param texto Precio en texto
+     * @return Precio con escala 2
+     * @throws NumberFormatException Si el texto no es un precio válido
+     */
+    public static BigDecimal parsear(String texto) {
+        if (texto != null) {
+            char[] caracteres = texto.toCharArray();
+            int inicio = 0;
+            int fin = caracteres.length;
+            while (inicio < fin && caracteres[inicio] <= ' ') inicio++;
+            while (fin > inicio && caracteres[fin - 1] <= ' ') fin--;
+            long centimos = centimos(caracteres, inicio, fin);
+            if (centimos != NO_VALIDO) {
+                return BigDecimal.valueOf(centimos, 2);
+            }
+        }
+        throw new NumberFormatException("Formato de precio inválido: " + texto);
+    }
+
+    /**
+     * Calcula el precio en céntimos de un tramo de caracteres con el formato
+     * ^\d+([,.]\d{1,2})?€?$.
+     *
+     * @param texto Caracteres
+     * @param inicio Posición del primer carácter del precio
+     * @param fin Posición siguiente al último carácter del precio
+     * @return Precio en céntimos, o NO_VALIDO si el formato no es correcto
+     */
+    static long centimos(char[] texto, int inicio, int fin) {
+        int i = inicio;
+        long enteros = 0;
+        while (i < fin && texto[i] >= '0' && texto[i] <= '9') {
+            enteros = enteros * 10 + (texto[i] - '0');
+            i++;
+        }
+        if (i == inicio || i - inicio > MAX_CIFRAS_ENTERAS) {
+            return NO_VALIDO;
+        }
+        long centimos = enteros * 100;
+        if (i < fin && (texto[i] == ',' || texto[i] == '.')) {
+            i++;
+            int decimales = 0;
+            while (i < fin && decimales < 2 && texto[i] >= '0' && texto[i] <= '9') {
+                // El primer decimal son decenas de céntimo
+                centimos += (texto[i] - '0') * (decimales == 0 ? 10 : 1);
+                i++;
+                decimales++;
+            }
+            if (decimales == 0) {
+                return NO_VALIDO;
+            }
+        }
+        if (i < fin && texto[i] == '€') {
+            i++;
+        }
+        return i == fin ? centimos : NO_VALIDO;
+    }
+}
@@ -0,0 +1,41 @@
+import java.math.BigDecimal;
+
+/**
+ * Producto del inventario (una fila de la tabla productos).
+ * Es inmutable: para cambiar algún dato se crea un producto nuevo.
+ */
+public final class Producto {
+    private final int idProducto;
+    private final String nombre;
+    private final String categoria;
+    private final BigDecimal precio;
+    private final int stock;
+
+    public Producto(int idProducto, String nombre, String categoria, BigDecimal precio, int stock) {
+        this.idProducto = idProducto;
+        this.nombre = nombre;
+        this.categoria = categoria;
+        this.precio = precio;
+        this.stock = stock;
+    }
+
+    public int getIdProducto() { return idProducto; }
+    public String getNombre() { return nombre; }
+    public String getCategoria() { return categoria; }
+    public BigDecimal getPrecio() { return precio; }
+    public int getStock() { return stock; }
+
+    /**
+     * @param nuevoStock Stock del producto devuelto
+     * @return Copia de este producto con otro stock
+     */
+    public Producto conStock(int nuevoStock) {
+        return new Producto(idProducto, nombre, categoria, precio, nuevoStock);
+    }
+
+    @Override
+    public String toString() {
+        return "Producto[id=" + idProducto + ", nombre=" + nombre + ", categoria=" + categoria
+            + ", precio=" + precio + ", stock=" + stock + "]";
+    }
+}
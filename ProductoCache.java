@@ -0,0 +1,271 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Caché en memoria del catálogo de productos.
+ * Guarda los productos por id_producto (con expulsión LRU al superar la capacidad)
+ * y mantiene un índice secundario por nombre. Se carga al arrancar y la aplicación
+ * la actualiza tras cada escritura confirmada en la base de datos (write-through),
+ * de modo que las lecturas de productos no necesitan ir a MySQL.
+ *
+ * Si todo el catálogo cabe en la caché, se marca como completa: una búsqueda sin
+ * resultado significa entonces que el producto no existe. En cuanto se expulsa algún
+ * producto deja de estar completa y los fallos deben resolverse contra la base de datos.
+ */
+public class ProductoCache {
+    private final int capacidad;
+    private final LinkedHashMap<Integer, Producto> porId;
+    // Nombre normalizado -> ids en caché con ese nombre, ordenados; se devuelve el menor,
+    // como MySQL con WHERE nombre = ?
+    private final Map<String, TreeSet<Integer>> porNombre = new HashMap<>();
+    private boolean completa = false;
+
+    private long aciertos = 0;
+    private long fallos = 0;
+    private long expulsiones = 0;
+
+    /**
+     * Crea una caché vacía.
+     *
+     * @param capacidad Número máximo de productos en memoria
+     * @throws IllegalArgumentException Si la capacidad es menor o igual a cero
+     */
+    public ProductoCache(int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad de la caché debe ser mayor que 0");
+        }
+        this.capacidad = capacidad;
+        // accessOrder = true: el orden de iteración va del menos al más recientemente usado
+        this.porId = new LinkedHashMap<>(Math.min(capacidad, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Producto> masAntiguo) {
+                if (size() <= ProductoCache.this.capacidad) {
+                    return false;
+                }
+                expulsiones++;
+                completa = false;
+                quitarDelIndice(masAntiguo.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Vacía la caché y carga el catálogo desde la base de datos.
+     * Si hay más productos que capacidad, solo se cargan los primeros por id.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Número de productos cargados
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     */
+    public synchronized int cargar(Connection conn) throws SQLException {
+        limpiar();
+        String sql = "SELECT id_producto, nombre, categoria, precio, stock FROM productos ORDER BY id_producto LIMIT ?";
+        int cargados = 0;
+        boolean hayMas = false;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            // Se pide una fila más para saber si el catálogo cabe entero
+            ps.setInt(1, capacidad + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (cargados == capacidad) {
+                        hayMas = true;
+                        break;
+                    }
+                    poner(leerProducto(rs));
+                    cargados++;
+                }
+            }
+        }
+        completa = !hayMas;
+        return cargados;
+    }
+
+    /**
+     * Crea un producto a partir de la fila actual de un ResultSet de productos.
+     */
+    static Producto leerProducto(ResultSet rs) throws SQLException {
+        return new Producto(rs.getInt("id_producto"), rs.getString("nombre"), rs.getString("categoria"),
+            rs.getBigDecimal("precio"), rs.getInt("stock"));
+    }
+
+    /**
+     * Busca un producto por su id.
+     *
+     * @param idProducto ID del producto
+     * @return El producto, o null si no está en la caché
+     */
+    public synchronized Producto obtener(int idProducto) {
+        Producto producto = porId.get(idProducto);
+        contar(producto);
+        return producto;
+    }
+
+    /**
+     * Busca un producto por su nombre, sin distinguir mayúsculas ni acentos
+     * (como la intercalación por defecto de MySQL). Si hay varios productos con el
+     * mismo nombre devuelve el de menor id.
+     *
+     * @param nombre Nombre del producto
+     * @return El producto, o null si no está en la caché
+     */
+    public synchronized Producto buscarPorNombre(String nombre) {
+        TreeSet<Integer> ids = porNombre.get(normalizar(nombre));
+        Producto producto = ids == null ? null : porId.get(ids.first());
+        contar(producto);
+        return producto;
+    }
+
+    private void contar(Producto encontrado) {
+        // Con la caché completa, no encontrar un producto también es una respuesta válida
+        if (encontrado != null || completa) {
+            aciertos++;
+        } else {
+            fallos++;
+        }
+    }
+
+    /**
+     * @return true si la caché contiene todo el catálogo
+     */
+    public synchronized boolean isCompleta() {
+        return completa;
+    }
+
+    /**
+     * Añade o sustituye un producto tras insertarlo o modificarlo en la base de datos.
+     *
+     * @param producto Producto con los datos confirmados
+     */
+    public synchronized void poner(Producto producto) {
+        Producto anterior = porId.put(producto.getIdProducto(), producto);
+        if (anterior != null && !normalizar(anterior.getNombre()).equals(normalizar(producto.getNombre()))) {
+            quitarDelIndice(anterior);
+        }
+        porNombre.computeIfAbsent(normalizar(producto.getNombre()), clave -> new TreeSet<>())
+            .add(producto.getIdProducto());
+    }
+
+    /**
+     * Sustituye el nombre, la categoría y el precio de un producto tras modificarlos
+     * en la base de datos, conservando el stock que tiene la caché. El stock solo
+     * cambia con los movimientos (ajustarStock). Si el producto no está en la caché
+     * no hace nada: se leerá de la base de datos cuando se pida.
+     *
+     * @param idProducto ID del producto
+     * @param nombre Nombre confirmado
+     * @param categoria Categoría confirmada
+     * @param precio Precio confirmado
+     */
+    public synchronized void actualizarDatos(int idProducto, String nombre, String categoria, BigDecimal precio) {
+        Producto anterior = porId.get(idProducto);
+        if (anterior != null) {
+            poner(new Producto(idProducto, nombre, categoria, precio, anterior.getStock()));
+        }
+    }
+
+    /**
+     * Quita un producto tras eliminarlo de la base de datos.
+     *
+     * @param idProducto ID del producto eliminado
+     */
+    public synchronized void eliminar(int idProducto) {
+        Producto anterior = porId.remove(idProducto);
+        if (anterior != null) {
+            quitarDelIndice(anterior);
+        }
+    }
+
+    /**
+     * Suma (o resta, si es negativa) una cantidad al stock de un producto tras
+     * registrar un movimiento. Si el producto no está en la caché no hace nada.
+     *
+     * @param idProducto ID del producto
+     * @param diferencia Cantidad a sumar al stock
+     */
+    public synchronized void ajustarStock(int idProducto, int diferencia) {
+        Producto producto = porId.get(idProducto);
+        if (producto != null) {
+            // Producto es inmutable: se sustituye por una copia con el nuevo stock
+            porId.put(idProducto, producto.conStock(producto.getStock() + diferencia));
+        }
+    }
+
+    /**
+     * @return Copia de los productos en caché ordenados por id
+     */
+    public synchronized List<Producto> listar() {
+        List<Producto> productos = new ArrayList<>(porId.values());
+        productos.sort(Comparator.comparingInt(Producto::getIdProducto));
+        return productos;
+    }
+
+    /**
+     * Vacía la caché (por ejemplo, tras una importación masiva). Hasta que se vuelva
+     * a cargar, todas las búsquedas deben resolverse contra la base de datos.
+     */
+    public synchronized void limpiar() {
+        porId.clear();
+        porNombre.clear();
+        completa = false;
+    }
+
+    /**
+     * Quita el id de un producto del índice por nombre. Si otros productos en caché
+     * tienen el mismo nombre, las búsquedas pasan a devolver el menor de ellos.
+     */
+    private void quitarDelIndice(Producto producto) {
+        String clave = normalizar(producto.getNombre());
+        TreeSet<Integer> ids = porNombre.get(clave);
+        if (ids != null && ids.remove(producto.getIdProducto()) && ids.isEmpty()) {
+            porNombre.remove(clave);
+        }
+    }
+
+    /**
+     * Normaliza un nombre para el índice: minúsculas, sin acentos y sin espacios finales.
+     */
+    static String normalizar(String nombre) {
+        if (nombre == null) {
+            return "";
+        }
+        // Camino rápido para nombres en ASCII, que no necesitan quitar acentos
+        boolean ascii = true;
+        for (int i = 0; i < nombre.length() && ascii; i++) {
+            ascii = nombre.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return nombre.toLowerCase(Locale.ROOT).stripTrailing();
+        }
+        String sinAcentos = Normalizer.normalize(nombre, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sinAcentos.toLowerCase(Locale.ROOT).stripTrailing();
+    }
+
+    /**
+     * Muestra por consola el estado y las métricas de la caché.
+     */
+    public synchronized void imprimirEstadisticas() {
+        long total = aciertos + fallos;
+        System.out.println("\n=== ESTADÍSTICAS DE LA CACHÉ DE PRODUCTOS ===");
+        System.out.println("Productos en caché: " + porId.size() + " / " + capacidad);
+        System.out.println("Catálogo completo en memoria: " + (completa ? "sí" : "no"));
+        System.out.println("------------------------");
+        System.out.println("Aciertos: " + aciertos);
+        System.out.println("Fallos: " + fallos);
+        System.out.printf("Tasa de aciertos: %.1f %%%n", total == 0 ? 0 : aciertos * 100.0 / total);
+        System.out.println("Expulsiones: " + expulsiones);
+        System.out.println("------------------------");
+    }
+}
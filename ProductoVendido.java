@@ -0,0 +1,31 @@
+import java.math.BigDecimal;
+
+/**
+ * Fila del informe de productos más vendidos: datos del producto y unidades vendidas.
+ */
+public final class ProductoVendido {
+    private final int idProducto;
+    private final String nombre;
+    private final String categoria;
+    private final BigDecimal precio;
+    private final long totalVendido;
+
+    public ProductoVendido(int idProducto, String nombre, String categoria, BigDecimal precio, long totalVendido) {
+        this.idProducto = idProducto;
+        this.nombre = nombre;
+        this.categoria = categoria;
+        this.precio = precio;
+        this.totalVendido = totalVendido;
+    }
+
+    public int getIdProducto() { return idProducto; }
+    public String getNombre() { return nombre; }
+    public String getCategoria() { return categoria; }
+    public BigDecimal getPrecio() { return precio; }
+    public long getTotalVendido() { return totalVendido; }
+
+    @Override
+    public String toString() {
+        return "ProductoVendido[id=" + idProducto + ", nombre=" + nombre + ", totalVendido=" + totalVendido + "]";
+    }
+}
@@ -0,0 +1,239 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranking en memoria de los productos más vendidos.
+ * Guarda el total vendido de cada producto y un montículo (heap) de mínimos con
+ * los K productos que más han vendido: la raíz es el menor de ellos, de modo que
+ * un producto que no está en el ranking solo entra si supera a la raíz.
+ *
+ * Los totales solo crecen (cada salida confirmada suma unidades), así que basta
+ * con recolocar el producto en el montículo al sumar: no hace falta recorrer todos
+ * los productos. Pedir el top N (con N <= K) solo ordena los K elementos del montículo.
+ *
+ * Se carga desde la tabla ventas_diarias y la aplicación le comunica cada salida
+ * confirmada en la base de datos, igual que a la caché de productos.
+ */
+public class RankingVentas {
+    private final int capacidad;
+    // Total vendido de cada producto con alguna venta
+    private final Map<Integer, Long> totales = new HashMap<>();
+    // Montículo de mínimos por total vendido (y por id descendente en caso de empate)
+    private final int[] ids;
+    private final long[] vendidos;
+    private int tamano = 0;
+    // id_producto -> posición en el montículo
+    private final Map<Integer, Integer> posiciones = new HashMap<>();
+
+    /**
+     * Posición de un producto en el ranking.
+     */
+    public static final class Posicion {
+        private final int idProducto;
+        private final long totalVendido;
+
+        Posicion(int idProducto, long totalVendido) {
+            this.idProducto = idProducto;
+            this.totalVendido = totalVendido;
+        }
+
+        public int getIdProducto() { return idProducto; }
+        public long getTotalVendido() { return totalVendido; }
+    }
+
+    /**
+     * Crea un ranking vacío.
+     *
+     * @param capacidad Número de productos que se mantienen ordenados (K)
+     * @throws IllegalArgumentException Si la capacidad es menor o igual a cero
+     */
+    public RankingVentas(int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad del ranking debe ser mayor que 0");
+        }
+        this.capacidad = capacidad;
+        this.ids = new int[capacidad];
+        this.vendidos = new long[capacidad];
+    }
+
+    /**
+     * Vacía el ranking y lo carga con el total vendido de cada producto.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Número de productos con ventas
+     * @throws SQLException Si hay un error al consultar la tabla ventas_diarias
+     */
+    public synchronized int cargar(Connection conn) throws SQLException {
+        limpiar();
+        String sql = "SELECT id_producto, SUM(unidades_salida) FROM ventas_diarias GROUP BY id_producto";
+        try (PreparedStatement ps = Almacen.prepararLectura(conn, sql)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sumar(rs.getInt(1), rs.getLong(2));
+                }
+            }
+        }
+        return totales.size();
+    }
+
+    /**
+     * Suma una salida confirmada al total vendido del producto.
+     *
+     * @param idProducto ID del producto
+     * @param cantidad Unidades vendidas
+     */
+    public synchronized void registrarSalida(int idProducto, int cantidad) {
+        sumar(idProducto, cantidad);
+    }
+
+    private void sumar(int idProducto, long cantidad) {
+        if (cantidad <= 0) {
+            return;
+        }
+        long total = totales.merge(idProducto, cantidad, Long::sum);
+        Integer posicion = posiciones.get(idProducto);
+        if (posicion != null) {
+            // En un montículo de mínimos, un valor que crece solo puede bajar
+            vendidos[posicion] = total;
+            hundir(posicion);
+        } else if (tamano < capacidad) {
+            colocar(tamano, idProducto, total);
+            tamano++;
+            subir(tamano - 1);
+        } else if (mayor(total, idProducto, vendidos[0], ids[0])) {
+            posiciones.remove(ids[0]);
+            colocar(0, idProducto, total);
+            hundir(0);
+        }
+    }
+
+    /**
+     * Quita un producto del ranking (por ejemplo, al eliminarlo). Si estaba entre los
+     * K primeros se busca su sustituto entre el resto, recorriendo todos los totales.
+     *
+     * @param idProducto ID del producto
+     */
+    public synchronized void eliminar(int idProducto) {
+        if (totales.remove(idProducto) == null) {
+            return;
+        }
+        Integer posicion = posiciones.remove(idProducto);
+        if (posicion == null) {
+            return;
+        }
+        tamano--;
+        if (posicion < tamano) {
+            colocar(posicion, ids[tamano], vendidos[tamano]);
+            hundir(posicion);
+            subir(posicion);
+        }
+        // El mejor producto fuera del montículo pasa a ocupar el hueco
+        int mejorId = 0;
+        long mejorTotal = -1;
+        for (Map.Entry<Integer, Long> entrada : totales.entrySet()) {
+            int id = entrada.getKey();
+            long total = entrada.getValue();
+            if (!posiciones.containsKey(id) && (mejorTotal < 0 || mayor(total, id, mejorTotal, mejorId))) {
+                mejorId = id;
+                mejorTotal = total;
+            }
+        }
+        if (mejorTotal >= 0) {
+            colocar(tamano, mejorId, mejorTotal);
+            tamano++;
+            subir(tamano - 1);
+        }
+    }
+
+    /**
+     * Devuelve los N productos más vendidos, de más a menos ventas.
+     * Solo se puede responder desde memoria si N no supera el número de productos
+     * del montículo; si no, devuelve null y la consulta debe hacerse en la base de
+     * datos (que también lista los productos sin ventas).
+     *
+     * @param n Número de productos
+     * @return Posiciones ordenadas, o null si el ranking no puede responder
+     */
+    public synchronized List<Posicion> top(int n) {
+        if (n > tamano) {
+            return null;
+        }
+        List<Posicion> posicionesTop = new ArrayList<>(tamano);
+        for (int i = 0; i < tamano; i++) {
+            posicionesTop.add(new Posicion(ids[i], vendidos[i]));
+        }
+        posicionesTop.sort((a, b) -> a.totalVendido != b.totalVendido
+            ? Long.compare(b.totalVendido, a.totalVendido)
+            : Integer.compare(a.idProducto, b.idProducto));
+        return posicionesTop.subList(0, n);
+    }
+
+    /**
+     * @return Número de productos que mantiene ordenados el ranking (K)
+     */
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    public synchronized void limpiar() {
+        totales.clear();
+        posiciones.clear();
+        tamano = 0;
+    }
+
+    /**
+     * Orden del ranking: más vendido primero y, a igualdad, menor id primero.
+     */
+    private static boolean mayor(long totalA, int idA, long totalB, int idB) {
+        return totalA != totalB ? totalA > totalB : idA < idB;
+    }
+
+    private void colocar(int posicion, int idProducto, long total) {
+        ids[posicion] = idProducto;
+        vendidos[posicion] = total;
+        posiciones.put(idProducto, posicion);
+    }
+
+    private void intercambiar(int a, int b) {
+        int id = ids[a];
+        long total = vendidos[a];
+        colocar(a, ids[b], vendidos[b]);
+        colocar(b, id, total);
+    }
+
+    private void subir(int i) {
+        while (i > 0) {
+            int padre = (i - 1) / 2;
+            if (!mayor(vendidos[padre], ids[padre], vendidos[i], ids[i])) {
+                return;
+            }
+            intercambiar(i, padre);
+            i = padre;
+        }
+    }
+
+    private void hundir(int i) {
+        while (true) {
+            int menor = i;
+            int izquierdo = 2 * i + 1;
+            int derecho = izquierdo + 1;
+            if (izquierdo < tamano && mayor(vendidos[menor], ids[menor], vendidos[izquierdo], ids[izquierdo])) {
+                menor = izquierdo;
+            }
+            if (derecho < tamano && mayor(vendidos[menor], ids[menor], vendidos[derecho], ids[derecho])) {
+                menor = derecho;
+            }
+            if (menor == i) {
+                return;
+            }
+            intercambiar(i, menor);
+            i = menor;
+        }
+    }
+}
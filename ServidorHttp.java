@@ -0,0 +1,1007 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servidor HTTP con una API JSON sobre el inventario.
+ * Usa el servidor incluido en el JDK (com.sun.net.httpserver) y atiende cada petición
+ * en un hilo virtual si la JVM los tiene (Java 21 o superior); si no, en un pool
+ * de hilos de tamaño fijo.
+ *
+ * Las peticiones comparten el pool de conexiones, la caché de productos, el registro
+ * de stock y el ranking de ventas de la aplicación. Las lecturas de productos se sirven desde la caché y los
+ * movimientos de stock se reservan en el registro en memoria y se guardan agrupados
+ * en segundo plano, por lo que miles de peticiones simultáneas no necesitan una
+ * conexión cada una. La respuesta de un movimiento se envía cuando está confirmado en
+ * la base de datos, sin ocupar un hilo mientras espera.
+ *
+ * Rutas (todas bajo /productos):
+ * - GET    /productos?desde=C&tamano=N      Lista de productos (entera o por páginas)
+ * - POST   /productos                       Crea un producto {nombre, categoria, precio, stock}
+ * - GET    /productos/{id}                  Datos de un producto
+ * - PUT    /productos/{id}                  Modifica nombre, categoría, precio o stock
+ * - DELETE /productos/{id}                  Elimina el producto y sus movimientos
+ * - POST   /productos/{id}/entradas         Registra una entrada de stock {cantidad}
+ * - POST   /productos/{id}/salidas          Registra una salida de stock {cantidad}
+ * - GET    /productos/{id}/movimientos      Histórico de movimientos del producto, por páginas
+ * - GET    /productos/mas-vendidos?limite=N Top N productos más vendidos
+ * - GET    /productos/stock-bajo?limite=N   Productos con stock menor que N
+ */
+public class ServidorHttp implements HttpHandler {
+    public static final int PUERTO_POR_DEFECTO = 8080;
+    // Hilos del pool usado cuando la JVM no tiene hilos virtuales
+    public static final int HILOS_POR_DEFECTO = 64;
+
+    private static final String RUTA = "/productos";
+    private static final int BACKLOG = 1024;
+    private static final int MAX_CUERPO = 64 * 1024;
+    private static final int TAMANO_BUFFER = 16 * 1024;
+    private static final int LIMITE_POR_DEFECTO = 10;
+    private static final int MAX_TAMANO_PAGINA = 1000;
+
+    private final ConnectionPool pool;
+    private final ProductoCache cache;
+    private final StockLedger ledger;
+    private final StockService stockService;
+    private final RankingVentas ranking;
+    private final GeneradorIds generadorIds;
+    private final CacheInformes cacheInformes;
+
+    private HttpServer servidor;
+    private volatile ExecutorService ejecutor;
+    private boolean hilosVirtuales;
+
+    private final LongAdder peticiones = new LongAdder();
+    private final LongAdder erroresCliente = new LongAdder();
+    private final LongAdder erroresServidor = new LongAdder();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicInteger maxEnCurso = new AtomicInteger();
+
+    /**
+     * Crea el servidor (sin arrancarlo).
+     *
+     * @param pool Pool de conexiones de la aplicación
+     * @param cache Caché de productos, que se mantiene actualizada tras cada escritura
+     * @param ledger Registro de stock de los productos
+     * @param stockService Servicio por el que pasan los movimientos de stock
+     * @param ranking Ranking de ventas, del que se quitan los productos eliminados
+     * @param generadorIds Generador de los ids de los productos nuevos
+     * @param cacheInformes Caché de informes, que se invalida tras cada escritura
+     */
+    public ServidorHttp(ConnectionPool pool, ProductoCache cache, StockLedger ledger, StockService stockService,
+                        RankingVentas ranking, GeneradorIds generadorIds, CacheInformes cacheInformes) {
+        this.pool = pool;
+        this.cache = cache;
+        this.ledger = ledger;
+        this.stockService = stockService;
+        this.ranking = ranking;
+        this.generadorIds = generadorIds;
+        this.cacheInformes = cacheInformes;
+    }
+
+    /**
+     * Arranca el servidor en el puerto indicado.
+     *
+     * @param puerto Puerto TCP en el que escuchar
+     * @throws IOException Si no se puede abrir el puerto
+     * @throws IllegalStateException Si el servidor ya está iniciado
+     */
+    public synchronized void iniciar(int puerto) throws IOException {
+        if (servidor != null) {
+            throw new IllegalStateException("El servidor HTTP ya está iniciado");
+        }
+        HttpServer nuevo = HttpServer.create(new InetSocketAddress(puerto), BACKLOG);
+        ejecutor = crearEjecutor();
+        nuevo.createContext(RUTA, this);
+        nuevo.setExecutor(ejecutor);
+        nuevo.start();
+        servidor = nuevo;
+    }
+
+    /**
+     * Detiene el servidor. Las peticiones en curso disponen de un segundo para terminar,
+     * y los movimientos ya aceptados se guardan y se responden antes de parar los hilos.
+     */
+    public synchronized void detener() {
+        if (servidor == null) {
+            return;
+        }
+        servidor.stop(1);
+        // Las respuestas de los movimientos pendientes se envían desde el ejecutor
+        ledger.esperarPersistencia();
+        ejecutor.shutdown();
+        try {
+            ejecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        servidor = null;
+        ejecutor = null;
+    }
+
+    public synchronized boolean isIniciado() {
+        return servidor != null;
+    }
+
+    /**
+     * Crea un ejecutor de hilos virtuales. Se obtiene por reflexión para que la
+     * aplicación siga compilando y funcionando con Java 17, donde se usa un pool fijo.
+     */
+    private ExecutorService crearEjecutor() {
+        try {
+            ExecutorService virtuales = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            hilosVirtuales = true;
+            return virtuales;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            hilosVirtuales = false;
+            AtomicInteger contador = new AtomicInteger();
+            ThreadFactory fabrica = tarea -> {
+                Thread hilo = new Thread(tarea, "http-" + contador.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            };
+            return Executors.newFixedThreadPool(HILOS_POR_DEFECTO, fabrica);
+        }
+    }
+
+    /**
+     * Atiende una petición: la encamina según el método y la ruta y convierte los
+     * errores en respuestas JSON con el código HTTP correspondiente.
+     */
+    @Override
+    public void handle(HttpExchange intercambio) {
+        peticiones.increment();
+        int actuales = enCurso.incrementAndGet();
+        maxEnCurso.accumulateAndGet(actuales, Math::max);
+        try {
+            encaminar(intercambio);
+        } catch (ErrorHttp e) {
+            responderError(intercambio, e.codigo, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            responderError(intercambio, 400, e.getMessage());
+        } catch (SQLException | IOException | RuntimeException e) {
+            responderError(intercambio, 500, e.getMessage());
+        } finally {
+            enCurso.decrementAndGet();
+        }
+    }
+
+    private void encaminar(HttpExchange intercambio) throws ErrorHttp, SQLException, IOException {
+        String metodo = intercambio.getRequestMethod();
+        String ruta = intercambio.getRequestURI().getPath();
+        // Segmentos tras /productos: "" -> [], "/5/salidas" -> ["5", "salidas"]
+        String resto = ruta.substring(RUTA.length());
+        if (resto.endsWith("/")) {
+            resto = resto.substring(0, resto.length() - 1);
+        }
+        if (!resto.isEmpty() && resto.charAt(0) != '/') {
+            throw new ErrorHttp(404, "Ruta no encontrada: " + ruta);
+        }
+        String[] segmentos = resto.isEmpty() ? new String[0] : resto.substring(1).split("/");
+        Map<String, String> parametros = leerParametros(intercambio.getRequestURI().getRawQuery());
+
+        if (segmentos.length == 0) {
+            switch (metodo) {
+                case "GET": listarProductos(intercambio, parametros); return;
+                case "POST": crearProducto(intercambio); return;
+                default: throw metodoNoPermitido(metodo);
+            }
+        }
+        if (segmentos.length == 1 && segmentos[0].equals("mas-vendidos")) {
+            comprobarMetodo(metodo, "GET");
+            masVendidos(intercambio, leerLimite(parametros));
+            return;
+        }
+        if (segmentos.length == 1 && segmentos[0].equals("stock-bajo")) {
+            comprobarMetodo(metodo, "GET");
+            stockBajo(intercambio, leerLimite(parametros));
+            return;
+        }
+
+        int idProducto = leerId(segmentos[0]);
+        if (segmentos.length == 1) {
+            switch (metodo) {
+                case "GET": verProducto(intercambio, idProducto); return;
+                case "PUT": modificarProducto(intercambio, idProducto); return;
+                case "DELETE": eliminarProducto(intercambio, idProducto); return;
+                default: throw metodoNoPermitido(metodo);
+            }
+        }
+        if (segmentos.length == 2) {
+            switch (segmentos[1]) {
+                case "entradas":
+                    comprobarMetodo(metodo, "POST");
+                    registrarMovimiento(intercambio, idProducto, StockManager.ENTRADA);
+                    return;
+                case "salidas":
+                    comprobarMetodo(metodo, "POST");
+                    registrarMovimiento(intercambio, idProducto, StockManager.SALIDA);
+                    return;
+                case "movimientos":
+                    comprobarMetodo(metodo, "GET");
+                    verMovimientos(intercambio, idProducto, parametros);
+                    return;
+                default:
+                    break;
+            }
+        }
+        throw new ErrorHttp(404, "Ruta no encontrada: " + ruta);
+    }
+
+    // ---------------------------------------------------------------- productos
+
+    /**
+     * GET /productos. Si el catálogo completo está en la caché se responde desde
+     * memoria; si no, se lee por páginas (ver responderPorPaginas). Con los parámetros
+     * desde=C y/o tamano=N se devuelve solo una página, como en los movimientos.
+     */
+    private void listarProductos(HttpExchange intercambio, Map<String, String> parametros)
+            throws ErrorHttp, SQLException, IOException {
+        if (parametros.containsKey("desde") || parametros.containsKey("tamano")) {
+            Integer desde = parametros.containsKey("desde") ? leerEntero(parametros.get("desde"), "desde") : null;
+            Pagina<Producto, Integer> pagina;
+            try (Connection conn = conexion()) {
+                pagina = StockManager.paginaProductos(conn, desde, leerTamanoPagina(parametros));
+            }
+            ponerCursorSiguiente(intercambio, pagina);
+            responder(intercambio, 200, json -> {
+                json.beginArray();
+                for (Producto producto : pagina.getElementos()) {
+                    escribirProducto(json, producto);
+                }
+                json.endArray();
+            });
+            return;
+        }
+        if (cache.isCompleta()) {
+            responder(intercambio, 200, json -> {
+                json.beginArray();
+                for (Producto producto : cache.listar()) {
+                    escribirProducto(json, producto);
+                }
+                json.endArray();
+            });
+            return;
+        }
+        responderPorPaginas(intercambio, (conn, desde) -> StockManager.paginaProductos(conn, desde, MAX_TAMANO_PAGINA));
+    }
+
+    /**
+     * GET /productos/{id}
+     */
+    private void verProducto(HttpExchange intercambio, int idProducto) throws ErrorHttp, SQLException, IOException {
+        Producto producto = obtenerProducto(idProducto);
+        responder(intercambio, 200, json -> escribirProducto(json, producto));
+    }
+
+    /**
+     * POST /productos con {nombre, categoria, precio, stock}. Responde 201 con el producto creado.
+     */
+    private void crearProducto(HttpExchange intercambio) throws ErrorHttp, SQLException, IOException {
+        Map<String, String> datos = leerCuerpo(intercambio);
+        String nombre = obligatorio(datos, "nombre");
+        String categoria = obligatorio(datos, "categoria");
+        validarTextos(nombre, categoria);
+        BigDecimal precio = Precios.parsear(obligatorio(datos, "precio"));
+        int stock = leerEntero(datos.getOrDefault("stock", "0"), "stock");
+        if (stock < 0) {
+            throw new IllegalArgumentException("El stock no puede ser negativo");
+        }
+
+        // Cada alta recibe un id distinto sin consultar la base de datos: se pueden hacer en paralelo
+        Producto producto = new Producto(generadorIds.siguiente(), nombre, categoria, precio, stock);
+        try (Connection conn = conexion()) {
+            String sql = "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, producto.getIdProducto());
+                ps.setString(2, nombre);
+                ps.setString(3, categoria);
+                ps.setBigDecimal(4, precio);
+                ps.setInt(5, stock);
+                ps.executeUpdate();
+            }
+        }
+        cache.poner(producto);
+        ledger.anadir(producto.getIdProducto(), stock);
+        cacheInformes.invalidar();
+        responder(intercambio, 201, json -> escribirProducto(json, producto));
+    }
+
+    /**
+     * PUT /productos/{id}. Los campos que no se envían conservan su valor. Un cambio
+     * de stock se registra como una entrada o salida por la diferencia, igual que
+     * al modificar el producto desde el menú.
+     *
+     * Todos los campos se validan y el cambio de stock se registra antes de guardar
+     * el resto: si no hay stock suficiente la petición falla sin modificar nada. Si
+     * después no se puede guardar el resto de campos, se registra el movimiento
+     * contrario para no dejar la modificación a medias.
+     */
+    private void modificarProducto(HttpExchange intercambio, int idProducto) throws ErrorHttp, SQLException, IOException {
+        Map<String, String> datos = leerCuerpo(intercambio);
+        Producto actual = obtenerProducto(idProducto);
+        String nombre = datos.getOrDefault("nombre", actual.getNombre());
+        String categoria = datos.getOrDefault("categoria", actual.getCategoria());
+        validarTextos(nombre, categoria);
+        BigDecimal precio = datos.containsKey("precio") ? Precios.parsear(datos.get("precio")) : actual.getPrecio();
+        Integer nuevoStock = datos.containsKey("stock") ? leerEntero(datos.get("stock"), "stock") : null;
+
+        int diferencia = 0;
+        if (nuevoStock != null) {
+            // La diferencia se calcula con el registro de stock, no con la caché
+            try {
+                diferencia = stockService.fijarStock(idProducto, nuevoStock);
+            } catch (SQLException e) {
+                if (GroupCommitMovimientos.esRechazo(e)) {
+                    throw new ErrorHttp(409, e.getMessage());
+                }
+                throw e;
+            }
+        }
+
+        try (Connection conn = conexion();
+             PreparedStatement ps = conn.prepareStatement(
+                 "UPDATE productos SET nombre = ?, categoria = ?, precio = ? WHERE id_producto = ?")) {
+            ps.setString(1, nombre);
+            ps.setString(2, categoria);
+            ps.setBigDecimal(3, precio);
+            ps.setInt(4, idProducto);
+            if (ps.executeUpdate() == 0) {
+                throw new ErrorHttp(404, "No existe el producto " + idProducto);
+            }
+        } catch (ErrorHttp | SQLException e) {
+            deshacerCambioStock(idProducto, diferencia);
+            throw e;
+        }
+        cache.actualizarDatos(idProducto, nombre, categoria, precio);
+        cacheInformes.invalidar();
+
+        Producto modificado = obtenerProducto(idProducto);
+        responder(intercambio, 200, json -> escribirProducto(json, modificado));
+    }
+
+    /**
+     * Registra el movimiento contrario a un cambio de stock ya guardado, cuando el
+     * resto de la modificación del producto no se ha podido guardar. Si tampoco se
+     * puede deshacer, el error original es el que se responde.
+     *
+     * @param diferencia Cambio de stock registrado (positivo si fue una entrada)
+     */
+    private void deshacerCambioStock(int idProducto, int diferencia) {
+        try {
+            stockService.deshacerCambioStock(idProducto, diferencia);
+        } catch (SQLException e) {
+            // Se responde el error que impidió guardar la modificación
+        }
+    }
+
+    /**
+     * DELETE /productos/{id}. Elimina el producto y sus movimientos en una transacción.
+     */
+    private void eliminarProducto(HttpExchange intercambio, int idProducto) throws ErrorHttp, SQLException, IOException {
+        // Los movimientos pendientes del producto deben guardarse antes de borrarlos
+        ledger.esperarPersistencia();
+        try (Connection conn = conexion()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM movimientos_stock WHERE id_producto = ?")) {
+                    ps.setInt(1, idProducto);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM ventas_diarias WHERE id_producto = ?")) {
+                    ps.setInt(1, idProducto);
+                    ps.executeUpdate();
+                }
+                int borrados;
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM productos WHERE id_producto = ?")) {
+                    ps.setInt(1, idProducto);
+                    borrados = ps.executeUpdate();
+                }
+                if (borrados == 0) {
+                    conn.rollback();
+                    throw new ErrorHttp(404, "No existe el producto " + idProducto);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        cache.eliminar(idProducto);
+        ledger.eliminar(idProducto);
+        ranking.eliminar(idProducto);
+        cacheInformes.invalidar();
+        intercambio.sendResponseHeaders(204, -1);
+        intercambio.close();
+    }
+
+    // ---------------------------------------------------------------- stock
+
+    /**
+     * POST /productos/{id}/entradas y /salidas con {cantidad}.
+     * El movimiento se comprueba en memoria al momento (409 si no hay stock) y la
+     * respuesta se envía cuando el movimiento está guardado en la base de datos.
+     * Mientras tanto el hilo queda libre para otras peticiones. Si al guardarlo la
+     * base de datos tampoco tiene stock suficiente se responde 409; los errores al
+     * escribir el movimiento se responden con 500.
+     */
+    private void registrarMovimiento(HttpExchange intercambio, int idProducto, String tipo) throws ErrorHttp, IOException {
+        Map<String, String> datos = leerCuerpo(intercambio);
+        int cantidad = leerEntero(obligatorio(datos, "cantidad"), "cantidad");
+        // Esta petición se atiende en el ejecutor, así que aún no se ha detenido
+        ExecutorService respuestas = ejecutor;
+
+        // La respuesta no se escribe en el hilo que guarda los movimientos en la base
+        // de datos, para no retrasar los siguientes grupos
+        movimiento(idProducto, tipo, cantidad).whenComplete((ok, error) -> {
+            try {
+                respuestas.execute(() -> responderMovimiento(intercambio, idProducto, tipo, cantidad, error));
+            } catch (RejectedExecutionException e) {
+                // El servidor se ha detenido mientras se guardaba el movimiento
+                intercambio.close();
+            }
+        });
+    }
+
+    private void responderMovimiento(HttpExchange intercambio, int idProducto, String tipo, int cantidad, Throwable error) {
+        if (error != null) {
+            Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (GroupCommitMovimientos.esRechazo(causa)) {
+                responderError(intercambio, 409, causa.getMessage());
+            } else {
+                responderError(intercambio, 500, "Error al guardar el movimiento: " + causa.getMessage());
+            }
+            return;
+        }
+        try {
+            responder(intercambio, 201, json -> json.beginObject()
+                .name("id_producto").value(idProducto)
+                .name("tipo_movimiento").value(tipo)
+                .name("cantidad").value(cantidad)
+                .name("stock").value(ledger.getStock(idProducto))
+                .endObject());
+        } catch (IOException | SQLException e) {
+            intercambio.close();
+        }
+    }
+
+    /**
+     * Registra un movimiento con el servicio de stock, que actualiza las cachés y el
+     * ranking de ventas cuando se confirma.
+     *
+     * @throws ErrorHttp 404 si el producto no existe; 409 si no hay stock suficiente
+     */
+    private CompletableFuture<Void> movimiento(int idProducto, String tipo, int cantidad) throws ErrorHttp {
+        if (ledger.getStock(idProducto) == StockLedger.NO_EXISTE) {
+            throw new ErrorHttp(404, "No existe el producto " + idProducto);
+        }
+        try {
+            return stockService.registrarMovimientoAsync(idProducto, tipo, cantidad);
+        } catch (SQLException e) {
+            throw new ErrorHttp(409, e.getMessage());
+        }
+    }
+
+    /**
+     * GET /productos/{id}/movimientos?antes=C&tamano=N, del más reciente al más antiguo.
+     * Devuelve una página; si hay más, la cabecera X-Pagina-Siguiente trae el cursor
+     * que se pasa como parámetro antes para pedir la siguiente.
+     */
+    private void verMovimientos(HttpExchange intercambio, int idProducto, Map<String, String> parametros)
+            throws ErrorHttp, SQLException, IOException {
+        obtenerProducto(idProducto);
+        Integer antes = parametros.containsKey("antes") ? leerEntero(parametros.get("antes"), "antes") : null;
+        Pagina<Movimiento, Integer> pagina;
+        try (Connection conn = conexion()) {
+            pagina = StockManager.paginaMovimientos(conn, idProducto, antes, leerTamanoPagina(parametros));
+        }
+        ponerCursorSiguiente(intercambio, pagina);
+        responder(intercambio, 200, json -> {
+            json.beginArray();
+            for (Movimiento movimiento : pagina.getElementos()) {
+                json.beginObject()
+                    .name("id_movimiento").value(movimiento.getIdMovimiento())
+                    .name("id_producto").value(movimiento.getIdProducto())
+                    .name("tipo_movimiento").value(movimiento.getTipoMovimiento())
+                    .name("cantidad").value(movimiento.getCantidad())
+                    .name("fecha_movimiento").value(String.valueOf(movimiento.getFechaMovimiento()))
+                    .endObject();
+            }
+            json.endArray();
+        });
+    }
+
+    /**
+     * GET /productos/mas-vendidos?limite=N
+     */
+    private void masVendidos(HttpExchange intercambio, int limite) throws ErrorHttp, SQLException, IOException {
+        List<ProductoVendido> productos = cacheInformes.productosMasVendidos(limite);
+        responder(intercambio, 200, json -> {
+            json.beginArray();
+            for (ProductoVendido producto : productos) {
+                json.beginObject()
+                    .name("id_producto").value(producto.getIdProducto())
+                    .name("nombre").value(producto.getNombre())
+                    .name("categoria").value(producto.getCategoria())
+                    .name("precio").value(producto.getPrecio())
+                    .name("total_vendido").value(producto.getTotalVendido())
+                    .endObject();
+            }
+            json.endArray();
+        });
+    }
+
+    /**
+     * GET /productos/stock-bajo?limite=N: productos con stock menor que N, como la
+     * exportación a JSON del menú. Si el catálogo no está entero en la caché se lee
+     * por páginas (ver responderPorPaginas).
+     */
+    private void stockBajo(HttpExchange intercambio, int limite) throws ErrorHttp, SQLException, IOException {
+        if (cache.isCompleta()) {
+            responder(intercambio, 200, json -> {
+                json.beginArray();
+                for (Producto producto : cache.listar()) {
+                    if (producto.getStock() < limite) {
+                        escribirProducto(json, producto);
+                    }
+                }
+                json.endArray();
+            });
+            return;
+        }
+        responderPorPaginas(intercambio,
+            (conn, desde) -> StockManager.paginaProductosStockBajo(conn, limite, desde, MAX_TAMANO_PAGINA));
+    }
+
+    /**
+     * Lee una página de productos a partir de un cursor (null para la primera).
+     */
+    private interface LectorPagina {
+        Pagina<Producto, Integer> leer(Connection conn, Integer desde) throws SQLException;
+    }
+
+    /**
+     * Responde con todos los productos que devuelve el lector, leídos por páginas de
+     * MAX_TAMANO_PAGINA productos. Cada página se lee con una conexión que se devuelve
+     * al pool antes de escribirla, así que un cliente lento no retiene ninguna conexión
+     * (ni un ResultSet abierto) mientras recibe la respuesta. Las páginas se leen en
+     * consultas distintas: un producto añadido o borrado durante la respuesta puede
+     * aparecer o no, pero ninguno se repite.
+     */
+    private void responderPorPaginas(HttpExchange intercambio, LectorPagina lector)
+            throws ErrorHttp, SQLException, IOException {
+        // La primera página se lee antes de enviar las cabeceras: sin conexiones libres se responde 503
+        Pagina<Producto, Integer> primera;
+        try (Connection conn = conexion()) {
+            primera = lector.leer(conn, null);
+        }
+        responder(intercambio, 200, json -> {
+            json.beginArray();
+            Pagina<Producto, Integer> pagina = primera;
+            while (true) {
+                for (Producto producto : pagina.getElementos()) {
+                    escribirProducto(json, producto);
+                }
+                if (!pagina.hayMas()) {
+                    break;
+                }
+                try (Connection conn = pool.getConnection()) {
+                    pagina = lector.leer(conn, pagina.getSiguiente());
+                }
+            }
+            json.endArray();
+        });
+    }
+
+    // ---------------------------------------------------------------- utilidades
+
+    /**
+     * Busca un producto en la caché o, si no está y la caché no contiene todo el
+     * catálogo, en la base de datos.
+     *
+     * @throws ErrorHttp 404 si el producto no existe
+     */
+    private Producto obtenerProducto(int idProducto) throws ErrorHttp, SQLException {
+        Producto producto = cache.obtener(idProducto);
+        if (producto == null && !cache.isCompleta()) {
+            String sql = "SELECT id_producto, nombre, categoria, precio, stock FROM productos WHERE id_producto = ?";
+            try (Connection conn = conexion();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, idProducto);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        producto = ProductoCache.leerProducto(rs);
+                        cache.poner(producto);
+                    }
+                }
+            }
+        }
+        if (producto == null) {
+            throw new ErrorHttp(404, "No existe el producto " + idProducto);
+        }
+        return producto;
+    }
+
+    /**
+     * Obtiene una conexión del pool. Si el pool está agotado se responde 503 para
+     * que el cliente reintente, en lugar de acumular peticiones esperando.
+     */
+    private Connection conexion() throws ErrorHttp {
+        try {
+            return pool.getConnection();
+        } catch (SQLException e) {
+            throw new ErrorHttp(503, e.getMessage());
+        }
+    }
+
+    private static void escribirProducto(JsonWriter json, Producto producto) throws IOException {
+        json.beginObject()
+            .name("id_producto").value(producto.getIdProducto())
+            .name("nombre").value(producto.getNombre())
+            .name("categoria").value(producto.getCategoria())
+            .name("precio").value(producto.getPrecio())
+            .name("stock").value(producto.getStock())
+            .endObject();
+    }
+
+    /**
+     * Cuerpo de una respuesta JSON. Puede leer páginas de la base de datos mientras escribe.
+     */
+    private interface CuerpoJson {
+        void escribir(JsonWriter json) throws IOException, SQLException;
+    }
+
+    /**
+     * Envía una respuesta JSON. Las cabeceras se envían antes del cuerpo, que se
+     * transmite por partes (chunked) a medida que se genera.
+     */
+    private void responder(HttpExchange intercambio, int codigo, CuerpoJson cuerpo) throws IOException, SQLException {
+        intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        intercambio.sendResponseHeaders(codigo, 0);
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(intercambio.getResponseBody(), StandardCharsets.UTF_8), TAMANO_BUFFER), false)) {
+            cuerpo.escribir(json);
+        } finally {
+            intercambio.close();
+        }
+    }
+
+    /**
+     * Envía una respuesta de error {"error": mensaje}. Si las cabeceras ya se habían
+     * enviado (el error ocurrió a mitad del cuerpo) solo se puede cerrar la conexión.
+     */
+    private void responderError(HttpExchange intercambio, int codigo, String mensaje) {
+        if (codigo >= 500) {
+            erroresServidor.increment();
+        } else {
+            erroresCliente.increment();
+        }
+        try {
+            if (intercambio.getResponseCode() != -1) {
+                return;
+            }
+            StringWriter texto = new StringWriter();
+            try (JsonWriter json = new JsonWriter(texto, false)) {
+                json.beginObject().name("error").value(mensaje).endObject();
+            }
+            byte[] bytes = texto.toString().getBytes(StandardCharsets.UTF_8);
+            intercambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            intercambio.sendResponseHeaders(codigo, bytes.length);
+            intercambio.getResponseBody().write(bytes);
+        } catch (IOException e) {
+            // El cliente ya ha cerrado la conexión
+        } finally {
+            intercambio.close();
+        }
+    }
+
+    private static ErrorHttp metodoNoPermitido(String metodo) {
+        return new ErrorHttp(405, "Método no permitido: " + metodo);
+    }
+
+    private static void comprobarMetodo(String metodo, String esperado) throws ErrorHttp {
+        if (!metodo.equals(esperado)) {
+            throw metodoNoPermitido(metodo);
+        }
+    }
+
+    private static int leerId(String texto) throws ErrorHttp {
+        try {
+            return Integer.parseInt(texto);
+        } catch (NumberFormatException e) {
+            throw new ErrorHttp(404, "Ruta no encontrada: " + RUTA + "/" + texto);
+        }
+    }
+
+    private static int leerLimite(Map<String, String> parametros) {
+        String texto = parametros.get("limite");
+        int limite = texto == null ? LIMITE_POR_DEFECTO : leerEntero(texto, "limite");
+        if (limite <= 0) {
+            throw new IllegalArgumentException("El límite debe ser mayor que 0");
+        }
+        return limite;
+    }
+
+    private static int leerTamanoPagina(Map<String, String> parametros) {
+        String texto = parametros.get("tamano");
+        int tamano = texto == null ? StockManager.TAMANO_PAGINA_POR_DEFECTO : leerEntero(texto, "tamano");
+        if (tamano <= 0 || tamano > MAX_TAMANO_PAGINA) {
+            throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_TAMANO_PAGINA);
+        }
+        return tamano;
+    }
+
+    private static void ponerCursorSiguiente(HttpExchange intercambio, Pagina<?, ?> pagina) {
+        if (pagina.hayMas()) {
+            intercambio.getResponseHeaders().set("X-Pagina-Siguiente", pagina.getSiguiente().toString());
+        }
+    }
+
+    /**
+     * Comprueba que el nombre y la categoría caben en sus columnas, para rechazarlos
+     * con 400 antes de modificar nada.
+     */
+    private static void validarTextos(String nombre, String categoria) {
+        if (nombre.length() > StockManager.MAX_NOMBRE) {
+            throw new IllegalArgumentException("El nombre no puede tener más de " + StockManager.MAX_NOMBRE + " caracteres");
+        }
+        if (categoria.length() > StockManager.MAX_CATEGORIA) {
+            throw new IllegalArgumentException("La categoría no puede tener más de " + StockManager.MAX_CATEGORIA + " caracteres");
+        }
+    }
+
+    private static int leerEntero(String texto, String campo) {
+        try {
+            return Integer.parseInt(texto.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException("El campo " + campo + " debe ser un número entero");
+        }
+    }
+
+    private static String obligatorio(Map<String, String> datos, String campo) {
+        String valor = datos.get(campo);
+        if (valor == null) {
+            throw new IllegalArgumentException("Falta el campo " + campo);
+        }
+        return valor;
+    }
+
+    /**
+     * Lee los parámetros de la URL (?a=1&b=2).
+     */
+    private static Map<String, String> leerParametros(String consulta) {
+        Map<String, String> parametros = new HashMap<>();
+        if (consulta == null || consulta.isEmpty()) {
+            return parametros;
+        }
+        for (String par : consulta.split("&")) {
+            int igual = par.indexOf('=');
+            String nombre = igual < 0 ? par : par.substring(0, igual);
+            String valor = igual < 0 ? "" : par.substring(igual + 1);
+            parametros.put(URLDecoder.decode(nombre, StandardCharsets.UTF_8), URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return parametros;
+    }
+
+    /**
+     * Lee el cuerpo de la petición como un objeto JSON plano.
+     */
+    private static Map<String, String> leerCuerpo(HttpExchange intercambio) throws ErrorHttp, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = intercambio.getRequestBody()) {
+            byte[] buf = new byte[4096];
+            int leidos;
+            while ((leidos = in.read(buf)) != -1) {
+                if (bytes.size() + leidos > MAX_CUERPO) {
+                    throw new ErrorHttp(413, "El cuerpo de la petición supera " + MAX_CUERPO + " bytes");
+                }
+                bytes.write(buf, 0, leidos);
+            }
+        }
+        return leerObjetoJson(bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Analiza un objeto JSON sin anidar ({"campo": valor, ...}) y devuelve sus valores
+     * como texto. Los valores null se omiten, como si el campo no se hubiera enviado.
+     *
+     * @param texto Objeto JSON
+     * @return Campos del objeto
+     * @throws IllegalArgumentException Si el texto no es un objeto JSON plano válido
+     */
+    static Map<String, String> leerObjetoJson(String texto) {
+        LectorJson lector = new LectorJson(texto);
+        Map<String, String> campos = new HashMap<>();
+        lector.esperar('{');
+        if (!lector.siguienteEs('}')) {
+            do {
+                String nombre = lector.leerCadena();
+                lector.esperar(':');
+                String valor = lector.leerValor();
+                if (valor != null) {
+                    campos.put(nombre, valor);
+                }
+            } while (lector.siguienteEs(','));
+            lector.esperar('}');
+        }
+        lector.esperarFin();
+        return campos;
+    }
+
+    /**
+     * Lector mínimo de JSON para los cuerpos de las peticiones.
+     */
+    private static final class LectorJson {
+        private final String texto;
+        private int pos = 0;
+
+        LectorJson(String texto) {
+            this.texto = texto;
+        }
+
+        private void saltarEspacios() {
+            while (pos < texto.length() && Character.isWhitespace(texto.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        /** Consume el carácter si es el siguiente (ignorando espacios). */
+        boolean siguienteEs(char c) {
+            saltarEspacios();
+            if (pos < texto.length() && texto.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void esperar(char c) {
+            if (!siguienteEs(c)) {
+                throw error("se esperaba '" + c + "'");
+            }
+        }
+
+        void esperarFin() {
+            saltarEspacios();
+            if (pos != texto.length()) {
+                throw error("contenido inesperado tras el objeto");
+            }
+        }
+
+        String leerCadena() {
+            esperar('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < texto.length()) {
+                char c = texto.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= texto.length()) {
+                    break;
+                }
+                char escape = texto.charAt(pos++);
+                switch (escape) {
+                    case '"': case '\\': case '/': sb.append(escape); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > texto.length()) {
+                            throw error("secuencia \\u incompleta");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(texto.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("secuencia \\u no válida");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        throw error("escape no válido \\" + escape);
+                }
+            }
+            throw error("cadena sin cerrar");
+        }
+
+        /**
+         * Lee una cadena, un número, true/false o null (devuelve null).
+         */
+        String leerValor() {
+            saltarEspacios();
+            if (pos < texto.length() && texto.charAt(pos) == '"') {
+                return leerCadena();
+            }
+            int inicio = pos;
+            while (pos < texto.length() && "+-.0123456789eEtrufalsn".indexOf(texto.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String literal = texto.substring(inicio, pos);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false")) {
+                return literal;
+            }
+            try {
+                new BigDecimal(literal);
+            } catch (NumberFormatException e) {
+                throw error("valor no válido");
+            }
+            return literal;
+        }
+
+        private IllegalArgumentException error(String motivo) {
+            return new IllegalArgumentException("JSON no válido (posición " + pos + "): " + motivo);
+        }
+    }
+
+    /**
+     * Error que se devuelve al cliente con un código HTTP concreto.
+     */
+    private static final class ErrorHttp extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int codigo;
+
+        ErrorHttp(int codigo, String mensaje) {
+            super(mensaje);
+            this.codigo = codigo;
+        }
+    }
+
+    /**
+     * Muestra por consola el estado y las métricas del servidor.
+     */
+    public void imprimirEstadisticas() {
+        System.out.println("\n=== ESTADÍSTICAS DEL SERVIDOR HTTP ===");
+        synchronized (this) {
+            if (servidor == null) {
+                System.out.println("Estado: detenido");
+            } else {
+                System.out.println("Estado: escuchando en el puerto " + servidor.getAddress().getPort());
+                System.out.println("Hilos: " + (hilosVirtuales ? "virtuales" : "pool fijo de " + HILOS_POR_DEFECTO));
+            }
+        }
+        System.out.println("------------------------");
+        System.out.println("Peticiones atendidas: " + peticiones.sum());
+        System.out.println("En curso: " + enCurso.get() + " (máximo " + maxEnCurso.get() + ")");
+        System.out.println("Errores del cliente (4xx): " + erroresCliente.sum());
+        System.out.println("Errores del servidor (5xx): " + erroresServidor.sum());
+        System.out.println("------------------------");
+    }
+}
@@ -0,0 +1,430 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Lector de las copias de seguridad binarias generadas por SnapshotWriter.
+ * Comprueba la cabecera, la versión y el CRC32 de cada bloque de columna y
+ * entrega las filas en el orden en que se escribieron.
+ */
+public class SnapshotReader {
+    private static final int TAMANO_LOTE = 1000;
+
+    private static final String INSERT_PRODUCTO =
+        "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_MOVIMIENTO =
+        "INSERT INTO movimientos_stock (id_movimiento, id_producto, tipo_movimiento, cantidad, fecha_movimiento) "
+        + "VALUES (?, ?, ?, ?, COALESCE(?, '" + ParticionesMovimientos.FECHA_DESCONOCIDA + "'))";
+
+    /**
+     * Recibe las filas leídas del snapshot.
+     */
+    public interface Visitante {
+        void producto(int id, String nombre, String categoria, String precio, int stock) throws Exception;
+
+        /**
+         * @param idProducto ID del producto o null
+         * @param cantidad Cantidad o null
+         * @param fecha Fecha del movimiento o null
+         */
+        void movimiento(int id, Integer idProducto, String tipo, Integer cantidad, Timestamp fecha) throws Exception;
+    }
+
+    /**
+     * Lee un snapshot completo y entrega cada fila al visitante.
+     *
+     * @param ruta Ruta del archivo de snapshot
+     * @param visitante Receptor de las filas
+     * @return Resumen con el número de filas leídas de cada tabla
+     * @throws IOException Si el archivo no se puede leer o está corrupto
+     * @throws Exception Si el visitante lanza alguna excepción
+     */
+    public static Resultado leer(String ruta, Visitante visitante) throws Exception {
+        try (InputStream in = new FileInputStream(ruta)) {
+            return leer(in, visitante);
+        }
+    }
+
+    /**
+     * Lee un snapshot desde un flujo de entrada y entrega cada fila al visitante.
+     *
+     * @param entrada Flujo de entrada (se le añade un búfer)
+     * @param visitante Receptor de las filas
+     * @return Resumen con el número de filas leídas de cada tabla
+     * @throws IOException Si el contenido no se puede leer o está corrupto
+     * @throws Exception Si el visitante lanza alguna excepción
+     */
+    public static Resultado leer(InputStream entrada, Visitante visitante) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(entrada, 256 * 1024));
+        Resultado resultado = new Resultado();
+        try {
+            leerCabecera(in, resultado);
+            Bloques bloques = new Bloques(in);
+            while (true) {
+                int tabla = in.readUnsignedByte();
+                if (tabla == SnapshotWriter.TABLA_FIN) {
+                    long productos = in.readLong();
+                    long movimientos = in.readLong();
+                    if (productos != resultado.productos || movimientos != resultado.movimientos) {
+                        throw new IOException("Snapshot corrupto: el pie indica " + productos + " productos y "
+                            + movimientos + " movimientos, pero se han leído " + resultado.productos
+                            + " y " + resultado.movimientos);
+                    }
+                    return resultado;
+                }
+                int filas = in.readInt();
+                if (filas <= 0 || filas > SnapshotWriter.FILAS_POR_GRUPO) {
+                    throw new IOException("Snapshot corrupto: grupo de " + filas + " filas");
+                }
+                if (tabla == SnapshotWriter.TABLA_PRODUCTOS) {
+                    leerGrupoProductos(bloques, filas, visitante);
+                    resultado.productos += filas;
+                } else if (tabla == SnapshotWriter.TABLA_MOVIMIENTOS) {
+                    leerGrupoMovimientos(bloques, filas, visitante);
+                    resultado.movimientos += filas;
+                } else {
+                    throw new IOException("Snapshot corrupto: tabla desconocida " + tabla);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Snapshot incompleto: el archivo termina antes del pie");
+        }
+    }
+
+    private static void leerCabecera(DataInputStream in, Resultado resultado) throws IOException {
+        byte[] magia = new byte[SnapshotWriter.MAGIA.length];
+        in.readFully(magia);
+        if (!Arrays.equals(magia, SnapshotWriter.MAGIA)) {
+            throw new IOException("El archivo no es un snapshot de inventario");
+        }
+        int version = in.readUnsignedShort();
+        if (version > SnapshotWriter.VERSION) {
+            throw new IOException("Versión de snapshot no soportada: " + version
+                + " (máxima " + SnapshotWriter.VERSION + ")");
+        }
+        in.readUnsignedShort();
+        resultado.version = version;
+        resultado.fechaCreacion = new Timestamp(in.readLong());
+    }
+
+    private static void leerGrupoProductos(Bloques bloques, int n, Visitante visitante) throws Exception {
+        int[] id = bloques.enteros(n);
+        String[] nombre = bloques.textos(n);
+        String[] categoria = bloques.diccionario(n);
+        String[] precio = bloques.textos(n);
+        int[] stock = bloques.enteros(n);
+        for (int i = 0; i < n; i++) {
+            visitante.producto(id[i], nombre[i], categoria[i], precio[i], stock[i]);
+        }
+    }
+
+    private static void leerGrupoMovimientos(Bloques bloques, int n, Visitante visitante) throws Exception {
+        int[] id = bloques.enteros(n);
+        int[] producto = bloques.enteros(n);
+        String[] tipo = bloques.diccionario(n);
+        int[] cantidad = bloques.enteros(n);
+        long[] fecha = bloques.largos(n);
+        for (int i = 0; i < n; i++) {
+            visitante.movimiento(id[i],
+                producto[i] == Integer.MIN_VALUE ? null : producto[i],
+                tipo[i],
+                cantidad[i] == Integer.MIN_VALUE ? null : cantidad[i],
+                fecha[i] == Long.MIN_VALUE ? null : new Timestamp(fecha[i]));
+        }
+    }
+
+    /**
+     * Restaura productos y movimientos_stock desde un snapshot.
+     * Borra el contenido actual de ambas tablas y carga el snapshot con inserciones
+     * por lotes, todo en una única transacción: si el archivo está corrupto o falla
+     * alguna inserción, la base de datos queda como estaba. El resumen de ventas
+     * (ventas_diarias) se vuelve a calcular con los movimientos restaurados, salvo
+     * los meses ya archivados.
+     *
+     * @param conn Conexión a la base de datos
+     * @param ruta Ruta del archivo de snapshot
+     * @return Resumen con el número de filas restauradas de cada tabla
+     * @throws SQLException Si hay un error de base de datos
+     * @throws IOException Si el archivo no se puede leer o está corrupto
+     */
+    public static Resultado restore(Connection conn, String ruta) throws SQLException, IOException {
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement();
+             PreparedStatement psProducto = conn.prepareStatement(INSERT_PRODUCTO);
+             PreparedStatement psMovimiento = conn.prepareStatement(INSERT_MOVIMIENTO)) {
+            st.executeUpdate("DELETE FROM movimientos_stock");
+            st.executeUpdate("DELETE FROM productos");
+
+            Restaurador restaurador = new Restaurador(psProducto, psMovimiento);
+            Resultado resultado = leer(ruta, restaurador);
+            restaurador.terminar();
+            StockManager.reconstruirResumenVentas(conn, ParticionesMovimientos.getInicioConservado(conn));
+            conn.commit();
+            return resultado;
+        } catch (SQLException | IOException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } catch (Exception e) {
+            // El restaurador solo lanza SQLException, así que aquí no se llega
+            conn.rollback();
+            throw new SQLException(e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Inserta las filas del snapshot por lotes. Los movimientos empiezan a enviarse
+     * después de todos los productos, ya que SnapshotWriter los escribe en ese orden.
+     */
+    private static class Restaurador implements Visitante {
+        private final PreparedStatement psProducto;
+        private final PreparedStatement psMovimiento;
+        private int productosEnLote = 0;
+        private int movimientosEnLote = 0;
+
+        Restaurador(PreparedStatement psProducto, PreparedStatement psMovimiento) {
+            this.psProducto = psProducto;
+            this.psMovimiento = psMovimiento;
+        }
+
+        @Override
+        public void producto(int id, String nombre, String categoria, String precio, int stock) throws SQLException {
+            psProducto.setInt(1, id);
+            psProducto.setString(2, nombre);
+            psProducto.setString(3, categoria);
+            // El snapshot guarda el precio como texto (puede venir de un XML con "12,50€")
+            try {
+                psProducto.setBigDecimal(4, precio == null ? null : Precios.parsear(precio));
+            } catch (NumberFormatException e) {
+                throw new SQLException("Producto " + id + ": " + e.getMessage(), e);
+            }
+            psProducto.setInt(5, stock);
+            psProducto.addBatch();
+            if (++productosEnLote == TAMANO_LOTE) {
+                psProducto.executeBatch();
+                productosEnLote = 0;
+            }
+        }
+
+        @Override
+        public void movimiento(int id, Integer idProducto, String tipo, Integer cantidad, Timestamp fecha)
+                throws SQLException {
+            if (productosEnLote > 0) {
+                psProducto.executeBatch();
+                productosEnLote = 0;
+            }
+            psMovimiento.setInt(1, id);
+            psMovimiento.setObject(2, idProducto, Types.INTEGER);
+            psMovimiento.setString(3, tipo);
+            psMovimiento.setObject(4, cantidad, Types.INTEGER);
+            psMovimiento.setTimestamp(5, fecha);
+            psMovimiento.addBatch();
+            if (++movimientosEnLote == TAMANO_LOTE) {
+                psMovimiento.executeBatch();
+                movimientosEnLote = 0;
+            }
+        }
+
+        void terminar() throws SQLException {
+            if (productosEnLote > 0) {
+                psProducto.executeBatch();
+            }
+            if (movimientosEnLote > 0) {
+                psMovimiento.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Convierte los productos de un snapshot en un archivo XML de inventario
+     * con el mismo formato que XmlManager.exportToXml. Los movimientos se ignoran,
+     * ya que inventario.xsd no los contempla.
+     *
+     * @param rutaSnapshot Ruta del snapshot
+     * @param rutaXml Ruta del archivo XML a crear
+     * @return Número de productos convertidos
+     * @throws IOException Si hay un error al leer o escribir los archivos
+     * @throws XMLStreamException Si hay un error al escribir el XML
+     */
+    public static long toXml(String rutaSnapshot, String rutaXml) throws IOException, XMLStreamException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(rutaXml), 64 * 1024)) {
+            XMLStreamWriter writer = XmlManager.abrirInventario(out);
+            Resultado resultado = leer(rutaSnapshot, new Visitante() {
+                @Override
+                public void producto(int id, String nombre, String categoria, String precio, int stock)
+                        throws XMLStreamException {
+                    XmlManager.escribirProducto(writer, id, nombre, categoria, precio, stock);
+                }
+
+                @Override
+                public void movimiento(int id, Integer idProducto, String tipo, Integer cantidad, Timestamp fecha) {
+                }
+            });
+            XmlManager.cerrarInventario(writer);
+            return resultado.getProductos();
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Lee y comprueba los bloques de columna de un grupo.
+     */
+    private static class Bloques {
+        private final DataInputStream in;
+        private final CRC32 crc = new CRC32();
+        private byte[] datos = new byte[64 * 1024];
+
+        Bloques(DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Lee el siguiente bloque, comprueba su codificación y su CRC32 y devuelve sus datos.
+         */
+        private ByteBuffer siguiente(int codificacionEsperada) throws IOException {
+            int codificacion = in.readUnsignedByte();
+            if (codificacion != codificacionEsperada) {
+                throw new IOException("Snapshot corrupto: codificación de columna " + codificacion
+                    + " donde se esperaba " + codificacionEsperada);
+            }
+            int longitud = in.readInt();
+            int crcEsperado = in.readInt();
+            if (longitud < 0) {
+                throw new IOException("Snapshot corrupto: longitud de bloque negativa");
+            }
+            if (longitud > datos.length) {
+                datos = new byte[Math.max(longitud, datos.length * 2)];
+            }
+            in.readFully(datos, 0, longitud);
+            crc.reset();
+            crc.update(datos, 0, longitud);
+            if ((int) crc.getValue() != crcEsperado) {
+                throw new IOException("Snapshot corrupto: el CRC de un bloque de columna no coincide");
+            }
+            return ByteBuffer.wrap(datos, 0, longitud);
+        }
+
+        int[] enteros(int n) throws IOException {
+            ByteBuffer buf = siguiente(SnapshotWriter.COD_INT32);
+            comprobarLongitud(buf, n * 4L);
+            int[] valores = new int[n];
+            buf.asIntBuffer().get(valores);
+            return valores;
+        }
+
+        long[] largos(int n) throws IOException {
+            ByteBuffer buf = siguiente(SnapshotWriter.COD_INT64);
+            comprobarLongitud(buf, n * 8L);
+            long[] valores = new long[n];
+            buf.asLongBuffer().get(valores);
+            return valores;
+        }
+
+        String[] textos(int n) throws IOException {
+            ByteBuffer buf = siguiente(SnapshotWriter.COD_TEXTO);
+            String[] valores = new String[n];
+            for (int i = 0; i < n; i++) {
+                valores[i] = leerTexto(buf);
+            }
+            return valores;
+        }
+
+        String[] diccionario(int n) throws IOException {
+            ByteBuffer buf = siguiente(SnapshotWriter.COD_DICCIONARIO);
+            try {
+                int numEntradas = buf.getInt();
+                if (numEntradas < 0 || numEntradas > n) {
+                    throw new IOException("Snapshot corrupto: diccionario de " + numEntradas + " entradas");
+                }
+                String[] entradas = new String[numEntradas];
+                for (int i = 0; i < numEntradas; i++) {
+                    entradas[i] = leerTexto(buf);
+                }
+                int ancho = buf.get();
+                String[] valores = new String[n];
+                for (int i = 0; i < n; i++) {
+                    int codigo;
+                    if (ancho == 1) {
+                        codigo = buf.get() & 0xFF;
+                    } else if (ancho == 2) {
+                        codigo = buf.getShort() & 0xFFFF;
+                    } else {
+                        codigo = buf.getInt();
+                    }
+                    if (codigo < 0 || codigo >= numEntradas) {
+                        throw new IOException("Snapshot corrupto: código de diccionario fuera de rango");
+                    }
+                    valores[i] = entradas[codigo];
+                }
+                return valores;
+            } catch (RuntimeException e) {
+                throw new IOException("Snapshot corrupto: bloque de diccionario incompleto");
+            }
+        }
+
+        private static String leerTexto(ByteBuffer buf) throws IOException {
+            try {
+                int longitud = buf.getInt();
+                if (longitud == -1) {
+                    return null;
+                }
+                if (longitud < 0 || longitud > buf.remaining()) {
+                    throw new IOException("Snapshot corrupto: bloque de texto incompleto");
+                }
+                String valor = new String(buf.array(), buf.arrayOffset() + buf.position(), longitud,
+                    StandardCharsets.UTF_8);
+                buf.position(buf.position() + longitud);
+                return valor;
+            } catch (RuntimeException e) {
+                throw new IOException("Snapshot corrupto: bloque de texto incompleto");
+            }
+        }
+
+        private static void comprobarLongitud(ByteBuffer buf, long esperada) throws IOException {
+            if (buf.remaining() != esperada) {
+                throw new IOException("Snapshot corrupto: la longitud del bloque no coincide con el número de filas");
+            }
+        }
+    }
+
+    /**
+     * Resumen de la lectura o restauración de un snapshot.
+     */
+    public static class Resultado {
+        private int version;
+        private Timestamp fechaCreacion;
+        private long productos;
+        private long movimientos;
+
+        /** @return Versión del formato del archivo */
+        public int getVersion() { return version; }
+        /** @return Fecha en la que se creó el snapshot */
+        public Timestamp getFechaCreacion() { return fechaCreacion; }
+        /** @return Productos leídos */
+        public long getProductos() { return productos; }
+        /** @return Movimientos leídos */
+        public long getMovimientos() { return movimientos; }
+    }
+}
@@ -0,0 +1,438 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Escritor de copias de seguridad binarias (snapshots) de productos y movimientos_stock.
+ * El formato es columnar y está pensado para guardar y restaurar el catálogo a la
+ * velocidad del disco, ocupando mucho menos que XML o JSON.
+ *
+ * Estructura del archivo (enteros en big-endian):
+ * - Cabecera: "AADS" (4 bytes), versión (u16), reservado (u16), fecha de creación (i64, ms)
+ * - Grupos de filas, cada uno con: tabla (u8: 1 = productos, 2 = movimientos),
+ *   número de filas (i32) y un bloque por columna
+ * - Fin: tabla 0 y total de productos y de movimientos (i64 cada uno)
+ *
+ * Cada bloque de columna contiene: codificación (u8), longitud de los datos (i32),
+ * CRC32 de los datos (i32) y los datos. Codificaciones:
+ * - INT32: un i32 por fila (Integer.MIN_VALUE representa NULL)
+ * - INT64: un i64 por fila (Long.MIN_VALUE representa NULL)
+ * - TEXTO: por fila, longitud en bytes (i32, -1 para NULL) y bytes UTF-8
+ * - DICCIONARIO: número de entradas (i32), las entradas como en TEXTO, ancho del
+ *   código en bytes (u8: 1, 2 o 4) y un código por fila
+ *
+ * Columnas de productos: id_producto (INT32), nombre (TEXTO), categoria (DICCIONARIO),
+ * precio (TEXTO), stock (INT32).
+ * Columnas de movimientos: id_movimiento (INT32), id_producto (INT32), tipo_movimiento
+ * (DICCIONARIO), cantidad (INT32), fecha_movimiento (INT64, ms desde 1970).
+ */
+public class SnapshotWriter implements Closeable {
+    static final byte[] MAGIA = { 'A', 'A', 'D', 'S' };
+    static final int VERSION = 1;
+
+    static final int TABLA_FIN = 0;
+    static final int TABLA_PRODUCTOS = 1;
+    static final int TABLA_MOVIMIENTOS = 2;
+
+    static final int COD_INT32 = 1;
+    static final int COD_INT64 = 2;
+    static final int COD_TEXTO = 3;
+    static final int COD_DICCIONARIO = 4;
+
+    // Filas por grupo: acota la memoria usada al escribir y al leer
+    static final int FILAS_POR_GRUPO = 65_536;
+
+    private final DataOutputStream out;
+    private final BufferColumna buffer = new BufferColumna();
+    private final CRC32 crc = new CRC32();
+
+    // Grupo de productos en curso
+    private final int[] prodId = new int[FILAS_POR_GRUPO];
+    private final String[] prodNombre = new String[FILAS_POR_GRUPO];
+    private final String[] prodCategoria = new String[FILAS_POR_GRUPO];
+    private final String[] prodPrecio = new String[FILAS_POR_GRUPO];
+    private final int[] prodStock = new int[FILAS_POR_GRUPO];
+    private int numProductos = 0;
+
+    // Grupo de movimientos en curso
+    private final int[] movId = new int[FILAS_POR_GRUPO];
+    private final int[] movProducto = new int[FILAS_POR_GRUPO];
+    private final String[] movTipo = new String[FILAS_POR_GRUPO];
+    private final int[] movCantidad = new int[FILAS_POR_GRUPO];
+    private final long[] movFecha = new long[FILAS_POR_GRUPO];
+    private int numMovimientos = 0;
+
+    private long totalProductos = 0;
+    private long totalMovimientos = 0;
+    private boolean cerrado = false;
+
+    /**
+     * Crea un snapshot escribiendo la cabecera en la salida.
+     *
+     * @param salida Flujo de salida (se le añade un búfer)
+     * @throws IOException Si hay un error al escribir
+     */
+    public SnapshotWriter(OutputStream salida) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(salida, 256 * 1024));
+        out.write(MAGIA);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Añade un producto al snapshot.
+     */
+    public void anadirProducto(int id, String nombre, String categoria, String precio, int stock) throws IOException {
+        prodId[numProductos] = id;
+        prodNombre[numProductos] = nombre;
+        prodCategoria[numProductos] = categoria;
+        prodPrecio[numProductos] = precio;
+        prodStock[numProductos] = stock;
+        numProductos++;
+        totalProductos++;
+        if (numProductos == FILAS_POR_GRUPO) {
+            escribirGrupoProductos();
+        }
+    }
+
+    /**
+     * Añade un movimiento de stock al snapshot.
+     * Los productos deben añadirse antes que sus movimientos para poder restaurarlos.
+     *
+     * @param idProducto ID del producto o null
+     * @param cantidad Cantidad o null
+     * @param fecha Fecha del movimiento o null
+     */
+    public void anadirMovimiento(int id, Integer idProducto, String tipo, Integer cantidad, Timestamp fecha)
+            throws IOException {
+        if (numProductos > 0) {
+            escribirGrupoProductos();
+        }
+        movId[numMovimientos] = id;
+        movProducto[numMovimientos] = idProducto == null ? Integer.MIN_VALUE : idProducto;
+        movTipo[numMovimientos] = tipo;
+        movCantidad[numMovimientos] = cantidad == null ? Integer.MIN_VALUE : cantidad;
+        movFecha[numMovimientos] = fecha == null ? Long.MIN_VALUE : fecha.getTime();
+        numMovimientos++;
+        totalMovimientos++;
+        if (numMovimientos == FILAS_POR_GRUPO) {
+            escribirGrupoMovimientos();
+        }
+    }
+
+    public long getTotalProductos() {
+        return totalProductos;
+    }
+
+    public long getTotalMovimientos() {
+        return totalMovimientos;
+    }
+
+    private void escribirGrupoProductos() throws IOException {
+        out.writeByte(TABLA_PRODUCTOS);
+        out.writeInt(numProductos);
+        escribirEnteros(prodId, numProductos);
+        escribirTextos(prodNombre, numProductos);
+        escribirDiccionario(prodCategoria, numProductos);
+        escribirTextos(prodPrecio, numProductos);
+        escribirEnteros(prodStock, numProductos);
+        Arrays.fill(prodNombre, 0, numProductos, null);
+        Arrays.fill(prodCategoria, 0, numProductos, null);
+        Arrays.fill(prodPrecio, 0, numProductos, null);
+        numProductos = 0;
+    }
+
+    private void escribirGrupoMovimientos() throws IOException {
+        out.writeByte(TABLA_MOVIMIENTOS);
+        out.writeInt(numMovimientos);
+        escribirEnteros(movId, numMovimientos);
+        escribirEnteros(movProducto, numMovimientos);
+        escribirDiccionario(movTipo, numMovimientos);
+        escribirEnteros(movCantidad, numMovimientos);
+        escribirLargos(movFecha, numMovimientos);
+        Arrays.fill(movTipo, 0, numMovimientos, null);
+        numMovimientos = 0;
+    }
+
+    private void escribirEnteros(int[] valores, int n) throws IOException {
+        buffer.reiniciar();
+        for (int i = 0; i < n; i++) {
+            buffer.putInt(valores[i]);
+        }
+        escribirBloque(COD_INT32);
+    }
+
+    private void escribirLargos(long[] valores, int n) throws IOException {
+        buffer.reiniciar();
+        for (int i = 0; i < n; i++) {
+            buffer.putLong(valores[i]);
+        }
+        escribirBloque(COD_INT64);
+    }
+
+    private void escribirTextos(String[] valores, int n) throws IOException {
+        buffer.reiniciar();
+        for (int i = 0; i < n; i++) {
+            buffer.putTexto(valores[i]);
+        }
+        escribirBloque(COD_TEXTO);
+    }
+
+    /**
+     * Codifica la columna con un diccionario de valores distintos y un código por fila.
+     * El ancho del código se ajusta al tamaño del diccionario.
+     */
+    private void escribirDiccionario(String[] valores, int n) throws IOException {
+        Map<String, Integer> codigos = new HashMap<>();
+        int[] porFila = new int[n];
+        int nulo = -1;
+        String[] entradas = new String[Math.min(n, 1024)];
+        int numEntradas = 0;
+        for (int i = 0; i < n; i++) {
+            String valor = valores[i];
+            int codigo;
+            if (valor == null) {
+                if (nulo < 0) {
+                    nulo = numEntradas;
+                    entradas = anadirEntrada(entradas, numEntradas++, null);
+                }
+                codigo = nulo;
+            } else {
+                Integer existente = codigos.get(valor);
+                if (existente == null) {
+                    existente = numEntradas;
+                    codigos.put(valor, existente);
+                    entradas = anadirEntrada(entradas, numEntradas++, valor);
+                }
+                codigo = existente;
+            }
+            porFila[i] = codigo;
+        }
+
+        buffer.reiniciar();
+        buffer.putInt(numEntradas);
+        for (int i = 0; i < numEntradas; i++) {
+            buffer.putTexto(entradas[i]);
+        }
+        int ancho = numEntradas <= 256 ? 1 : numEntradas <= 65_536 ? 2 : 4;
+        buffer.putByte(ancho);
+        for (int i = 0; i < n; i++) {
+            if (ancho == 1) {
+                buffer.putByte(porFila[i]);
+            } else if (ancho == 2) {
+                buffer.putShort(porFila[i]);
+            } else {
+                buffer.putInt(porFila[i]);
+            }
+        }
+        escribirBloque(COD_DICCIONARIO);
+    }
+
+    private static String[] anadirEntrada(String[] entradas, int posicion, String valor) {
+        if (posicion == entradas.length) {
+            entradas = Arrays.copyOf(entradas, Math.max(1, entradas.length * 2));
+        }
+        entradas[posicion] = valor;
+        return entradas;
+    }
+
+    /**
+     * Escribe el contenido del búfer como un bloque de columna con su CRC32.
+     */
+    private void escribirBloque(int codificacion) throws IOException {
+        crc.reset();
+        crc.update(buffer.datos, 0, buffer.longitud);
+        out.writeByte(codificacion);
+        out.writeInt(buffer.longitud);
+        out.writeInt((int) crc.getValue());
+        out.write(buffer.datos, 0, buffer.longitud);
+    }
+
+    /**
+     * Escribe los grupos pendientes y el pie del archivo y cierra la salida.
+     */
+    @Override
+    public void close() throws IOException {
+        if (cerrado) {
+            return;
+        }
+        cerrado = true;
+        try {
+            if (numProductos > 0) {
+                escribirGrupoProductos();
+            }
+            if (numMovimientos > 0) {
+                escribirGrupoMovimientos();
+            }
+            out.writeByte(TABLA_FIN);
+            out.writeLong(totalProductos);
+            out.writeLong(totalMovimientos);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Crea una copia de seguridad binaria de productos y movimientos_stock.
+     * Ambas tablas se leen en streaming dentro de la misma transacción, por lo que
+     * la copia es coherente aunque haya movimientos mientras se genera.
+     *
+     * @param conn Conexión a la base de datos
+     * @param ruta Ruta del archivo de snapshot
+     * @return Escritor ya cerrado, con los totales de filas escritas
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     * @throws IOException Si hay un error al escribir el archivo
+     */
+    public static SnapshotWriter backup(Connection conn, String ruta) throws SQLException, IOException {
+        conn.setAutoCommit(false);
+        try (SnapshotWriter snapshot = new SnapshotWriter(new FileOutputStream(ruta))) {
+            try (PreparedStatement ps = Almacen.prepararLectura(conn,
+                    "SELECT id_producto, nombre, categoria, precio, stock FROM productos");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    snapshot.anadirProducto(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5));
+                }
+            }
+            try (PreparedStatement ps = Almacen.prepararLectura(conn,
+                    "SELECT id_movimiento, id_producto, tipo_movimiento, cantidad, fecha_movimiento FROM movimientos_stock");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    snapshot.anadirMovimiento(rs.getInt(1), rs.getObject(2, Integer.class),
+                        rs.getString(3), rs.getObject(4, Integer.class), rs.getTimestamp(5));
+                }
+            }
+            conn.commit();
+            return snapshot;
+        } catch (SQLException | IOException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Convierte un archivo XML de inventario (inventario.xsd) en un snapshot binario
+     * de productos, leyéndolo en streaming.
+     *
+     * @param rutaXml Ruta del archivo XML
+     * @param rutaSnapshot Ruta del snapshot a crear
+     * @return Número de productos convertidos
+     * @throws IOException Si hay un error al leer o escribir los archivos
+     * @throws XMLStreamException Si el XML no está bien formado
+     */
+    public static long fromXml(String rutaXml, String rutaSnapshot) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(rutaXml));
+             SnapshotWriter snapshot = new SnapshotWriter(new FileOutputStream(rutaSnapshot))) {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            int id = 0;
+            String nombre = null;
+            String categoria = null;
+            String precio = null;
+            int stock = 0;
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (xml.getLocalName()) {
+                    case "producto":
+                        id = Integer.parseInt(xml.getAttributeValue(null, "id").trim());
+                        break;
+                    case "nombre":
+                        nombre = xml.getElementText();
+                        break;
+                    case "categoria":
+                        categoria = xml.getElementText();
+                        break;
+                    case "precio":
+                        precio = xml.getElementText();
+                        break;
+                    case "stock":
+                        stock = Integer.parseInt(xml.getElementText().trim());
+                        // stock es el último campo del producto según inventario.xsd
+                        snapshot.anadirProducto(id, nombre, categoria, precio, stock);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            xml.close();
+            return snapshot.getTotalProductos();
+        }
+    }
+
+    /**
+     * Búfer de bytes ampliable en el que se codifica cada columna antes de escribirla.
+     */
+    private static class BufferColumna {
+        byte[] datos = new byte[64 * 1024];
+        int longitud = 0;
+
+        void reiniciar() {
+            longitud = 0;
+        }
+
+        private void asegurar(int extra) {
+            if (longitud + extra > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, longitud + extra));
+            }
+        }
+
+        void putByte(int v) {
+            asegurar(1);
+            datos[longitud++] = (byte) v;
+        }
+
+        void putShort(int v) {
+            asegurar(2);
+            datos[longitud++] = (byte) (v >>> 8);
+            datos[longitud++] = (byte) v;
+        }
+
+        void putInt(int v) {
+            asegurar(4);
+            datos[longitud++] = (byte) (v >>> 24);
+            datos[longitud++] = (byte) (v >>> 16);
+            datos[longitud++] = (byte) (v >>> 8);
+            datos[longitud++] = (byte) v;
+        }
+
+        void putLong(long v) {
+            putInt((int) (v >>> 32));
+            putInt((int) v);
+        }
+
+        void putTexto(String v) {
+            if (v == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            asegurar(bytes.length);
+            System.arraycopy(bytes, 0, datos, longitud, bytes.length);
+            longitud += bytes.length;
+        }
+    }
+}
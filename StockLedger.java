@@ -0,0 +1,423 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Registro en memoria del stock de cada producto (id_producto -> stock).
+ * Permite comprobar y reservar stock sin ir a la base de datos: las salidas se
+ * descuentan con una operación compare-and-set que nunca deja el stock negativo,
+ * igual que el UPDATE ... AND stock >= ? de la base de datos.
+ *
+ * Los movimientos aceptados se guardan en MySQL de forma asíncrona a través de
+ * GroupCommitMovimientos, que los escribe agrupados en el mismo orden en que se
+ * aceptaron. Así la base de datos aplica la misma secuencia que el registro y sus
+ * comprobaciones de stock no fallan salvo que otro proceso la modifique; si una
+ * escritura falla, el movimiento se deshace también en memoria. Los movimientos
+ * rechazados en memoria fallan con el mismo estado que los que rechaza la base de
+ * datos (GroupCommitMovimientos.ESTADO_RECHAZADO).
+ *
+ * Los stocks se guardan en una tabla hash de direccionamiento abierto con arrays de
+ * int (sin objetos Integer por entrada). Las lecturas y las operaciones atómicas
+ * sobre el stock se ejecutan en paralelo; añadir o quitar productos bloquea la tabla.
+ *
+ * Recargar el registro (cargar) detiene los registros de movimientos nuevos hasta
+ * terminar, para que ninguno se acepte entre guardar los pendientes y leer el stock.
+ */
+public class StockLedger implements AutoCloseable {
+    /** Valor devuelto por getStock si el producto no está registrado */
+    public static final int NO_EXISTE = -1;
+
+    // Marca de posición libre en la tabla de claves
+    private static final int VACIO = Integer.MIN_VALUE;
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Lectura: registrar un movimiento (en memoria y en la cola). Escritura: recargar el registro
+    private final ReentrantReadWriteLock registro = new ReentrantReadWriteLock();
+    private int[] claves;
+    private AtomicIntegerArray stocks;
+    private int tamano = 0;
+
+    private final GroupCommitMovimientos persistencia;
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final LongAdder reservas = new LongAdder();
+    private final LongAdder rechazos = new LongAdder();
+    private final LongAdder persistidos = new LongAdder();
+    private final LongAdder erroresPersistencia = new LongAdder();
+
+    /**
+     * Crea un registro vacío.
+     *
+     * @param persistencia Cola que guarda los movimientos aceptados en la base de datos
+     */
+    public StockLedger(GroupCommitMovimientos persistencia) {
+        this.persistencia = persistencia;
+        this.claves = new int[CAPACIDAD_INICIAL];
+        Arrays.fill(claves, VACIO);
+        this.stocks = new AtomicIntegerArray(CAPACIDAD_INICIAL);
+    }
+
+    /**
+     * Vacía el registro y carga el stock de todos los productos.
+     * Detiene los registros de movimientos nuevos y espera a que se guarden los
+     * pendientes antes de leer el stock; los registros esperan hasta que termine.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Número de productos cargados
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     */
+    public int cargar(Connection conn) throws SQLException {
+        registro.writeLock().lock();
+        try {
+            // Sin bloquear la tabla: si una escritura falla, su compensación
+            // (persistir) toma el lock de lectura en el hilo escritor
+            esperarPersistencia();
+            String sql = "SELECT id_producto, stock FROM productos";
+            lock.writeLock().lock();
+            try (PreparedStatement ps = Almacen.prepararLectura(conn, sql)) {
+                Arrays.fill(claves, VACIO);
+                stocks = new AtomicIntegerArray(claves.length);
+                tamano = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        poner(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+                return tamano;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            registro.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param idProducto ID del producto
+     * @return Stock actual del producto, o NO_EXISTE si no está registrado
+     */
+    public int getStock(int idProducto) {
+        lock.readLock().lock();
+        try {
+            int posicion = buscar(idProducto);
+            return posicion < 0 ? NO_EXISTE : stocks.get(posicion);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Número de productos registrados
+     */
+    public int getTamano() {
+        lock.readLock().lock();
+        try {
+            return tamano;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Descuenta una cantidad del stock si hay suficiente, sin bloquear a otros hilos.
+     *
+     * @param idProducto ID del producto
+     * @param cantidad Cantidad a descontar
+     * @return true si se ha descontado; false si no hay stock suficiente o el producto no existe
+     */
+    public boolean reservar(int idProducto, int cantidad) {
+        lock.readLock().lock();
+        try {
+            int posicion = buscar(idProducto);
+            if (posicion < 0) {
+                return false;
+            }
+            while (true) {
+                int actual = stocks.get(posicion);
+                if (actual < cantidad) {
+                    return false;
+                }
+                if (stocks.compareAndSet(posicion, actual, actual - cantidad)) {
+                    return true;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Suma una cantidad (negativa para restar sin comprobar) al stock de un producto.
+     *
+     * @param idProducto ID del producto
+     * @param cantidad Cantidad a sumar
+     * @return true si el producto existe
+     */
+    public boolean sumar(int idProducto, int cantidad) {
+        lock.readLock().lock();
+        try {
+            int posicion = buscar(idProducto);
+            if (posicion < 0) {
+                return false;
+            }
+            stocks.getAndAdd(posicion, cantidad);
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registra un producto recién creado en la base de datos. Si ya está registrado
+     * no cambia su stock: el stock de un producto existente solo cambia con
+     * registrarEntrada y registrarSalida.
+     *
+     * @param idProducto ID del producto
+     * @param stock Stock inicial confirmado en la base de datos
+     */
+    public void anadir(int idProducto, int stock) {
+        lock.writeLock().lock();
+        try {
+            if (buscar(idProducto) < 0) {
+                poner(idProducto, stock);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un producto del registro tras eliminarlo de la base de datos.
+     *
+     * @param idProducto ID del producto
+     */
+    public void eliminar(int idProducto) {
+        lock.writeLock().lock();
+        try {
+            int posicion = buscar(idProducto);
+            if (posicion < 0) {
+                return;
+            }
+            // Borrado con desplazamiento hacia atrás: se recolocan las claves siguientes
+            // de la misma secuencia de sondeo para no dejar huecos que corten búsquedas
+            int mascara = claves.length - 1;
+            int hueco = posicion;
+            int i = posicion;
+            while (true) {
+                i = (i + 1) & mascara;
+                int clave = claves[i];
+                if (clave == VACIO) {
+                    break;
+                }
+                int ideal = mezclar(clave) & mascara;
+                boolean enRango = hueco <= i ? (hueco < ideal && ideal <= i) : (hueco < ideal || ideal <= i);
+                if (enRango) {
+                    continue;
+                }
+                claves[hueco] = clave;
+                stocks.set(hueco, stocks.get(i));
+                hueco = i;
+            }
+            claves[hueco] = VACIO;
+            stocks.set(hueco, 0);
+            tamano--;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registra una entrada de stock: la suma en memoria al momento y la guarda en
+     * la base de datos en segundo plano.
+     *
+     * @param idProducto ID del producto
+     * @param cantidad Cantidad que entra (debe ser positiva)
+     * @return Futuro que se completa cuando el movimiento está confirmado en la base de datos
+     * @throws SQLException Si el producto no existe
+     * @throws IllegalArgumentException Si la cantidad es menor o igual a cero
+     */
+    public CompletableFuture<Void> registrarEntrada(int idProducto, int cantidad) throws SQLException {
+        comprobarCantidad(cantidad);
+        registro.readLock().lock();
+        try {
+            if (!sumar(idProducto, cantidad)) {
+                rechazos.increment();
+                throw new SQLException("El producto no existe", GroupCommitMovimientos.ESTADO_RECHAZADO);
+            }
+            return persistir(idProducto, StockManager.ENTRADA, cantidad, -cantidad);
+        } finally {
+            registro.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registra una salida de stock: la reserva en memoria al momento (sin consultar
+     * la base de datos) y la guarda en la base de datos en segundo plano.
+     *
+     * @param idProducto ID del producto
+     * @param cantidad Cantidad que sale (debe ser positiva)
+     * @return Futuro que se completa cuando el movimiento está confirmado en la base de datos
+     * @throws SQLException Si no hay stock suficiente o el producto no existe
+     * @throws IllegalArgumentException Si la cantidad es menor o igual a cero
+     */
+    public CompletableFuture<Void> registrarSalida(int idProducto, int cantidad) throws SQLException {
+        comprobarCantidad(cantidad);
+        registro.readLock().lock();
+        try {
+            if (!reservar(idProducto, cantidad)) {
+                rechazos.increment();
+                throw new SQLException("No hay suficiente stock disponible o el producto no existe",
+                    GroupCommitMovimientos.ESTADO_RECHAZADO);
+            }
+            reservas.increment();
+            return persistir(idProducto, StockManager.SALIDA, cantidad, cantidad);
+        } finally {
+            registro.readLock().unlock();
+        }
+    }
+
+    private static void comprobarCantidad(int cantidad) {
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor que 0");
+        }
+    }
+
+    /**
+     * Encola la escritura del movimiento en la base de datos. Si falla, se suma
+     * la compensación al stock en memoria para deshacer el movimiento.
+     */
+    private CompletableFuture<Void> persistir(int idProducto, String tipo, int cantidad, int compensacion) {
+        pendientes.incrementAndGet();
+        return persistencia.enviar(idProducto, tipo, cantidad).whenComplete((ok, error) -> {
+            pendientes.decrementAndGet();
+            if (error == null) {
+                persistidos.increment();
+            } else {
+                sumar(idProducto, compensacion);
+                erroresPersistencia.increment();
+            }
+        });
+    }
+
+    /**
+     * Espera a que se guarden en la base de datos todos los movimientos aceptados
+     * hasta ahora. Debe llamarse antes de modificar el stock directamente en la
+     * base de datos.
+     */
+    public void esperarPersistencia() {
+        persistencia.vaciar();
+    }
+
+    /**
+     * @return Movimientos aceptados pendientes de guardar en la base de datos
+     */
+    public int getPendientes() {
+        return pendientes.get();
+    }
+
+    /**
+     * Espera a que se guarden los movimientos pendientes.
+     * La cola de persistencia la cierra quien la creó.
+     */
+    @Override
+    public void close() {
+        esperarPersistencia();
+    }
+
+    /**
+     * Muestra por consola el estado y las métricas del registro de stock.
+     */
+    public void imprimirEstadisticas() {
+        System.out.println("\n=== ESTADÍSTICAS DEL REGISTRO DE STOCK ===");
+        System.out.println("Productos registrados: " + getTamano());
+        System.out.println("Salidas reservadas en memoria: " + reservas.sum());
+        System.out.println("Movimientos rechazados: " + rechazos.sum());
+        System.out.println("------------------------");
+        System.out.println("Movimientos guardados en la base de datos: " + persistidos.sum());
+        System.out.println("Pendientes de guardar: " + pendientes.get());
+        System.out.println("Errores al guardar (deshechos en memoria): " + erroresPersistencia.sum());
+        System.out.println("------------------------");
+    }
+
+    /**
+     * Busca la posición de un id en la tabla (con el lock de lectura o escritura adquirido).
+     *
+     * @return Posición del id, o -1 si no está
+     */
+    private int buscar(int idProducto) {
+        int mascara = claves.length - 1;
+        int i = mezclar(idProducto) & mascara;
+        while (true) {
+            int clave = claves[i];
+            if (clave == idProducto) {
+                return i;
+            }
+            if (clave == VACIO) {
+                return -1;
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    /**
+     * Inserta o actualiza un id (con el lock de escritura adquirido).
+     * La tabla se duplica al superar la mitad de ocupación.
+     */
+    private void poner(int idProducto, int stock) {
+        if (idProducto == VACIO) {
+            throw new IllegalArgumentException("ID de producto no válido: " + idProducto);
+        }
+        int posicion = buscar(idProducto);
+        if (posicion >= 0) {
+            stocks.set(posicion, stock);
+            return;
+        }
+        if ((tamano + 1) * 2 > claves.length) {
+            redimensionar(claves.length * 2);
+        }
+        int mascara = claves.length - 1;
+        int i = mezclar(idProducto) & mascara;
+        while (claves[i] != VACIO) {
+            i = (i + 1) & mascara;
+        }
+        claves[i] = idProducto;
+        stocks.set(i, stock);
+        tamano++;
+    }
+
+    private void redimensionar(int capacidad) {
+        int[] clavesAnteriores = claves;
+        AtomicIntegerArray stocksAnteriores = stocks;
+        claves = new int[capacidad];
+        Arrays.fill(claves, VACIO);
+        stocks = new AtomicIntegerArray(capacidad);
+        int mascara = capacidad - 1;
+        for (int j = 0; j < clavesAnteriores.length; j++) {
+            int clave = clavesAnteriores[j];
+            if (clave == VACIO) {
+                continue;
+            }
+            int i = mezclar(clave) & mascara;
+            while (claves[i] != VACIO) {
+                i = (i + 1) & mascara;
+            }
+            claves[i] = clave;
+            stocks.set(i, stocksAnteriores.get(j));
+        }
+    }
+
+    /**
+     * Dispersa los bits del id para que ids consecutivos no formen bloques en la tabla.
+     */
+    private static int mezclar(int clave) {
+        int h = clave * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,6 +1,17 @@
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Clase que gestiona todas las operaciones relacionadas con el stock de productos.
@@ -8,24 +19,96 @@ import java.sql.SQLException;
  * - Crear la tabla de movimientos de stock
  * - Registrar entradas y salidas de stock
  * - Consultar el histórico de movimientos
+ * - Recorrer productos y movimientos por páginas
  */
 public class StockManager {
-    // SQL para crear la tabla de movimientos si no existe
+    // SQL para crear la tabla de productos si no existe
+    static final String CREATE_PRODUCTOS_TABLE = """
+        CREATE TABLE IF NOT EXISTS productos (
+            id_producto INT PRIMARY KEY,
+            nombre VARCHAR(100) NOT NULL,
+            categoria VARCHAR(50) NOT NULL,
+            precio DECIMAL(12,2) NOT NULL,
+            stock INT NOT NULL DEFAULT 0
+        )
+    """;
+
+    // SQL para crear la tabla de movimientos si no existe. Sin clave ajena a productos
+    // porque la tabla se particiona por meses (ver ParticionesMovimientos)
     private static final String CREATE_MOVIMIENTOS_TABLE = """
         CREATE TABLE IF NOT EXISTS movimientos_stock (
-            id_movimiento INT PRIMARY KEY AUTO_INCREMENT,
+            id_movimiento INT AUTO_INCREMENT,
             id_producto INT,
             tipo_movimiento ENUM('ENTRADA', 'SALIDA'),
             cantidad INT,
-            fecha_movimiento TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-            FOREIGN KEY (id_producto) REFERENCES productos(id_producto)
+            fecha_movimiento TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+            PRIMARY KEY (id_movimiento, fecha_movimiento)
         )
     """;
 
+    // Longitud máxima de las columnas de texto de productos
+    public static final int MAX_NOMBRE = 100;
+    public static final int MAX_CATEGORIA = 50;
+
     // Constantes para tipos de movimiento
     public static final String ENTRADA = "ENTRADA";
     public static final String SALIDA = "SALIDA";
 
+    // Filas por página al recorrer productos o movimientos por páginas
+    public static final int TAMANO_PAGINA_POR_DEFECTO = 100;
+
+    // Top de ventas a partir del resumen diario en lugar de todo el histórico de movimientos.
+    // Los empates se ordenan por id, como en RankingVentas, para que el top no cambie entre consultas
+    private static final String SQL_MAS_VENDIDOS = """
+            SELECT p.id_producto, p.nombre, p.categoria, p.precio,
+                   COALESCE(v.total_vendido, 0) as total_vendido
+            FROM productos p
+            LEFT JOIN (
+                SELECT id_producto, SUM(unidades_salida) as total_vendido
+                FROM ventas_diarias
+                GROUP BY id_producto
+            ) v ON p.id_producto = v.id_producto
+            ORDER BY total_vendido DESC, p.id_producto ASC
+            LIMIT ?
+        """;
+
+    // Suma un movimiento al resumen de ventas del día (una fila por producto y día).
+    // Las unidades se pasan dos veces en lugar de usar VALUES(), obsoleta en MySQL 8; el
+    // alias de fila que la sustituye no lo admiten MariaDB (XAMPP) ni H2
+    static final String UPSERT_VENTAS_DIARIAS = """
+        INSERT INTO ventas_diarias (id_producto, fecha, unidades_salida, unidades_entrada)
+        VALUES (?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE unidades_salida = unidades_salida + ?,
+            unidades_entrada = unidades_entrada + ?
+        """;
+
+    /**
+     * Fecha y hora con la que se registran los movimientos. Se calcula en la aplicación
+     * y se usa tanto en movimientos_stock como en ventas_diarias, para que el día del
+     * resumen sea siempre el del movimiento (también cerca de medianoche). Se trunca a
+     * segundos porque MySQL redondearía las fracciones al guardar la columna TIMESTAMP,
+     * lo que podría pasar el movimiento al día siguiente.
+     *
+     * @return Fecha y hora actuales, sin fracciones de segundo
+     */
+    static LocalDateTime fechaMovimiento() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    /**
+     * Añade al lote de una sentencia UPSERT_VENTAS_DIARIAS las unidades de un producto
+     * en un día.
+     */
+    static void anadirVentasDiarias(PreparedStatement ps, int idProducto, LocalDate fecha,
+                                    long unidadesSalida, long unidadesEntrada) throws SQLException {
+        ps.setInt(1, idProducto);
+        ps.setObject(2, fecha);
+        ps.setLong(3, unidadesSalida);
+        ps.setLong(4, unidadesEntrada);
+        ps.setLong(5, unidadesSalida);
+        ps.setLong(6, unidadesEntrada);
+    }
+
     /**
      * Inicializa las tablas necesarias si no existen en la base de datos.
      * Crea la tabla movimientos_stock si no existe, que se utiliza para
@@ -40,6 +123,46 @@ public class StockManager {
         }
     }
 
+    /**
+     * Aplica un movimiento al stock de un producto en la tabla productos.
+     * Las salidas solo se aplican si hay stock suficiente, de modo que el stock
+     * nunca queda negativo. No registra el movimiento en el histórico ni gestiona
+     * la transacción: el llamante debe llamar también a registrarMovimientoStock
+     * y confirmar ambas operaciones juntas.
+     *
+     * @param conn Conexión a la base de datos
+     * @param idProducto ID del producto
+     * @param tipoMovimiento Tipo de movimiento (debe ser ENTRADA o SALIDA)
+     * @param cantidad Cantidad de unidades del movimiento (debe ser positiva)
+     * @throws SQLException Si el producto no existe, no hay stock suficiente o falla la actualización
+     * @throws IllegalArgumentException Si el tipo de movimiento no es válido o la cantidad es menor o igual a cero
+     */
+    public static void actualizarStock(Connection conn, int idProducto, String tipoMovimiento, int cantidad) throws SQLException {
+        if (!tipoMovimiento.equals(ENTRADA) && !tipoMovimiento.equals(SALIDA)) {
+            throw new IllegalArgumentException("Tipo de movimiento no válido");
+        }
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor que 0");
+        }
+
+        boolean entrada = tipoMovimiento.equals(ENTRADA);
+        String updateStock = entrada
+            ? "UPDATE productos SET stock = stock + ? WHERE id_producto = ?"
+            : "UPDATE productos SET stock = stock - ? WHERE id_producto = ? AND stock >= ?";
+        try (PreparedStatement psUpdate = conn.prepareStatement(updateStock)) {
+            psUpdate.setInt(1, cantidad);
+            psUpdate.setInt(2, idProducto);
+            if (!entrada) {
+                psUpdate.setInt(3, cantidad);
+            }
+            if (psUpdate.executeUpdate() == 0) {
+                throw new SQLException(entrada
+                    ? "El producto no existe"
+                    : "No hay suficiente stock disponible o el producto no existe");
+            }
+        }
+    }
+
     /**
      * Registra un movimiento de stock (entrada o salida) en el histórico.
      * Valida que el tipo de movimiento sea válido y que la cantidad sea positiva.
@@ -63,44 +186,248 @@ public class StockManager {
         }
 
         // Registrar el movimiento
-        String insertMovimiento = "INSERT INTO movimientos_stock (id_producto, tipo_movimiento, cantidad) VALUES (?, ?, ?)";
+        LocalDateTime fecha = fechaMovimiento();
+        String insertMovimiento = "INSERT INTO movimientos_stock (id_producto, tipo_movimiento, cantidad, fecha_movimiento) VALUES (?, ?, ?, ?)";
         try (PreparedStatement psInsertMov = conn.prepareStatement(insertMovimiento)) {
             psInsertMov.setInt(1, idProducto);
             psInsertMov.setString(2, tipoMovimiento);
             psInsertMov.setInt(3, cantidad);
+            psInsertMov.setObject(4, fecha);
             psInsertMov.executeUpdate();
         }
+
+        // Mantener el resumen de ventas en la misma transacción que el movimiento, con su misma fecha
+        boolean salida = tipoMovimiento.equals(SALIDA);
+        try (PreparedStatement psResumen = conn.prepareStatement(UPSERT_VENTAS_DIARIAS)) {
+            anadirVentasDiarias(psResumen, idProducto, fecha.toLocalDate(), salida ? cantidad : 0, salida ? 0 : cantidad);
+            psResumen.executeUpdate();
+        }
+    }
+
+    /**
+     * Vuelve a calcular la tabla ventas_diarias a partir de todo el histórico de
+     * movimientos (por ejemplo, tras restaurar una copia o si el resumen se ha
+     * desajustado). No gestiona la transacción: conviene ejecutarlo dentro de una
+     * para que las consultas no vean el resumen vacío.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Número de filas (producto y día) del resumen
+     * @throws SQLException Si hay un error al recalcular el resumen
+     */
+    public static int reconstruirResumenVentas(Connection conn) throws SQLException {
+        return reconstruirResumenVentas(conn, null);
+    }
+
+    /**
+     * Vuelve a calcular la tabla ventas_diarias a partir del día indicado. Las filas
+     * anteriores se conservan: corresponden a meses cuyos movimientos ya se han
+     * archivado y no están en movimientos_stock (ver ParticionesMovimientos).
+     *
+     * @param conn Conexión a la base de datos
+     * @param desde Primer día que se recalcula, o null para recalcular todo el resumen
+     * @return Número de filas (producto y día) recalculadas
+     * @throws SQLException Si hay un error al recalcular el resumen
+     */
+    public static int reconstruirResumenVentas(Connection conn, LocalDate desde) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "DELETE FROM ventas_diarias" + (desde == null ? "" : " WHERE fecha >= ?"))) {
+            if (desde != null) {
+                ps.setDate(1, Date.valueOf(desde));
+            }
+            ps.executeUpdate();
+        }
+        String sql = """
+            INSERT INTO ventas_diarias (id_producto, fecha, unidades_salida, unidades_entrada)
+            SELECT id_producto, CAST(fecha_movimiento AS DATE),
+                   SUM(CASE WHEN tipo_movimiento = ? THEN cantidad ELSE 0 END),
+                   SUM(CASE WHEN tipo_movimiento = ? THEN cantidad ELSE 0 END)
+            FROM movimientos_stock
+            WHERE id_producto IS NOT NULL %s
+            GROUP BY id_producto, CAST(fecha_movimiento AS DATE)
+        """.formatted(desde == null ? "" : "AND fecha_movimiento >= ?");
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, SALIDA);
+            ps.setString(2, ENTRADA);
+            if (desde != null) {
+                // Rango sobre la columna (no DATE(...)) para que MySQL descarte particiones
+                ps.setTimestamp(3, Timestamp.valueOf(desde.atStartOfDay()));
+            }
+            return ps.executeUpdate();
+        }
     }
 
     /**
      * Consulta y muestra el histórico de movimientos de un producto.
      * Los movimientos se muestran ordenados por fecha descendente (más recientes primero).
      * Para cada movimiento muestra: ID, tipo (entrada/salida), cantidad y fecha.
+     * El histórico se lee por páginas, por lo que la memoria usada no depende de su tamaño.
      *
      * @param conn Conexión a la base de datos
      * @param idProducto ID del producto del cual se quieren consultar los movimientos
      * @throws SQLException Si hay un error al consultar los movimientos
      */
     public static void consultarMovimientos(Connection conn, int idProducto) throws SQLException {
-        String sql = "SELECT * FROM movimientos_stock WHERE id_producto = ? ORDER BY fecha_movimiento DESC";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, idProducto);
-            try (var rs = ps.executeQuery()) {
-                System.out.println("\n=== HISTÓRICO DE MOVIMIENTOS ===");
+        System.out.println("\n=== HISTÓRICO DE MOVIMIENTOS ===");
+        Integer cursor = null;
+        do {
+            Pagina<Movimiento, Integer> pagina = paginaMovimientos(conn, idProducto, cursor, TAMANO_PAGINA_POR_DEFECTO);
+            for (Movimiento movimiento : pagina.getElementos()) {
+                imprimirMovimiento(movimiento);
+            }
+            cursor = pagina.getSiguiente();
+        } while (cursor != null);
+    }
+
+    /**
+     * Muestra por consola los datos de un movimiento de un producto.
+     *
+     * @param movimiento Movimiento a mostrar
+     */
+    public static void imprimirMovimiento(Movimiento movimiento) {
+        System.out.println("ID Movimiento: " + movimiento.getIdMovimiento());
+        System.out.println("Tipo: " + movimiento.getTipoMovimiento());
+        System.out.println("Cantidad: " + movimiento.getCantidad());
+        System.out.println("Fecha: " + movimiento.getFechaMovimiento());
+        System.out.println("------------------------");
+    }
+
+    /**
+     * Lee una página del catálogo de productos ordenado por id_producto.
+     * Usa paginación por clave (WHERE id_producto > cursor ... LIMIT), que recorre el
+     * índice de la clave primaria desde el cursor: pedir cualquier página cuesta lo
+     * mismo, a diferencia de OFFSET, que lee y descarta todas las filas anteriores.
+     *
+     * @param conn Conexión a la base de datos
+     * @param despuesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de productos de la página
+     * @return Página de productos
+     * @throws SQLException Si hay un error al consultar los productos
+     * @throws IllegalArgumentException Si el tamaño de página es menor o igual a 0
+     */
+    public static Pagina<Producto, Integer> paginaProductos(Connection conn, Integer despuesDe, int tamano) throws SQLException {
+        return paginaProductos(conn, null, despuesDe, tamano);
+    }
+
+    /**
+     * Lee una página de los productos con stock menor que un límite, ordenados por
+     * id_producto, con la misma paginación por clave que paginaProductos.
+     *
+     * @param conn Conexión a la base de datos
+     * @param limite Se devuelven los productos con stock menor que este valor
+     * @param despuesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de productos de la página
+     * @return Página de productos
+     * @throws SQLException Si hay un error al consultar los productos
+     * @throws IllegalArgumentException Si el tamaño de página es menor o igual a 0
+     */
+    public static Pagina<Producto, Integer> paginaProductosStockBajo(Connection conn, int limite, Integer despuesDe, int tamano)
+            throws SQLException {
+        return paginaProductos(conn, limite, despuesDe, tamano);
+    }
+
+    private static Pagina<Producto, Integer> paginaProductos(Connection conn, Integer stockMenorQue, Integer despuesDe,
+                                                    int tamano) throws SQLException {
+        comprobarTamanoPagina(tamano);
+        List<String> condiciones = new ArrayList<>(2);
+        if (stockMenorQue != null) {
+            condiciones.add("stock < ?");
+        }
+        if (despuesDe != null) {
+            condiciones.add("id_producto > ?");
+        }
+        String sql = "SELECT id_producto, nombre, categoria, precio, stock FROM productos"
+            + (condiciones.isEmpty() ? "" : " WHERE " + String.join(" AND ", condiciones))
+            + " ORDER BY id_producto LIMIT ?";
+        List<Producto> productos = new ArrayList<>(Math.min(tamano, 1024));
+        boolean hayMas = false;
+        try (PreparedStatement ps = Almacen.prepararLectura(conn, sql)) {
+            int i = 1;
+            if (stockMenorQue != null) {
+                ps.setInt(i++, stockMenorQue);
+            }
+            if (despuesDe != null) {
+                ps.setInt(i++, despuesDe);
+            }
+            // Se pide una fila más para saber si hay otra página sin otra consulta
+            ps.setInt(i, tamano + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (productos.size() == tamano) {
+                        hayMas = true;
+                        break;
+                    }
+                    productos.add(ProductoCache.leerProducto(rs));
+                }
+            }
+        }
+        Integer siguiente = hayMas ? productos.get(productos.size() - 1).getIdProducto() : null;
+        return new Pagina<>(productos, siguiente);
+    }
+
+    /**
+     * Lee una página del histórico de movimientos de un producto, del más reciente al
+     * más antiguo (orden descendente de id_movimiento, que es autoincremental).
+     * La consulta WHERE id_producto = ? AND id_movimiento < cursor ORDER BY id_movimiento DESC
+     * se resuelve con el índice idx_mov_producto_id (id_producto, id_movimiento) que
+     * crea la migración 2: recorre el índice hacia atrás desde el cursor y lee solo
+     * las filas de la página, sin ordenar el histórico.
+     *
+     * @param conn Conexión a la base de datos
+     * @param idProducto ID del producto
+     * @param antesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de movimientos de la página
+     * @return Página de movimientos
+     * @throws SQLException Si hay un error al consultar los movimientos
+     * @throws IllegalArgumentException Si el tamaño de página es menor o igual a 0
+     */
+    public static Pagina<Movimiento, Integer> paginaMovimientos(Connection conn, int idProducto, Integer antesDe, int tamano)
+            throws SQLException {
+        comprobarTamanoPagina(tamano);
+        String sql = "SELECT id_movimiento, id_producto, tipo_movimiento, cantidad, fecha_movimiento"
+            + " FROM movimientos_stock WHERE id_producto = ?"
+            + (antesDe == null ? "" : " AND id_movimiento < ?")
+            + " ORDER BY id_movimiento DESC LIMIT ?";
+        List<Movimiento> movimientos = new ArrayList<>(Math.min(tamano, 1024));
+        boolean hayMas = false;
+        try (PreparedStatement ps = Almacen.prepararLectura(conn, sql)) {
+            int i = 1;
+            ps.setInt(i++, idProducto);
+            if (antesDe != null) {
+                ps.setInt(i++, antesDe);
+            }
+            ps.setInt(i, tamano + 1);
+            try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    System.out.println("ID Movimiento: " + rs.getInt("id_movimiento"));
-                    System.out.println("Tipo: " + rs.getString("tipo_movimiento"));
-                    System.out.println("Cantidad: " + rs.getInt("cantidad"));
-                    System.out.println("Fecha: " + rs.getTimestamp("fecha_movimiento"));
-                    System.out.println("------------------------");
+                    if (movimientos.size() == tamano) {
+                        hayMas = true;
+                        break;
+                    }
+                    movimientos.add(leerMovimiento(rs));
                 }
             }
         }
+        Integer siguiente = hayMas ? movimientos.get(movimientos.size() - 1).getIdMovimiento() : null;
+        return new Pagina<>(movimientos, siguiente);
+    }
+
+    /**
+     * Crea un movimiento a partir de la fila actual de un ResultSet de movimientos_stock.
+     */
+    static Movimiento leerMovimiento(ResultSet rs) throws SQLException {
+        return new Movimiento(rs.getInt("id_movimiento"), rs.getInt("id_producto"), rs.getString("tipo_movimiento"),
+            rs.getInt("cantidad"), rs.getTimestamp("fecha_movimiento"));
+    }
+
+    private static void comprobarTamanoPagina(int tamano) {
+        if (tamano <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser mayor que 0");
+        }
     }
 
     /**
      * Consulta el histórico de movimientos de stock dentro de un rango de fechas.
      * Muestra todos los movimientos ordenados por fecha, incluyendo el nombre del producto.
+     * El rango se lee por páginas, por lo que la memoria usada no depende de su tamaño.
      *
      * @param conn Conexión a la base de datos
      * @param fechaInicio Fecha de inicio del rango (formato: YYYY-MM-DD)
@@ -109,40 +436,144 @@ public class StockManager {
      * @throws IllegalArgumentException Si el formato de las fechas es incorrecto
      */
     public static void consultarMovimientosPorFecha(Connection conn, String fechaInicio, String fechaFin) throws SQLException {
+        imprimirCabeceraMovimientosPorFecha(fechaInicio, fechaFin);
+        CursorFecha cursor = null;
+        do {
+            Pagina<MovimientoProducto, CursorFecha> pagina =
+                paginaMovimientosPorFecha(conn, fechaInicio, fechaFin, cursor, TAMANO_PAGINA_POR_DEFECTO);
+            for (MovimientoProducto movimiento : pagina.getElementos()) {
+                imprimirMovimientoProducto(movimiento);
+            }
+            cursor = pagina.getSiguiente();
+        } while (cursor != null);
+        avisarMovimientosArchivados(conn, fechaInicio);
+    }
+
+    /**
+     * Muestra por consola la cabecera del histórico de movimientos de un rango de fechas.
+     *
+     * @param fechaInicio Fecha de inicio del rango (formato: YYYY-MM-DD)
+     * @param fechaFin Fecha de fin del rango (formato: YYYY-MM-DD)
+     */
+    public static void imprimirCabeceraMovimientosPorFecha(String fechaInicio, String fechaFin) {
+        System.out.println("\n=== HISTÓRICO DE MOVIMIENTOS POR FECHA ===");
+        System.out.println("Período: " + fechaInicio + " hasta " + fechaFin);
+        System.out.println("------------------------");
+    }
+
+    /**
+     * Muestra por consola un movimiento del histórico por fechas.
+     *
+     * @param movimiento Movimiento a mostrar, con el nombre y la categoría de su producto
+     */
+    public static void imprimirMovimientoProducto(MovimientoProducto movimiento) {
+        System.out.println("ID Movimiento: " + movimiento.getIdMovimiento());
+        System.out.println("Producto: " + movimiento.getNombre());
+        System.out.println("Categoría: " + movimiento.getCategoria());
+        System.out.println("Tipo: " + movimiento.getTipoMovimiento());
+        System.out.println("Cantidad: " + movimiento.getCantidad());
+        System.out.println("Fecha: " + movimiento.getFechaMovimiento());
+        System.out.println("------------------------");
+    }
+
+    /**
+     * Avisa por consola si parte de un rango de fechas está en meses ya archivados,
+     * cuyos movimientos no se muestran.
+     *
+     * @param conn Conexión a la base de datos
+     * @param fechaInicio Fecha de inicio del rango (formato: YYYY-MM-DD)
+     * @throws SQLException Si hay un error al consultar los meses archivados
+     */
+    public static void avisarMovimientosArchivados(Connection conn, String fechaInicio) throws SQLException {
+        LocalDate inicioConservado = ParticionesMovimientos.getInicioConservado(conn);
+        if (inicioConservado != null && LocalDate.parse(fechaInicio).isBefore(inicioConservado)) {
+            System.out.println("Los movimientos anteriores a " + inicioConservado
+                + " están archivados y no se muestran.");
+        }
+    }
+
+    /**
+     * Lee una página de los movimientos de stock realizados entre dos fechas (ambas
+     * incluidas), de más reciente a más antiguo, con el nombre y la categoría de cada
+     * producto. Los meses archivados no se incluyen.
+     *
+     * Como en paginaMovimientos, el cursor es la clave de orden de la última fila:
+     * (fecha_movimiento, id_movimiento), porque varios movimientos pueden tener la
+     * misma fecha. El índice idx_mov_fecha (fecha_movimiento) de la migración 2, que
+     * en InnoDB lleva detrás la clave primaria (id_movimiento, fecha_movimiento), da
+     * ya ese orden: cada página lo recorre hacia atrás desde el cursor sin ordenar el rango.
+     *
+     * @param conn Conexión a la base de datos
+     * @param fechaInicio Fecha de inicio del rango (formato: YYYY-MM-DD)
+     * @param fechaFin Fecha de fin del rango (formato: YYYY-MM-DD)
+     * @param antesDe Cursor devuelto por la página anterior, o null para la primera página
+     * @param tamano Número máximo de movimientos de la página
+     * @return Página de movimientos del rango
+     * @throws SQLException Si hay un error al consultar los movimientos
+     * @throws IllegalArgumentException Si el formato de las fechas es incorrecto o el
+     *         tamaño de página es menor o igual a 0
+     */
+    public static Pagina<MovimientoProducto, CursorFecha> paginaMovimientosPorFecha(Connection conn, String fechaInicio,
+            String fechaFin, CursorFecha antesDe, int tamano) throws SQLException {
+        comprobarTamanoPagina(tamano);
         // Validar el formato de las fechas (YYYY-MM-DD)
         if (!fechaInicio.matches("\\d{4}-\\d{2}-\\d{2}") || !fechaFin.matches("\\d{4}-\\d{2}-\\d{2}")) {
             throw new IllegalArgumentException("Formato de fecha incorrecto. Use YYYY-MM-DD");
         }
+        LocalDate inicio;
+        LocalDate finExclusivo;
+        try {
+            inicio = LocalDate.parse(fechaInicio);
+            finExclusivo = LocalDate.parse(fechaFin).plusDays(1);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha no válida: " + e.getParsedString());
+        }
 
+        // Rango semiabierto [inicio, fin + 1 día) sobre la columna sin funciones, para que
+        // MySQL pueda usar el índice de fecha_movimiento (DATE(...) BETWEEN obliga a leerla entera)
+        // y leer solo las particiones de los meses del rango
         String sql = """
-            SELECT m.id_movimiento, p.nombre, p.categoria, m.tipo_movimiento, 
+            SELECT m.id_movimiento, p.nombre, p.categoria, m.tipo_movimiento,
                    m.cantidad, m.fecha_movimiento
             FROM movimientos_stock m
             JOIN productos p ON m.id_producto = p.id_producto
-            WHERE DATE(m.fecha_movimiento) BETWEEN ? AND ?
-            ORDER BY m.fecha_movimiento DESC
-        """;
+            WHERE m.fecha_movimiento >= ? AND m.fecha_movimiento < ?
+            """
+            + (antesDe == null ? "" : """
+                AND (m.fecha_movimiento < ? OR (m.fecha_movimiento = ? AND m.id_movimiento < ?))
+            """)
+            + """
+            ORDER BY m.fecha_movimiento DESC, m.id_movimiento DESC
+            LIMIT ?
+            """;
 
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, fechaInicio);
-            ps.setString(2, fechaFin);
-            
-            try (var rs = ps.executeQuery()) {
-                System.out.println("\n=== HISTÓRICO DE MOVIMIENTOS POR FECHA ===");
-                System.out.println("Período: " + fechaInicio + " hasta " + fechaFin);
-                System.out.println("------------------------");
-                
+        List<MovimientoProducto> movimientos = new ArrayList<>(Math.min(tamano, 1024));
+        boolean hayMas = false;
+        try (PreparedStatement ps = Almacen.prepararLectura(conn, sql)) {
+            int i = 1;
+            ps.setString(i++, inicio.toString());
+            ps.setString(i++, finExclusivo.toString());
+            if (antesDe != null) {
+                ps.setTimestamp(i++, antesDe.getFecha());
+                ps.setTimestamp(i++, antesDe.getFecha());
+                ps.setInt(i++, antesDe.getIdMovimiento());
+            }
+            ps.setInt(i, tamano + 1);
+            try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    System.out.println("ID Movimiento: " + rs.getInt("id_movimiento"));
-                    System.out.println("Producto: " + rs.getString("nombre"));
-                    System.out.println("Categoría: " + rs.getString("categoria"));
-                    System.out.println("Tipo: " + rs.getString("tipo_movimiento"));
-                    System.out.println("Cantidad: " + rs.getInt("cantidad"));
-                    System.out.println("Fecha: " + rs.getTimestamp("fecha_movimiento"));
-                    System.out.println("------------------------");
+                    if (movimientos.size() == tamano) {
+                        hayMas = true;
+                        break;
+                    }
+                    movimientos.add(new MovimientoProducto(rs.getInt("id_movimiento"), rs.getString("nombre"),
+                        rs.getString("categoria"), rs.getString("tipo_movimiento"), rs.getInt("cantidad"),
+                        rs.getTimestamp("fecha_movimiento")));
                 }
             }
         }
+        MovimientoProducto ultimo = hayMas ? movimientos.get(movimientos.size() - 1) : null;
+        CursorFecha siguiente = ultimo == null ? null : new CursorFecha(ultimo.getFechaMovimiento(), ultimo.getIdMovimiento());
+        return new Pagina<>(movimientos, siguiente);
     }
 
     /**
@@ -155,37 +586,104 @@ public class StockManager {
      * @throws IllegalArgumentException Si limit es menor o igual a 0
      */
     public static void consultarProductosMasVendidos(Connection conn, int limit) throws SQLException {
+        consultarProductosMasVendidos(conn, limit, null);
+    }
+
+    /**
+     * Consulta y muestra los N productos más vendidos usando el ranking en memoria
+     * cuando puede responder (N no mayor que los productos que mantiene ordenados).
+     *
+     * @param conn Conexión a la base de datos
+     * @param limit Número de productos a mostrar (N)
+     * @param ranking Ranking de ventas en memoria, o null para calcularlo en la base de datos
+     * @throws SQLException Si hay un error al consultar los productos
+     * @throws IllegalArgumentException Si limit es menor o igual a 0
+     */
+    public static void consultarProductosMasVendidos(Connection conn, int limit, RankingVentas ranking) throws SQLException {
+        imprimirProductosMasVendidos(limit, productosMasVendidos(conn, limit, ranking));
+    }
+
+    /**
+     * Muestra por consola el informe de productos más vendidos.
+     *
+     * @param limit Número de productos pedidos (N)
+     * @param productos Productos más vendidos, como los devuelve productosMasVendidos
+     */
+    public static void imprimirProductosMasVendidos(int limit, List<ProductoVendido> productos) {
+        System.out.println("\n=== TOP " + limit + " PRODUCTOS MÁS VENDIDOS ===");
+        for (ProductoVendido producto : productos) {
+            System.out.println("ID Producto: " + producto.getIdProducto());
+            System.out.println("Nombre: " + producto.getNombre());
+            System.out.println("Categoría: " + producto.getCategoria());
+            System.out.println("Precio: " + producto.getPrecio());
+            System.out.println("Total Vendido: " + producto.getTotalVendido());
+            System.out.println("------------------------");
+        }
+    }
+
+    /**
+     * Devuelve los N productos más vendidos, de más a menos unidades vendidas.
+     * Si el ranking en memoria puede responder, solo se leen de la base de datos los
+     * N productos por su clave primaria; si no, se calcula con la tabla ventas_diarias.
+     *
+     * @param conn Conexión a la base de datos
+     * @param limit Número de productos (N)
+     * @param ranking Ranking de ventas en memoria, o null para calcularlo en la base de datos
+     * @return Productos más vendidos
+     * @throws SQLException Si hay un error al consultar los productos
+     * @throws IllegalArgumentException Si limit es menor o igual a 0
+     */
+    public static List<ProductoVendido> productosMasVendidos(Connection conn, int limit, RankingVentas ranking)
+            throws SQLException {
         if (limit <= 0) {
             throw new IllegalArgumentException("El límite debe ser mayor que 0");
         }
 
-        String sql = """
-            SELECT p.id_producto, p.nombre, p.categoria, p.precio,
-                   COALESCE(SUM(m.cantidad), 0) as total_vendido
-            FROM productos p
-            LEFT JOIN movimientos_stock m ON p.id_producto = m.id_producto 
-                AND m.tipo_movimiento = ?
-            GROUP BY p.id_producto, p.nombre, p.categoria, p.precio
-            ORDER BY total_vendido DESC
-            LIMIT ?
-        """;
+        List<RankingVentas.Posicion> top = ranking == null ? null : ranking.top(limit);
+        List<ProductoVendido> productos = new ArrayList<>();
+        if (top == null) {
+            try (PreparedStatement ps = conn.prepareStatement(SQL_MAS_VENDIDOS)) {
+                ps.setInt(1, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        productos.add(new ProductoVendido(rs.getInt("id_producto"), rs.getString("nombre"),
+                            rs.getString("categoria"), rs.getBigDecimal("precio"), rs.getLong("total_vendido")));
+                    }
+                }
+            }
+            return productos;
+        }
+        if (top.isEmpty()) {
+            return productos;
+        }
 
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, SALIDA);
-            ps.setInt(2, limit);
-            
-            try (var rs = ps.executeQuery()) {
-                System.out.println("\n=== TOP " + limit + " PRODUCTOS MÁS VENDIDOS ===");
+        StringBuilder sql = new StringBuilder(
+            "SELECT id_producto, nombre, categoria, precio, stock FROM productos WHERE id_producto IN (");
+        for (int i = 0; i < top.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        Map<Integer, Producto> porId = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (RankingVentas.Posicion posicion : top) {
+                ps.setInt(i++, posicion.getIdProducto());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    System.out.println("ID Producto: " + rs.getInt("id_producto"));
-                    System.out.println("Nombre: " + rs.getString("nombre"));
-                    System.out.println("Categoría: " + rs.getString("categoria"));
-                    System.out.println("Precio: " + rs.getString("precio"));
-                    System.out.println("Total Vendido: " + rs.getInt("total_vendido"));
-                    System.out.println("------------------------");
+                    Producto producto = ProductoCache.leerProducto(rs);
+                    porId.put(producto.getIdProducto(), producto);
                 }
             }
         }
+        for (RankingVentas.Posicion posicion : top) {
+            Producto producto = porId.get(posicion.getIdProducto());
+            if (producto != null) {
+                productos.add(new ProductoVendido(producto.getIdProducto(), producto.getNombre(),
+                    producto.getCategoria(), producto.getPrecio(), posicion.getTotalVendido()));
+            }
+        }
+        return productos;
     }
 
     /**
@@ -194,31 +692,61 @@ public class StockManager {
      * - Nombre de la categoría
      * - Número de productos diferentes
      * - Cantidad total de unidades en stock
+     * - Valor del stock (suma de precio * stock), calculado en la base de datos
      *
      * @param conn Conexión a la base de datos
      * @throws SQLException Si hay un error al consultar los datos
      */
     public static void consultarValorStockPorCategoria(Connection conn) throws SQLException {
+        imprimirValorStockPorCategoria(valorStockPorCategoria(conn));
+    }
+
+    /**
+     * Muestra por consola el valor del stock de cada categoría.
+     *
+     * @param categorias Valor del stock por categoría, como lo devuelve valorStockPorCategoria
+     */
+    public static void imprimirValorStockPorCategoria(List<ValorCategoria> categorias) {
+        System.out.println("\n=== TOTAL DE STOCK POR CATEGORÍA ===");
+        for (ValorCategoria categoria : categorias) {
+            System.out.println("Categoría: " + categoria.getCategoria());
+            System.out.println("Productos Diferentes: " + categoria.getTotalProductos());
+            System.out.println("Total Unidades en Stock: " + categoria.getTotalStock());
+            System.out.println("Valor del Stock: " + categoria.getValorStock().toPlainString() + " €");
+            System.out.println("------------------------");
+        }
+    }
+
+    /**
+     * Devuelve, para cada categoría, el número de productos, las unidades en stock y
+     * el valor del stock, de mayor a menor valor.
+     *
+     * @param conn Conexión a la base de datos
+     * @return Valor del stock de cada categoría
+     * @throws SQLException Si hay un error al consultar los datos
+     */
+    public static List<ValorCategoria> valorStockPorCategoria(Connection conn) throws SQLException {
+        // Con precio DECIMAL la valoración se suma en MySQL sin errores de redondeo
         String sql = """
             SELECT 
                 categoria,
                 COUNT(*) as total_productos,
-                SUM(stock) as total_stock
+                SUM(stock) as total_stock,
+                SUM(precio * stock) as valor_stock
             FROM productos
             GROUP BY categoria
-            ORDER BY total_stock DESC
+            ORDER BY valor_stock DESC
         """;
 
+        List<ValorCategoria> categorias = new ArrayList<>();
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             try (var rs = ps.executeQuery()) {
-                System.out.println("\n=== TOTAL DE STOCK POR CATEGORÍA ===");
                 while (rs.next()) {
-                    System.out.println("Categoría: " + rs.getString("categoria"));
-                    System.out.println("Productos Diferentes: " + rs.getInt("total_productos"));
-                    System.out.println("Total Unidades en Stock: " + rs.getInt("total_stock"));
-                    System.out.println("------------------------");
+                    categorias.add(new ValorCategoria(rs.getString("categoria"), rs.getInt("total_productos"),
+                        rs.getLong("total_stock"), rs.getBigDecimal("valor_stock")));
                 }
             }
         }
+        return categorias;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Servicio de movimientos de stock que usan el menú y el servidor HTTP.
+ * Cada movimiento se comprueba y aplica en el registro de stock en memoria
+ * (StockLedger), que lo guarda con GroupCommitMovimientos. Cuando el movimiento
+ * está confirmado en la base de datos, el servicio actualiza la caché de productos,
+ * el ranking de ventas (si es una salida) y la caché de informes.
+ *
+ * Las entradas y salidas no necesitan locks: el registro las comprueba con
+ * operaciones atómicas. Fijar el stock de un producto sí lee el stock actual antes
+ * de registrar la diferencia, así que los cambios de un mismo producto se serializan
+ * con un conjunto fijo de locks (lock striping) elegido a partir de id_producto:
+ * dos modificaciones del mismo producto no calculan la diferencia sobre el mismo
+ * stock, y las de productos distintos normalmente no se bloquean entre sí.
+ */
+public class StockService {
+    public static final int FRANJAS_POR_DEFECTO = 256;
+
+    private final StockLedger ledger;
+    private final ProductoCache cache;
+    private final RankingVentas ranking;
+    private final CacheInformes cacheInformes;
+    private final ReentrantLock[] locks;
+
+    private final LongAdder entradas = new LongAdder();
+    private final LongAdder salidas = new LongAdder();
+    private final LongAdder contenciones = new LongAdder();
+
+    /**
+     * Crea el servicio con FRANJAS_POR_DEFECTO locks.
+     *
+     * @param ledger Registro de stock por el que pasan los movimientos
+     * @param cache Caché de productos, cuyo stock se ajusta con cada movimiento confirmado
+     * @param ranking Ranking de ventas, que suma cada salida confirmada
+     * @param cacheInformes Caché de informes, que se invalida con cada movimiento confirmado
+     */
+    public StockService(StockLedger ledger, ProductoCache cache, RankingVentas ranking, CacheInformes cacheInformes) {
+        this(ledger, cache, ranking, cacheInformes, FRANJAS_POR_DEFECTO);
+    }
+
+    /**
+     * Crea el servicio.
+     *
+     * @param ledger Registro de stock por el que pasan los movimientos
+     * @param cache Caché de productos, cuyo stock se ajusta con cada movimiento confirmado
+     * @param ranking Ranking de ventas, que suma cada salida confirmada
+     * @param cacheInformes Caché de informes, que se invalida con cada movimiento confirmado
+     * @param franjas Número de locks (se redondea a la siguiente potencia de 2)
+     * @throws IllegalArgumentException Si el número de locks es menor o igual a cero
+     */
+    public StockService(StockLedger ledger, ProductoCache cache, RankingVentas ranking, CacheInformes cacheInformes,
+                        int franjas) {
+        if (franjas <= 0) {
+            throw new IllegalArgumentException("El número de locks debe ser mayor que 0");
+        }
+        int n = franjas == 1 ? 1 : Integer.highestOneBit(franjas - 1) << 1;
+        this.ledger = ledger;
+        this.cache = cache;
+        this.ranking = ranking;
+        this.cacheInformes = cacheInformes;
+        this.locks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Registra un movimiento sin esperar a la base de datos.
+     *
+     * @param idProducto ID del producto
+     * @param tipo ENTRADA o SALIDA
+     * @param cantidad Cantidad del movimiento (debe ser positiva)
+     * @return Futuro que se completa cuando el movimiento está confirmado y aplicado a
+     *         las cachés, o con una SQLException si falla al guardarlo
+     * @throws SQLException Si el producto no existe o no hay stock suficiente en el registro
+     *         (en ambos casos con el estado GroupCommitMovimientos.ESTADO_RECHAZADO, igual
+     *         que si lo rechaza la base de datos al guardarlo)
+     * @throws IllegalArgumentException Si el tipo no es válido o la cantidad es menor o igual a cero
+     */
+    public CompletableFuture<Void> registrarMovimientoAsync(int idProducto, String tipo, int cantidad)
+            throws SQLException {
+        boolean salida;
+        if (StockManager.SALIDA.equals(tipo)) {
+            salida = true;
+        } else if (StockManager.ENTRADA.equals(tipo)) {
+            salida = false;
+        } else {
+            throw new IllegalArgumentException("Tipo de movimiento no válido");
+        }
+        CompletableFuture<Void> futuro = salida
+            ? ledger.registrarSalida(idProducto, cantidad)
+            : ledger.registrarEntrada(idProducto, cantidad);
+        return futuro.whenComplete((ok, error) -> {
+            if (error == null) {
+                cache.ajustarStock(idProducto, salida ? -cantidad : cantidad);
+                if (salida) {
+                    ranking.registrarSalida(idProducto, cantidad);
+                    salidas.increment();
+                } else {
+                    entradas.increment();
+                }
+                cacheInformes.invalidarMovimiento(idProducto, tipo);
+            }
+        });
+    }
+
+    /**
+     * Registra un movimiento y espera a que esté confirmado en la base de datos.
+     *
+     * @param idProducto ID del producto
+     * @param tipo ENTRADA o SALIDA
+     * @param cantidad Cantidad del movimiento (debe ser positiva)
+     * @throws SQLException Si el producto no existe, no hay stock suficiente o falla la escritura
+     * @throws IllegalArgumentException Si el tipo no es válido o la cantidad es menor o igual a cero
+     */
+    public void registrarMovimiento(int idProducto, String tipo, int cantidad) throws SQLException {
+        esperar(registrarMovimientoAsync(idProducto, tipo, cantidad));
+    }
+
+    /**
+     * Deja el stock de un producto en el valor indicado, registrando una entrada o
+     * una salida por la diferencia con el stock del registro, y espera a que se guarde.
+     * Los cambios del mismo producto se hacen de uno en uno.
+     *
+     * @param idProducto ID del producto
+     * @param nuevoStock Stock que debe quedar
+     * @return Diferencia registrada (positiva si fue una entrada, 0 si no había cambio)
+     * @throws SQLException Si el producto no existe, no hay stock suficiente o falla la escritura
+     * @throws IllegalArgumentException Si el stock es negativo
+     */
+    public int fijarStock(int idProducto, int nuevoStock) throws SQLException {
+        if (nuevoStock < 0) {
+            throw new IllegalArgumentException("El stock no puede ser negativo");
+        }
+        ReentrantLock lock = lockDe(idProducto);
+        if (!lock.tryLock()) {
+            contenciones.increment();
+            lock.lock();
+        }
+        try {
+            int actual = ledger.getStock(idProducto);
+            if (actual == StockLedger.NO_EXISTE) {
+                throw new SQLException("El producto no existe", GroupCommitMovimientos.ESTADO_RECHAZADO);
+            }
+            int diferencia = nuevoStock - actual;
+            if (diferencia > 0) {
+                registrarMovimiento(idProducto, StockManager.ENTRADA, diferencia);
+            } else if (diferencia < 0) {
+                registrarMovimiento(idProducto, StockManager.SALIDA, -diferencia);
+            }
+            return diferencia;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra el movimiento contrario a un cambio de stock ya guardado con fijarStock,
+     * cuando el resto de la modificación del producto no se ha podido guardar.
+     *
+     * @param idProducto ID del producto
+     * @param diferencia Diferencia devuelta por fijarStock
+     * @throws SQLException Si no se puede registrar el movimiento contrario (por ejemplo,
+     *         porque el stock que entró ya ha salido)
+     */
+    public void deshacerCambioStock(int idProducto, int diferencia) throws SQLException {
+        if (diferencia > 0) {
+            registrarMovimiento(idProducto, StockManager.SALIDA, diferencia);
+        } else if (diferencia < 0) {
+            registrarMovimiento(idProducto, StockManager.ENTRADA, -diferencia);
+        }
+    }
+
+    private ReentrantLock lockDe(int idProducto) {
+        // Mezcla los bits para que ids consecutivos no caigan en franjas contiguas
+        int h = idProducto * 0x9E3779B9;
+        return locks[(h ^ (h >>> 16)) & (locks.length - 1)];
+    }
+
+    /**
+     * Espera a que se guarde un movimiento.
+     *
+     * @throws SQLException El error con el que terminó el movimiento
+     */
+    private static void esperar(CompletableFuture<Void> futuro) throws SQLException {
+        try {
+            futuro.join();
+        } catch (CompletionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof SQLException) {
+                throw (SQLException) causa;
+            }
+            throw new SQLException("Error al guardar el movimiento: " + causa.getMessage(), causa);
+        }
+    }
+
+    /**
+     * Muestra por consola las métricas del servicio.
+     */
+    public void imprimirEstadisticas() {
+        System.out.println("\n=== ESTADÍSTICAS DEL SERVICIO DE STOCK ===");
+        System.out.println("Entradas confirmadas: " + entradas.sum());
+        System.out.println("Salidas confirmadas: " + salidas.sum());
+        System.out.println("Esperas por el lock de un producto: " + contenciones.sum());
+        System.out.println("Locks: " + locks.length);
+    }
+}
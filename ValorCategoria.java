@@ -0,0 +1,29 @@
+import java.math.BigDecimal;
+
+/**
+ * Fila del informe de valor de stock por categoría.
+ */
+public final class ValorCategoria {
+    private final String categoria;
+    private final int totalProductos;
+    private final long totalStock;
+    private final BigDecimal valorStock;
+
+    public ValorCategoria(String categoria, int totalProductos, long totalStock, BigDecimal valorStock) {
+        this.categoria = categoria;
+        this.totalProductos = totalProductos;
+        this.totalStock = totalStock;
+        this.valorStock = valorStock;
+    }
+
+    public String getCategoria() { return categoria; }
+    public int getTotalProductos() { return totalProductos; }
+    public long getTotalStock() { return totalStock; }
+    public BigDecimal getValorStock() { return valorStock; }
+
+    @Override
+    public String toString() {
+        return "ValorCategoria[categoria=" + categoria + ", productos=" + totalProductos
+            + ", valor=" + valorStock.toPlainString() + "]";
+    }
+}
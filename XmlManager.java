@@ -1,6 +1,11 @@
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -14,9 +19,16 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -25,11 +37,87 @@ import java.sql.SQLException;
 /**
  * Clase que gestiona la exportación e importación de datos en formato XML.
  * Proporciona funcionalidad para:
- * - Exportar todo el inventario a un archivo XML
- * - Importar el inventario desde un archivo XML
+ * - Exportar todo el inventario a un archivo XML (con DOM o en streaming)
+ * - Importar el inventario desde un archivo XML (con DOM o en streaming)
  */
 public class XmlManager {
-    
+    // Inserta el producto o lo actualiza si el id ya existe (por ejemplo, repetido en el XML)
+    private static final String UPSERT_PRODUCTO = """
+        INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE nombre = VALUES(nombre), categoria = VALUES(categoria),
+            precio = VALUES(precio), stock = VALUES(stock)
+        """;
+
+    // Igual que UPSERT_PRODUCTO pero sobre la tabla temporal de la importación por fusión
+    private static final String UPSERT_PRODUCTO_IMPORT = """
+        INSERT INTO productos_import (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE nombre = VALUES(nombre), categoria = VALUES(categoria),
+            precio = VALUES(precio), stock = VALUES(stock)
+        """;
+
+    // Tabla temporal de la importación por fusión, solo visible para la conexión que la crea
+    private static final String CREAR_IMPORT = "CREATE TEMPORARY TABLE IF NOT EXISTS productos_import LIKE productos";
+    private static final String BORRAR_IMPORT = "DROP TEMPORARY TABLE IF EXISTS productos_import";
+
+    // En H2 las tablas temporales de la conexión son LOCAL TEMPORARY y no admiten LIKE
+    private static final String CREAR_IMPORT_H2 = """
+        CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS productos_import (
+            id_producto INT PRIMARY KEY,
+            nombre VARCHAR(100) NOT NULL,
+            categoria VARCHAR(50) NOT NULL,
+            precio DECIMAL(12,2) NOT NULL,
+            stock INT NOT NULL DEFAULT 0
+        )
+        """;
+    private static final String BORRAR_IMPORT_H2 = "DROP TABLE IF EXISTS productos_import";
+
+    // Actualiza los productos existentes cuyos datos difieren (comparación binaria de los textos
+    // para detectar también cambios de mayúsculas o acentos)
+    private static final String ACTUALIZAR_DESDE_IMPORT = """
+        UPDATE productos p
+        JOIN productos_import s ON p.id_producto = s.id_producto
+        SET p.nombre = s.nombre, p.categoria = s.categoria, p.precio = s.precio, p.stock = s.stock
+        WHERE NOT (CAST(p.nombre AS BINARY) <=> CAST(s.nombre AS BINARY)
+               AND CAST(p.categoria AS BINARY) <=> CAST(s.categoria AS BINARY)
+               AND p.precio <=> s.precio
+               AND p.stock <=> s.stock)
+        """;
+
+    // Lo mismo en H2, que no admite UPDATE con JOIN y compara los textos de forma binaria
+    private static final String ACTUALIZAR_DESDE_IMPORT_H2 = """
+        MERGE INTO productos p
+        USING productos_import s ON p.id_producto = s.id_producto
+        WHEN MATCHED AND NOT (p.nombre = s.nombre AND p.categoria = s.categoria
+                              AND p.precio = s.precio AND p.stock = s.stock)
+        THEN UPDATE SET nombre = s.nombre, categoria = s.categoria, precio = s.precio, stock = s.stock
+        """;
+
+    // Inserta los productos que aún no existen
+    private static final String INSERTAR_DESDE_IMPORT = """
+        INSERT INTO productos (id_producto, nombre, categoria, precio, stock)
+        SELECT s.id_producto, s.nombre, s.categoria, s.precio, s.stock
+        FROM productos_import s
+        LEFT JOIN productos p ON p.id_producto = s.id_producto
+        WHERE p.id_producto IS NULL
+        """;
+
+    private static final String CONTAR_AUSENTES = """
+        SELECT COUNT(*)
+        FROM productos p
+        LEFT JOIN productos_import s ON s.id_producto = p.id_producto
+        WHERE s.id_producto IS NULL
+        """;
+
+    // Elimina los productos que no están en el XML y no tienen movimientos de stock (sin alias
+    // en la tabla borrada ni JOIN, para que valga en MySQL, MariaDB y H2)
+    private static final String ELIMINAR_AUSENTES = """
+        DELETE FROM productos
+        WHERE NOT EXISTS (SELECT 1 FROM productos_import s WHERE s.id_producto = productos.id_producto)
+          AND NOT EXISTS (SELECT 1 FROM movimientos_stock m WHERE m.id_producto = productos.id_producto)
+        """;
+
+    private static Schema esquema;
+
     /**
      * Exporta todo el inventario a un archivo XML.
      * 
@@ -91,6 +179,96 @@ public class XmlManager {
         transformer.transform(source, result);
     }
 
+    /**
+     * Exporta todo el inventario a un archivo XML en modo streaming.
+     * Cada producto se escribe con XMLStreamWriter a medida que avanza el ResultSet,
+     * que a su vez se lee fila a fila desde el servidor, por lo que la memoria
+     * usada no depende del número de productos. El resultado tiene el mismo
+     * formato que exportToXml y es válido según inventario.xsd.
+     *
+     * @param conn Conexión a la base de datos
+     * @param filePath Ruta del archivo XML de salida
+     * @return Número de productos exportados
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     * @throws XMLStreamException Si hay un error al escribir el XML
+     * @throws IOException Si hay un error al escribir el archivo
+     */
+    public static int exportToXmlStreaming(Connection conn, String filePath)
+            throws SQLException, XMLStreamException, IOException {
+        String query = "SELECT id_producto, nombre, categoria, precio, stock FROM productos";
+        int total = 0;
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filePath), 64 * 1024);
+             PreparedStatement ps = Almacen.prepararLectura(conn, query)) {
+            XMLStreamWriter writer = abrirInventario(out);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    escribirProducto(writer, rs.getInt("id_producto"), rs.getString("nombre"),
+                        rs.getString("categoria"), rs.getString("precio"), rs.getInt("stock"));
+                    total++;
+                }
+            }
+            cerrarInventario(writer);
+        }
+        return total;
+    }
+
+    /**
+     * Crea un XMLStreamWriter sobre la salida y escribe la cabecera y el elemento raíz.
+     *
+     * @param out Flujo de salida (se escribe en UTF-8)
+     * @return Escritor listo para añadir productos
+     * @throws XMLStreamException Si hay un error al escribir el XML
+     */
+    static XMLStreamWriter abrirInventario(OutputStream out) throws XMLStreamException {
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement("inventario");
+        return writer;
+    }
+
+    /**
+     * Escribe un elemento producto con el mismo formato y sangría que exportToXml.
+     *
+     * @param writer Escritor devuelto por abrirInventario
+     * @throws XMLStreamException Si hay un error al escribir el XML
+     */
+    static void escribirProducto(XMLStreamWriter writer, int id, String nombre, String categoria,
+            String precio, int stock) throws XMLStreamException {
+        writer.writeCharacters("\n    ");
+        writer.writeStartElement("producto");
+        writer.writeAttribute("id", String.valueOf(id));
+        escribirCampo(writer, "nombre", nombre);
+        escribirCampo(writer, "categoria", categoria);
+        escribirCampo(writer, "precio", precio);
+        escribirCampo(writer, "stock", String.valueOf(stock));
+        writer.writeCharacters("\n    ");
+        writer.writeEndElement();
+    }
+
+    private static void escribirCampo(XMLStreamWriter writer, String elemento, String valor) throws XMLStreamException {
+        writer.writeCharacters("\n        ");
+        writer.writeStartElement(elemento);
+        writer.writeCharacters(valor == null ? "" : valor);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Cierra el elemento raíz y el documento y vacía el escritor.
+     *
+     * @param writer Escritor devuelto por abrirInventario
+     * @throws XMLStreamException Si hay un error al escribir el XML
+     */
+    static void cerrarInventario(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    }
+
     /**
      * Valida un archivo XML contra su esquema XSD.
      * 
@@ -114,7 +292,8 @@ public class XmlManager {
     }
 
     /**
-     * Importa el inventario desde un archivo XML.
+     * Importa el inventario desde un archivo XML, sustituyendo los productos actuales
+     * y su histórico en una única transacción.
      * 
      * @param conn Conexión a la base de datos
      * @param filePath Ruta del archivo XML a importar
@@ -134,31 +313,367 @@ public class XmlManager {
         Document doc = docBuilder.parse(new File(filePath));
         doc.getDocumentElement().normalize();
 
-        // Limpiar la tabla actual
-        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM productos")) {
-            ps.executeUpdate();
-        }
+        conn.setAutoCommit(false);
+        try {
+            vaciarInventario(conn);
 
-        // Obtener todos los productos del XML
-        NodeList productList = doc.getElementsByTagName("producto");
-        
-        String insertQuery = "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
-        
-        for (int i = 0; i < productList.getLength(); i++) {
-            Node node = productList.item(i);
+            // Obtener todos los productos del XML
+            NodeList productList = doc.getElementsByTagName("producto");
+            
+            String insertQuery = "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
             
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element element = (Element) node;
+            for (int i = 0; i < productList.getLength(); i++) {
+                Node node = productList.item(i);
                 
-                try (PreparedStatement ps = conn.prepareStatement(insertQuery)) {
-                    ps.setInt(1, Integer.parseInt(element.getAttribute("id")));
-                    ps.setString(2, element.getElementsByTagName("nombre").item(0).getTextContent());
-                    ps.setString(3, element.getElementsByTagName("categoria").item(0).getTextContent());
-                    ps.setString(4, element.getElementsByTagName("precio").item(0).getTextContent());
-                    ps.setInt(5, Integer.parseInt(element.getElementsByTagName("stock").item(0).getTextContent()));
-                    ps.executeUpdate();
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    Element element = (Element) node;
+                    
+                    try (PreparedStatement ps = conn.prepareStatement(insertQuery)) {
+                        ps.setInt(1, Integer.parseInt(element.getAttribute("id")));
+                        ps.setString(2, element.getElementsByTagName("nombre").item(0).getTextContent());
+                        ps.setString(3, element.getElementsByTagName("categoria").item(0).getTextContent());
+                        ps.setBigDecimal(4, Precios.parsear(element.getElementsByTagName("precio").item(0).getTextContent()));
+                        ps.setInt(5, Integer.parseInt(element.getElementsByTagName("stock").item(0).getTextContent()));
+                        ps.executeUpdate();
+                    }
                 }
             }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Borra los productos junto con sus movimientos de stock y su resumen de ventas,
+     * dentro de la transacción de la importación. movimientos_stock no tiene clave
+     * ajena (no la admiten las tablas particionadas), así que sin este borrado los
+     * productos importados con un id antiguo heredarían el histórico del anterior.
+     */
+    private static void vaciarInventario(Connection conn) throws SQLException {
+        for (String tabla : new String[] {"movimientos_stock", "ventas_diarias", "productos"}) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + tabla)) {
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Importa el inventario desde un archivo XML en modo streaming.
+     * El archivo se lee con SAX y se valida contra inventario.xsd en la misma pasada
+     * en la que se insertan los productos, por lo que la memoria usada no depende
+     * del tamaño del archivo. Se reutiliza una única sentencia con lotes JDBC.
+     *
+     * Los productos actuales se borran junto con sus movimientos de stock y su
+     * resumen de ventas. Si filasPorTransaccion es 0, todo (incluido el borrado) se
+     * hace en una única transacción y cualquier error de validación deja las tablas
+     * como estaban. Si es mayor que 0 se confirma cada ese número de productos; el
+     * borrado se confirma con el primer grupo.
+     *
+     * @param conn Conexión a la base de datos
+     * @param filePath Ruta del archivo XML a importar
+     * @param tamanoLote Número de productos enviados a la base de datos en cada lote
+     * @param filasPorTransaccion Productos por transacción (0 para una única transacción)
+     * @return Número de productos importados
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     * @throws ParserConfigurationException Si hay un error al crear el parser
+     * @throws SAXException Si el XML no es válido según el esquema
+     * @throws IOException Si hay un error al leer el archivo
+     */
+    public static int importFromXmlStreaming(Connection conn, String filePath, int tamanoLote, int filasPorTransaccion)
+            throws SQLException, ParserConfigurationException, SAXException, IOException {
+        if (tamanoLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+        }
+        if (filasPorTransaccion < 0) {
+            throw new IllegalArgumentException("El número de productos por transacción no puede ser negativo");
+        }
+
+        conn.setAutoCommit(false);
+        try {
+            vaciarInventario(conn);
+
+            int total;
+            try (PreparedStatement ps = conn.prepareStatement(UPSERT_PRODUCTO)) {
+                total = cargarProductos(conn, ps, filePath, tamanoLote, filasPorTransaccion);
+            }
+            conn.commit();
+            return total;
+        } catch (SQLException | ParserConfigurationException | SAXException | IOException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Importa el inventario desde un archivo XML sin borrar la tabla de productos.
+     * Los productos del XML se cargan primero (validando en streaming) en una tabla
+     * temporal y después se fusionan con productos en una única transacción:
+     * - Se insertan los productos nuevos
+     * - Se actualizan solo los productos que han cambiado
+     * - Opcionalmente se eliminan los productos que no aparecen en el XML, salvo los
+     *   que tienen movimientos de stock, que se conservan para no perder el histórico
+     *
+     * Mientras dura la importación el resto de conexiones siguen viendo el catálogo
+     * anterior completo, y si hay cualquier error no se modifica nada.
+     *
+     * Funciona con MySQL (y MariaDB) y con el almacén embebido H2; la tabla temporal
+     * y la actualización usan la sintaxis de cada uno.
+     *
+     * @param conn Conexión a la base de datos
+     * @param filePath Ruta del archivo XML a importar
+     * @param tamanoLote Número de productos enviados a la tabla temporal en cada lote
+     * @param eliminarAusentes true para eliminar los productos que no están en el XML
+     * @return Recuento de productos insertados, actualizados, sin cambios y eliminados
+     * @throws SQLException Si hay un error al acceder a la base de datos
+     * @throws ParserConfigurationException Si hay un error al crear el parser
+     * @throws SAXException Si el XML no es válido según el esquema
+     * @throws IOException Si hay un error al leer el archivo
+     */
+    public static ResultadoFusion mergeFromXml(Connection conn, String filePath, int tamanoLote, boolean eliminarAusentes)
+            throws SQLException, ParserConfigurationException, SAXException, IOException {
+        if (tamanoLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser mayor que 0");
+        }
+
+        ResultadoFusion resultado = new ResultadoFusion();
+        boolean h2 = "H2".equals(conn.getMetaData().getDatabaseProductName());
+        conn.setAutoCommit(false);
+        try {
+            // La tabla temporal solo es visible para esta conexión
+            try (PreparedStatement ps = conn.prepareStatement(h2 ? CREAR_IMPORT_H2 : CREAR_IMPORT)) {
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM productos_import")) {
+                ps.executeUpdate();
+            }
+
+            int leidos;
+            try (PreparedStatement ps = conn.prepareStatement(UPSERT_PRODUCTO_IMPORT)) {
+                leidos = cargarProductos(conn, ps, filePath, tamanoLote, 0);
+            }
+
+            // Primero los cambios sobre productos existentes, para no contar los recién insertados
+            try (PreparedStatement ps = conn.prepareStatement(h2 ? ACTUALIZAR_DESDE_IMPORT_H2 : ACTUALIZAR_DESDE_IMPORT)) {
+                resultado.actualizados = ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement(INSERTAR_DESDE_IMPORT)) {
+                resultado.insertados = ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM productos_import");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                resultado.sinCambios = rs.getInt(1) - resultado.insertados - resultado.actualizados;
+            }
+
+            if (eliminarAusentes) {
+                int ausentes;
+                try (PreparedStatement ps = conn.prepareStatement(CONTAR_AUSENTES);
+                     ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    ausentes = rs.getInt(1);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(ELIMINAR_AUSENTES)) {
+                    resultado.eliminados = ps.executeUpdate();
+                }
+                resultado.conservados = ausentes - resultado.eliminados;
+            }
+
+            conn.commit();
+            resultado.leidos = leidos;
+            return resultado;
+        } catch (SQLException | ParserConfigurationException | SAXException | IOException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            try (PreparedStatement ps = conn.prepareStatement(h2 ? BORRAR_IMPORT_H2 : BORRAR_IMPORT)) {
+                ps.executeUpdate();
+            }
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Lee los productos del XML validándolos contra el esquema y los añade por lotes
+     * a la sentencia indicada, que debe tener los parámetros id, nombre, categoria,
+     * precio y stock.
+     *
+     * @param filasPorTransaccion Productos por transacción (0 para no confirmar)
+     * @return Número de productos leídos
+     */
+    private static int cargarProductos(Connection conn, PreparedStatement ps, String filePath, int tamanoLote,
+            int filasPorTransaccion) throws SQLException, ParserConfigurationException, SAXException, IOException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setSchema(getEsquema());
+        SAXParser parser = factory.newSAXParser();
+
+        ImportadorSax importador = new ImportadorSax(conn, ps, tamanoLote, filasPorTransaccion);
+        try {
+            parser.parse(new File(filePath), importador);
+        } catch (SAXException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+        importador.terminar();
+        return importador.total;
+    }
+
+    /**
+     * Devuelve el esquema inventario.xsd, cargándolo solo la primera vez.
+     */
+    private static synchronized Schema getEsquema() throws SAXException {
+        if (esquema == null) {
+            SchemaFactory factory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
+            esquema = factory.newSchema(new File("inventario.xsd"));
+        }
+        return esquema;
+    }
+
+    /**
+     * Manejador SAX que acumula los campos de cada producto y lo añade al lote
+     * al cerrar su elemento. Los errores de validación interrumpen la importación.
+     */
+    private static class ImportadorSax extends DefaultHandler {
+        private final Connection conn;
+        private final PreparedStatement ps;
+        private final int tamanoLote;
+        private final int filasPorTransaccion;
+        private final StringBuilder texto = new StringBuilder();
+
+        private int id;
+        private String nombre;
+        private String categoria;
+        private BigDecimal precio;
+        private int stock;
+        private int enLote = 0;
+        private int sinConfirmar = 0;
+        int total = 0;
+
+        ImportadorSax(Connection conn, PreparedStatement ps, int tamanoLote, int filasPorTransaccion) {
+            this.conn = conn;
+            this.ps = ps;
+            this.tamanoLote = tamanoLote;
+            this.filasPorTransaccion = filasPorTransaccion;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            texto.setLength(0);
+            if (localName.equals("producto")) {
+                id = Integer.parseInt(attributes.getValue("id").trim());
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            texto.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "nombre":
+                    nombre = texto.toString();
+                    break;
+                case "categoria":
+                    categoria = texto.toString();
+                    break;
+                case "precio":
+                    // El formato ya lo ha comprobado el esquema
+                    precio = Precios.parsear(texto.toString());
+                    break;
+                case "stock":
+                    stock = Integer.parseInt(texto.toString().trim());
+                    break;
+                case "producto":
+                    try {
+                        anadirProducto();
+                    } catch (SQLException e) {
+                        throw new SAXException(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            texto.setLength(0);
+        }
+
+        private void anadirProducto() throws SQLException {
+            ps.setInt(1, id);
+            ps.setString(2, nombre);
+            ps.setString(3, categoria);
+            ps.setBigDecimal(4, precio);
+            ps.setInt(5, stock);
+            ps.addBatch();
+            enLote++;
+            sinConfirmar++;
+            total++;
+
+            if (enLote == tamanoLote) {
+                ps.executeBatch();
+                enLote = 0;
+            }
+            if (filasPorTransaccion > 0 && sinConfirmar >= filasPorTransaccion) {
+                if (enLote > 0) {
+                    ps.executeBatch();
+                    enLote = 0;
+                }
+                conn.commit();
+                sinConfirmar = 0;
+            }
+        }
+
+        /**
+         * Envía el último lote pendiente.
+         */
+        void terminar() throws SQLException {
+            if (enLote > 0) {
+                ps.executeBatch();
+                enLote = 0;
+            }
+        }
+
+        @Override
+        public void error(SAXParseException e) throws SAXException {
+            throw new SAXException("Error de validación XML (línea " + e.getLineNumber() + "): " + e.getMessage());
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            error(e);
+        }
+    }
+
+    /**
+     * Recuento de una importación en modo fusión.
+     */
+    public static class ResultadoFusion {
+        private int leidos;
+        private int insertados;
+        private int actualizados;
+        private int sinCambios;
+        private int eliminados;
+        private int conservados;
+
+        /** @return Productos leídos del XML */
+        public int getLeidos() { return leidos; }
+        /** @return Productos nuevos insertados */
+        public int getInsertados() { return insertados; }
+        /** @return Productos existentes que se han modificado */
+        public int getActualizados() { return actualizados; }
+        /** @return Productos existentes que ya tenían los mismos datos */
+        public int getSinCambios() { return sinCambios; }
+        /** @return Productos ausentes del XML que se han eliminado */
+        public int getEliminados() { return eliminados; }
+        /** @return Productos ausentes del XML conservados por tener movimientos de stock */
+        public int getConservados() { return conservados; }
+    }
+}
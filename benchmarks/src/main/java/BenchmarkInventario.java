@@ -0,0 +1,441 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Banco de pruebas de rendimiento de las operaciones más costosas del inventario:
+ * - importarCsv: importación del CSV (la misma que la opción 5 del menú), tras vaciar las tablas
+ * - exportarXml / importarXml: exportación e importación de XML en streaming
+ * - exportarJsonStockBajo: exportación a JSON de los productos con stock bajo
+ * - registrarMovimiento: entradas y salidas por el mismo camino que el menú y el
+ *   servidor HTTP: se comprueban en el registro de stock en memoria (StockLedger) y se
+ *   guardan agrupadas con GroupCommitMovimientos
+ *
+ * Cada prueba se repite con catálogos generados de 1.000, 100.000 y 1.000.000 de
+ * productos (configurable). Como en JMH, se hacen unas iteraciones de calentamiento
+ * que no cuentan y después las iteraciones medidas, y el resultado es el rendimiento
+ * medio en filas (u operaciones) por segundo. Los resultados se guardan en un archivo
+ * JSON con el formato de salida de JMH (-rf json), para poder compararlos entre
+ * versiones con las mismas herramientas.
+ *
+ * Las pruebas usan una base de datos propia, cuyas tablas se vacían, de modo que no
+ * tocan el inventario real: aad1_2_bench en MySQL o, con el almacén embebido, una
+ * base de datos H2 temporal (no necesita servidor).
+ *
+ * Uso: java BenchmarkInventario [tamaños] [iteraciones] [resultados.json] [mysql|embebido] [urlBase] [usuario] [password]
+ * (por ejemplo: java -cp benchmarks/target/benchmarks.jar BenchmarkInventario 1000,100000 5 resultados.json embebido)
+ *
+ * Está en el módulo benchmarks/ para que no forme parte del jar de la aplicación.
+ * Este programa da una medida rápida sin JMH. Para medidas fiables (JVM separada por
+ * prueba, control del JIT y análisis estadístico) las mismas operaciones se ejecutan
+ * con JMH (InventarioBenchmark), a través de conectar y operaciones.
+ */
+public class BenchmarkInventario {
+    private static final String DB_NAME = "aad1_2_bench";
+    private static final int[] TAMANOS_POR_DEFECTO = {1_000, 100_000, 1_000_000};
+    private static final int ITERACIONES_CALENTAMIENTO = 1;
+    private static final int ITERACIONES_POR_DEFECTO = 3;
+    private static final int TAMANO_LOTE = 1000;
+    // Conexiones del pool de pruebas: la de cada operación y la del escritor del group commit
+    private static final int CONEXIONES = 2;
+    private static final String REGISTRAR_MOVIMIENTO = "registrarMovimiento";
+    // Movimientos por iteración de registrarMovimiento
+    private static final int MAX_MOVIMIENTOS = 10_000;
+    // Límite de stock de la exportación a JSON: exporta alrededor del 20% del catálogo
+    private static final int LIMITE_STOCK_BAJO = 100;
+    private static final int STOCK_MAXIMO = 500;
+
+    private static final String[] NOMBRES = {"Auriculares", "Gorra", "Camiseta", "Lámpara", "Teclado", "Silla", "Taza", "Mochila"};
+    private static final String[] CATEGORIAS = {"Electrónica", "Ropa", "Hogar", "Oficina", "Deportes"};
+
+    private final ConnectionPool pool;
+    private final Path directorio;
+    private final int iteraciones;
+    private final List<Resultado> resultados = new ArrayList<>();
+
+    private BenchmarkInventario(ConnectionPool pool, Path directorio, int iteraciones) {
+        this.pool = pool;
+        this.directorio = directorio;
+        this.iteraciones = iteraciones;
+    }
+
+    /**
+     * Resultado de una prueba con un tamaño de catálogo.
+     */
+    private static final class Resultado {
+        final String prueba;
+        final int productos;
+        final String unidad;
+        final double[] medidas;
+
+        Resultado(String prueba, int productos, String unidad, double[] medidas) {
+            this.prueba = prueba;
+            this.productos = productos;
+            this.unidad = unidad;
+            this.medidas = medidas;
+        }
+
+        double media() {
+            double suma = 0;
+            for (double medida : medidas) {
+                suma += medida;
+            }
+            return suma / medidas.length;
+        }
+
+        double desviacion() {
+            if (medidas.length < 2) {
+                return 0;
+            }
+            double media = media();
+            double suma = 0;
+            for (double medida : medidas) {
+                suma += (medida - media) * (medida - media);
+            }
+            return Math.sqrt(suma / (medidas.length - 1));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanos = args.length > 0 ? leerTamanos(args[0]) : TAMANOS_POR_DEFECTO;
+        int iteraciones = args.length > 1 ? Integer.parseInt(args[1]) : ITERACIONES_POR_DEFECTO;
+        Path rutaResultados = Paths.get(args.length > 2 ? args[2] : "benchmark_resultados.json");
+        String tipoAlmacen = args.length > 3 ? args[3] : "mysql";
+        String urlBase = args.length > 4 ? args[4] : AlmacenMySql.URL_BASE_POR_DEFECTO;
+        String usuario = args.length > 5 ? args[5] : AlmacenMySql.USUARIO_POR_DEFECTO;
+        String password = args.length > 6 ? args[6] : "";
+        if (iteraciones <= 0) {
+            throw new IllegalArgumentException("El número de iteraciones debe ser mayor que 0");
+        }
+
+        Path directorio = Files.createTempDirectory("benchmark_inventario");
+        try {
+            try (ConnectionPool pool = conectar(tipoAlmacen, directorio, urlBase, usuario, password)) {
+                BenchmarkInventario banco = new BenchmarkInventario(pool, directorio, iteraciones);
+                for (int productos : tamanos) {
+                    banco.ejecutar(productos);
+                }
+                banco.guardarResultados(rutaResultados);
+                System.out.println("\nResultados guardados en " + rutaResultados.toAbsolutePath());
+            }
+        } finally {
+            borrarDirectorio(directorio);
+        }
+    }
+
+    /**
+     * Crea (o vacía) la base de datos de pruebas y devuelve un pool de conexiones
+     * a ella con el esquema preparado.
+     *
+     * @param tipoAlmacen mysql o embebido
+     * @param directorio Directorio temporal donde se crea la base de datos embebida
+     * @param urlBase URL del servidor MySQL, sin base de datos
+     * @param usuario Usuario de MySQL
+     * @param password Contraseña de MySQL
+     * @return Pool de conexiones a la base de datos de pruebas
+     * @throws SQLException Si no se puede crear la base de datos o el esquema
+     * @throws IllegalArgumentException Si el tipo de almacén no es válido
+     */
+    public static ConnectionPool conectar(String tipoAlmacen, Path directorio, String urlBase, String usuario, String password)
+            throws SQLException {
+        Almacen almacen;
+        switch (tipoAlmacen) {
+            case "mysql": almacen = new AlmacenMySql(urlBase, DB_NAME, usuario, password); break;
+            case "embebido": almacen = new AlmacenEmbebido(directorio.resolve(DB_NAME).toString()); break;
+            default: throw new IllegalArgumentException("Almacén no válido: " + tipoAlmacen + " (use mysql o embebido)");
+        }
+        System.out.println("Almacén: " + almacen.getNombre());
+        almacen.crearBaseDeDatos();
+        ConnectionPool pool = new ConnectionPool(almacen.getUrl(), almacen.getUsuario(), almacen.getPassword(), CONEXIONES);
+        try (Connection conn = pool.getConnection()) {
+            almacen.prepararEsquema(conn);
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        }
+        return pool;
+    }
+
+    /**
+     * Prepara los datos de un catálogo del tamaño indicado (CSV generado, tablas
+     * cargadas y XML exportado) y devuelve las operaciones que se miden, en el
+     * orden en que se ejecutan. Cada una devuelve el número de filas u operaciones
+     * procesadas. Las que son AutoCloseable se cierran al terminar las medidas.
+     * Solo usa tipos del JDK en la firma (salvo el pool, que se trata como un objeto
+     * opaco) porque InventarioBenchmark, que está en un paquete con nombre, no puede
+     * importar las clases del paquete por defecto.
+     *
+     * @param pool Pool obtenido con conectar
+     * @param directorio Directorio donde se escriben los archivos de las pruebas
+     * @param productos Número de productos del catálogo
+     * @return Nombre de cada operación y la operación
+     * @throws Exception Si falla la preparación de los datos
+     */
+    public static Map<String, Callable<Long>> operaciones(ConnectionPool pool, Path directorio, int productos) throws Exception {
+        String csv = directorio.resolve("productos_" + productos + ".csv").toString();
+        String log = directorio.resolve("errores_" + productos + ".log").toString();
+        String xml = directorio.resolve("productos_" + productos + ".xml").toString();
+        String json = directorio.resolve("stock_bajo_" + productos + ".json").toString();
+        generarCsv(Paths.get(csv), productos);
+
+        MovimientosLedger movimientos = new MovimientosLedger(pool, productos);
+        Map<String, Callable<Long>> operaciones = new LinkedHashMap<>();
+        operaciones.put("importarCsv", () -> {
+            try (Connection conn = pool.getConnection()) {
+                vaciarTablas(conn);
+                CsvImporter.Resultado resultado = new CsvImporter(CsvImporter.Modo.TODO_O_NADA, TAMANO_LOTE)
+                    .importar(conn, csv, log);
+                movimientos.catalogoCambiado();
+                return resultado.getFilasInsertadas();
+            }
+        });
+        operaciones.put("exportarXml", () -> {
+            try (Connection conn = pool.getConnection()) {
+                return (long) XmlManager.exportToXmlStreaming(conn, xml);
+            }
+        });
+        operaciones.put("importarXml", () -> {
+            try (Connection conn = pool.getConnection()) {
+                long filas = XmlManager.importFromXmlStreaming(conn, xml, TAMANO_LOTE, 0);
+                movimientos.catalogoCambiado();
+                return filas;
+            }
+        });
+        operaciones.put("exportarJsonStockBajo", () -> {
+            try (Connection conn = pool.getConnection()) {
+                return (long) JsonExporter.exportarProductosStockBajo(conn, LIMITE_STOCK_BAJO, json);
+            }
+        });
+        operaciones.put(REGISTRAR_MOVIMIENTO, movimientos);
+
+        // Las exportaciones y los movimientos necesitan el catálogo cargado, y
+        // importarXml el archivo exportado
+        operaciones.get("importarCsv").call();
+        operaciones.get("exportarXml").call();
+        return operaciones;
+    }
+
+    /**
+     * Ejecuta todas las pruebas con un catálogo del tamaño indicado.
+     */
+    private void ejecutar(int productos) throws Exception {
+        System.out.println("\n=== BENCHMARK CON " + productos + " PRODUCTOS ===");
+        System.out.println("Iteraciones: " + ITERACIONES_CALENTAMIENTO + " de calentamiento + " + iteraciones + " medidas");
+        System.out.println("------------------------");
+
+        Map<String, Callable<Long>> operaciones = operaciones(pool, directorio, productos);
+        try {
+            for (Map.Entry<String, Callable<Long>> operacion : operaciones.entrySet()) {
+                String unidad = operacion.getKey().equals(REGISTRAR_MOVIMIENTO) ? "ops/s" : "filas/s";
+                medir(operacion.getKey(), productos, unidad, operacion.getValue());
+            }
+        } finally {
+            cerrar(operaciones);
+        }
+
+        try (Connection conn = pool.getConnection()) {
+            vaciarTablas(conn);
+        }
+    }
+
+    /**
+     * Cierra las operaciones que tienen recursos propios (hilos, colas).
+     *
+     * @param operaciones Operaciones devueltas por operaciones
+     * @throws Exception Si falla el cierre de alguna
+     */
+    public static void cerrar(Map<String, Callable<Long>> operaciones) throws Exception {
+        for (Callable<Long> operacion : operaciones.values()) {
+            if (operacion instanceof AutoCloseable) {
+                ((AutoCloseable) operacion).close();
+            }
+        }
+    }
+
+    /**
+     * Mide una operación: la ejecuta ITERACIONES_CALENTAMIENTO veces sin contar y
+     * después las iteraciones configuradas, anotando el rendimiento de cada una.
+     */
+    private void medir(String prueba, int productos, String unidad, Callable<Long> operacion) throws Exception {
+        double[] medidas = new double[iteraciones];
+        for (int i = -ITERACIONES_CALENTAMIENTO; i < iteraciones; i++) {
+            long inicio = System.nanoTime();
+            long filas = operacion.call();
+            double segundos = (System.nanoTime() - inicio) / 1_000_000_000.0;
+            if (i >= 0) {
+                medidas[i] = filas / segundos;
+            }
+        }
+        Resultado resultado = new Resultado(prueba, productos, unidad, medidas);
+        resultados.add(resultado);
+        System.out.printf("%-24s %,14.1f ± %,.1f %s%n", prueba, resultado.media(), resultado.desviacion(), unidad);
+    }
+
+    /**
+     * Operación registrarMovimiento: registra entradas y salidas en un StockLedger
+     * que las guarda con GroupCommitMovimientos, como el menú y el servidor HTTP.
+     * Los movimientos se envían sin esperar a cada uno, como llegan las peticiones
+     * concurrentes al servidor, y la operación termina cuando están todos confirmados.
+     * Una salida rechazada por falta de stock también cuenta como operación.
+     *
+     * El registro se carga de nuevo en la primera llamada tras cambiar el catálogo
+     * (importarCsv, importarXml); esa llamada es siempre de calentamiento.
+     */
+    private static final class MovimientosLedger implements Callable<Long>, AutoCloseable {
+        private final ConnectionPool pool;
+        private final int productos;
+        private final int movimientos;
+        private final Random aleatorio = new Random(42);
+        private final GroupCommitMovimientos grupo;
+        private final StockLedger ledger;
+        private volatile boolean recargar = true;
+
+        MovimientosLedger(ConnectionPool pool, int productos) {
+            this.pool = pool;
+            this.productos = productos;
+            this.movimientos = Math.min(productos, MAX_MOVIMIENTOS);
+            this.grupo = new GroupCommitMovimientos(pool);
+            this.ledger = new StockLedger(grupo);
+        }
+
+        void catalogoCambiado() {
+            recargar = true;
+        }
+
+        @Override
+        public Long call() throws SQLException {
+            if (recargar) {
+                try (Connection conn = pool.getConnection()) {
+                    ledger.cargar(conn);
+                }
+                recargar = false;
+            }
+            List<CompletableFuture<Void>> futuros = new ArrayList<>(movimientos);
+            for (int i = 0; i < movimientos; i++) {
+                int idProducto = 1 + aleatorio.nextInt(productos);
+                int cantidad = 1 + aleatorio.nextInt(5);
+                try {
+                    // Alterna entradas y salidas para que el stock no se agote
+                    futuros.add(i % 2 == 0
+                        ? ledger.registrarEntrada(idProducto, cantidad)
+                        : ledger.registrarSalida(idProducto, cantidad));
+                } catch (SQLException e) {
+                    // Salida rechazada en memoria, sin llegar a la base de datos
+                }
+            }
+            CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+            return (long) movimientos;
+        }
+
+        @Override
+        public void close() {
+            ledger.close();
+            grupo.close();
+        }
+    }
+
+    private static void vaciarTablas(Connection conn) throws SQLException {
+        for (String tabla : new String[] {"movimientos_stock", "ventas_diarias", "productos"}) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + tabla)) {
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Genera un CSV de productos con el formato de inventario.csv. Los datos son
+     * siempre los mismos para un tamaño dado, para que las medidas sean comparables.
+     */
+    private static void generarCsv(Path ruta, int productos) throws IOException {
+        Random aleatorio = new Random(productos);
+        try (Writer out = Files.newBufferedWriter(ruta, StandardCharsets.UTF_8)) {
+            out.write("id_producto;nombre;categoria;precio;stock\n");
+            for (int id = 1; id <= productos; id++) {
+                out.write(id + ";" + NOMBRES[aleatorio.nextInt(NOMBRES.length)] + " " + aleatorio.nextInt(1000)
+                    + ";" + CATEGORIAS[aleatorio.nextInt(CATEGORIAS.length)]
+                    + ";" + BigDecimal.valueOf(100 + aleatorio.nextInt(200_000), 2)
+                    + ";" + aleatorio.nextInt(STOCK_MAXIMO) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Guarda los resultados con el formato JSON de JMH: una entrada por prueba y
+     * tamaño, con el tamaño como parámetro, la media como score, la desviación típica
+     * como scoreError y las medidas de cada iteración en rawData.
+     */
+    private void guardarResultados(Path ruta) throws IOException {
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(ruta), StandardCharsets.UTF_8)), true)) {
+            json.beginArray();
+            for (Resultado resultado : resultados) {
+                json.beginObject()
+                    .name("benchmark").value("BenchmarkInventario." + resultado.prueba)
+                    .name("mode").value("thrpt")
+                    .name("threads").value(1)
+                    .name("forks").value(0)
+                    .name("jdkVersion").value(System.getProperty("java.version"))
+                    .name("warmupIterations").value(ITERACIONES_CALENTAMIENTO)
+                    .name("measurementIterations").value(resultado.medidas.length)
+                    .name("params").beginObject()
+                        .name("productos").value(String.valueOf(resultado.productos))
+                    .endObject()
+                    .name("primaryMetric").beginObject()
+                        .name("score").value(decimal(resultado.media()))
+                        .name("scoreError").value(decimal(resultado.desviacion()))
+                        .name("scoreUnit").value(resultado.unidad)
+                        .name("rawData").beginArray().beginArray();
+                for (double medida : resultado.medidas) {
+                    json.value(decimal(medida));
+                }
+                json.endArray().endArray()
+                    .endObject()
+                    .endObject();
+            }
+            json.endArray();
+            json.newLine();
+        }
+    }
+
+    private static BigDecimal decimal(double valor) {
+        return BigDecimal.valueOf(valor).setScale(3, RoundingMode.HALF_UP);
+    }
+
+    private static int[] leerTamanos(String texto) {
+        String[] partes = texto.split(",");
+        int[] tamanos = new int[partes.length];
+        for (int i = 0; i < partes.length; i++) {
+            tamanos[i] = Integer.parseInt(partes[i].trim());
+            if (tamanos[i] <= 0) {
+                throw new IllegalArgumentException("Los tamaños deben ser mayores que 0");
+            }
+        }
+        return tamanos;
+    }
+
+    private static void borrarDirectorio(Path directorio) throws IOException {
+        try (var archivos = Files.list(directorio)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                Files.deleteIfExists(archivo);
+            }
+        }
+        Files.deleteIfExists(directorio);
+    }
+}
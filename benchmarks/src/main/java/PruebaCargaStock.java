@@ -0,0 +1,222 @@
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Prueba de carga de los movimientos de stock concurrentes, por el mismo camino que
+ * el menú y el servidor HTTP (StockService): cada movimiento se comprueba y aplica en
+ * el registro de stock en memoria (StockLedger) y se guarda con GroupCommitMovimientos,
+ * que actualiza productos.stock e inserta el movimiento en la misma transacción.
+ *
+ * Mide los movimientos por segundo con 1, 2, 4... hilos que trabajan sobre productos
+ * distintos y esperan a que cada movimiento esté confirmado, para comprobar que el
+ * rendimiento crece con el número de hilos. Al terminar cada medida comprueba que el
+ * stock de cada producto en la base de datos coincide con el del registro y que hay
+ * un movimiento guardado por cada movimiento aceptado.
+ *
+ * Usa una base de datos propia, cuyas tablas se vacían: aad1_2_carga en MySQL o, con
+ * el almacén embebido, una base de datos H2 temporal.
+ *
+ * Uso: java PruebaCargaStock [maxHilos] [movimientosPorHilo] [mysql|embebido] [urlBase] [usuario] [password]
+ * (por ejemplo: java -cp benchmarks/target/benchmarks.jar PruebaCargaStock 8 2000 embebido)
+ *
+ * Está en el módulo benchmarks/ para que no forme parte del jar de la aplicación.
+ */
+public class PruebaCargaStock {
+    private static final String DB_NAME = "aad1_2_carga";
+    private static final int PRODUCTOS_POR_HILO = 4;
+    private static final int MOVIMIENTOS_POR_DEFECTO = 2_000;
+    private static final int CONEXIONES = 2;
+
+    private final ConnectionPool pool;
+    private final StockLedger ledger;
+    private final StockService stockService;
+    private final int movimientosPorHilo;
+
+    private PruebaCargaStock(ConnectionPool pool, StockLedger ledger, StockService stockService,
+                             int movimientosPorHilo) {
+        this.pool = pool;
+        this.ledger = ledger;
+        this.stockService = stockService;
+        this.movimientosPorHilo = movimientosPorHilo;
+    }
+
+    /**
+     * @param args Argumentos opcionales de la línea de comandos
+     * @throws Exception Si hay un error de base de datos o en algún hilo
+     */
+    public static void main(String[] args) throws Exception {
+        int maxHilos = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int movimientosPorHilo = args.length > 1 ? Integer.parseInt(args[1]) : MOVIMIENTOS_POR_DEFECTO;
+        String tipoAlmacen = args.length > 2 ? args[2] : "mysql";
+        String urlBase = args.length > 3 ? args[3] : AlmacenMySql.URL_BASE_POR_DEFECTO;
+        String usuario = args.length > 4 ? args[4] : AlmacenMySql.USUARIO_POR_DEFECTO;
+        String password = args.length > 5 ? args[5] : "";
+        if (maxHilos <= 0 || movimientosPorHilo <= 0) {
+            throw new IllegalArgumentException("El número de hilos y de movimientos debe ser mayor que 0");
+        }
+
+        Path directorio = Files.createTempDirectory("prueba_carga_stock");
+        try {
+            Almacen almacen;
+            switch (tipoAlmacen) {
+                case "mysql": almacen = new AlmacenMySql(urlBase, DB_NAME, usuario, password); break;
+                case "embebido": almacen = new AlmacenEmbebido(directorio.resolve(DB_NAME).toString()); break;
+                default: throw new IllegalArgumentException("Almacén no válido: " + tipoAlmacen + " (use mysql o embebido)");
+            }
+            System.out.println("Almacén: " + almacen.getNombre());
+            almacen.crearBaseDeDatos();
+
+            // Los hilos no piden conexiones: solo el escritor del group commit y las comprobaciones
+            try (ConnectionPool pool = new ConnectionPool(almacen.getUrl(), almacen.getUsuario(),
+                    almacen.getPassword(), CONEXIONES)) {
+                try (Connection conn = pool.getConnection()) {
+                    almacen.prepararEsquema(conn);
+                    vaciarTablas(conn);
+                    crearProductos(conn, maxHilos * PRODUCTOS_POR_HILO);
+                }
+                try (GroupCommitMovimientos grupo = new GroupCommitMovimientos(pool);
+                     StockLedger ledger = new StockLedger(grupo)) {
+                    int productos = maxHilos * PRODUCTOS_POR_HILO;
+                    RankingVentas ranking = new RankingVentas(productos);
+                    ProductoCache cache = new ProductoCache(productos);
+                    try (Connection conn = pool.getConnection()) {
+                        ledger.cargar(conn);
+                        cache.cargar(conn);
+                    }
+                    StockService stockService = new StockService(ledger, cache, ranking,
+                        new CacheInformes(pool, ranking, CacheInformes.TTL_POR_DEFECTO_MS, CacheInformes.MAX_BYTES_POR_DEFECTO));
+                    new PruebaCargaStock(pool, ledger, stockService, movimientosPorHilo).ejecutar(maxHilos);
+                    stockService.imprimirEstadisticas();
+                    ledger.imprimirEstadisticas();
+                    grupo.imprimirEstadisticas();
+                } finally {
+                    try (Connection conn = pool.getConnection()) {
+                        vaciarTablas(conn);
+                    }
+                }
+            }
+        } finally {
+            try (var archivos = Files.list(directorio)) {
+                for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                    Files.deleteIfExists(archivo);
+                }
+            }
+            Files.deleteIfExists(directorio);
+        }
+    }
+
+    private void ejecutar(int maxHilos) throws Exception {
+        System.out.println("\n=== PRUEBA DE CARGA DE MOVIMIENTOS DE STOCK ===");
+        System.out.println("Movimientos por hilo: " + movimientosPorHilo);
+        System.out.printf("%6s %12s %14s %10s %12s%n", "Hilos", "Tiempo (ms)", "Movimientos/s", "Escalado", "Comprobación");
+
+        double base = 0;
+        for (int hilos = 1; hilos <= maxHilos; hilos *= 2) {
+            long movimientosAntes = contarMovimientos();
+            double porSegundo = medir(hilos);
+            if (hilos == 1) {
+                base = porSegundo;
+            }
+            double tiempoMs = hilos * (double) movimientosPorHilo / porSegundo * 1000;
+            String comprobacion = comprobar(contarMovimientos() - movimientosAntes, (long) hilos * movimientosPorHilo);
+            System.out.printf("%6d %12.1f %14.0f %9.2fx %12s%n", hilos, tiempoMs, porSegundo, porSegundo / base, comprobacion);
+        }
+    }
+
+    /**
+     * Lanza los hilos indicados, cada uno con sus propios productos, y devuelve
+     * los movimientos por segundo conseguidos entre todos.
+     */
+    private double medir(int hilos) throws Exception {
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            long inicio = System.nanoTime();
+            for (int h = 0; h < hilos; h++) {
+                final int primerId = 1 + h * PRODUCTOS_POR_HILO;
+                tareas.add(ejecutor.submit(() -> {
+                    for (int i = 0; i < movimientosPorHilo; i++) {
+                        int idProducto = primerId + (i / 2) % PRODUCTOS_POR_HILO;
+                        // Entrada y salida alternas de cada producto: el stock nunca baja de 0
+                        String tipo = i % 2 == 0 ? StockManager.ENTRADA : StockManager.SALIDA;
+                        stockService.registrarMovimiento(idProducto, tipo, 1);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            long duracionNs = System.nanoTime() - inicio;
+            return hilos * (double) movimientosPorHilo * 1_000_000_000.0 / duracionNs;
+        } finally {
+            ejecutor.shutdown();
+        }
+    }
+
+    /**
+     * Comprueba que se ha guardado un movimiento por cada movimiento aceptado y que
+     * el stock de la base de datos coincide con el del registro en memoria.
+     *
+     * @return "correcta" o la primera diferencia encontrada
+     */
+    private String comprobar(long guardados, long esperados) throws SQLException {
+        if (guardados != esperados) {
+            return guardados + "/" + esperados + " movs";
+        }
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT id_producto, stock FROM productos");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                if (rs.getInt(2) != ledger.getStock(rs.getInt(1))) {
+                    return "stock " + rs.getInt(1);
+                }
+            }
+        }
+        return "correcta";
+    }
+
+    private long contarMovimientos() throws SQLException {
+        // Los movimientos aceptados hasta ahora deben estar guardados antes de contarlos
+        ledger.esperarPersistencia();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM movimientos_stock");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static void crearProductos(Connection conn, int cantidad) throws SQLException {
+        String sql = "INSERT INTO productos (id_producto, nombre, categoria, precio, stock) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= cantidad; i++) {
+                ps.setInt(1, i);
+                ps.setString(2, "Prueba de carga " + i);
+                ps.setString(3, "PRUEBA");
+                ps.setBigDecimal(4, BigDecimal.ZERO);
+                ps.setInt(5, 0);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void vaciarTablas(Connection conn) throws SQLException {
+        for (String tabla : new String[] {"movimientos_stock", "ventas_diarias", "productos"}) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + tabla)) {
+                ps.executeUpdate();
+            }
+        }
+    }
+}
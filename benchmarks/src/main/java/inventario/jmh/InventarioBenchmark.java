@@ -0,0 +1,149 @@
+package inventario.jmh;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pruebas de rendimiento con JMH de las operaciones de BenchmarkInventario:
+ * importación de CSV, exportación e importación de XML, exportación a JSON de los
+ * productos con stock bajo y registro de movimientos a través del registro de stock
+ * en memoria y el group commit, el camino que usan el menú y el servidor HTTP.
+ *
+ * Cada operación procesa el catálogo completo (o hasta 10.000 movimientos), así que
+ * se mide en modo SingleShotTime: cada iteración es una llamada, y el resultado es
+ * el tiempo medio por llamada tras las iteraciones de calentamiento, en una JVM
+ * separada. Los parámetros se cambian con -p, por ejemplo:
+ *
+ *     java -jar benchmarks/target/benchmarks.jar -p productos=1000000 -p almacen=mysql
+ *
+ * Las clases de la aplicación están en el paquete por defecto, que no se puede
+ * importar desde un paquete con nombre (y JMH no admite pruebas en el paquete por
+ * defecto). Por eso las operaciones se obtienen una vez, en el Setup, con
+ * BenchmarkInventario.conectar y BenchmarkInventario.operaciones, que devuelven tipos
+ * del JDK (el pool de conexiones se maneja como un AutoCloseable); las llamadas
+ * medidas no usan reflexión.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InventarioBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int productos;
+
+    /** mysql o embebido (H2, sin servidor) */
+    @Param({"embebido"})
+    public String almacen;
+
+    @Param({"jdbc:mysql://localhost:3306/"})
+    public String urlBase;
+
+    @Param({"root"})
+    public String usuario;
+
+    @Param({""})
+    public String password;
+
+    private Path directorio;
+    private AutoCloseable pool;
+    private Map<String, Callable<Long>> porNombre;
+    private Callable<Long> importarCsv;
+    private Callable<Long> exportarXml;
+    private Callable<Long> importarXml;
+    private Callable<Long> exportarJsonStockBajo;
+    private Callable<Long> registrarMovimiento;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void preparar() throws Exception {
+        directorio = Files.createTempDirectory("jmh_inventario");
+        Class<?> banco = Class.forName("BenchmarkInventario");
+        Method conectar = banco.getMethod("conectar", String.class, Path.class, String.class, String.class, String.class);
+        Method operaciones = banco.getMethod("operaciones", Class.forName("ConnectionPool"), Path.class, int.class);
+        try {
+            pool = (AutoCloseable) conectar.invoke(null, almacen, directorio, urlBase, usuario, password);
+            porNombre = (Map<String, Callable<Long>>) operaciones.invoke(null, pool, directorio, productos);
+            importarCsv = porNombre.get("importarCsv");
+            exportarXml = porNombre.get("exportarXml");
+            importarXml = porNombre.get("importarXml");
+            exportarJsonStockBajo = porNombre.get("exportarJsonStockBajo");
+            registrarMovimiento = porNombre.get("registrarMovimiento");
+        } catch (InvocationTargetException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws Exception {
+        if (porNombre != null) {
+            Method cerrar = Class.forName("BenchmarkInventario").getMethod("cerrar", Map.class);
+            try {
+                cerrar.invoke(null, porNombre);
+            } catch (InvocationTargetException e) {
+                throw (Exception) e.getCause();
+            }
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        try (Stream<Path> archivos = Files.walk(directorio)) {
+            archivos.sorted(Comparator.reverseOrder()).forEach(archivo -> {
+                try {
+                    Files.deleteIfExists(archivo);
+                } catch (IOException e) {
+                    // Es un directorio temporal: lo que quede lo borrará el sistema
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public long importarCsv() throws Exception {
+        return importarCsv.call();
+    }
+
+    @Benchmark
+    public long exportarXml() throws Exception {
+        return exportarXml.call();
+    }
+
+    @Benchmark
+    public long importarXml() throws Exception {
+        return importarXml.call();
+    }
+
+    @Benchmark
+    public long exportarJsonStockBajo() throws Exception {
+        return exportarJsonStockBajo.call();
+    }
+
+    @Benchmark
+    public long registrarMovimiento() throws Exception {
+        return registrarMovimiento.call();
+    }
+}